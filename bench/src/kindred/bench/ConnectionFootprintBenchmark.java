@@ -0,0 +1,146 @@
+package kindred.bench;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.Socket;
+import java.util.ArrayList;
+
+import kindred.common.ClientToServerEnum;
+import kindred.common.ClientToServerMessage;
+import kindred.server.Server;
+import kindred.server.ServerMode;
+
+/**
+ * Measures how the Server's memory footprint grows with the number of idle
+ * connections, for each ServerMode. Connections are opened in steps from this
+ * same process; after each step, the number of live threads, the used heap and
+ * the process' resident set size are reported.
+ * <p>
+ * Usage: {@code ConnectionFootprintBenchmark [maxConnections [step [modes]]]},
+ * where {@code modes} is a comma-separated list of ServerMode names. Both ends
+ * of every connection live in this process, so the open file limit must allow
+ * twice {@code maxConnections} descriptors.
+ * 
+ * @author Kindred Team
+ */
+public final class ConnectionFootprintBenchmark {
+
+    /**
+     * First port used by the benchmarked Servers; each mode uses the next one.
+     */
+    private static final int BASE_PORT = 61001;
+
+    /**
+     * Not to be instantiated, since this class is purely static.
+     */
+    private ConnectionFootprintBenchmark() {
+        // Do not instantiate!
+    }
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args
+     *            optional maximum number of connections, step and modes
+     * @throws Exception
+     *             if a connection can't be opened
+     */
+    public static void main(String[] args) throws Exception {
+        int max = args.length >= 1 ? Integer.parseInt(args[0]) : 5000;
+        int step = args.length >= 2 ? Integer.parseInt(args[1]) : 1000;
+        String modes = args.length >= 3 ? args[2] : "thread,virtual,selector";
+
+        System.out.format("%-9s %12s %9s %12s %12s%n", "mode", "connections",
+                "threads", "heap (KiB)", "rss (KiB)");
+        int port = BASE_PORT;
+        for (String name : modes.split(","))
+            run(ServerMode.valueOf(name.trim().toUpperCase()), port++, max, step);
+    }
+
+    /**
+     * Starts a Server in the specified mode and opens connections to it,
+     * reporting the footprint after each step.
+     * 
+     * @param mode
+     *            ServerMode to be measured
+     * @param port
+     *            port on which the Server listens
+     * @param max
+     *            number of connections opened in total
+     * @param step
+     *            number of connections opened between measurements
+     * @throws Exception
+     *             if a connection can't be opened
+     */
+    private static void run(ServerMode mode, int port, int max, int step)
+            throws Exception {
+        Server server = new Server(mode, port);
+        server.runLoopInNewThread();
+
+        ArrayList<Socket> sockets = new ArrayList<Socket>();
+        report(mode, 0);
+        String ping = new ClientToServerMessage(ClientToServerEnum.EMPTY)
+                .toEncodedString();
+        while (sockets.size() < max) {
+            for (int i = 0; i < step && sockets.size() < max; i++) {
+                Socket s = new Socket("localhost", port);
+                new PrintWriter(s.getOutputStream(), true).println(ping);
+                sockets.add(s);
+            }
+            // Lets the Server settle every new connection
+            Thread.sleep(1000);
+            report(mode, sockets.size());
+        }
+
+        for (Socket s : sockets)
+            s.close();
+        server.close();
+        Thread.sleep(2000);
+    }
+
+    /**
+     * Prints a line with the current footprint of the process.
+     * 
+     * @param mode
+     *            ServerMode being measured
+     * @param connections
+     *            number of open connections
+     */
+    private static void report(ServerMode mode, int connections) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        long heap = memory.getHeapMemoryUsage().getUsed() / 1024;
+        System.out.format("%-9s %12d %9d %12d %12d%n", mode.name().toLowerCase(),
+                connections, threads.getThreadCount(), heap, residentSetSize());
+    }
+
+    /**
+     * Returns the resident set size of this process, read from
+     * {@code /proc/self/status}.
+     * 
+     * @return resident set size in KiB, or -1 if it is unavailable
+     */
+    private static long residentSetSize() {
+        try {
+            BufferedReader in = new BufferedReader(new FileReader(
+                    "/proc/self/status"));
+            try {
+                String line;
+                while ((line = in.readLine()) != null)
+                    if (line.startsWith("VmRSS:"))
+                        return Long.parseLong(line.replaceAll("\\D", ""));
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // Not running on Linux
+        }
+        return -1;
+    }
+}
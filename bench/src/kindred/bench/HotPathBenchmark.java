@@ -0,0 +1,437 @@
+package kindred.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import kindred.client.view.cli.CLI;
+import kindred.common.ClientToServerEnum;
+import kindred.common.ClientToServerMessage;
+import kindred.common.GameActionEnum;
+import kindred.common.ServerToClientEnum;
+import kindred.common.ServerToClientMessage;
+import kindred.common.WireFormat;
+import kindred.common.model.Battle;
+import kindred.common.model.BattleOdds;
+import kindred.common.model.Game;
+import kindred.common.model.Map;
+import kindred.common.model.MapLayout;
+import kindred.common.model.MapTemplate;
+import kindred.common.model.SplitMixRandom;
+import kindred.common.model.Terrain;
+import kindred.common.model.Tile;
+import kindred.common.parsing.MapFileParser;
+import kindred.common.parsing.TerrainFileParser;
+
+/**
+ * Microbenchmarks of the hot paths of the protocol and of the model: encoding
+ * and decoding messages, moves, attacks and battles, parsing a Map file and
+ * drawing a Map on the command line. Each benchmark is run in its own JVMs by
+ * the Microbenchmark harness, so that regressions of one path can be measured
+ * without the others interfering.
+ * <p>
+ * Usage: {@code HotPathBenchmark [filter [forks [iterations]]]}, e.g.
+ * {@code HotPathBenchmark Map\.move} to run the Map.move benchmarks only.
+ * Benchmarks on a Map use simpleMap.
+ * 
+ * @author Kindred Team
+ */
+public final class HotPathBenchmark {
+
+    /**
+     * Resource file of the Map used by the benchmarks.
+     */
+    private static final String MAP_FILE = "/kindred/common/data/map/simpleMap.txt";
+
+    /**
+     * Resource file describing every Terrain type.
+     */
+    private static final String TERRAIN_FILE = "/kindred/common/data/terrain/terrain.txt";
+
+    /**
+     * Seed of the battles' random source.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Client messages measured, resembling the traffic of a match: mostly game
+     * actions, plus a few lobby messages.
+     */
+    private static final ClientToServerMessage[] CLIENT_MESSAGES = {
+            new ClientToServerMessage(ClientToServerEnum.GAME_ACTION,
+                    "0|3|4|5|4"),
+            new ClientToServerMessage(ClientToServerEnum.GAME_ACTION,
+                    "1|5|4|6|4|17"),
+            new ClientToServerMessage(ClientToServerEnum.GAME_ACTION, "2|"),
+            new ClientToServerMessage(ClientToServerEnum.NICK, "player1"),
+            new ClientToServerMessage(ClientToServerEnum.HOST, "simpleMap"),
+            new ClientToServerMessage(ClientToServerEnum.JOIN, "someHost") };
+
+    /**
+     * Server messages measured, resembling the traffic of a match: mostly game
+     * actions, plus a few lobby messages.
+     */
+    private static final ServerToClientMessage[] SERVER_MESSAGES = {
+            new ServerToClientMessage(ServerToClientEnum.GAME_ACTION,
+                    "0|3|4|5|4"),
+            new ServerToClientMessage(ServerToClientEnum.GAME_ACTION,
+                    "1|5|4|6|4|17"),
+            new ServerToClientMessage(ServerToClientEnum.GAME_ACTION, "2|"),
+            new ServerToClientMessage(ServerToClientEnum.SUCC_JOIN,
+                    "someHost|2|simpleMap|0"),
+            new ServerToClientMessage(ServerToClientEnum.INFO_AVAILABLE_ROOMS,
+                    "alice>simpleMap|bob>testmap"),
+            new ServerToClientMessage(ServerToClientEnum.SUCC_NICKNAME_CHANGED,
+                    "player1") };
+
+    /**
+     * Encoded game actions measured: moves, attacks and ends of turn.
+     */
+    private static final String[] GAME_ACTIONS = { "0|3|4|5|4", "0|12|7|13|9",
+            "1|5|4|6|4|17", "1|13|9|13|10|-1", "2|" };
+
+    /**
+     * Not to be instantiated, since this class is purely static.
+     */
+    private HotPathBenchmark() {
+        // Do not instantiate!
+    }
+
+    /**
+     * Runs the benchmarks.
+     * 
+     * @param args
+     *            optional filter, number of forks and number of iterations
+     * @throws Exception
+     *             if a benchmark can't be prepared or a JVM can't be forked
+     */
+    public static void main(String[] args) throws Exception {
+        List<Microbenchmark> benchmarks = new ArrayList<Microbenchmark>();
+        addProtocol(benchmarks);
+        for (MapLayout layout : MapLayout.values())
+            addMap(benchmarks, layout);
+        addBattle(benchmarks);
+        addViews(benchmarks);
+        Microbenchmark.runSuite(HotPathBenchmark.class, benchmarks, args);
+    }
+
+    /**
+     * Adds the benchmarks of the encoding and decoding of messages.
+     * 
+     * @param benchmarks
+     *            list of the suite's benchmarks
+     */
+    private static void addProtocol(List<Microbenchmark> benchmarks) {
+        final String[] clientStrings = new String[CLIENT_MESSAGES.length];
+        for (int i = 0; i < clientStrings.length; i++)
+            clientStrings[i] = CLIENT_MESSAGES[i].toEncodedString();
+        final String[] serverStrings = new String[SERVER_MESSAGES.length];
+        for (int i = 0; i < serverStrings.length; i++)
+            serverStrings[i] = SERVER_MESSAGES[i].toEncodedString();
+
+        benchmarks.add(new Microbenchmark("ClientToServerMessage.toEncodedString") {
+            @Override
+            protected long run(int ops) {
+                long result = 0;
+                for (int i = 0; i < ops; i++)
+                    result += CLIENT_MESSAGES[i % CLIENT_MESSAGES.length]
+                            .toEncodedString().length();
+                return result;
+            }
+        });
+        benchmarks.add(new Microbenchmark(
+                "ClientToServerMessage.fromEncodedString") {
+            @Override
+            protected long run(int ops) {
+                long result = 0;
+                for (int i = 0; i < ops; i++)
+                    result += ClientToServerMessage.fromEncodedString(
+                            clientStrings[i % clientStrings.length]).argument
+                            .length();
+                return result;
+            }
+        });
+        benchmarks.add(new Microbenchmark(
+                "ServerToClientMessage.fromEncodedString") {
+            @Override
+            protected long run(int ops) {
+                long result = 0;
+                for (int i = 0; i < ops; i++)
+                    result += ServerToClientMessage.fromEncodedString(
+                            serverStrings[i % serverStrings.length]).argument
+                            .length();
+                return result;
+            }
+        });
+        for (final WireFormat format : WireFormat.values()) {
+            final byte[][] frames = new byte[SERVER_MESSAGES.length][];
+            for (int i = 0; i < frames.length; i++)
+                frames[i] = SERVER_MESSAGES[i].toFrame(format);
+            benchmarks.add(new Microbenchmark("ServerToClientMessage.fromFrame["
+                    + format.name().toLowerCase() + "]") {
+                @Override
+                protected long run(int ops) {
+                    long result = 0;
+                    for (int i = 0; i < ops; i++) {
+                        byte[] frame = frames[i % frames.length];
+                        result += ServerToClientMessage.fromFrame(format,
+                                frame, 0, frame.length).argument.length();
+                    }
+                    return result;
+                }
+            });
+        }
+        benchmarks.add(new Microbenchmark("GameActionEnum.fromEncodedString") {
+            @Override
+            protected long run(int ops) {
+                long result = 0;
+                for (int i = 0; i < ops; i++)
+                    result += GameActionEnum.fromEncodedString(
+                            GAME_ACTIONS[i % GAME_ACTIONS.length]).ordinal();
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Adds the benchmarks of moves and attacks on a Map.
+     * 
+     * @param benchmarks
+     *            list of the suite's benchmarks
+     * @param layout
+     *            how the Map keeps its board
+     */
+    private static void addMap(List<Microbenchmark> benchmarks,
+            final MapLayout layout) {
+        final String suffix = "[" + layout.name().toLowerCase() + "]";
+        benchmarks.add(new Microbenchmark("Map.move" + suffix) {
+            /**
+             * Map on which the Unit moves.
+             */
+            private Map map;
+
+            /**
+             * Positions between which the Unit moves back and forth, as {x,
+             * y, x, y}.
+             */
+            private int[] move;
+
+            /**
+             * Whether the Unit stands on the second position.
+             */
+            private boolean moved;
+
+            @Override
+            protected void setUp() throws Exception {
+                map = MapTemplate.get(MAP_FILE).instantiate(layout);
+                move = findMove(map);
+            }
+
+            @Override
+            protected long run(int ops) {
+                long result = 0;
+                for (int i = 0; i < ops; i++) {
+                    boolean done = moved ? map.move(move[2], move[3], move[0],
+                            move[1]) : map.move(move[0], move[1], move[2],
+                            move[3]);
+                    if (done) {
+                        moved = !moved;
+                        result++;
+                    }
+                }
+                return result;
+            }
+        });
+        benchmarks.add(new Microbenchmark("Map.attack" + suffix) {
+            /**
+             * Map on which the Unit attacks.
+             */
+            private Map map;
+
+            /**
+             * Positions of the attacker and the defender, as {x, y, x, y}.
+             */
+            private int[] attack;
+
+            @Override
+            protected void setUp() throws Exception {
+                map = MapTemplate.get(MAP_FILE).instantiate(layout);
+                map.setRandomSource(new SplitMixRandom(SEED));
+                attack = findAttack(map);
+            }
+
+            @Override
+            protected long run(int ops) {
+                long result = 0;
+                for (int i = 0; i < ops; i++)
+                    result += map.attack(attack[0], attack[1], attack[2],
+                            attack[3]);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Adds the benchmarks of battles, with odds computed for each battle or
+     * computed once.
+     * 
+     * @param benchmarks
+     *            list of the suite's benchmarks
+     */
+    private static void addBattle(List<Microbenchmark> benchmarks) {
+        benchmarks.add(new Microbenchmark("Battle.execute") {
+            /**
+             * Battle executed.
+             */
+            private Battle battle;
+
+            /**
+             * Tile of the attacker.
+             */
+            private Tile attacker;
+
+            /**
+             * Tile of the defender.
+             */
+            private Tile defender;
+
+            @Override
+            protected void setUp() throws Exception {
+                Map map = MapTemplate.get(MAP_FILE).instantiate();
+                int[] attack = findAttack(map);
+                battle = new Battle(new SplitMixRandom(SEED));
+                attacker = map.getTile(attack[0], attack[1]);
+                defender = map.getTile(attack[2], attack[3]);
+            }
+
+            @Override
+            protected long run(int ops) {
+                long result = 0;
+                for (int i = 0; i < ops; i++)
+                    result += battle.execute(attacker, defender);
+                return result;
+            }
+        });
+        benchmarks.add(new Microbenchmark("Battle.execute[odds]") {
+            /**
+             * Battle executed.
+             */
+            private Battle battle;
+
+            /**
+             * Odds of the attack.
+             */
+            private BattleOdds odds;
+
+            @Override
+            protected void setUp() throws Exception {
+                Map map = MapTemplate.get(MAP_FILE).instantiate();
+                int[] attack = findAttack(map);
+                battle = new Battle(new SplitMixRandom(SEED));
+                odds = map.getOdds(attack[0], attack[1], attack[2], attack[3]);
+            }
+
+            @Override
+            protected long run(int ops) {
+                long result = 0;
+                for (int i = 0; i < ops; i++)
+                    result += battle.execute(odds);
+                return result;
+            }
+        });
+    }
+
+    /**
+     * Adds the benchmarks of parsing a Map file and drawing a Map on the
+     * command line.
+     * 
+     * @param benchmarks
+     *            list of the suite's benchmarks
+     */
+    private static void addViews(List<Microbenchmark> benchmarks) {
+        benchmarks.add(new Microbenchmark("MapFileParser.parseFile") {
+            /**
+             * Every Terrain type, indexed by identifying Character.
+             */
+            private HashMap<Character, Terrain> terrains;
+
+            @Override
+            protected void setUp() throws Exception {
+                terrains = TerrainFileParser.parseFile(TERRAIN_FILE);
+            }
+
+            @Override
+            protected long run(int ops) {
+                long result = 0;
+                try {
+                    for (int i = 0; i < ops; i++)
+                        result += MapFileParser.parseFile(MAP_FILE, terrains)
+                                .getNumUnitsA();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return result;
+            }
+        });
+        benchmarks.add(new Microbenchmark("CLI.displayMap") {
+            /**
+             * Command-line interface drawing the Map.
+             */
+            private CLI cli;
+
+            @Override
+            protected void setUp() throws Exception {
+                cli = new CLI();
+                cli.setGame(new Game("alice", "bob", MAP_FILE, 1));
+            }
+
+            @Override
+            protected long run(int ops) {
+                for (int i = 0; i < ops; i++)
+                    cli.displayMap();
+                return ops;
+            }
+        });
+    }
+
+    /**
+     * Finds a Unit that can move, and a Tile it can move to.
+     * 
+     * @param map
+     *            Map to be searched
+     * @return positions of the Unit and of the Tile, as {x, y, x, y}
+     * @throws IllegalStateException
+     *             if no Unit can move
+     */
+    private static int[] findMove(Map map) {
+        for (int x = 0; x < map.getMapHeight(); x++)
+            for (int y = 0; y < map.getMapWidth(); y++)
+                if (map.getUnit(x, y) != null
+                        && map.reachableFrom(x, y).size() > 0)
+                    return new int[] { x, y, map.reachableFrom(x, y).getX(0),
+                            map.reachableFrom(x, y).getY(0) };
+        throw new IllegalStateException("No Unit can move on " + MAP_FILE);
+    }
+
+    /**
+     * Finds a Unit with another Unit within its range.
+     * 
+     * @param map
+     *            Map to be searched
+     * @return positions of the attacker and of the defender, as {x, y, x, y}
+     * @throws IllegalStateException
+     *             if no Unit can attack
+     */
+    private static int[] findAttack(Map map) {
+        int height = map.getMapHeight();
+        int width = map.getMapWidth();
+        for (int xi = 0; xi < height; xi++)
+            for (int yi = 0; yi < width; yi++)
+                for (int xf = 0; xf < height; xf++)
+                    for (int yf = 0; yf < width; yf++)
+                        if ((xi != xf || yi != yf)
+                                && map.inRange(xi, yi, xf, yf))
+                            return new int[] { xi, yi, xf, yf };
+        throw new IllegalStateException("No Unit can attack on " + MAP_FILE);
+    }
+}
@@ -0,0 +1,156 @@
+package kindred.bench;
+
+import java.util.Arrays;
+
+/**
+ * Counts recorded latencies in log-linear buckets: every power of two is split
+ * into the same number of buckets, so that any percentile is known within
+ * 1/64 of its value whatever its magnitude, in a fixed amount of memory.
+ * Recording allocates nothing. A LatencyHistogram must not be shared between
+ * threads.
+ * 
+ * @author Kindred Team
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Number of bits of a value kept when choosing its bucket.
+     */
+    private static final int SUB_BITS = 7;
+
+    /**
+     * Number of buckets holding the smallest values, one per value.
+     */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * Number of buckets per power of two above {@code SUB_COUNT}.
+     */
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+
+    /**
+     * Number of values recorded in each bucket.
+     */
+    private final long[] counts = new long[SUB_COUNT + (64 - SUB_BITS)
+            * HALF_COUNT];
+
+    /**
+     * Number of values recorded.
+     */
+    private long count;
+
+    /**
+     * Largest value recorded.
+     */
+    private long max;
+
+    /**
+     * Sum of the values recorded.
+     */
+    private long sum;
+
+    /**
+     * Records a value.
+     * 
+     * @param value
+     *            value to be recorded; negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        if (value > max)
+            max = value;
+    }
+
+    /**
+     * Forgets every recorded value.
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        max = 0;
+        sum = 0;
+    }
+
+    /**
+     * Returns the number of values recorded.
+     * 
+     * @return the number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     * 
+     * @return the largest value, or 0 if none was recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     * 
+     * @return the mean, or 0 if no value was recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns a percentile of the values recorded: the smallest value such
+     * that the given fraction of the values is at most that value, rounded up
+     * to the end of its bucket.
+     * 
+     * @param fraction
+     *            fraction of the values, from 0 to 1 (e.g. 0.99 for the 99th
+     *            percentile)
+     * @return the percentile, or 0 if no value was recorded
+     */
+    public long getPercentile(double fraction) {
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highestInBucket(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Returns the bucket in which a value is counted.
+     * 
+     * @param value
+     *            a value, at least 0
+     * @return index of its bucket in {@code counts}
+     */
+    private static int bucket(long value) {
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        if (bits <= SUB_BITS)
+            return (int) value;
+        int shift = bits - SUB_BITS;
+        int top = (int) (value >>> shift);
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + top - HALF_COUNT;
+    }
+
+    /**
+     * Returns the largest value counted in a bucket.
+     * 
+     * @param bucket
+     *            index of the bucket in {@code counts}
+     * @return the largest value of the bucket
+     */
+    private static long highestInBucket(int bucket) {
+        if (bucket < SUB_COUNT)
+            return bucket;
+        int shift = (bucket - SUB_COUNT) / HALF_COUNT + 1;
+        long top = (bucket - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,768 @@
+package kindred.bench;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+import kindred.common.ClientToServerEnum;
+import kindred.common.ClientToServerMessage;
+import kindred.common.GameActionEnum;
+import kindred.common.GameActionMessage;
+import kindred.common.ServerToClientMessage;
+import kindred.common.WireFormat;
+import kindred.server.Server;
+import kindred.server.ServerMode;
+
+/**
+ * Loads a Server with many simultaneous matches played by headless players,
+ * speaking the protocol directly over sockets. Each match is made of two
+ * connections: one player sends NICK and HOST, the other one NICK and JOIN.
+ * Once every match has started, the players send a scripted loop of
+ * GAME_ACTION messages (two moves, an attack and the end of the turn) at a
+ * fixed total rate, spread evenly among them.
+ * <p>
+ * The relay latency of an action is the time from its sending by a player to
+ * its arrival at the opponent. The Server relays the actions of a match in
+ * order, so actions are matched with their arrival by order alone. After a
+ * warm-up of {@code WARMUP_SECONDS}, the throughput of relayed actions and the
+ * percentiles of their latency are measured, along with the time taken by
+ * JOINs.
+ * <p>
+ * Usage: {@code LoadGenerator [matches [rate [seconds [format [target]]]]]},
+ * where {@code rate} is the number of actions sent per second by all players,
+ * {@code format} is a WireFormat name and {@code target} is either
+ * {@code host:port} of a running Server or a ServerMode name, in which case a
+ * Server is started in this process. The Server must relay actions: a Server
+ * refereeing its games rejects the scripted ones. Every connection is served
+ * by a single thread with a Selector; both ends of every connection live in
+ * this process when the Server is started here, so the open file limit must
+ * then allow four times {@code matches} descriptors.
+ * 
+ * @author Kindred Team
+ */
+public final class LoadGenerator {
+
+    /**
+     * Port on which a Server started by the load generator listens.
+     */
+    private static final int BASE_PORT = 61101;
+
+    /**
+     * Map hosted by every match.
+     */
+    private static final String MAP = "simpleMap";
+
+    /**
+     * Duration of the warm-up, during which nothing is measured.
+     */
+    private static final int WARMUP_SECONDS = 2;
+
+    /**
+     * Longest time given to every match to start, in seconds.
+     */
+    private static final int SETUP_SECONDS = 60;
+
+    /**
+     * Longest time given to the last actions to arrive, in seconds.
+     */
+    private static final int DRAIN_SECONDS = 5;
+
+    /**
+     * Number of connections opened at once, so that the Server's accept
+     * backlog isn't overflowed.
+     */
+    private static final int CONNECT_BATCH = 64;
+
+    /**
+     * Size of each connection's receive buffer.
+     */
+    private static final int INBOX_SIZE = 64 * 1024;
+
+    /**
+     * Number of unexpected messages printed before they are only counted.
+     */
+    private static final int PRINTED_ERRORS = 5;
+
+    /**
+     * Game actions sent by every player, in a loop.
+     */
+    private static final GameActionMessage[] SCRIPT = {
+            new GameActionMessage(GameActionEnum.MOVE, "0|0|0|1"),
+            new GameActionMessage(GameActionEnum.MOVE, "0|1|0|0"),
+            new GameActionMessage(GameActionEnum.ATTACK, "0|0|1|0|1"),
+            new GameActionMessage(GameActionEnum.END_TURN) };
+
+    /**
+     * Format of the messages exchanged with the Server.
+     */
+    private final WireFormat format;
+
+    /**
+     * Every player, the host of match i being player 2i and its guest player
+     * 2i + 1.
+     */
+    private final Player[] players;
+
+    /**
+     * Frames of the GAME_ACTION messages of {@code SCRIPT}.
+     */
+    private final byte[][] script;
+
+    /**
+     * Selector of every connection.
+     */
+    private final Selector selector;
+
+    /**
+     * Latency of every action relayed during the measurement, in nanoseconds.
+     */
+    private final LatencyHistogram relayLatency = new LatencyHistogram();
+
+    /**
+     * Time taken by every JOIN to be answered, in nanoseconds.
+     */
+    private final LatencyHistogram joinLatency = new LatencyHistogram();
+
+    /**
+     * Number of players whose match has started.
+     */
+    private int ready;
+
+    /**
+     * Number of players whose connection was closed or failed.
+     */
+    private int closed;
+
+    /**
+     * Number of unexpected messages received.
+     */
+    private int errors;
+
+    /**
+     * Time from which relayed actions are measured, or {@code Long.MAX_VALUE}
+     * before the actions start being sent.
+     */
+    private long measureFrom = Long.MAX_VALUE;
+
+    /**
+     * Time from which relayed actions are no longer measured.
+     */
+    private long measureUntil = Long.MAX_VALUE;
+
+    /**
+     * Number of actions sent during the measurement.
+     */
+    private long sentMeasured;
+
+    /**
+     * Number of actions sent during the measurement that arrived.
+     */
+    private long relayedMeasured;
+
+    /**
+     * Constructs a LoadGenerator, opening its Selector.
+     * 
+     * @param matches
+     *            number of matches played
+     * @param format
+     *            format of the messages exchanged with the Server
+     * @throws IOException
+     *             if the Selector can't be opened
+     */
+    private LoadGenerator(int matches, WireFormat format) throws IOException {
+        this.format = format;
+        players = new Player[2 * matches];
+        script = new byte[SCRIPT.length][];
+        for (int i = 0; i < SCRIPT.length; i++)
+            script[i] = new ClientToServerMessage(ClientToServerEnum.GAME_ACTION,
+                    SCRIPT[i].toEncodedString()).toFrame(format);
+        selector = Selector.open();
+    }
+
+    /**
+     * Runs the load generator.
+     * 
+     * @param args
+     *            optional number of matches, rate of actions, duration of the
+     *            measurement, format and target
+     * @throws Exception
+     *             if the Selector can't be opened or the Server can't be
+     *             started
+     */
+    public static void main(String[] args) throws Exception {
+        int matches = args.length >= 1 ? Integer.parseInt(args[0]) : 1000;
+        int rate = args.length >= 2 ? Integer.parseInt(args[1]) : 20000;
+        int seconds = args.length >= 3 ? Integer.parseInt(args[2]) : 10;
+        WireFormat format = args.length >= 4 ? WireFormat.valueOf(args[3]
+                .toUpperCase()) : WireFormat.TEXT;
+        String target = args.length >= 5 ? args[4] : "selector";
+
+        Server server = null;
+        InetSocketAddress address;
+        int colon = target.lastIndexOf(':');
+        if (colon >= 0) {
+            address = new InetSocketAddress(target.substring(0, colon),
+                    Integer.parseInt(target.substring(colon + 1)));
+        } else {
+            server = new Server(ServerMode.valueOf(target.toUpperCase()),
+                    BASE_PORT);
+            server.runLoopInNewThread();
+            // Lets the Server bind its port
+            Thread.sleep(500);
+            address = new InetSocketAddress("localhost", BASE_PORT);
+        }
+
+        System.out.format("%d matches, %d actions/s, %d s, %s, %s%n", matches,
+                rate, seconds, format.name().toLowerCase(), target);
+        LoadGenerator generator = new LoadGenerator(matches, format);
+        try {
+            generator.run(address, rate, seconds);
+        } finally {
+            generator.close();
+            if (server != null)
+                server.close();
+        }
+    }
+
+    /**
+     * Opens every connection, starts every match and sends actions, then
+     * reports what was measured.
+     * 
+     * @param address
+     *            address of the Server
+     * @param rate
+     *            number of actions sent per second by all players
+     * @param seconds
+     *            duration of the measurement, in seconds
+     * @throws IOException
+     *             if the Selector fails
+     */
+    private void run(InetSocketAddress address, int rate, int seconds)
+            throws IOException {
+        long start = System.nanoTime();
+        long setupDeadline = start + SETUP_SECONDS * 1000000000L;
+        int opened = 0;
+        while (ready + closed < players.length
+                && System.nanoTime() < setupDeadline) {
+            for (int i = 0; i < CONNECT_BATCH && opened < players.length; i++) {
+                open(opened, address);
+                opened++;
+            }
+            poll(opened < players.length ? 0 : 10);
+        }
+        long setup = System.nanoTime() - start;
+        System.out.format("%d of %d players ready in %.2f s%n", ready,
+                players.length, setup / 1e9);
+        if (ready == 0)
+            return;
+
+        long sendFrom = System.nanoTime();
+        measureFrom = sendFrom + WARMUP_SECONDS * 1000000000L;
+        measureUntil = measureFrom + seconds * 1000000000L;
+        long sent = 0;
+        int next = 0;
+        long now;
+        while ((now = System.nanoTime()) < measureUntil) {
+            // Actions due by now are sent round-robin among the players
+            long due = (long) ((now - sendFrom) / 1e9 * rate) - sent;
+            for (long k = 0; k < due; k++) {
+                for (int tries = 0; tries < players.length
+                        && !players[next].isPlaying(); tries++)
+                    next = (next + 1) % players.length;
+                if (players[next].isPlaying())
+                    players[next].sendAction(now);
+                next = (next + 1) % players.length;
+                sent++;
+            }
+            poll(1);
+        }
+
+        long drainDeadline = System.nanoTime() + DRAIN_SECONDS * 1000000000L;
+        while (relayedMeasured < sentMeasured
+                && System.nanoTime() < drainDeadline)
+            poll(10);
+        report(seconds);
+    }
+
+    /**
+     * Prints what was measured.
+     * 
+     * @param seconds
+     *            duration of the measurement, in seconds
+     */
+    private void report(int seconds) {
+        System.out.format("%-16s %12s %12s %12s %12s %12s%n", "", "count",
+                "p50 (us)", "p99 (us)", "p99.9 (us)", "max (us)");
+        print("join", joinLatency);
+        print("relay", relayLatency);
+        System.out.format("sent %d, relayed %d, lost %d, %.0f actions/s%n",
+                sentMeasured, relayedMeasured, sentMeasured - relayedMeasured,
+                (double) relayedMeasured / seconds);
+        System.out.format("closed connections %d, unexpected messages %d%n",
+                closed, errors);
+    }
+
+    /**
+     * Prints a line with the percentiles of a histogram.
+     * 
+     * @param name
+     *            what was measured
+     * @param histogram
+     *            latencies measured, in nanoseconds
+     */
+    private static void print(String name, LatencyHistogram histogram) {
+        System.out.format("%-16s %12d %12.1f %12.1f %12.1f %12.1f%n", name,
+                histogram.getCount(), histogram.getPercentile(0.5) / 1e3,
+                histogram.getPercentile(0.99) / 1e3,
+                histogram.getPercentile(0.999) / 1e3, histogram.getMax() / 1e3);
+    }
+
+    /**
+     * Opens the connection of a player. The guest of a match is always opened
+     * after its host.
+     * 
+     * @param i
+     *            index of the player
+     * @param address
+     *            address of the Server
+     * @throws IOException
+     *             if the Selector fails
+     */
+    private void open(int i, InetSocketAddress address) throws IOException {
+        Player player = new Player(i);
+        players[i] = player;
+        if (i % 2 == 1) {
+            player.opponent = players[i - 1];
+            players[i - 1].opponent = player;
+        }
+        try {
+            player.channel = SocketChannel.open();
+            player.channel.configureBlocking(false);
+            player.key = player.channel.register(selector,
+                    SelectionKey.OP_CONNECT, player);
+            if (player.channel.connect(address))
+                player.connected();
+        } catch (IOException e) {
+            player.fail(e);
+        }
+    }
+
+    /**
+     * Waits for connections to be ready, and serves the ready ones.
+     * 
+     * @param millis
+     *            longest time to wait, in milliseconds, or 0 not to wait
+     * @throws IOException
+     *             if the Selector fails
+     */
+    private void poll(long millis) throws IOException {
+        if (millis > 0)
+            selector.select(millis);
+        else
+            selector.selectNow();
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Player player = (Player) key.attachment();
+            try {
+                if (!key.isValid())
+                    continue;
+                if (key.isConnectable() && player.channel.finishConnect())
+                    player.connected();
+                if (key.isValid() && key.isReadable())
+                    player.read();
+                if (key.isValid() && key.isWritable())
+                    player.flush();
+            } catch (IOException e) {
+                player.fail(e);
+            }
+        }
+    }
+
+    /**
+     * Closes every connection and the Selector.
+     * 
+     * @throws IOException
+     *             if the Selector can't be closed
+     */
+    private void close() throws IOException {
+        for (Player player : players)
+            if (player != null && player.channel != null)
+                player.channel.close();
+        selector.close();
+    }
+
+    /**
+     * Returns the nickname of a player, valid for the Server whatever the
+     * number of matches.
+     * 
+     * @param i
+     *            index of the player
+     * @return the player's nickname
+     */
+    private static String nickname(int i) {
+        return String.format("%s%07d", i % 2 == 0 ? "h" : "g", i / 2);
+    }
+
+    /**
+     * Prints an unexpected event, unless too many were already printed.
+     * 
+     * @param what
+     *            description of the event
+     */
+    private void error(String what) {
+        if (errors++ < PRINTED_ERRORS)
+            System.out.println(what);
+    }
+
+    /**
+     * One end of a match: a connection to the Server and the state of its
+     * player.
+     */
+    private final class Player {
+
+        /**
+         * Index of this player.
+         */
+        private final int index;
+
+        /**
+         * Frames waiting to be written.
+         */
+        private final ArrayDeque<ByteBuffer> outbox = new ArrayDeque<ByteBuffer>();
+
+        /**
+         * Bytes received and not decoded yet.
+         */
+        private final ByteBuffer inbox = ByteBuffer.allocate(INBOX_SIZE);
+
+        /**
+         * Connection to the Server.
+         */
+        private SocketChannel channel;
+
+        /**
+         * Key of the connection in the Selector.
+         */
+        private SelectionKey key;
+
+        /**
+         * The other player of the match.
+         */
+        private Player opponent;
+
+        /**
+         * Whether the Server accepted this player's nickname.
+         */
+        private boolean named;
+
+        /**
+         * Whether this player hosts its room, if it's a host.
+         */
+        private boolean hosted;
+
+        /**
+         * Whether this player's match has started.
+         */
+        private boolean playing;
+
+        /**
+         * Whether the Server answered the BINARY preface, if the format is
+         * BINARY.
+         */
+        private boolean prefaced;
+
+        /**
+         * Time at which the JOIN was sent, if this player is a guest.
+         */
+        private long joinSent;
+
+        /**
+         * Index in the script of the next action sent.
+         */
+        private int step;
+
+        /**
+         * Sending time of the actions sent to this player that haven't
+         * arrived yet, in order, as a circular buffer.
+         */
+        private long[] expected = new long[16];
+
+        /**
+         * Index of the oldest sending time in {@code expected}.
+         */
+        private int head;
+
+        /**
+         * Number of sending times in {@code expected}.
+         */
+        private int pending;
+
+        /**
+         * Constructs a Player.
+         * 
+         * @param index
+         *            index of the player
+         */
+        Player(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Checks if this player is the host of its match.
+         * 
+         * @return {@code true}, if it hosts, or {@code false} if it joins
+         */
+        boolean isHost() {
+            return index % 2 == 0;
+        }
+
+        /**
+         * Checks if this player's match has started and its connection is
+         * open.
+         * 
+         * @return {@code true}, if it can send actions, or {@code false}
+         *         otherwise
+         */
+        boolean isPlaying() {
+            return playing && channel.isOpen();
+        }
+
+        /**
+         * Starts the conversation once connected: asks for the BINARY format
+         * if needed, and chooses a nickname.
+         * 
+         * @throws IOException
+         *             if the connection fails
+         */
+        void connected() throws IOException {
+            key.interestOps(SelectionKey.OP_READ);
+            if (format == WireFormat.BINARY)
+                write(new byte[] { (byte) WireFormat.BINARY_PREFACE });
+            else
+                prefaced = true;
+            send(ClientToServerEnum.NICK, nickname(index));
+        }
+
+        /**
+         * Sends the next scripted action to the opponent.
+         * 
+         * @param now
+         *            current time
+         */
+        void sendAction(long now) {
+            try {
+                write(script[step]);
+                step = (step + 1) % script.length;
+                opponent.expect(now);
+                if (now >= measureFrom && now < measureUntil)
+                    sentMeasured++;
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Remembers the sending time of an action sent to this player.
+         * 
+         * @param time
+         *            sending time of the action
+         */
+        void expect(long time) {
+            if (pending == expected.length) {
+                long[] grown = new long[2 * pending];
+                for (int i = 0; i < pending; i++)
+                    grown[i] = expected[(head + i) % pending];
+                expected = grown;
+                head = 0;
+            }
+            expected[(head + pending++) % expected.length] = time;
+        }
+
+        /**
+         * Reads what the Server sent, and handles every complete message.
+         * 
+         * @throws IOException
+         *             if the connection fails or is closed by the Server
+         */
+        void read() throws IOException {
+            if (channel.read(inbox) < 0)
+                throw new IOException("closed by the Server");
+            byte[] buf = inbox.array();
+            int end = inbox.position();
+            int off = 0;
+            if (!prefaced && end > 0) {
+                if ((buf[0] & 0xFF) != WireFormat.BINARY_PREFACE)
+                    throw new IOException("BINARY format refused");
+                prefaced = true;
+                off = 1;
+            }
+            int length;
+            while (off < end && (length = format.frameLength(buf, off, end)) > 0) {
+                ServerToClientMessage msg = ServerToClientMessage.fromFrame(
+                        format, buf, off, length);
+                if (msg != null)
+                    handle(msg);
+                off += length;
+            }
+            if (off == 0 && end == buf.length)
+                throw new IOException("Frame larger than " + INBOX_SIZE);
+            System.arraycopy(buf, off, buf, 0, end - off);
+            inbox.position(end - off);
+        }
+
+        /**
+         * Handles a message of the Server, moving this player's match along.
+         * 
+         * @param msg
+         *            the message
+         * @throws IOException
+         *             if the connection fails
+         */
+        void handle(ServerToClientMessage msg) throws IOException {
+            switch (msg.msg) {
+            case SUCC_NICKNAME_CHANGED:
+                named = true;
+                if (isHost())
+                    send(ClientToServerEnum.HOST, MAP);
+                else if (opponent.hosted)
+                    join();
+                break;
+            case SUCC_HOST:
+                hosted = true;
+                if (opponent != null && opponent.named)
+                    opponent.join();
+                break;
+            case SUCC_JOIN:
+                joinLatency.record(System.nanoTime() - joinSent);
+                start(msg.argument);
+                break;
+            case INFO_SOMEONE_ENTERED_ROOM:
+                start(msg.argument);
+                break;
+            case GAME_ACTION:
+                if (pending == 0) {
+                    error("Player " + index + ": unexpected action "
+                            + msg.argument);
+                    break;
+                }
+                long sentAt = expected[head];
+                head = (head + 1) % expected.length;
+                pending--;
+                if (sentAt >= measureFrom && sentAt < measureUntil) {
+                    relayLatency.record(System.nanoTime() - sentAt);
+                    relayedMeasured++;
+                }
+                break;
+            default:
+                // A match that can't start is given up
+                if (!playing)
+                    throw new IOException("unexpected " + msg.msg + " "
+                            + msg.argument);
+                error("Player " + index + ": unexpected " + msg.msg + " "
+                        + msg.argument);
+                break;
+            }
+        }
+
+        /**
+         * Joins the room of the opponent.
+         * 
+         * @throws IOException
+         *             if the connection fails
+         */
+        void join() throws IOException {
+            joinSent = System.nanoTime();
+            send(ClientToServerEnum.JOIN, nickname(index - 1));
+        }
+
+        /**
+         * Marks this player's match as started.
+         * 
+         * @param argument
+         *            argument of the message starting the match
+         * @throws IOException
+         *             if the Server referees the match
+         */
+        void start(String argument) throws IOException {
+            if (argument.endsWith("|1"))
+                throw new IOException("the Server referees its games");
+            playing = true;
+            ready++;
+        }
+
+        /**
+         * Sends a message to the Server.
+         * 
+         * @param msg
+         *            type of the message
+         * @param argument
+         *            argument of the message
+         * @throws IOException
+         *             if the connection fails
+         */
+        void send(ClientToServerEnum msg, String argument) throws IOException {
+            write(new ClientToServerMessage(msg, argument).toFrame(format));
+        }
+
+        /**
+         * Writes a frame, or queues it if earlier frames are still waiting.
+         * 
+         * @param frame
+         *            the frame
+         * @throws IOException
+         *             if the connection fails
+         */
+        void write(byte[] frame) throws IOException {
+            outbox.add(ByteBuffer.wrap(frame));
+            if (outbox.size() == 1)
+                flush();
+        }
+
+        /**
+         * Writes as many waiting frames as the connection accepts, watching
+         * for it to be writable again if some are left.
+         * 
+         * @throws IOException
+         *             if the connection fails
+         */
+        void flush() throws IOException {
+            while (!outbox.isEmpty()) {
+                ByteBuffer frame = outbox.peek();
+                channel.write(frame);
+                if (frame.hasRemaining())
+                    break;
+                outbox.poll();
+            }
+            key.interestOps(outbox.isEmpty() ? SelectionKey.OP_READ
+                    : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        /**
+         * Closes the connection after a failure.
+         * 
+         * @param e
+         *            cause of the failure
+         */
+        void fail(IOException e) {
+            if (channel != null && !channel.isOpen())
+                return;
+            error("Player " + index + ": " + e.getMessage());
+            closed++;
+            if (playing)
+                ready--;
+            try {
+                if (channel != null)
+                    channel.close();
+            } catch (IOException ignored) {
+                // Already failing
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package kindred.bench;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import kindred.common.model.Attribute;
+import kindred.common.model.Map;
+import kindred.common.model.MapLayout;
+import kindred.common.model.MapTemplate;
+import kindred.common.model.Terrain;
+import kindred.common.parsing.TerrainFileParser;
+import kindred.common.parsing.UnitFileParser;
+
+/**
+ * Compares the MapLayouts on a large random Map: time to generate every move
+ * and attack available to every Unit, and throughput of a random simulation
+ * of moves and attacks.
+ * <p>
+ * Usage: {@code MapBenchmark [size] [steps] [layout]}, where size is the
+ * number of rows and columns of the Map. One Unit is placed on every 16 Tiles.
+ * Layouts measured in the same JVM share the JIT's profile of the Map calls,
+ * so measuring a single layout per run gives steadier results.
+ * 
+ * @author Kindred Team
+ */
+public final class MapBenchmark {
+
+    /**
+     * Resource file describing every Terrain type.
+     */
+    private static final String TERRAIN_FILE = "/kindred/common/data/terrain/terrain.txt";
+
+    /**
+     * Resource file describing every Unit type.
+     */
+    private static final String UNIT_FILE = "/kindred/common/data/unit/unit.txt";
+
+    /**
+     * Unit types placed on the Map.
+     */
+    private static final String[] UNIT_TYPES = { "Archer", "Knight", "Lancer",
+            "Rogue", "Swordsman", "Wizard" };
+
+    /**
+     * Largest distance checked when generating attacks or trying moves.
+     */
+    private static final int RADIUS = 7;
+
+    /**
+     * Number of times every move and attack is generated per measurement.
+     */
+    private static final int PASSES = 10;
+
+    /**
+     * Seed of every random choice, so that both layouts do the same work.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * Sink for benchmark results, so that the JIT can't discard the work.
+     */
+    private static long sink = 0;
+
+    /**
+     * Not to be instantiated, since this class is purely static.
+     */
+    private MapBenchmark() {
+        // Do not instantiate!
+    }
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args
+     *            optional size of the Map, number of simulation steps and
+     *            layout to be measured
+     * @throws FileNotFoundException
+     *             if the Terrain or Unit file is not found
+     */
+    public static void main(String[] args) throws FileNotFoundException {
+        int size = args.length >= 1 ? Integer.parseInt(args[0]) : 256;
+        int steps = args.length >= 2 ? Integer.parseInt(args[1]) : 5000000;
+        MapLayout[] layouts = args.length >= 3 ? new MapLayout[] { MapLayout
+                .valueOf(args[2].toUpperCase()) } : MapLayout.values();
+        MapTemplate template = randomTemplate(size);
+        int[] positions = unitPositions(template.instantiate());
+
+        System.out.format("%d x %d tiles, %d units%n", size, size,
+                positions.length / 2);
+        System.out.format("%-8s %16s %16s%n", "layout", "movegen ns/unit",
+                "simulate ns/step");
+        for (int round = 0; round < 3; round++) {
+            // The first round only warms the JIT up
+            for (MapLayout layout : layouts) {
+                long movegen = generateMoves(template.instantiate(layout),
+                        positions);
+                long simulate = simulate(template.instantiate(layout),
+                        positions.clone(), steps);
+                if (round > 0)
+                    System.out.format("%-8s %16.1f %16.1f%n",
+                            layout.name().toLowerCase(), (double) movegen
+                                    / (positions.length / 2),
+                            (double) simulate / steps);
+            }
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+
+    /**
+     * Measures the generation of every move and attack available to every
+     * Unit, {@code PASSES} times. Attacks are found by checking every Tile
+     * within {@code RADIUS} of each Unit.
+     * 
+     * @param map
+     *            Map to be measured
+     * @param positions
+     *            position of each Unit, as {x, y}
+     * @return elapsed time, in nanoseconds
+     */
+    private static long generateMoves(Map map, int[] positions) {
+        long time = System.nanoTime();
+        for (int pass = 0; pass < PASSES; pass++)
+            for (int u = 0; u < positions.length; u += 2) {
+                int x = positions[u];
+                int y = positions[u + 1];
+                sink += map.reachableFrom(x, y).size();
+                for (int dx = -RADIUS; dx <= RADIUS; dx++) {
+                    int reach = RADIUS - Math.abs(dx);
+                    for (int dy = -reach; dy <= reach; dy++)
+                        if (map.inRange(x, y, x + dx, y + dy))
+                            sink++;
+                }
+            }
+        return (System.nanoTime() - time) / PASSES;
+    }
+
+    /**
+     * Measures a random simulation: each step, a random Unit tries to move to
+     * a random nearby Tile, and attacks a random nearby Tile if it can't.
+     * Attacks cause no damage, so that the simulation never ends.
+     * 
+     * @param map
+     *            Map to be measured
+     * @param positions
+     *            position of each Unit, as {x, y}; updated as Units move
+     * @param steps
+     *            number of steps simulated
+     * @return elapsed time, in nanoseconds
+     */
+    private static long simulate(Map map, int[] positions, int steps) {
+        Random random = new Random(SEED);
+        int units = positions.length / 2;
+        long time = System.nanoTime();
+        for (int step = 0; step < steps; step++) {
+            int u = 2 * random.nextInt(units);
+            int x = positions[u];
+            int y = positions[u + 1];
+            int xf = x + random.nextInt(2 * RADIUS + 1) - RADIUS;
+            int yf = y + random.nextInt(2 * RADIUS + 1) - RADIUS;
+            if (map.move(x, y, xf, yf)) {
+                positions[u] = xf;
+                positions[u + 1] = yf;
+            } else if (map.inRange(x, y, xf, yf)) {
+                map.causeDamage(xf, yf, 0);
+                sink++;
+            }
+        }
+        return System.nanoTime() - time;
+    }
+
+    /**
+     * Creates the template of a random square Map.
+     * 
+     * @param size
+     *            number of rows and columns of the Map
+     * @return the Map's template
+     * @throws FileNotFoundException
+     *             if the Terrain or Unit file is not found
+     */
+    private static MapTemplate randomTemplate(int size)
+            throws FileNotFoundException {
+        HashMap<Character, Terrain> terrainTypes = TerrainFileParser
+                .parseFile(TERRAIN_FILE);
+        HashMap<String, Attribute> unitTypes = UnitFileParser
+                .parseFile(UNIT_FILE);
+        Terrain[] terrains = terrainTypes.values().toArray(
+                new Terrain[terrainTypes.size()]);
+
+        Random random = new Random(SEED);
+        Terrain[][] tiles = new Terrain[size][size];
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++)
+                tiles[i][j] = terrains[random.nextInt(terrains.length)];
+
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<int[]> positions = new ArrayList<int[]>();
+        for (int i = 0; i < size; i += 4)
+            for (int j = 0; j < size; j += 4) {
+                names.add(UNIT_TYPES[random.nextInt(UNIT_TYPES.length)]);
+                positions.add(new int[] { i + random.nextInt(4),
+                        j + random.nextInt(4) });
+            }
+        int[] teams = new int[names.size()];
+        for (int u = 0; u < teams.length; u++)
+            teams[u] = 1 + u % 2;
+
+        return new MapTemplate(tiles, 0, 0,
+                names.toArray(new String[names.size()]), teams,
+                positions.toArray(new int[positions.size()][]), unitTypes);
+    }
+
+    /**
+     * Returns the positions of every Unit on a Map.
+     * 
+     * @param map
+     *            Map to be searched
+     * @return position of each Unit, as {x, y}
+     */
+    private static int[] unitPositions(Map map) {
+        int[] positions = new int[2 * (map.getNumUnitsA() + map.getNumUnitsB())];
+        int u = 0;
+        for (int i = 0; i < map.getMapHeight(); i++)
+            for (int j = 0; j < map.getMapWidth(); j++)
+                if (map.getTile(i, j).getUnit() != null) {
+                    positions[u++] = i;
+                    positions[u++] = j;
+                }
+        return positions;
+    }
+}
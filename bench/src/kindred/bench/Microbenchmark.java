@@ -0,0 +1,319 @@
+package kindred.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A measured operation of a suite of microbenchmarks, and the harness that
+ * runs such suites the way JMH does: each benchmark runs in its own forked
+ * JVMs, so that the JIT's profile of one benchmark can't slow another one
+ * down, through warm-up iterations whose results are discarded and then
+ * measurement iterations of fixed duration. The average time per operation
+ * is reported with the half-width of its 99.9% confidence interval (as
+ * "error"), along with the heap allocated per operation.
+ * <p>
+ * Suites give their benchmarks to {@link #runSuite}, which expects the
+ * arguments {@code [filter [forks [iterations]]]}: only benchmarks whose name
+ * contains a match of the {@code filter} regular expression are run, each in
+ * {@code forks} JVMs running {@code iterations} warm-up and measurement
+ * iterations.
+ * 
+ * @author Kindred Team
+ */
+public abstract class Microbenchmark {
+
+    /**
+     * Argument given to a forked JVM, followed by the name of the benchmark
+     * it must run.
+     */
+    private static final String FORK_ARGUMENT = "--fork";
+
+    /**
+     * Prefix of the lines through which a forked JVM reports its results.
+     */
+    private static final String RESULT_PREFIX = "#iteration ";
+
+    /**
+     * Duration of each iteration, in nanoseconds.
+     */
+    private static final long ITERATION_NANOS = 200000000L;
+
+    /**
+     * Duration of each batch of operations, in nanoseconds, so that reading
+     * the clock costs nothing compared with the operations.
+     */
+    private static final long BATCH_NANOS = 1000000L;
+
+    /**
+     * Quantiles of Student's t distribution giving the 99.9% confidence
+     * interval (i.e. its 0.9995 quantiles), indexed by degrees of freedom
+     * minus one.
+     */
+    private static final double[] T_999 = { 636.619, 31.599, 12.924, 8.610,
+            6.869, 5.959, 5.408, 5.041, 4.781, 4.587, 4.437, 4.318, 4.221,
+            4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850, 3.819, 3.792,
+            3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646 };
+
+    /**
+     * Quantile of the normal distribution giving the 99.9% confidence
+     * interval, from which the t quantiles beyond {@code T_999} are derived.
+     */
+    private static final double Z_999 = 3.2905267;
+
+    /**
+     * Sink for benchmark results, so that the JIT can't discard the work.
+     */
+    private static long sink = 0;
+
+    /**
+     * Name of the benchmark, unique in its suite.
+     */
+    private final String name;
+
+    /**
+     * Constructs a Microbenchmark.
+     * 
+     * @param name
+     *            name of the benchmark, unique in its suite
+     */
+    protected Microbenchmark(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the benchmark.
+     * 
+     * @return the benchmark's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Prepares the state used by the operations. Called once in the forked
+     * JVM, before any operation is run and outside of any measurement.
+     * 
+     * @throws Exception
+     *             if the state can't be prepared
+     */
+    protected void setUp() throws Exception {
+        // Nothing to prepare by default
+    }
+
+    /**
+     * Runs the measured operation a number of times.
+     * 
+     * @param ops
+     *            number of operations to be run
+     * @return a value depending on the result of every operation, so that the
+     *         JIT can't discard them
+     */
+    protected abstract long run(int ops);
+
+    /**
+     * Runs a suite of benchmarks. Called with the arguments of the suite's
+     * main method, as given by the user or by the harness in a forked JVM.
+     * 
+     * @param suite
+     *            class whose main method runs the suite
+     * @param benchmarks
+     *            every benchmark of the suite
+     * @param args
+     *            optional filter, number of forks and number of iterations
+     * @throws Exception
+     *             if a benchmark can't be prepared or a JVM can't be forked
+     */
+    public static void runSuite(Class<?> suite, List<Microbenchmark> benchmarks,
+            String[] args) throws Exception {
+        if (args.length >= 3 && args[0].equals(FORK_ARGUMENT)) {
+            for (Microbenchmark benchmark : benchmarks)
+                if (benchmark.getName().equals(args[1]))
+                    benchmark.runForked(Integer.parseInt(args[2]));
+            return;
+        }
+
+        Pattern filter = Pattern.compile(args.length >= 1 ? args[0] : "");
+        int forks = args.length >= 2 ? Integer.parseInt(args[1]) : 2;
+        int iterations = args.length >= 3 ? Integer.parseInt(args[2]) : 5;
+        int width = 10;
+        for (Microbenchmark benchmark : benchmarks)
+            width = Math.max(width, benchmark.getName().length());
+
+        String header = "%-" + width + "s %5s %5s %12s %10s %10s%n";
+        String line = "%-" + width + "s %5s %5d %12.2f %10.2f %10.1f%n";
+        System.out.format(header, "benchmark", "mode", "cnt", "score", "error",
+                "B/op");
+        for (Microbenchmark benchmark : benchmarks) {
+            if (!filter.matcher(benchmark.getName()).find())
+                continue;
+            List<double[]> results = new ArrayList<double[]>();
+            for (int fork = 0; fork < forks; fork++)
+                results.addAll(fork(suite, benchmark.getName(), iterations));
+
+            int n = results.size();
+            double mean = 0;
+            double allocated = 0;
+            for (double[] result : results) {
+                mean += result[0] / n;
+                allocated += result[1] / n;
+            }
+            double variance = 0;
+            for (double[] result : results)
+                variance += (result[0] - mean) * (result[0] - mean)
+                        / Math.max(1, n - 1);
+            double error = t999(n - 1) * Math.sqrt(variance / Math.max(1, n));
+            System.out.format(line, benchmark.getName(), "avgt", n, mean,
+                    error, allocated);
+        }
+        System.out.println("score and error in ns/op");
+    }
+
+    /**
+     * Returns the 0.9995 quantile of Student's t distribution, which bounds
+     * the 99.9% confidence interval of a mean, as JMH does. Small samples use
+     * tabulated values; larger ones the Cornish-Fisher expansion around the
+     * normal quantile, accurate to 0.001 there.
+     * 
+     * @param df
+     *            degrees of freedom, i.e. the sample size minus one
+     * @return the quantile, or NaN if there are no degrees of freedom
+     */
+    private static double t999(int df) {
+        if (df < 1)
+            return Double.NaN;
+        if (df <= T_999.length)
+            return T_999[df - 1];
+        double z = Z_999;
+        double z2 = z * z;
+        double v = df;
+        return z + z * (z2 + 1) / (4 * v) + z
+                * ((5 * z2 + 16) * z2 + 3) / (96 * v * v) + z
+                * (((3 * z2 + 19) * z2 + 17) * z2 - 15) / (384 * v * v * v);
+    }
+
+    /**
+     * Runs a benchmark in a new JVM, sharing the classpath of this one.
+     * 
+     * @param suite
+     *            class whose main method runs the suite
+     * @param name
+     *            name of the benchmark
+     * @param iterations
+     *            number of warm-up and measurement iterations
+     * @return the results of each measurement iteration, as {nanoseconds per
+     *         operation, bytes allocated per operation}
+     * @throws IOException
+     *             if the JVM can't be forked or fails
+     * @throws InterruptedException
+     *             if interrupted while waiting for the JVM
+     */
+    private static List<double[]> fork(Class<?> suite, String name,
+            int iterations) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + "/bin/java";
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+                System.getProperty("java.class.path"), suite.getName(),
+                FORK_ARGUMENT, name, Integer.toString(iterations));
+        builder.redirectErrorStream(true);
+        Process process = builder.start();
+
+        List<double[]> results = new ArrayList<double[]>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                process.getInputStream()));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.startsWith(RESULT_PREFIX)) {
+                    // Anything else the benchmark printed is an error
+                    System.out.println(line);
+                    continue;
+                }
+                String[] fields = line.substring(RESULT_PREFIX.length())
+                        .split(" ");
+                results.add(new double[] { Double.parseDouble(fields[0]),
+                        Double.parseDouble(fields[1]) });
+            }
+        } finally {
+            in.close();
+        }
+        if (process.waitFor() != 0)
+            throw new IOException("Benchmark " + name + " failed");
+        return results;
+    }
+
+    /**
+     * Runs this benchmark in a forked JVM, reporting each measurement
+     * iteration on the standard output. Everything else the operations print
+     * on the standard output is discarded.
+     * 
+     * @param iterations
+     *            number of warm-up and measurement iterations
+     * @throws Exception
+     *             if the benchmark can't be prepared
+     */
+    private void runForked(int iterations) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                // Discarded
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                // Discarded
+            }
+        }));
+
+        setUp();
+        // Grows batches until one lasts long enough to be timed
+        int batch = 1;
+        while (true) {
+            long time = System.nanoTime();
+            sink += run(batch);
+            if (System.nanoTime() - time >= BATCH_NANOS || batch >= 1 << 30)
+                break;
+            batch *= 2;
+        }
+
+        for (int i = 0; i < 2 * iterations; i++) {
+            long allocated = allocatedBytes();
+            long ops = 0;
+            long start = System.nanoTime();
+            long time;
+            do {
+                sink += run(batch);
+                ops += batch;
+                time = System.nanoTime() - start;
+            } while (time < ITERATION_NANOS);
+            allocated = allocatedBytes() - allocated;
+            // The first iterations only warm the JIT up
+            if (i >= iterations)
+                out.println(RESULT_PREFIX + (double) time / ops + " "
+                        + (allocated < 0 ? 0 : (double) allocated / ops));
+        }
+        if (sink == 42)
+            out.println();
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread.
+     * 
+     * @return bytes allocated by the current thread, or a negative value if the
+     *         JVM can't measure them
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+}
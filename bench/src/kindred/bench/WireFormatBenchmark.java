@@ -0,0 +1,200 @@
+package kindred.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import kindred.common.ServerToClientEnum;
+import kindred.common.ServerToClientMessage;
+import kindred.common.WireFormat;
+
+/**
+ * Compares the WireFormats on a typical mix of messages: bytes on the wire per
+ * message, and time and heap allocated per encoded or decoded message. The
+ * TEXT format is measured both through the original String encoding and
+ * through frames.
+ * <p>
+ * Usage: {@code WireFormatBenchmark [iterations]}. Allocations are only
+ * reported on JVMs that can measure them per thread.
+ * 
+ * @author Kindred Team
+ */
+public final class WireFormatBenchmark {
+
+    /**
+     * Messages measured, resembling the traffic of a match: mostly game
+     * actions, plus a few lobby messages.
+     */
+    private static final ServerToClientMessage[] MESSAGES = {
+            new ServerToClientMessage(ServerToClientEnum.GAME_ACTION,
+                    "0|3|4|5|4"),
+            new ServerToClientMessage(ServerToClientEnum.GAME_ACTION,
+                    "0|12|7|13|9"),
+            new ServerToClientMessage(ServerToClientEnum.GAME_ACTION,
+                    "1|5|4|6|4|17"),
+            new ServerToClientMessage(ServerToClientEnum.GAME_ACTION,
+                    "1|13|9|13|10|0"),
+            new ServerToClientMessage(ServerToClientEnum.GAME_ACTION, "2|"),
+            new ServerToClientMessage(ServerToClientEnum.SUCC_JOIN,
+                    "someHost|2|simpleMap"),
+            new ServerToClientMessage(ServerToClientEnum.INFO_AVAILABLE_ROOMS,
+                    "alice>simpleMap|bob>testmap"),
+            new ServerToClientMessage(ServerToClientEnum.SUCC_NICKNAME_CHANGED,
+                    "player1") };
+
+    /**
+     * Sink for benchmark results, so that the JIT can't discard the work.
+     */
+    private static long sink = 0;
+
+    /**
+     * Not to be instantiated, since this class is purely static.
+     */
+    private WireFormatBenchmark() {
+        // Do not instantiate!
+    }
+
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args
+     *            optional number of iterations over the message mix
+     */
+    public static void main(String[] args) {
+        int iterations = args.length >= 1 ? Integer.parseInt(args[0]) : 2000000;
+
+        System.out.format("%-12s %12s %14s %14s %14s %14s%n", "format",
+                "bytes/msg", "encode ns", "encode B", "decode ns", "decode B");
+        for (int round = 0; round < 2; round++) {
+            // The first round only warms the JIT up
+            boolean print = round == 1;
+            runString(iterations, print);
+            for (WireFormat format : WireFormat.values())
+                runFrames(format, iterations, print);
+        }
+        if (sink == 42)
+            System.out.println();
+    }
+
+    /**
+     * Measures the original encoding, in which each message is converted to a
+     * String and then to bytes.
+     * 
+     * @param iterations
+     *            number of iterations over the message mix
+     * @param print
+     *            if {@code true}, then results are printed
+     */
+    private static void runString(int iterations, boolean print) {
+        int n = iterations * MESSAGES.length;
+        byte[][] lines = new byte[MESSAGES.length][];
+        long bytes = 0;
+        for (int i = 0; i < MESSAGES.length; i++) {
+            lines[i] = (MESSAGES[i].toEncodedString() + "\n").getBytes();
+            bytes += lines[i].length;
+        }
+
+        long allocated = allocatedBytes();
+        long time = System.nanoTime();
+        for (int it = 0; it < iterations; it++)
+            for (ServerToClientMessage msg : MESSAGES)
+                sink += (msg.toEncodedString() + "\n").getBytes().length;
+        long encodeTime = System.nanoTime() - time;
+        long encodeAllocated = allocatedBytes() - allocated;
+
+        allocated = allocatedBytes();
+        time = System.nanoTime();
+        for (int it = 0; it < iterations; it++)
+            for (byte[] line : lines)
+                sink += ServerToClientMessage.fromEncodedString(new String(line,
+                        0, line.length - 1)).argument.length();
+        long decodeTime = System.nanoTime() - time;
+        long decodeAllocated = allocatedBytes() - allocated;
+
+        if (print)
+            report("string", bytes, encodeTime, encodeAllocated, decodeTime,
+                    decodeAllocated, n);
+    }
+
+    /**
+     * Measures the frames of a WireFormat. Messages are encoded anew each
+     * time, bypassing their cached frames.
+     * 
+     * @param format
+     *            WireFormat to be measured
+     * @param iterations
+     *            number of iterations over the message mix
+     * @param print
+     *            if {@code true}, then results are printed
+     */
+    private static void runFrames(WireFormat format, int iterations,
+            boolean print) {
+        int n = iterations * MESSAGES.length;
+        byte[][] frames = new byte[MESSAGES.length][];
+        long bytes = 0;
+        for (int i = 0; i < MESSAGES.length; i++) {
+            frames[i] = MESSAGES[i].toFrame(format);
+            bytes += frames[i].length;
+        }
+
+        long allocated = allocatedBytes();
+        long time = System.nanoTime();
+        for (int it = 0; it < iterations; it++)
+            for (ServerToClientMessage msg : MESSAGES)
+                sink += format.encode(msg.msg.ordinal(), msg.argument).length;
+        long encodeTime = System.nanoTime() - time;
+        long encodeAllocated = allocatedBytes() - allocated;
+
+        allocated = allocatedBytes();
+        time = System.nanoTime();
+        for (int it = 0; it < iterations; it++)
+            for (byte[] frame : frames)
+                sink += ServerToClientMessage.fromFrame(format, frame, 0,
+                        frame.length).argument.length();
+        long decodeTime = System.nanoTime() - time;
+        long decodeAllocated = allocatedBytes() - allocated;
+
+        if (print)
+            report(format.name().toLowerCase(), bytes, encodeTime,
+                    encodeAllocated, decodeTime, decodeAllocated, n);
+    }
+
+    /**
+     * Prints a line with the per-message results of a measurement.
+     * 
+     * @param name
+     *            name of the measured encoding
+     * @param bytes
+     *            bytes on the wire for one pass over the message mix
+     * @param encodeTime
+     *            total encoding time, in nanoseconds
+     * @param encodeAllocated
+     *            total bytes allocated while encoding, or a negative value
+     * @param decodeTime
+     *            total decoding time, in nanoseconds
+     * @param decodeAllocated
+     *            total bytes allocated while decoding, or a negative value
+     * @param n
+     *            number of messages encoded and decoded
+     */
+    private static void report(String name, long bytes, long encodeTime,
+            long encodeAllocated, long decodeTime, long decodeAllocated, int n) {
+        System.out.format("%-12s %12.1f %14.1f %14.1f %14.1f %14.1f%n", name,
+                (double) bytes / MESSAGES.length, (double) encodeTime / n,
+                (double) encodeAllocated / n, (double) decodeTime / n,
+                (double) decodeAllocated / n);
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread.
+     * 
+     * @return bytes allocated by the current thread, or a negative value if the
+     *         JVM can't measure them
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+}
@@ -17,8 +17,8 @@ BOLD="\e[1m"
 function uso {
     echo -e $BOLD"USO"$NORMAL
 
-    ARGS="["$BOLD"-c"$NORMAL" [IP]] ["$BOLD"-s"$NORMAL"]"
-    ARGS=$ARGS" ["$BOLD"-C"$NORMAL" [IP]] ["$BOLD"-S"$NORMAL"]"
+    ARGS="["$BOLD"-c"$NORMAL" [IP [FORMATO]]] ["$BOLD"-s"$NORMAL" [MODO [PORTA]]]"
+    ARGS=$ARGS" ["$BOLD"-C"$NORMAL" [IP [FORMATO]]] ["$BOLD"-S"$NORMAL" [MODO [PORTA]]]"
     ARGS=$ARGS" ["$BOLD"-h"$NORMAL"]"
 
     echo -e "\t./`basename $0` $ARGS\n"
@@ -30,14 +30,18 @@ function uso {
     echo -e "\tSepare cada opção com um espaço.\n"
 
     echo -e "\t"$BOLD"-c"$NORMAL"\tExecuta o jogo Kindred como cliente (usando bin/)."
-    echo -e "\t\tOpcionalmente, pode receber o IP do servidor a qual se conecta.\n"
+    echo -e "\t\tOpcionalmente, pode receber o IP do servidor a qual se conecta e o"
+    echo -e "\t\tformato das mensagens (text ou binary).\n"
 
-    echo -e "\t"$BOLD"-s"$NORMAL"\tExecuta o jogo Kindred como servidor (usando bin/).\n"
+    echo -e "\t"$BOLD"-s"$NORMAL"\tExecuta o jogo Kindred como servidor (usando bin/)."
+    echo -e "\t\tOpcionalmente, pode receber o modo do servidor (thread, virtual ou"
+    echo -e "\t\tselector) e a porta em que ele escuta.\n"
     
     echo -e "\t"$BOLD"-C"$NORMAL"\tExecuta o jogo Kindred como cliente (usando release/)."
-    echo -e "\t\tOpcionalmente, pode receber o IP do servidor a qual se conecta.\n"
+    echo -e "\t\tAceita os mesmos argumentos opcionais de "$BOLD"-c"$NORMAL".\n"
 
-    echo -e "\t"$BOLD"-S"$NORMAL"\tExecuta o jogo Kindred como servidor (usando release/).\n"
+    echo -e "\t"$BOLD"-S"$NORMAL"\tExecuta o jogo Kindred como servidor (usando release/)."
+    echo -e "\t\tAceita os mesmos argumentos opcionais de "$BOLD"-s"$NORMAL".\n"
 
     echo -e "\t"$BOLD"-h"$NORMAL"\tMostra como usar o script, além de abandoná-lo."
 
@@ -54,13 +58,13 @@ case $1 in
     -h)
         uso;;
     -s)
-        java -cp bin/ kindred.server.Server;;
+        java -cp bin/ kindred.server.Server $2 $3;;
     -c)
-        java -cp bin/ kindred.client.network.Client $2;;
+        java -cp bin/ kindred.client.network.Client $2 $3;;
     -S)
-        java -jar release/jar/KindredServer.jar;;
+        java -jar release/jar/KindredServer.jar $2 $3;;
     -C)
-        java -jar release/jar/KindredClient.jar $2;;
+        java -jar release/jar/KindredClient.jar $2 $3;;
     *)
         echo "Argumento '$arg' não reconhecido!"
         uso;;
@@ -1,18 +1,21 @@
 package kindred.client.network;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.Socket;
-import java.util.Timer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
-import kindred.client.model.Game;
 import kindred.client.view.AbstractView;
 import kindred.client.view.cli.CLI;
 import kindred.common.ClientToServerEnum;
 import kindred.common.ClientToServerMessage;
+import kindred.common.FrameReader;
+import kindred.common.GameActionEnum;
 import kindred.common.ServerToClientMessage;
+import kindred.common.WireFormat;
+import kindred.common.model.Game;
 
 /**
  * Implements the main loop of a TCP socket Client. Connects to the Server and
@@ -28,9 +31,23 @@ public class Client implements Runnable {
     public static final int DEFAULT_PORT = 60001;
 
     /**
-     * Interval between each sent message in milliseconds.
+     * Default interval, in milliseconds, after which an idle Client sends an
+     * EMPTY message to the Server. May be overridden by the system property
+     * {@code kindred.keepalive}.
      */
-    private static final int SEND_INTERVAL = 200;
+    public static final long DEFAULT_KEEPALIVE_INTERVAL = 30000;
+
+    /**
+     * Time, in milliseconds, to wait for the Server to accept the BINARY
+     * format.
+     */
+    private static final int HANDSHAKE_TIMEOUT = 5000;
+
+    /**
+     * Time, in milliseconds, to wait for the Server refereeing a game to send
+     * the result of an attack.
+     */
+    private static final long ATTACK_TIMEOUT = 5000;
 
     /**
      * Client's TCP socket, used for connecting to the Server.
@@ -45,12 +62,12 @@ public class Client implements Runnable {
     /**
      * Socket output, used for writing to the Server.
      */
-    private PrintWriter socketOut;
+    private OutputStream socketOut;
 
     /**
      * Socket input, used for reading from the Server.
      */
-    private BufferedReader socketIn;
+    private FrameReader socketIn;
 
     /**
      * Client's interaction with the program (CLI or GUI).
@@ -78,6 +95,18 @@ public class Client implements Runnable {
      */
     private int team;
 
+    /**
+     * If {@code true}, then the game being played is refereed by the Server,
+     * which rolls the damage of every attack.
+     */
+    private volatile boolean refereed;
+
+    /**
+     * Damage of the user's attacks, as rolled by the Server refereeing the
+     * game, or -1 for attacks it rejected.
+     */
+    private final LinkedBlockingQueue<Integer> attackResults = new LinkedBlockingQueue<Integer>();
+
     /**
      * Special queue-related class that controls messages sent to the Server.
      */
@@ -104,6 +133,23 @@ public class Client implements Runnable {
      *            AbstractView to be used by the Client (a CLI or GUI)
      */
     public Client(String serverIP, AbstractView view) {
+        this(serverIP, view, WireFormat.TEXT);
+    }
+
+    /**
+     * Constructs a Client that exchanges messages with the Server in the
+     * specified WireFormat.
+     * 
+     * @param serverIP
+     *            the Server's IP address; if it is {@code null}, the user is
+     *            prompted to give a Server IP
+     * @param view
+     *            AbstractView to be used by the Client (a CLI or GUI)
+     * @param format
+     *            WireFormat to be used; BINARY requires a Server that
+     *            supports it
+     */
+    public Client(String serverIP, AbstractView view, WireFormat format) {
         connected = false;
         isHostingRoom = false;
         this.serverIP = serverIP;
@@ -125,18 +171,39 @@ public class Client implements Runnable {
 
         // Define socket I/O
         try {
-            socketOut = new PrintWriter(socket.getOutputStream(), true);
-            socketIn = new BufferedReader(
-                    new InputStreamReader(socket.getInputStream()));
+            socketOut = new BufferedOutputStream(socket.getOutputStream());
+            socketIn = new FrameReader(socket.getInputStream(), WireFormat.TEXT);
+            if (format == WireFormat.BINARY)
+                negotiateBinary();
         } catch (IOException e) {
             view.connectionResult(false, serverIP);
             throw new RuntimeException();
         }
         connected = true;
-        messageSender = new ClientMessageSender(socketOut);
+        messageSender = new ClientMessageSender(socketOut, format, Long.getLong(
+                "kindred.keepalive", DEFAULT_KEEPALIVE_INTERVAL));
+
+        Thread thread = new Thread(messageSender, "ClientMessageSender");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-        Timer timer = new Timer();
-        timer.schedule(messageSender, SEND_INTERVAL, SEND_INTERVAL);
+    /**
+     * Asks the Server to exchange messages in the BINARY format, waiting for
+     * its acknowledgement.
+     * 
+     * @throws IOException
+     *             if the Server doesn't accept the BINARY format
+     */
+    private void negotiateBinary() throws IOException {
+        socketOut.write(WireFormat.BINARY_PREFACE);
+        socketOut.flush();
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+        if (socketIn.peek() != WireFormat.BINARY_PREFACE)
+            throw new IOException("BINARY format not supported by the Server");
+        socketIn.skip();
+        socketIn.setFormat(WireFormat.BINARY);
+        socket.setSoTimeout(0);
     }
 
     /**
@@ -148,8 +215,10 @@ public class Client implements Runnable {
             if (game == null) {
                 view.promptForMenuAction(this);
                 try {
+                    // A game may have started while the view was prompting
                     synchronized (view) {
-                        view.wait();
+                        if (game == null)
+                            view.wait();
                     }
                 } catch (InterruptedException e) {
                 }
@@ -159,8 +228,11 @@ public class Client implements Runnable {
                     view.promptForGameAction(this);
                 else {
                     try {
+                        // The turn may have ended since it was checked
                         synchronized (view) {
-                            view.wait();
+                            Game current = game;
+                            if (current != null && current.getTurn() != team)
+                                view.wait();
                         }
                     } catch (InterruptedException e) {
                     }
@@ -173,12 +245,10 @@ public class Client implements Runnable {
      * Run by a thread. Receives and manages data from the Server.
      */
     public void run() {
-        String response;
+        ServerToClientMessage msg;
 
         try {
-            while ((response = socketIn.readLine()) != null) {
-                ServerToClientMessage msg = ServerToClientMessage
-                        .fromEncodedString(response);
+            while ((msg = socketIn.readServerMessage()) != null) {
                 // Analyse message
                 String arg = msg.argument;
                 switch (msg.msg) {
@@ -193,6 +263,7 @@ public class Client implements Runnable {
                     opponent = parts[0];
                     team = Integer.parseInt(parts[1]);
                     String mapFilename = parts[2];
+                    refereed = parts.length > 3 && parts[3].equals("1");
                     game = new Game(nickname, opponent,
                             "/kindred/common/data/map/" + mapFilename + ".txt",
                             team);
@@ -209,12 +280,20 @@ public class Client implements Runnable {
                     isHostingRoom = true;
                     break;
                 case SUCC_UNHOST:
+                case INFO_LEAVE_HOSTED_ROOM:
                     isHostingRoom = false;
                     break;
+                case ERR_INVALID_GAME_ACTION:
+                    if (arg.startsWith(GameActionEnum.ATTACK.ordinal() + "|"))
+                        attackResults.add(-1);
+                    break;
                 // Nothing to do here in the following cases
                 case INFO_AVAILABLE_MAPS:
                 case INFO_AVAILABLE_ROOMS:
-                case INFO_LEAVE_HOSTED_ROOM:
+                case INFO_ROOMS_PAGE:
+                case INFO_ROOMS_DELTA:
+                case ROOM_ADDED:
+                case ROOM_REMOVED:
                 case ERR_CANNOT_ENTER_OWN_ROOM:
                 case ERR_CANNOT_UNHOST_WITHOUT_HOST:
                 case ERR_INVALID_COMMAND_OR_ARGUMENTS:
@@ -292,6 +371,52 @@ public class Client implements Runnable {
         send(new ClientToServerMessage(ClientToServerEnum.ROOMS));
     }
 
+    /**
+     * Sends a ROOMS_PAGE message to the Server, asking for a page of the
+     * available rooms.
+     * 
+     * @param mapName
+     *            map name of the rooms to be listed, or an empty String for
+     *            rooms of every map
+     * @param after
+     *            nickname of the last host of the previous page, or an empty
+     *            String for the first page
+     * @param limit
+     *            maximum number of rooms in the page
+     */
+    public void roomsPage(String mapName, String after, int limit) {
+        send(new ClientToServerMessage(ClientToServerEnum.ROOMS_PAGE, mapName
+                + "|" + after + "|" + limit));
+    }
+
+    /**
+     * Sends a ROOMS_SINCE message to the Server, asking for the changes made to
+     * the available rooms since a known version of the listing.
+     * 
+     * @param version
+     *            version of the listing already known, or a negative value to
+     *            receive every room
+     */
+    public void roomsSince(long version) {
+        send(new ClientToServerMessage(ClientToServerEnum.ROOMS_SINCE,
+                version < 0 ? "" : Long.toString(version)));
+    }
+
+    /**
+     * Sends a SUBSCRIBE_ROOMS message to the Server, so that rooms added or
+     * removed are sent without being asked for.
+     */
+    public void subscribeRooms() {
+        send(new ClientToServerMessage(ClientToServerEnum.SUBSCRIBE_ROOMS));
+    }
+
+    /**
+     * Sends an UNSUBSCRIBE_ROOMS message to the Server.
+     */
+    public void unsubscribeRooms() {
+        send(new ClientToServerMessage(ClientToServerEnum.UNSUBSCRIBE_ROOMS));
+    }
+
     /**
      * Sends a HOST message with the user's desired map name to play on to the
      * Server.
@@ -367,6 +492,9 @@ public class Client implements Runnable {
      * with the Unit on Tile {@code positions[0]}, {@code positions[1]}). If
      * successful, sends a game ATTACK command to the Server and returns
      * {@code true}. Otherwise, only returns {@code false}.
+     * <p>
+     * If the game is refereed by the Server, the damage is rolled by the
+     * Server, and this method waits for it to be received.
      * 
      * @param positions
      *            array containing the first two values as the (x, y) position
@@ -377,26 +505,31 @@ public class Client implements Runnable {
      *         otherwise
      */
     public boolean attack(int[] positions) {
+        if (refereed)
+            return refereedAttack(positions);
+
+        // Attack missed if damage = 0, and hit if damage > 0
         int damage = game.attack(positions[0], positions[1], positions[2],
                 positions[3]);
 
         if (damage < 0)
             return false;
 
-        // Attack missed if damage = 0, and hit if damage > 0
-        game.causeDamage(positions[2], positions[3], damage);
-
         GameActionEnum cmd = GameActionEnum.ATTACK;
         String arg = "";
         for (int i = 0; i < positions.length; i++)
             arg += "|" + positions[i];
         arg += "|" + damage;
+        // The Server stops relaying actions once the game is won
+        boolean over = game.isOver();
+        if (over)
+            arg += "|1";
         cmd.setArgument(arg.substring(1));
 
         ClientToServerMessage msg = new ClientToServerMessage(
                 ClientToServerEnum.GAME_ACTION, cmd.toEncodedString());
 
-        if (game.isOver())
+        if (over)
             game = null;
 
         send(msg);
@@ -404,6 +537,38 @@ public class Client implements Runnable {
         return true;
     }
 
+    /**
+     * Sends a game ATTACK command to the Server refereeing the game, if the
+     * attack is possible, and waits for the Server to send its result.
+     * 
+     * @param positions
+     *            array containing the (x, y) positions of the attacking Unit
+     *            and of the defending Unit
+     * @return {@code true}, if the Server accepted the attack, or {@code false}
+     *         otherwise
+     */
+    private boolean refereedAttack(int[] positions) {
+        if (!game.canAttack(positions[0], positions[1], positions[2],
+                positions[3]))
+            return false;
+
+        GameActionEnum cmd = GameActionEnum.ATTACK;
+        cmd.setArgument(positions[0] + "|" + positions[1] + "|" + positions[2]
+                + "|" + positions[3]);
+        attackResults.clear();
+        send(new ClientToServerMessage(ClientToServerEnum.GAME_ACTION, cmd
+                .toEncodedString()));
+
+        try {
+            Integer damage = attackResults.poll(ATTACK_TIMEOUT,
+                    TimeUnit.MILLISECONDS);
+            return damage != null && damage >= 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
     /**
      * Sends a game END command to the Server, indicating that the user has
      * ended their current turn.
@@ -437,34 +602,47 @@ public class Client implements Runnable {
      *            GameActionEnum message sent by the opponent
      */
     private void receiveGameAction(GameActionEnum message) {
+        // Actions arriving after the game ended (e.g. the surrender of an
+        // opponent disconnecting afterwards) are ignored
+        Game current = game;
+        if (current == null)
+            return;
         String[] partsString = message.getArgument().split("\\|");
         Integer[] parts = new Integer[partsString.length];
         if (message == GameActionEnum.ATTACK || message == GameActionEnum.MOVE)
             for (int i = 0; i < parts.length; i++)
                 parts[i] = Integer.parseInt(partsString[i]);
-        switch (message) {
-        // MOVE: xi yi xf yf
-        case MOVE:
-            game.forceMovement(parts[0], parts[1], parts[2], parts[3]);
-            break;
-
-        // ATTACK: x y damage
-        case ATTACK:
-            game.causeDamage(parts[2], parts[3], parts[4]);
-            if (game.isOver())
-                game = null;
-            break;
+        // Copies of the Game are taken under the same lock
+        synchronized (current) {
+            switch (message) {
+            // MOVE: xi yi xf yf
+            case MOVE:
+                current.forceMovement(parts[0], parts[1], parts[2], parts[3]);
+                break;
+
+            // ATTACK: xi yi xf yf damage
+            case ATTACK:
+                current.applyAttack(parts[0], parts[1], parts[2], parts[3],
+                        parts[4]);
+                // The Server refereeing the game sends the user's own
+                // attacks back
+                if (current.getTurn() == team)
+                    attackResults.add(parts[4]);
+                if (current.isOver())
+                    game = null;
+                break;
 
-        // END_TURN
-        case END_TURN:
-            game.endTurn();
-            break;
+            // END_TURN
+            case END_TURN:
+                current.endTurn();
+                break;
 
-        // SURRENDER
-        case SURRENDER:
-            game.surrender();
-            game = null;
-            break;
+            // SURRENDER
+            case SURRENDER:
+                current.surrender();
+                game = null;
+                break;
+            }
         }
 
         if (message == GameActionEnum.END_TURN
@@ -479,6 +657,7 @@ public class Client implements Runnable {
      * Forces disconnection from the server.
      */
     public void disconnect() {
+        messageSender.close();
         try {
             socket.close();
         } catch (IOException e) {
@@ -533,6 +712,22 @@ public class Client implements Runnable {
         return game != null;
     }
 
+    /**
+     * If this client is participating in a game, returns a copy of it, taken
+     * while no action received from the Server is being applied. Otherwise,
+     * returns {@code null}.
+     * 
+     * @return a copy of the current Game, or {@code null} if there is none
+     */
+    public Game copyGame() {
+        Game current = game;
+        if (current == null)
+            return null;
+        synchronized (current) {
+            return new Game(current);
+        }
+    }
+
     /**
      * If this client is participating in a game, returns the identifier of the
      * current player's turn. Otherwise, returns -1.
@@ -546,15 +741,19 @@ public class Client implements Runnable {
 
     /**
      * Starts a Client. Connects to the Server with IP equal to {@code args[0]},
-     * if given; otherwise, later prompts the Client for the Server's IP.
+     * if given; otherwise, later prompts the Client for the Server's IP. The
+     * WireFormat may be given by name in {@code args[1]}.
      * 
      * @param args
-     *            if {@code args[0]} exists, then it is used as the Server's IP
+     *            if {@code args[0]} exists, then it is used as the Server's IP;
+     *            if {@code args[1]} exists, then it is used as the WireFormat
      */
     public static void main(String[] args) {
         String IP = args.length < 1 ? null : args[0];
+        WireFormat format = args.length < 2 ? WireFormat.TEXT : WireFormat
+                .valueOf(args[1].toUpperCase());
         AbstractView view = new CLI();
-        Client client = new Client(IP, view);
+        Client client = new Client(IP, view, format);
         client.start();
         client.mainLoop();
     }
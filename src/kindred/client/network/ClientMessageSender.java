@@ -1,41 +1,70 @@
 package kindred.client.network;
 
-import java.io.PrintWriter;
-import java.util.NoSuchElementException;
-import java.util.TimerTask;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import kindred.common.ClientToServerEnum;
 import kindred.common.ClientToServerMessage;
+import kindred.common.WireFormat;
 
 /**
  * Works parallel to the client. Contains a queue for controlling messages to be
  * sent to the server.
+ * <p>
+ * Messages are written as soon as they are enqueued; all messages waiting in
+ * the queue are written together, with a single flush. If nothing is sent for
+ * a whole keepalive interval, an EMPTY message is sent instead.
  * 
  * @author Kindred Team
  */
-public class ClientMessageSender extends TimerTask {
+public class ClientMessageSender implements Runnable {
 
     /**
      * Socket output, used for writing to the Server. Same as the one used by
      * the Client.
      */
-    private PrintWriter socketOut;
+    private OutputStream socketOut;
+
+    /**
+     * Format in which messages are framed on the socket.
+     */
+    private WireFormat format;
+
+    /**
+     * Interval, in milliseconds, after which an idle sender sends an EMPTY
+     * message.
+     */
+    private final long keepAliveInterval;
 
     /**
      * Queue containing messages to be sent to the Server.
      */
-    private ConcurrentLinkedQueue<ClientToServerMessage> queue;
+    private LinkedBlockingQueue<ClientToServerMessage> queue;
+
+    /**
+     * If {@code true}, then the sender stops once the queue is empty.
+     */
+    private volatile boolean closed = false;
 
     /**
      * Constructs a ClientMessageSender.
      * 
      * @param socketOut
      *            output, used for writing to the Server
+     * @param format
+     *            format in which messages are framed on the socket
+     * @param keepAliveInterval
+     *            interval, in milliseconds, after which an idle sender sends
+     *            an EMPTY message
      */
-    public ClientMessageSender(PrintWriter socketOut) {
+    public ClientMessageSender(OutputStream socketOut, WireFormat format,
+            long keepAliveInterval) {
         this.socketOut = socketOut;
-        queue = new ConcurrentLinkedQueue<ClientToServerMessage>();
+        this.format = format;
+        this.keepAliveInterval = keepAliveInterval;
+        queue = new LinkedBlockingQueue<ClientToServerMessage>();
     }
 
     /**
@@ -48,17 +77,39 @@ public class ClientMessageSender extends TimerTask {
         queue.add(msg);
     }
 
+    /**
+     * Stops the sender after it has written the messages already enqueued.
+     */
+    public void close() {
+        closed = true;
+        // Wakes the sender up if it's waiting for messages
+        queue.add(new ClientToServerMessage(ClientToServerEnum.EMPTY));
+    }
+
+    /**
+     * Run by a thread. Waits for enqueued messages and writes them to the
+     * socket until the sender is closed or the socket can't be written.
+     */
     @Override
     public void run() {
-        ClientToServerMessage msg;
         try {
-            msg = queue.remove();
-            socketOut.println(msg.toEncodedString());
-        } catch (NoSuchElementException e) {
-            socketOut.println(new ClientToServerMessage(ClientToServerEnum.EMPTY)
-                    .toEncodedString());
-        }
+            while (!closed) {
+                ClientToServerMessage msg = queue.poll(keepAliveInterval,
+                        TimeUnit.MILLISECONDS);
+                if (msg == null)
+                    msg = new ClientToServerMessage(ClientToServerEnum.EMPTY);
 
+                // Everything enqueued meanwhile goes in the same write
+                do {
+                    socketOut.write(msg.toFrame(format));
+                } while ((msg = queue.poll()) != null);
+                socketOut.flush();
+            }
+        } catch (InterruptedException e) {
+            // Stop sending
+        } catch (IOException e) {
+            // The receiving thread will notice the lost connection
+        }
     }
 
 }
@@ -5,10 +5,10 @@ import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 
-import kindred.client.model.Game;
-import kindred.client.model.Map;
 import kindred.client.network.Client;
 import kindred.common.ServerToClientMessage;
+import kindred.common.model.Game;
+import kindred.common.model.Map;
 
 /**
  * Abstract class for a user interaction.
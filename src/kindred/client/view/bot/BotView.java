@@ -0,0 +1,255 @@
+package kindred.client.view.bot;
+
+import java.util.Arrays;
+
+import kindred.client.network.Client;
+import kindred.client.view.AbstractView;
+import kindred.common.GameActionEnum;
+import kindred.common.ServerToClientMessage;
+import kindred.common.ai.MonteCarloSearch;
+import kindred.common.model.Game;
+import kindred.common.model.Map;
+
+/**
+ * View that plays by itself: it hosts a room on a map, waits for someone to
+ * join and plays the game with a {@link MonteCarloSearch}, within a time
+ * budget for each turn. Once a game ends, it hosts a room again, so that
+ * players always find an opponent to practise with.
+ * 
+ * @author Kindred Team
+ */
+public class BotView extends AbstractView {
+
+    /**
+     * Time, in milliseconds, between checks for the Server's answers.
+     */
+    private static final long POLL_INTERVAL = 100;
+
+    /**
+     * Time, in milliseconds, to wait for the Server to accept a nickname or
+     * a room.
+     */
+    private static final long ANSWER_TIMEOUT = 5000;
+
+    /**
+     * Every GameActionEnum, indexed by ordinal.
+     */
+    private static final GameActionEnum[] ACTIONS = GameActionEnum.values();
+
+    /**
+     * Nickname used by the bot.
+     */
+    private final String nickname;
+
+    /**
+     * Name of the map of the rooms hosted by the bot.
+     */
+    private final String mapName;
+
+    /**
+     * Time, in milliseconds, to play each turn.
+     */
+    private final long turnTime;
+
+    /**
+     * Chooses the bot's actions.
+     */
+    private final MonteCarloSearch search;
+
+    /**
+     * If {@code true}, then the result of the current game was logged.
+     */
+    private volatile boolean reported = false;
+
+    /**
+     * Constructs a BotView.
+     * 
+     * @param nickname
+     *            nickname used by the bot
+     * @param mapName
+     *            name of the map of the rooms hosted by the bot
+     * @param turnTime
+     *            time, in milliseconds, to play each turn
+     * @param threads
+     *            number of threads searching for the bot's actions
+     */
+    public BotView(String nickname, String mapName, long turnTime, int threads) {
+        super();
+        this.nickname = nickname;
+        this.mapName = mapName;
+        this.turnTime = turnTime;
+        this.search = new MonteCarloSearch(threads, System.nanoTime());
+    }
+
+    @Override
+    protected void readLanguageData() {
+        // The bot only logs in English
+    }
+
+    @Override
+    public String askForString(String message) {
+        return "";
+    }
+
+    @Override
+    public String promptForIP() {
+        return "";
+    }
+
+    @Override
+    public void connectionResult(boolean success, String serverIP) {
+        System.out.println((success ? "Connected to " : "Couldn't connect to ")
+                + serverIP);
+    }
+
+    @Override
+    public void connectionLost() {
+        System.out.println("Connection lost");
+    }
+
+    /**
+     * Sets the bot's nickname, if needed, and hosts a room, waiting until
+     * someone joins it.
+     * 
+     * @param client
+     *            the bot's Client
+     * @return {@code true}, if a game started, or {@code false} if the Server
+     *         refused the nickname or the room, and the bot quit
+     */
+    @Override
+    public synchronized boolean promptForMenuAction(Client client) {
+        try {
+            if (!nickname.equals(client.getNickname())) {
+                client.nick(nickname);
+                long end = System.currentTimeMillis() + ANSWER_TIMEOUT;
+                while (!nickname.equals(client.getNickname())
+                        && System.currentTimeMillis() < end)
+                    wait(POLL_INTERVAL);
+            }
+            if (nickname.equals(client.getNickname()) && !client.isPlaying()
+                    && !client.isHostingRoom()) {
+                client.host(mapName);
+                long end = System.currentTimeMillis() + ANSWER_TIMEOUT;
+                while (!client.isHostingRoom() && !client.isPlaying()
+                        && System.currentTimeMillis() < end)
+                    wait(POLL_INTERVAL);
+            }
+            if (!client.isHostingRoom() && !client.isPlaying()) {
+                System.err.println("Couldn't host a room on '" + mapName
+                        + "' as '" + nickname + "'");
+                client.quit();
+                return false;
+            }
+
+            while (client.isConnected() && !client.isPlaying())
+                wait(POLL_INTERVAL);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * Plays the bot's turn, searching for each action, and ends it. Each
+     * search runs on a copy of the Game, since the Client's receiving thread
+     * may change the Game meanwhile (e.g. if the opponent surrenders).
+     * 
+     * @param client
+     *            the bot's Client
+     * @return {@code true}
+     */
+    @Override
+    public boolean promptForGameAction(Client client) {
+        long deadline = System.nanoTime() + turnTime * 1000000;
+        while (true) {
+            Game current = client.copyGame();
+            if (current == null || current.getTurn() != current.getTeam())
+                break;
+            int[] action = search.chooseAction(current, deadline);
+            int[] positions = Arrays.copyOfRange(action, 1, 5);
+            GameActionEnum kind = ACTIONS[action[0]];
+            if (kind == GameActionEnum.MOVE && client.move(positions))
+                continue;
+            if (kind == GameActionEnum.ATTACK && client.attack(positions))
+                continue;
+            break;
+        }
+        if (client.isPlaying())
+            client.endTurn();
+        reportIfOver();
+        return true;
+    }
+
+    @Override
+    public void remoteEvent(ServerToClientMessage msg) {
+        switch (msg.msg) {
+        case INFO_SOMEONE_ENTERED_ROOM:
+            System.out.println("Playing against "
+                    + msg.argument.split("\\|")[0]);
+            break;
+        case ERR_INVALID_GAME_ACTION:
+        case ERR_MAP_NOT_FOUND:
+        case ERR_NICKNAME_IS_IN_USE:
+        case ERR_NICKNAME_IS_INVALID:
+            System.err.println(msg.msg + ": " + msg.argument);
+            break;
+        case GAME_ACTION:
+            reportIfOver();
+            break;
+        default:
+            break;
+        }
+    }
+
+    @Override
+    public void setGame(Game game) {
+        super.setGame(game);
+        reported = false;
+    }
+
+    /**
+     * Logs the result of the game, once it's over.
+     */
+    private void reportIfOver() {
+        if (game == null || !game.isOver() || reported)
+            return;
+        reported = true;
+        Map map = game.getMap();
+        int own = game.getTeam() == 1 ? map.getNumUnitsA() : map
+                .getNumUnitsB();
+        System.out.println("Game over, " + (own > 0 ? "won" : "lost"));
+    }
+
+    @Override
+    public void displayMap() {
+        // Nobody is watching
+    }
+
+    @Override
+    public void close() {
+        search.close();
+    }
+
+    /**
+     * Starts a bot. Arguments, all optional: the Server's IP, the name of the
+     * map of its rooms, its nickname, the time in milliseconds to play each
+     * turn and the number of threads searching.
+     * 
+     * @param args
+     *            optional IP, map name, nickname, turn time and threads
+     */
+    public static void main(String[] args) {
+        String ip = args.length >= 1 ? args[0] : "localhost";
+        String map = args.length >= 2 ? args[1] : "simpleMap";
+        String nick = args.length >= 3 ? args[2] : "Bot";
+        long time = args.length >= 4 ? Long.parseLong(args[3]) : 2000;
+        int threads = args.length >= 5 ? Integer.parseInt(args[4]) : Runtime
+                .getRuntime().availableProcessors();
+
+        BotView view = new BotView(nick, map, time, threads);
+        Client client = new Client(ip, view);
+        client.start();
+        client.mainLoop();
+        view.close();
+    }
+}
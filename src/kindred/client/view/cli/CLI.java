@@ -8,13 +8,13 @@ import java.util.HashMap;
 import java.util.ResourceBundle;
 import java.util.Scanner;
 
-import kindred.client.model.Game;
-import kindred.client.model.Map;
-import kindred.client.model.Unit;
 import kindred.client.network.Client;
-import kindred.client.network.GameActionEnum;
 import kindred.client.view.AbstractView;
+import kindred.common.GameActionEnum;
 import kindred.common.ServerToClientMessage;
+import kindred.common.model.Game;
+import kindred.common.model.Map;
+import kindred.common.model.Unit;
 
 /**
  * Provides a command-line user interface (CLI) to interact with the user
@@ -64,6 +64,16 @@ public class CLI extends AbstractView {
      */
     private static final String GAME_HELP_FILE_PATH = "/kindred/client/view/cli/gameHelp.txt";
 
+    /**
+     * Number of rooms shown at a time by the ROOMS command.
+     */
+    private static final int ROOMS_PAGE_SIZE = 20;
+
+    /**
+     * Argument of the ROOMS command that stands for rooms of every map.
+     */
+    private static final String ANY_MAP = "*";
+
     /**
      * Creates a command-line user interface for the game.
      */
@@ -167,14 +177,35 @@ public class CLI extends AbstractView {
                 break;
 
             case "ROOMS":
+                if (separate.length > 3) {
+                    System.out.println(menuMsgBundle
+                            .getString("invalid_argument_for_command"));
+                    continue;
+                }
+                String roomsMap = separate.length == 1
+                        || separate[1].equals(ANY_MAP) ? "" : separate[1];
+                String after = separate.length == 3 ? separate[2] : "";
+                client.roomsPage(roomsMap, after, ROOMS_PAGE_SIZE);
+                break;
+
+            case "SUBSCRIBE":
                 if (separate.length != 1) {
                     System.out.println(menuMsgBundle
                             .getString("invalid_argument_for_command"));
                     continue;
                 }
-                client.rooms();
+                client.subscribeRooms();
                 break;
 
+            case "UNSUBSCRIBE":
+                if (separate.length != 1) {
+                    System.out.println(menuMsgBundle
+                            .getString("invalid_argument_for_command"));
+                    continue;
+                }
+                client.unsubscribeRooms();
+                continue;
+
             case "HELP":
                 if (separate.length != 1) {
                     System.out.println(menuMsgBundle
@@ -409,22 +440,56 @@ public class CLI extends AbstractView {
             }
             break;
         case INFO_AVAILABLE_ROOMS:
-            String[] rooms = argument.split("\\|");
-            message = "";
+            arg = new Object[] {};
             if (argument.isEmpty()) {
                 key = "no_room";
-                arg = new Object[] {};
             } else {
                 key = "available_rooms";
-                for (String r : rooms) {
-                    String[] roomParts = r.split(">");
-                    message += String.format("\n- %-10s -> %s", roomParts[0],
-                            roomParts[1]);
-                }
-                arg = new Object[] {};
-                complement = message;
+                complement = roomList(argument.split("\\|"), 0);
+            }
+            break;
+        case INFO_ROOMS_PAGE:
+            // Version, requested map and next page come before the rooms
+            String[] page = argument.split("\\|");
+            arg = new Object[] {};
+            if (page.length <= 3) {
+                key = "no_room";
+            } else {
+                key = "available_rooms";
+                complement = roomList(page, 3);
+                if (!page[2].isEmpty())
+                    complement += "\n"
+                            + format(menuMsgBundle, "more_rooms", new Object[] {
+                                    page[1].isEmpty() ? ANY_MAP : page[1],
+                                    page[2] });
             }
             break;
+        case ERR_INVALID_GAME_ACTION:
+            System.out.println(format(gameMsgBundle, "action_rejected",
+                    new Object[] {}));
+            return;
+        case INFO_ROOMS_DELTA:
+            // Only every room, sent when subscribing, is ever asked for
+            String[] delta = argument.split("\\|");
+            arg = new Object[] {};
+            if (delta.length <= 2) {
+                key = "no_room";
+            } else {
+                key = "available_rooms";
+                for (int i = 2; i < delta.length; i++)
+                    delta[i] = delta[i].substring(1); // remove initial '+'
+                complement = roomList(delta, 2);
+            }
+            break;
+        case ROOM_ADDED:
+            String[] added = argument.split("\\|");
+            key = "room_added";
+            arg = new Object[] { added[1], added[2] };
+            break;
+        case ROOM_REMOVED:
+            key = "room_removed";
+            arg = new Object[] { argument.split("\\|")[1] };
+            break;
         case INFO_NICKNAME:
             key = "current_nickname";
             arg = new Object[] { argument };
@@ -463,7 +528,9 @@ public class CLI extends AbstractView {
             Object[] o = new Object[] {}; // objects
             switch (action) {
             case ATTACK:
-                k = "opponent_attacked";
+                // The Server refereeing the game sends the user's own attacks
+                k = game.getTurn() == game.getTeam() ? "you_attacked"
+                        : "opponent_attacked";
                 String[] coord = values.split("\\|");
                 o = new Object[] { Integer.parseInt(coord[0]) + 1,
                         Integer.parseInt(coord[1]) + 1,
@@ -603,6 +670,25 @@ public class CLI extends AbstractView {
         return true;
     }
 
+    /**
+     * Returns the lines listing some rooms to the user.
+     * 
+     * @param rooms
+     *            array whose items are rooms, as "host&gt;map"
+     * @param start
+     *            index of the first room in the array
+     * @return the String to be printed
+     */
+    private static String roomList(String[] rooms, int start) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = start; i < rooms.length; i++) {
+            String[] roomParts = rooms[i].split(">");
+            sb.append(String.format("\n- %-10s -> %s", roomParts[0],
+                    roomParts[1]));
+        }
+        return sb.toString();
+    }
+
     /**
      * Returns a message telling the user that the game has started.
      * 
@@ -29,7 +29,7 @@ public final class CLITerrainParser {
      * of its background colour separated by whitespaces.
      * <p>
      * The name of the Terrain must be exactly the same as the one in the file
-     * parsed by {@link kindred.client.parsing.TerrainFileParser}.
+     * parsed by {@link kindred.common.parsing.TerrainFileParser}.
      * <p>
      * The name of the colour must be exactly one of the ones defined in the
      * {@link Colour} enum.
@@ -28,7 +28,7 @@ public final class CLIUnitParser {
      * representing it separated by whitespaces.
      * <p>
      * The name of the Unit must be exactly the same as the one in the file
-     * parsed by {@link kindred.client.parsing.UnitFileParser}.
+     * parsed by {@link kindred.common.parsing.UnitFileParser}.
      * 
      * @param filename
      *            name of the file informing symbols for each Unit
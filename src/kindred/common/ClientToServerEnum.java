@@ -53,6 +53,38 @@ public enum ClientToServerEnum {
     /**
      * Dummy message used mainly for pinging the server.
      */
-    EMPTY;
+    EMPTY,
+
+    /**
+     * Asks the Server for a page of the available rooms. The argument is a
+     * pipe-separated string containing:
+     * <ul>
+     * <li>map name, listing only rooms to play on that map, or empty for every
+     * map</li>
+     * <li>nickname of the last host of the previous page, or empty for the
+     * first page</li>
+     * <li>maximum number of rooms in the page, or empty for the default</li>
+     * </ul>
+     */
+    ROOMS_PAGE,
+
+    /**
+     * Asks the Server for the changes made to the available rooms since the
+     * version specified as argument. If the argument is empty, every room is
+     * sent.
+     */
+    ROOMS_SINCE,
+
+    /**
+     * Subscribes the Client to the available rooms. The Server sends every
+     * room at once, and then each room added or removed, until the Client
+     * unsubscribes or starts a game.
+     */
+    SUBSCRIBE_ROOMS,
+
+    /**
+     * Stops the Server from sending the Client the rooms added or removed.
+     */
+    UNSUBSCRIBE_ROOMS;
 
 }
@@ -62,6 +62,46 @@ public class ClientToServerMessage {
         return msg.ordinal() + "|" + argument;
     }
 
+    /**
+     * Encodes the message as a complete frame of the specified WireFormat.
+     * 
+     * @param format
+     *            WireFormat of the connection the message is sent on
+     * @return the encoded frame
+     */
+    public byte[] toFrame(WireFormat format) {
+        return format.encode(msg.ordinal(), argument);
+    }
+
+    /**
+     * Decodes a complete frame of the specified WireFormat, converting it to
+     * its corresponding ClientToServerMessage format.
+     * 
+     * @param format
+     *            WireFormat of the connection the frame was received on
+     * @param buf
+     *            buffer containing the frame
+     * @param off
+     *            index where the frame starts
+     * @param length
+     *            length of the frame, as given by
+     *            {@link WireFormat#frameLength(byte[], int, int)}
+     * @return a decoded ClientToServerMessage message, or {@code null} if the
+     *         frame carries no message
+     * @throws IllegalArgumentException
+     *             if the frame is malformed
+     */
+    public static ClientToServerMessage fromFrame(WireFormat format,
+            byte[] buf, int off, int length) {
+        int opcode = format.opcode(buf, off, length);
+        if (opcode < 0)
+            return null;
+        if (opcode >= values.length)
+            throw new IllegalArgumentException("Unknown opcode " + opcode);
+        return new ClientToServerMessage(values[opcode], format.argument(buf,
+                off, length));
+    }
+
     /**
      * Decodes a String, converting it to its corresponding
      * ClientToServerMessage format.
@@ -71,9 +111,9 @@ public class ClientToServerMessage {
      * @return a decoded ClientToServerMessage message
      */
     public static ClientToServerMessage fromEncodedString(String str) {
-        String[] parts = str.split("\\|", 2);
-        ClientToServerEnum msg = values[Integer.parseInt(parts[0])];
-        String argument = parts[1];
+        int bar = str.indexOf('|');
+        ClientToServerEnum msg = values[Integer.parseInt(str.substring(0, bar))];
+        String argument = str.substring(bar + 1);
         return new ClientToServerMessage(msg, argument);
     }
 
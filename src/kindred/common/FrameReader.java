@@ -0,0 +1,170 @@
+package kindred.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads messages framed in a WireFormat from a blocking stream. The format may
+ * be switched once the connection's preface has been read.
+ * 
+ * @author Kindred Team
+ */
+public class FrameReader {
+
+    /**
+     * Stream from which frames are read.
+     */
+    private final InputStream in;
+
+    /**
+     * Format of the frames being read.
+     */
+    private WireFormat format;
+
+    /**
+     * Bytes read from the stream that weren't consumed yet.
+     */
+    private byte[] buf = new byte[4096];
+
+    /**
+     * Index of the first byte in {@code buf} that wasn't consumed yet.
+     */
+    private int start = 0;
+
+    /**
+     * Index right after the last byte read into {@code buf}.
+     */
+    private int end = 0;
+
+    /**
+     * Constructs a FrameReader.
+     * 
+     * @param in
+     *            stream from which frames are read
+     * @param format
+     *            initial format of the frames
+     */
+    public FrameReader(InputStream in, WireFormat format) {
+        this.in = in;
+        this.format = format;
+    }
+
+    /**
+     * Defines the format of the frames read from now on.
+     * 
+     * @param format
+     *            new format of the frames
+     */
+    public void setFormat(WireFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Returns the next byte of the stream without consuming it, waiting for it
+     * if necessary.
+     * 
+     * @return the next byte, or -1 if the stream has ended
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    public int peek() throws IOException {
+        if (start == end && !fill())
+            return -1;
+        return buf[start] & 0xFF;
+    }
+
+    /**
+     * Consumes the next byte of the stream, which must have been peeked.
+     */
+    public void skip() {
+        start++;
+    }
+
+    /**
+     * Reads the next message sent by a Client, skipping frames that carry no
+     * message.
+     * 
+     * @return the next message, or {@code null} if the stream has ended
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws IllegalArgumentException
+     *             if a malformed frame is received
+     */
+    public ClientToServerMessage readClientMessage() throws IOException {
+        ClientToServerMessage msg;
+        int length;
+        do {
+            if ((length = nextFrame()) < 0)
+                return null;
+            msg = ClientToServerMessage.fromFrame(format, buf, start, length);
+            start += length;
+        } while (msg == null);
+        return msg;
+    }
+
+    /**
+     * Reads the next message sent by the Server, skipping frames that carry no
+     * message.
+     * 
+     * @return the next message, or {@code null} if the stream has ended
+     * @throws IOException
+     *             if an I/O error occurs
+     * @throws IllegalArgumentException
+     *             if a malformed frame is received
+     */
+    public ServerToClientMessage readServerMessage() throws IOException {
+        ServerToClientMessage msg;
+        int length;
+        do {
+            if ((length = nextFrame()) < 0)
+                return null;
+            msg = ServerToClientMessage.fromFrame(format, buf, start, length);
+            start += length;
+        } while (msg == null);
+        return msg;
+    }
+
+    /**
+     * Reads from the stream until a complete frame starts at {@code start}.
+     * 
+     * @return the frame's length, or -1 if the stream has ended
+     * @throws IOException
+     *             if an I/O error occurs, or if the frame is too long
+     */
+    private int nextFrame() throws IOException {
+        int length;
+        while ((length = format.frameLength(buf, start, end)) < 0) {
+            if (end - start >= WireFormat.MAX_FRAME_LENGTH)
+                throw new IOException("Frame too long");
+            if (!fill())
+                return -1;
+        }
+        return length;
+    }
+
+    /**
+     * Reads more bytes from the stream into the buffer, moving unconsumed
+     * bytes to its beginning or growing it if needed.
+     * 
+     * @return {@code true} if any byte was read, or {@code false} if the
+     *         stream has ended
+     * @throws IOException
+     *             if an I/O error occurs
+     */
+    private boolean fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            end -= start;
+            start = 0;
+        }
+        if (end == buf.length)
+            buf = Arrays.copyOf(buf, 2 * buf.length);
+
+        int n = in.read(buf, end, buf.length - end);
+        if (n < 0)
+            return false;
+        end += n;
+        return true;
+    }
+}
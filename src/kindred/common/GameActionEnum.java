@@ -1,4 +1,4 @@
-package kindred.client.network;
+package kindred.common;
 
 /**
  * Contains an enum number for every type of game-related message the Client can
@@ -14,7 +14,10 @@ public enum GameActionEnum {
 
     /**
      * Makes a Unit controlled by the player attack an opponent's Unit, if
-     * possible.
+     * possible. If the Server referees the game, it ignores the damage sent by
+     * the player, which may be left out, and sends both players the damage it
+     * rolled. Otherwise, an attack that wins the game carries a last field, 1,
+     * so that the Server stops relaying actions for that game.
      */
     ATTACK,
 
@@ -1,4 +1,4 @@
-package kindred.client.network;
+package kindred.common;
 
 /**
  * Represents a game-related message that the Client can send to the Server.
@@ -84,6 +84,7 @@ public enum ServerToClientEnum {
      * <li>opponent's name</li>
      * <li>order of turns (1 if the player starts, or 2 otherwise)</li>
      * <li>map name</li>
+     * <li>1 if the Server referees the game, or 0 otherwise</li>
      * </ul>
      */
     SUCC_JOIN,
@@ -122,14 +123,72 @@ public enum ServerToClientEnum {
      * <li>Opponent's name.</li>
      * <li>Order of turns (1 if the player starts, or 2 otherwise).</li>
      * <li>Map name.</li>
+     * <li>1 if the Server referees the game, or 0 otherwise.</li>
      * </ul>
      */
     INFO_SOMEONE_ENTERED_ROOM,
 
     /**
      * Game-related command that the Server only passes forward to the Client.
-     * See {@link kindred.client.network.GameActionEnum} class for more info.
+     * If the Server referees the game, only actions it validated are passed
+     * forward, and attacks are sent to both players with the damage rolled by
+     * the Server. See {@link kindred.common.GameActionEnum} class for more
+     * info.
      */
-    GAME_ACTION;
+    GAME_ACTION,
+
+    /**
+     * Informs a page of the available rooms. The argument is a pipe-separated
+     * string containing:
+     * <ul>
+     * <li>version of the room listing</li>
+     * <li>map name requested, or empty for every map</li>
+     * <li>nickname to be sent to ask for the next page, or empty if this is
+     * the last one</li>
+     * <li>each room in the page, as "host&gt;map"</li>
+     * </ul>
+     */
+    INFO_ROOMS_PAGE,
+
+    /**
+     * Informs the changes made to the available rooms. The argument is a
+     * pipe-separated string containing:
+     * <ul>
+     * <li>version of the room listing after the changes</li>
+     * <li>1 if every room is sent, replacing those already known, or 0
+     * otherwise</li>
+     * <li>each change, in order, as "+host&gt;map" for an added room or
+     * "-host" for a removed one</li>
+     * </ul>
+     */
+    INFO_ROOMS_DELTA,
+
+    /**
+     * Informs a subscribed Client that a room is available, replacing the
+     * room previously hosted by the same user, if any. The argument is a
+     * pipe-separated string containing:
+     * <ul>
+     * <li>version of the room listing after the change</li>
+     * <li>host's nickname</li>
+     * <li>map name</li>
+     * </ul>
+     */
+    ROOM_ADDED,
+
+    /**
+     * Informs a subscribed Client that a room is no longer available. The
+     * argument is a pipe-separated string containing:
+     * <ul>
+     * <li>version of the room listing after the change</li>
+     * <li>host's nickname</li>
+     * </ul>
+     */
+    ROOM_REMOVED,
+
+    /**
+     * Tells the user that the Server, refereeing their game, rejected a game
+     * action. The argument is the rejected action.
+     */
+    ERR_INVALID_GAME_ACTION;
 
 }
@@ -1,5 +1,7 @@
 package kindred.common;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * Represents a message from the server to a client. Contains a
  * ClientToServerEnum object (representing the type of the message) and a String
@@ -52,6 +54,15 @@ public class ServerToClientMessage {
      */
     private static final ServerToClientEnum[] values = ServerToClientEnum.values();
 
+    /**
+     * Frames of this message already encoded in each WireFormat, indexed by
+     * the format's ordinal. Filled lazily, so that a message sent to many
+     * Clients is only encoded once per format; atomic, since those Clients
+     * may be written by different threads.
+     */
+    private final AtomicReferenceArray<byte[]> frames = new AtomicReferenceArray<byte[]>(
+            WireFormat.values().length);
+
     /**
      * Encodes the message in a single String containing its enum number and
      * argument, these two separated with the char '|'.
@@ -62,6 +73,56 @@ public class ServerToClientMessage {
         return msg.ordinal() + "|" + argument;
     }
 
+    /**
+     * Encodes the message as a complete frame of the specified WireFormat. The
+     * frame is computed only once per format and must not be modified. May be
+     * called from any thread.
+     * 
+     * @param format
+     *            WireFormat of the connection the message is sent on
+     * @return the encoded frame
+     */
+    public byte[] toFrame(WireFormat format) {
+        int i = format.ordinal();
+        byte[] frame = frames.get(i);
+        if (frame == null) {
+            // Threads racing to encode the frame all return the first one
+            frames.compareAndSet(i, null, format.encode(msg.ordinal(),
+                    argument));
+            frame = frames.get(i);
+        }
+        return frame;
+    }
+
+    /**
+     * Decodes a complete frame of the specified WireFormat, converting it to
+     * its corresponding ServerToClientMessage format.
+     * 
+     * @param format
+     *            WireFormat of the connection the frame was received on
+     * @param buf
+     *            buffer containing the frame
+     * @param off
+     *            index where the frame starts
+     * @param length
+     *            length of the frame, as given by
+     *            {@link WireFormat#frameLength(byte[], int, int)}
+     * @return a decoded ServerToClientMessage message, or {@code null} if the
+     *         frame carries no message
+     * @throws IllegalArgumentException
+     *             if the frame is malformed
+     */
+    public static ServerToClientMessage fromFrame(WireFormat format,
+            byte[] buf, int off, int length) {
+        int opcode = format.opcode(buf, off, length);
+        if (opcode < 0)
+            return null;
+        if (opcode >= values.length)
+            throw new IllegalArgumentException("Unknown opcode " + opcode);
+        return new ServerToClientMessage(values[opcode], format.argument(buf,
+                off, length));
+    }
+
     /**
      * Decodes a String, converting it to its corresponding
      * ServerToClientMessage format.
@@ -71,9 +132,9 @@ public class ServerToClientMessage {
      * @return a decoded ServerToClientMessage message
      */
     public static ServerToClientMessage fromEncodedString(String str) {
-        String[] parts = str.split("\\|", 2);
-        ServerToClientEnum msg = values[Integer.parseInt(parts[0])];
-        String arg = parts[1];
+        int bar = str.indexOf('|');
+        ServerToClientEnum msg = values[Integer.parseInt(str.substring(0, bar))];
+        String arg = str.substring(bar + 1);
         return new ServerToClientMessage(msg, arg);
     }
 }
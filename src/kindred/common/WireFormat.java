@@ -0,0 +1,465 @@
+package kindred.common;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Contains every format in which messages can be framed on a Client-Server
+ * connection. Connections start in the TEXT format; a Client may ask for the
+ * BINARY one by sending {@link #BINARY_PREFACE} before anything else, to which
+ * a Server that supports it answers with the same byte.
+ * <p>
+ * A message is made of an opcode, which is the ordinal of its enum type, and
+ * an argument whose fields are separated with the char '|'. Each format
+ * encodes the whole message as a frame, and can find where a frame ends among
+ * received bytes.
+ * 
+ * @author Kindred Team
+ */
+public enum WireFormat {
+
+    /**
+     * One line per message, containing its opcode and argument separated with
+     * the char '|'. Encoded in UTF-8, whatever the platform's default charset,
+     * so that both ends agree on non-ASCII arguments.
+     */
+    TEXT {
+        @Override
+        public byte[] encode(int opcode, String argument) {
+            return (opcode + "|" + argument + "\n").getBytes(TEXT_CHARSET);
+        }
+
+        @Override
+        public int frameLength(byte[] buf, int off, int end) {
+            for (int i = off; i < end; i++)
+                if (buf[i] == '\n')
+                    return i - off + 1;
+            return -1;
+        }
+
+        @Override
+        public int opcode(byte[] buf, int off, int length) {
+            int end = lineEnd(buf, off, length);
+            int i = off;
+            while (i < end && buf[i] <= ' ')
+                i++;
+            // Blank lines carry no message
+            if (i == end)
+                return -1;
+
+            int opcode = 0;
+            for (i = off; i < end && buf[i] != '|'; i++) {
+                if (buf[i] < '0' || buf[i] > '9' || opcode > MAX_OPCODE)
+                    throw new IllegalArgumentException("Malformed opcode");
+                opcode = 10 * opcode + buf[i] - '0';
+            }
+            if (i == off || i == end)
+                throw new IllegalArgumentException("Malformed message");
+            return opcode;
+        }
+
+        @Override
+        public String argument(byte[] buf, int off, int length) {
+            int end = lineEnd(buf, off, length);
+            int i = off;
+            while (buf[i] != '|')
+                i++;
+            return new String(buf, i + 1, end - i - 1, TEXT_CHARSET);
+        }
+
+        /**
+         * Returns the index where the content of a line ends, ignoring its
+         * newline and a carriage return before it.
+         * 
+         * @param buf
+         *            buffer containing the frame
+         * @param off
+         *            index of the frame's first byte
+         * @param length
+         *            length of the frame
+         * @return index right after the line's last content byte
+         */
+        private int lineEnd(byte[] buf, int off, int length) {
+            int end = off + length;
+            if (end > off && buf[end - 1] == '\n')
+                end--;
+            if (end > off && buf[end - 1] == '\r')
+                end--;
+            return end;
+        }
+    },
+
+    /**
+     * Length-prefixed frames. Each frame starts with its length as a varint,
+     * followed by the opcode in a single byte and by the argument's fields.
+     * Each field starts with a varint header: fields that are integers in
+     * canonical decimal form store their zigzag-encoded value in the header,
+     * flagged by its lowest bit; other fields store their length in it,
+     * followed by their UTF-8 bytes. An empty argument has no fields.
+     */
+    BINARY {
+        @Override
+        public byte[] encode(int opcode, String argument) {
+            // The body is measured before being written, so that the frame is
+            // the only allocation
+            int n = 1 + writeFields(argument, null, 0);
+            byte[] frame = new byte[varintLength(n) + n];
+            int off = writeVarint(n, frame, 0);
+            frame[off] = (byte) opcode;
+            writeFields(argument, frame, off + 1);
+            return frame;
+        }
+
+        @Override
+        public int frameLength(byte[] buf, int off, int end) {
+            long length = 0;
+            for (int i = off, shift = 0; i < end && shift < 35; i++, shift += 7) {
+                length |= (long) (buf[i] & 0x7F) << shift;
+                if (buf[i] >= 0) {
+                    long total = length + (i - off + 1);
+                    if (length < 1 || total > MAX_FRAME_LENGTH)
+                        throw new IllegalArgumentException("Bad frame length");
+                    return off + total <= end ? (int) total : -1;
+                }
+            }
+            if (end - off >= 5)
+                throw new IllegalArgumentException("Bad frame length");
+            return -1;
+        }
+
+        @Override
+        public int opcode(byte[] buf, int off, int length) {
+            return buf[bodyStart(buf, off)] & 0xFF;
+        }
+
+        @Override
+        public String argument(byte[] buf, int off, int length) {
+            int i = bodyStart(buf, off) + 1;
+            int end = off + length;
+            StringBuilder sb = new StringBuilder(2 * (end - i) + 16);
+            for (boolean first = true; i < end; first = false) {
+                if (!first)
+                    sb.append('|');
+                long header = 0;
+                byte b;
+                for (int shift = 0;; shift += 7) {
+                    if (i == end || shift > 28)
+                        throw new IllegalArgumentException("Malformed field");
+                    b = buf[i++];
+                    header |= (long) (b & 0x7F) << shift;
+                    if (b >= 0)
+                        break;
+                }
+
+                if ((header & 1) != 0) {
+                    int zigzag = (int) (header >>> 1);
+                    sb.append((zigzag >>> 1) ^ -(zigzag & 1));
+                } else {
+                    long fieldLength = header >>> 1;
+                    if (fieldLength > end - i)
+                        throw new IllegalArgumentException("Malformed field");
+                    int fieldEnd = i + (int) fieldLength;
+                    int j = i;
+                    while (j < fieldEnd && buf[j] >= 0)
+                        j++;
+                    if (j == fieldEnd) {
+                        // ASCII chars need no decoding
+                        for (j = i; j < fieldEnd; j++)
+                            sb.append((char) buf[j]);
+                    } else {
+                        sb.append(new String(buf, i, fieldEnd - i,
+                                StandardCharsets.UTF_8));
+                    }
+                    i = fieldEnd;
+                }
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Returns the index of a frame's opcode, right after its length
+         * prefix.
+         * 
+         * @param buf
+         *            buffer containing the frame
+         * @param off
+         *            index of the frame's first byte
+         * @return index of the frame's opcode
+         */
+        private int bodyStart(byte[] buf, int off) {
+            while (buf[off] < 0)
+                off++;
+            return off + 1;
+        }
+    };
+
+    /**
+     * Byte sent by a Client, right after connecting, to ask for the BINARY
+     * format, and sent back by the Server to accept it. No TEXT message starts
+     * with it.
+     */
+    public static final int BINARY_PREFACE = 0xCB;
+
+    /**
+     * Longest frame, in bytes, that may be sent on a connection.
+     */
+    public static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+    /**
+     * Greatest opcode of any message, over which TEXT opcodes stop being
+     * parsed.
+     */
+    private static final int MAX_OPCODE = 127;
+
+    /**
+     * Charset of TEXT frames.
+     */
+    private static final Charset TEXT_CHARSET = StandardCharsets.UTF_8;
+
+    /**
+     * Encodes a message as a complete frame.
+     * 
+     * @param opcode
+     *            ordinal of the message's enum type
+     * @param argument
+     *            argument of the message, with fields separated with the char
+     *            '|'
+     * @return the encoded frame
+     */
+    public abstract byte[] encode(int opcode, String argument);
+
+    /**
+     * Returns the length of the frame that starts at a given index of a
+     * buffer, if it has been completely received.
+     * 
+     * @param buf
+     *            buffer containing the received bytes
+     * @param off
+     *            index where the frame starts
+     * @param end
+     *            index right after the last received byte
+     * @return length of the frame, in bytes, or -1 if it isn't complete yet
+     * @throws IllegalArgumentException
+     *             if the frame's length prefix is invalid
+     */
+    public abstract int frameLength(byte[] buf, int off, int end);
+
+    /**
+     * Returns the opcode of a complete frame.
+     * 
+     * @param buf
+     *            buffer containing the frame
+     * @param off
+     *            index where the frame starts
+     * @param length
+     *            length of the frame, as given by
+     *            {@link #frameLength(byte[], int, int)}
+     * @return the frame's opcode, or -1 if the frame carries no message
+     * @throws IllegalArgumentException
+     *             if the frame is malformed
+     */
+    public abstract int opcode(byte[] buf, int off, int length);
+
+    /**
+     * Returns the argument of a complete frame that carries a message.
+     * 
+     * @param buf
+     *            buffer containing the frame
+     * @param off
+     *            index where the frame starts
+     * @param length
+     *            length of the frame, as given by
+     *            {@link #frameLength(byte[], int, int)}
+     * @return the frame's argument, with fields separated with the char '|'
+     * @throws IllegalArgumentException
+     *             if the frame is malformed
+     */
+    public abstract String argument(byte[] buf, int off, int length);
+
+    /**
+     * Writes the fields of an argument to a BINARY frame's body, each as an
+     * integer if its text is the canonical decimal form of one. If no buffer
+     * is given, the fields are only measured.
+     * 
+     * @param argument
+     *            argument with fields separated with the char '|'
+     * @param buf
+     *            buffer where the fields are written, or {@code null}
+     * @param n
+     *            index where the first field is written
+     * @return index right after the last written field
+     */
+    private static int writeFields(String argument, byte[] buf, int n) {
+        if (argument.isEmpty())
+            return n;
+
+        int start = 0;
+        while (true) {
+            int bar = argument.indexOf('|', start);
+            int end = bar < 0 ? argument.length() : bar;
+
+            long value = parseCanonicalInt(argument, start, end);
+            if (value != Long.MIN_VALUE) {
+                int v = (int) value;
+                long zigzag = ((v << 1) ^ (v >> 31)) & 0xFFFFFFFFL;
+                n = writeVarint(zigzag << 1 | 1, buf, n);
+            } else {
+                int length = utf8Length(argument, start, end);
+                n = writeVarint((long) length << 1, buf, n);
+                if (buf != null)
+                    writeUtf8(argument, start, end, buf, n);
+                n += length;
+            }
+
+            if (bar < 0)
+                return n;
+            start = bar + 1;
+        }
+    }
+
+    /**
+     * Parses a field that is an integer written exactly as
+     * {@link Integer#toString(int)} would, so that decoding it gives back the
+     * same text.
+     * 
+     * @param s
+     *            String containing the field
+     * @param start
+     *            index of the field's first char
+     * @param end
+     *            index right after the field's last char
+     * @return the field's value, or {@code Long.MIN_VALUE} if it isn't such an
+     *         integer
+     */
+    private static long parseCanonicalInt(String s, int start, int end) {
+        boolean negative = start < end && s.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        // No empty fields, leading zeros, "-0" or more than 10 digits
+        if (i == end || end - i > 10
+                || (s.charAt(i) == '0' && (end - i > 1 || negative)))
+            return Long.MIN_VALUE;
+
+        long value = 0;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9')
+                return Long.MIN_VALUE;
+            value = 10 * value + c - '0';
+        }
+        if (negative)
+            value = -value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+            return Long.MIN_VALUE;
+        return value;
+    }
+
+    /**
+     * Returns the number of bytes taken by an unsigned varint.
+     * 
+     * @param value
+     *            value to be written as a varint
+     * @return the number of bytes of its varint
+     */
+    private static int varintLength(long value) {
+        int length = 1;
+        while ((value >>>= 7) != 0)
+            length++;
+        return length;
+    }
+
+    /**
+     * Writes an unsigned varint, 7 bits per byte, least significant first. If
+     * no buffer is given, the varint is only measured.
+     * 
+     * @param value
+     *            value to be written
+     * @param buf
+     *            buffer where the varint is written, or {@code null}
+     * @param n
+     *            index where the varint is written
+     * @return index right after the written varint
+     */
+    private static int writeVarint(long value, byte[] buf, int n) {
+        if (buf == null)
+            return n + varintLength(value);
+        while ((value & ~0x7FL) != 0) {
+            buf[n++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        buf[n++] = (byte) value;
+        return n;
+    }
+
+    /**
+     * Returns the number of bytes of a substring encoded in UTF-8, in the same
+     * way as {@link #writeUtf8(String, int, int, byte[], int)} encodes it.
+     * 
+     * @param s
+     *            String containing the substring
+     * @param start
+     *            index of the substring's first char
+     * @param end
+     *            index right after the substring's last char
+     * @return the number of bytes of the encoded substring
+     */
+    private static int utf8Length(String s, int start, int end) {
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80)
+                length++;
+            else if (c < 0x800)
+                length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < end
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c))
+                length++;
+            else
+                length += 3;
+        }
+        return length;
+    }
+
+    /**
+     * Writes a substring encoded in UTF-8. Unpaired surrogates are replaced
+     * with '?', as {@link String#getBytes(Charset)} does.
+     * 
+     * @param s
+     *            String containing the substring
+     * @param start
+     *            index of the substring's first char
+     * @param end
+     *            index right after the substring's last char
+     * @param buf
+     *            buffer where the substring is written
+     * @param n
+     *            index where the substring is written
+     */
+    private static void writeUtf8(String s, int start, int end, byte[] buf,
+            int n) {
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[n++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[n++] = (byte) (0xC0 | c >> 6);
+                buf[n++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < end
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[n++] = (byte) (0xF0 | cp >> 18);
+                buf[n++] = (byte) (0x80 | cp >> 12 & 0x3F);
+                buf[n++] = (byte) (0x80 | cp >> 6 & 0x3F);
+                buf[n++] = (byte) (0x80 | cp & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                buf[n++] = '?';
+            } else {
+                buf[n++] = (byte) (0xE0 | c >> 12);
+                buf[n++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buf[n++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+    }
+}
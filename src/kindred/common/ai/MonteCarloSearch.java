@@ -0,0 +1,655 @@
+package kindred.common.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import kindred.common.GameActionEnum;
+import kindred.common.model.Battle;
+import kindred.common.model.BattleOdds;
+import kindred.common.model.Game;
+import kindred.common.model.Map;
+import kindred.common.model.RandomSource;
+import kindred.common.model.SplitMixRandom;
+
+/**
+ * Chooses the actions of a player by Monte Carlo tree search (UCT). The tree
+ * covers the actions of the player's current turn; each simulation then plays
+ * the rest of that turn and the next ones with a quick greedy policy, and
+ * scores the Units left on both sides.
+ * <p>
+ * The tree is open-loop: its nodes are sequences of actions, and the damage
+ * of each attack is drawn anew in every simulation, so that the value of an
+ * action averages over the results of battles. Simulations make and undo
+ * actions on a Game with {@link Game#apply} and {@link Game#undo()}.
+ * <p>
+ * The search runs on several threads, each growing its own tree on its own
+ * copy of the Game; their statistics of the first action are summed to
+ * choose it. A MonteCarloSearch must be {@link #close() closed} to stop its
+ * threads.
+ * 
+ * @author Kindred Team
+ */
+public final class MonteCarloSearch {
+
+    /**
+     * Number of ints describing each action: its GameActionEnum ordinal, then
+     * xi, yi, xf and yf.
+     */
+    static final int ACTION_FIELDS = 5;
+
+    /**
+     * Exploration constant of the UCB1 formula.
+     */
+    private static final double EXPLORATION = 0.7;
+
+    /**
+     * Number of turns ended by the greedy policy before a simulated Game is
+     * scored.
+     */
+    private static final int ROLLOUT_TURNS = 3;
+
+    /**
+     * Percentage of moves made at random, rather than towards the nearest
+     * enemy, by the greedy policy.
+     */
+    private static final int RANDOM_MOVES = 20;
+
+    /**
+     * Every GameActionEnum, indexed by ordinal.
+     */
+    private static final GameActionEnum[] ACTIONS = GameActionEnum.values();
+
+    /**
+     * Number of threads searching.
+     */
+    private final int threads;
+
+    /**
+     * Runs the searching threads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Source from which each search thread's RandomSource is split.
+     */
+    private final RandomSource random;
+
+    /**
+     * Number of simulations made to choose the last action.
+     */
+    private long lastSimulations = 0;
+
+    /**
+     * A node of the tree: a sequence of actions from the start of the search,
+     * and the statistics of the actions following it.
+     */
+    private static final class Node {
+
+        /**
+         * Actions following this node, {@code ACTION_FIELDS} ints each, as
+         * found the first time the node was reached.
+         */
+        final int[] actions;
+
+        /**
+         * Node reached by each action, or {@code null} if not yet created.
+         */
+        final Node[] children;
+
+        /**
+         * Number of simulations that made each action.
+         */
+        final int[] visits;
+
+        /**
+         * Sum of the scores of the simulations that made each action.
+         */
+        final double[] scores;
+
+        /**
+         * Number of simulations that reached this node.
+         */
+        int total = 0;
+
+        /**
+         * Constructs a Node.
+         * 
+         * @param actions
+         *            actions following the node
+         */
+        Node(int[] actions) {
+            this.actions = actions;
+            int n = actions.length / ACTION_FIELDS;
+            children = new Node[n];
+            visits = new int[n];
+            scores = new double[n];
+        }
+    }
+
+    /**
+     * Grows a tree on its own copy of a Game until a deadline.
+     */
+    private static final class Worker implements Callable<Node> {
+
+        /**
+         * Copy of the Game being searched.
+         */
+        private final Game game;
+
+        /**
+         * Team of the searching player.
+         */
+        private final int team;
+
+        /**
+         * Actions of the root of the tree.
+         */
+        private final int[] rootActions;
+
+        /**
+         * Time, as given by {@code System.nanoTime()}, to stop searching.
+         */
+        private final long deadline;
+
+        /**
+         * Source of random numbers of this Worker.
+         */
+        private final RandomSource random;
+
+        /**
+         * Draws the damage of simulated attacks.
+         */
+        private final Battle battle;
+
+        /**
+         * Nodes visited by the current simulation.
+         */
+        private final List<Node> path = new ArrayList<Node>();
+
+        /**
+         * Action chosen on each node visited by the current simulation.
+         */
+        private int[] chosen = new int[16];
+
+        /**
+         * Actions found impossible on the node being descended by the current
+         * simulation.
+         */
+        private int[] impossible = new int[4];
+
+        /**
+         * Constructs a Worker.
+         * 
+         * @param game
+         *            copy of the Game to be searched, not shared with any
+         *            other thread
+         * @param rootActions
+         *            actions available in the Game
+         * @param deadline
+         *            time to stop searching, as given by
+         *            {@code System.nanoTime()}
+         * @param random
+         *            source of random numbers of the Worker
+         */
+        Worker(Game game, int[] rootActions, long deadline,
+                RandomSource random) {
+            this.game = game;
+            this.team = game.getTurn();
+            this.rootActions = rootActions;
+            this.deadline = deadline;
+            this.random = random;
+            this.battle = new Battle(random);
+        }
+
+        @Override
+        public Node call() {
+            Node root = new Node(rootActions);
+            do
+                simulate(root);
+            while (System.nanoTime() < deadline);
+            return root;
+        }
+
+        /**
+         * Makes a simulation: descends the tree, adding a node to it, plays
+         * greedily from there, and adds the score of the resulting state to
+         * every action made on the tree. If an earlier battle made the chosen
+         * action of a node impossible, its next best action is made instead,
+         * so that only actions actually made are scored.
+         * 
+         * @param root
+         *            root of the tree
+         */
+        private void simulate(Node root) {
+            path.clear();
+            int applied = 0;
+            Node node = root;
+            while (!game.isOver()) {
+                int skipped = 0;
+                int a = select(node, impossible, skipped);
+                while (a >= 0 && !apply(node.actions, a * ACTION_FIELDS)) {
+                    // A battle made it impossible this time
+                    if (skipped == impossible.length)
+                        impossible = Arrays.copyOf(impossible, 2 * skipped);
+                    impossible[skipped++] = a;
+                    a = select(node, impossible, skipped);
+                }
+                if (a < 0)
+                    break;
+                applied++;
+                if (path.size() == chosen.length)
+                    chosen = Arrays.copyOf(chosen, 2 * chosen.length);
+                chosen[path.size()] = a;
+                path.add(node);
+
+                int i = a * ACTION_FIELDS;
+                if (node.actions[i] == GameActionEnum.END_TURN.ordinal())
+                    break;
+
+                Node child = node.children[a];
+                if (child == null) {
+                    node.children[a] = new Node(legalActions(game));
+                    break;
+                }
+                node = child;
+            }
+
+            applied += rollout();
+            double score = score(game, team);
+            for (int k = 0; k < path.size(); k++) {
+                Node n = path.get(k);
+                n.total++;
+                n.visits[chosen[k]]++;
+                n.scores[chosen[k]] += score;
+            }
+            while (applied-- > 0)
+                game.undo();
+        }
+
+        /**
+         * Chooses an action of a node by UCB1, trying each action once first.
+         * 
+         * @param node
+         *            the node
+         * @param skip
+         *            indices of actions not to be chosen
+         * @param skipped
+         *            number of indices in {@code skip}
+         * @return index of the chosen action, or -1 if every action is
+         *         skipped
+         */
+        private static int select(Node node, int[] skip, int skipped) {
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            double log = Math.log(node.total + 1);
+            for (int a = 0; a < node.visits.length; a++) {
+                if (contains(skip, skipped, a))
+                    continue;
+                if (node.visits[a] == 0)
+                    return a;
+                double value = node.scores[a] / node.visits[a] + EXPLORATION
+                        * Math.sqrt(log / node.visits[a]);
+                if (value > bestValue) {
+                    best = a;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Checks if the first values of an array include a given value.
+         * 
+         * @param values
+         *            the array
+         * @param n
+         *            number of values to be checked
+         * @param value
+         *            the value
+         * @return {@code true}, if the value is found, or {@code false}
+         *         otherwise
+         */
+        private static boolean contains(int[] values, int n, int value) {
+            for (int k = 0; k < n; k++)
+                if (values[k] == value)
+                    return true;
+            return false;
+        }
+
+        /**
+         * Makes one of a list of actions, drawing the damage of an attack.
+         * 
+         * @param actions
+         *            the actions, {@code ACTION_FIELDS} ints each
+         * @param i
+         *            index of the action's first int
+         * @return {@code true}, if the action was made, or {@code false} if
+         *         it's not allowed
+         */
+        private boolean apply(int[] actions, int i) {
+            GameActionEnum action = ACTIONS[actions[i]];
+            int damage = 0;
+            if (action == GameActionEnum.ATTACK) {
+                if (!game.canAttack(actions[i + 1], actions[i + 2],
+                        actions[i + 3], actions[i + 4]))
+                    return false;
+                damage = battle.execute(game.getMap().getOdds(actions[i + 1],
+                        actions[i + 2], actions[i + 3], actions[i + 4]));
+            }
+            return game.apply(action, actions[i + 1], actions[i + 2],
+                    actions[i + 3], actions[i + 4], damage);
+        }
+
+        /**
+         * Plays greedily until {@code ROLLOUT_TURNS} turns end or the Game
+         * is over: each Unit attacks the target it expects to damage the
+         * most, moving first towards the nearest enemy if it has no target.
+         * 
+         * @return number of actions made
+         */
+        private int rollout() {
+            int applied = 0;
+            Map map = game.getMap();
+            for (int t = 0; t < ROLLOUT_TURNS && !game.isOver(); t++) {
+                int[] units = map.getUnitPositions(game.getTurn());
+                int[] enemies = map.getUnitPositions(3 - game.getTurn());
+                for (int u = 0; u < units.length && !game.isOver(); u += 2) {
+                    int x = units[u];
+                    int y = units[u + 1];
+                    if (game.canMove(x, y) && game.getTargets(x, y).length == 0) {
+                        int[] destinations = game.getDestinations(x, y);
+                        int d = towards(destinations, enemies);
+                        if (d >= 0
+                                && game.apply(GameActionEnum.MOVE, x, y,
+                                        destinations[d], destinations[d + 1],
+                                        0)) {
+                            applied++;
+                            x = destinations[d];
+                            y = destinations[d + 1];
+                        }
+                    }
+
+                    int[] targets = game.getTargets(x, y);
+                    int best = -1;
+                    double bestDamage = -1;
+                    for (int i = 0; i < targets.length; i += 2) {
+                        double damage = map.getOdds(x, y, targets[i],
+                                targets[i + 1]).getExpectedDamage();
+                        if (damage > bestDamage) {
+                            best = i;
+                            bestDamage = damage;
+                        }
+                    }
+                    if (best >= 0 && game.canAttack(x, y, targets[best],
+                            targets[best + 1])) {
+                        BattleOdds odds = map.getOdds(x, y, targets[best],
+                                targets[best + 1]);
+                        game.apply(GameActionEnum.ATTACK, x, y, targets[best],
+                                targets[best + 1], battle.execute(odds));
+                        applied++;
+                    }
+                }
+                if (!game.isOver()) {
+                    game.apply(GameActionEnum.END_TURN, 0, 0, 0, 0, 0);
+                    applied++;
+                }
+            }
+            return applied;
+        }
+
+        /**
+         * Chooses a destination of the greedy policy: usually the one nearest
+         * to an enemy, sometimes a random one.
+         * 
+         * @param destinations
+         *            the destinations, as {x, y} pairs
+         * @param enemies
+         *            positions of the enemy Units, as {x, y} pairs
+         * @return index of the chosen destination's x coordinate, or -1 if
+         *         there is none
+         */
+        private int towards(int[] destinations, int[] enemies) {
+            if (destinations.length == 0)
+                return -1;
+            if (random.nextInt(100) < RANDOM_MOVES)
+                return 2 * random.nextInt(destinations.length / 2);
+
+            int best = -1;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int d = 0; d < destinations.length; d += 2)
+                for (int e = 0; e < enemies.length; e += 2) {
+                    int distance = Math.abs(destinations[d] - enemies[e])
+                            + Math.abs(destinations[d + 1] - enemies[e + 1]);
+                    if (distance < bestDistance) {
+                        best = d;
+                        bestDistance = distance;
+                    }
+                }
+            return best;
+        }
+    }
+
+    /**
+     * Constructs a MonteCarloSearch.
+     * 
+     * @param threads
+     *            number of threads searching
+     * @param seed
+     *            seed of the random choices of the search
+     */
+    public MonteCarloSearch(int threads, long seed) {
+        this.threads = threads;
+        this.random = new SplitMixRandom(seed);
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "MonteCarloSearch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Chooses the next action of the current player. The time left until the
+     * deadline is shared among the Units that can still act, so that the
+     * whole turn is played by then.
+     * 
+     * @param game
+     *            the Game, which isn't changed
+     * @param deadline
+     *            time by which the player's turn must be played, as given by
+     *            {@code System.nanoTime()}
+     * @return the action as {ordinal of its GameActionEnum, xi, yi, xf, yf}
+     */
+    public int[] chooseAction(Game game, long deadline) {
+        int[] actions = legalActions(game);
+        lastSimulations = 0;
+        int n = actions.length / ACTION_FIELDS;
+        if (n == 1 || game.isOver())
+            return Arrays.copyOf(actions, ACTION_FIELDS);
+
+        long now = System.nanoTime();
+        long end = now + Math.max(0, deadline - now) / (actors(actions) + 1);
+        List<Worker> workers = new ArrayList<Worker>();
+        for (int t = 0; t < threads; t++)
+            workers.add(new Worker(new Game(game), actions, end, random
+                    .split()));
+
+        int[] visits = new int[n];
+        double[] scores = new double[n];
+        try {
+            for (Future<Node> f : executor.invokeAll(workers)) {
+                Node root = f.get();
+                lastSimulations += root.total;
+                for (int a = 0; a < n; a++) {
+                    visits[a] += root.visits[a];
+                    scores[a] += root.scores[a];
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        int best = n - 1; // Ends the turn, if nothing was searched
+        for (int a = 0; a < n; a++)
+            if (visits[a] > visits[best]
+                    || (visits[a] == visits[best] && visits[a] > 0 && scores[a]
+                            / visits[a] > scores[best] / visits[best]))
+                best = a;
+        return Arrays.copyOfRange(actions, best * ACTION_FIELDS, (best + 1)
+                * ACTION_FIELDS);
+    }
+
+    /**
+     * Returns the number of simulations made to choose the last action.
+     * 
+     * @return the number of simulations
+     */
+    public long getLastSimulations() {
+        return lastSimulations;
+    }
+
+    /**
+     * Stops the searching threads.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Returns every action the current player can make: attacks first, then
+     * moves, then ending the turn, which is always last.
+     * 
+     * @param game
+     *            the Game
+     * @return the actions, {@code ACTION_FIELDS} ints each
+     */
+    static int[] legalActions(Game game) {
+        Map map = game.getMap();
+        int[] units = map.getUnitPositions(game.getTurn());
+        int[] attacks = new int[0];
+        int[] moves = new int[0];
+        int na = 0;
+        int nm = 0;
+        for (int u = 0; u < units.length; u += 2) {
+            int x = units[u];
+            int y = units[u + 1];
+            int[] targets = game.getTargets(x, y);
+            for (int t = 0; t < targets.length; t += 2)
+                if (game.canAttack(x, y, targets[t], targets[t + 1])) {
+                    if (na + ACTION_FIELDS > attacks.length)
+                        attacks = Arrays.copyOf(attacks, 2 * na
+                                + ACTION_FIELDS);
+                    na = put(attacks, na, GameActionEnum.ATTACK, x, y,
+                            targets[t], targets[t + 1]);
+                }
+            if (!game.canMove(x, y))
+                continue;
+            int[] destinations = game.getDestinations(x, y);
+            for (int d = 0; d < destinations.length; d += 2) {
+                if (nm + ACTION_FIELDS > moves.length)
+                    moves = Arrays.copyOf(moves, 2 * nm + ACTION_FIELDS);
+                nm = put(moves, nm, GameActionEnum.MOVE, x, y,
+                        destinations[d], destinations[d + 1]);
+            }
+        }
+
+        int[] actions = new int[na + nm + ACTION_FIELDS];
+        System.arraycopy(attacks, 0, actions, 0, na);
+        System.arraycopy(moves, 0, actions, na, nm);
+        put(actions, na + nm, GameActionEnum.END_TURN, 0, 0, 0, 0);
+        return actions;
+    }
+
+    /**
+     * Writes an action to an array.
+     * 
+     * @param actions
+     *            the array
+     * @param i
+     *            index of the action's first int
+     * @param action
+     *            kind of action
+     * @param xi
+     *            x coordinate of the Unit
+     * @param yi
+     *            y coordinate of the Unit
+     * @param xf
+     *            x coordinate of the destination or defender
+     * @param yf
+     *            y coordinate of the destination or defender
+     * @return index following the action
+     */
+    private static int put(int[] actions, int i, GameActionEnum action,
+            int xi, int yi, int xf, int yf) {
+        actions[i] = action.ordinal();
+        actions[i + 1] = xi;
+        actions[i + 2] = yi;
+        actions[i + 3] = xf;
+        actions[i + 4] = yf;
+        return i + ACTION_FIELDS;
+    }
+
+    /**
+     * Counts the Units that make the given actions.
+     * 
+     * @param actions
+     *            the actions, {@code ACTION_FIELDS} ints each
+     * @return the number of distinct Units
+     */
+    private static int actors(int[] actions) {
+        int count = 0;
+        for (int i = 0; i < actions.length; i += ACTION_FIELDS) {
+            boolean seen = false;
+            for (int j = 0; j < i && !seen; j += ACTION_FIELDS)
+                seen = actions[j + 1] == actions[i + 1]
+                        && actions[j + 2] == actions[i + 2];
+            if (!seen && actions[i] != GameActionEnum.END_TURN.ordinal())
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Scores a Game for a team: 1 if it won, 0 if it lost, or else how much
+     * it's ahead, counting each Unit and its remaining hit points.
+     * 
+     * @param game
+     *            the Game
+     * @param team
+     *            the team
+     * @return the score, in [0, 1]
+     */
+    static double score(Game game, int team) {
+        Map map = game.getMap();
+        double own = 0;
+        double enemy = 0;
+        for (int i = 0; i < map.getMapHeight(); i++)
+            for (int j = 0; j < map.getMapWidth(); j++) {
+                int owner = map.getTeam(i, j);
+                if (owner == 0)
+                    continue;
+                double value = 1 + (double) map.getCurrentHp(i, j)
+                        / map.getUnit(i, j).getTotalHp();
+                if (owner == team)
+                    own += value;
+                else
+                    enemy += value;
+            }
+        if (enemy == 0)
+            return 1;
+        if (own == 0)
+            return 0;
+        return 0.5 + 0.5 * (own - enemy) / (own + enemy);
+    }
+}
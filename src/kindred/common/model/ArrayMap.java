@@ -0,0 +1,349 @@
+package kindred.common.model;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Map whose board is kept as flat arrays of primitives (terrain, unit, team
+ * and hit points of each Tile), indexed by {@code x * width + y}, instead of
+ * a matrix of Tile objects. Checking and making moves and attacks then reads a
+ * few adjacent ints instead of following references through Tiles, Units and
+ * Attributes.
+ * <p>
+ * Units are still kept as objects, so that they can be shown and compared, and
+ * their hit points are updated along with the board's.
+ * 
+ * @author Kindred Team
+ */
+public final class ArrayMap extends Map {
+
+    /**
+     * Unit identifier of a Tile with no Unit.
+     */
+    private static final int NO_UNIT = -1;
+
+    /**
+     * Initial capacity of the arrays describing Units.
+     */
+    private static final int INITIAL_UNITS = 16;
+
+    /**
+     * Number of rows of Tiles.
+     */
+    private final int height;
+
+    /**
+     * Number of columns of Tiles.
+     */
+    private final int width;
+
+    /**
+     * Every Terrain found on this Map, indexed by terrain identifier.
+     */
+    private final Terrain[] terrainTypes;
+
+    /**
+     * Move penalty of every Terrain, indexed by terrain identifier.
+     */
+    private final int[] movePenalty;
+
+    /**
+     * Terrain identifier of each Tile.
+     */
+    private final byte[] terrain;
+
+    /**
+     * Identifier of the Unit on each Tile, or {@code NO_UNIT}.
+     */
+    private final int[] unit;
+
+    /**
+     * Team of the Unit on each Tile, or 0 if there is no Unit.
+     */
+    private final byte[] team;
+
+    /**
+     * Current hit points of the Unit on each Tile, or 0 if there is no Unit.
+     */
+    private final int[] hp;
+
+    /**
+     * Every Unit ever placed on this Map, indexed by unit identifier.
+     */
+    private Unit[] units;
+
+    /**
+     * Range of every Unit, indexed by unit identifier.
+     */
+    private int[] unitRange;
+
+    /**
+     * Number of Units ever placed on this Map.
+     */
+    private int numUnits;
+
+    /**
+     * Number of units that the first player has on the Map.
+     */
+    private int numUnitsA;
+
+    /**
+     * Number of units that the second player has on the Map.
+     */
+    private int numUnitsB;
+
+    /**
+     * Constructs an ArrayMap, initially holding no Unit.
+     * 
+     * @param terrains
+     *            Terrain of each Tile, row by row
+     * @param height
+     *            number of rows of Tiles
+     * @param width
+     *            number of columns of Tiles
+     * @param tileHeight
+     *            graphical height of each Tile
+     * @param tileWidth
+     *            graphical width of each Tile
+     * @throws IllegalArgumentException
+     *             if the Map has more than 127 kinds of Terrain
+     */
+    public ArrayMap(Terrain[] terrains, int height, int width, int tileHeight,
+            int tileWidth) {
+        super(tileHeight, tileWidth);
+        this.height = height;
+        this.width = width;
+
+        IdentityHashMap<Terrain, Integer> ids = new IdentityHashMap<Terrain, Integer>();
+        terrain = new byte[height * width];
+        for (int i = 0; i < terrain.length; i++) {
+            Integer id = ids.get(terrains[i]);
+            if (id == null) {
+                id = ids.size();
+                if (id > Byte.MAX_VALUE)
+                    throw new IllegalArgumentException("too many terrains");
+                ids.put(terrains[i], id);
+            }
+            terrain[i] = (byte) (int) id;
+        }
+        terrainTypes = new Terrain[ids.size()];
+        movePenalty = new int[ids.size()];
+        for (java.util.Map.Entry<Terrain, Integer> e : ids.entrySet()) {
+            terrainTypes[e.getValue()] = e.getKey();
+            movePenalty[e.getValue()] = e.getKey().getMovePenalty();
+        }
+
+        unit = new int[height * width];
+        Arrays.fill(unit, NO_UNIT);
+        team = new byte[height * width];
+        hp = new int[height * width];
+        units = new Unit[INITIAL_UNITS];
+        unitRange = new int[INITIAL_UNITS];
+    }
+
+    @Override
+    Map emptyCopy() {
+        Terrain[] terrains = new Terrain[terrain.length];
+        for (int i = 0; i < terrains.length; i++)
+            terrains[i] = terrainTypes[terrain[i]];
+        return new ArrayMap(terrains, height, width, getTileHeight(),
+                getTileWidth());
+    }
+
+    @Override
+    public boolean validPosition(int x, int y) {
+        return x >= 0 && x < height && y >= 0 && y < width;
+    }
+
+    @Override
+    public boolean placeUnit(Unit unit, int x, int y) {
+        // Invalid unit/position or Tile already occupied
+        if (unit == null || !validPosition(x, y)
+                || this.unit[x * width + y] != NO_UNIT)
+            return false;
+
+        if (numUnits == units.length) {
+            units = Arrays.copyOf(units, 2 * numUnits);
+            unitRange = Arrays.copyOf(unitRange, 2 * numUnits);
+        }
+        int id = numUnits++;
+        units[id] = unit;
+        unitRange[id] = unit.getRange();
+        occupy(id, x, y);
+
+        return true;
+    }
+
+    @Override
+    void moveUnit(int xi, int yi, int xf, int yf) {
+        int from = xi * width + yi;
+        int to = xf * width + yf;
+        unit[to] = unit[from];
+        team[to] = team[from];
+        hp[to] = hp[from];
+        clear(from);
+        toggleHash(units[unit[to]], xi, yi);
+        toggleHash(units[unit[to]], xf, yf);
+    }
+
+    @Override
+    public boolean inRange(int xi, int yi, int xf, int yf) {
+        // Verify if coordinates are out of bounds
+        if (!validPosition(xi, yi) || !validPosition(xf, yf))
+            return false;
+
+        int attacker = unit[xi * width + yi];
+        if (attacker == NO_UNIT || unit[xf * width + yf] == NO_UNIT)
+            return false;
+
+        return Math.abs(xf - xi) + Math.abs(yf - yi) <= unitRange[attacker];
+    }
+
+    @Override
+    public boolean causeDamage(int x, int y, int damage) {
+        if (!validPosition(x, y))
+            return false;
+
+        int i = x * width + y;
+        if (unit[i] == NO_UNIT)
+            return false;
+
+        Unit damaged = units[unit[i]];
+        toggleHash(damaged, x, y);
+        damaged.loseHp(damage);
+        hp[i] -= damage;
+        boolean isDead = hp[i] <= 0;
+        if (!isDead)
+            toggleHash(damaged, x, y);
+        else {
+            if (team[i] == 1)
+                numUnitsA--;
+            else
+                numUnitsB--;
+            clear(i);
+        }
+
+        return isDead;
+    }
+
+    /**
+     * Returns a Tile describing position (x, y). The Tile is a copy: changing
+     * it doesn't change this Map.
+     * 
+     * @param x
+     *            x coordinate of the desired Tile
+     * @param y
+     *            y coordinate of the desired Tile
+     * 
+     * @return Tile on position (x, y)
+     */
+    @Override
+    public Tile getTile(int x, int y) {
+        int i = x * width + y;
+        Tile tile = new Tile(terrainTypes[terrain[i]]);
+        if (unit[i] != NO_UNIT)
+            tile.setUnit(units[unit[i]]);
+        return tile;
+    }
+
+    @Override
+    public Unit getUnit(int x, int y) {
+        int id = unit[x * width + y];
+        return id == NO_UNIT ? null : units[id];
+    }
+
+    @Override
+    public int getTeam(int x, int y) {
+        return team[x * width + y];
+    }
+
+    @Override
+    public int getCurrentHp(int x, int y) {
+        return hp[x * width + y];
+    }
+
+    @Override
+    Terrain getTerrain(int x, int y) {
+        return terrainTypes[terrain[x * width + y]];
+    }
+
+    @Override
+    public int getMovePenalty(int x, int y) {
+        return movePenalty[terrain[x * width + y]];
+    }
+
+    @Override
+    public int getMapHeight() {
+        return height;
+    }
+
+    @Override
+    public int getMapWidth() {
+        return width;
+    }
+
+    @Override
+    public int getNumUnitsA() {
+        return numUnitsA;
+    }
+
+    @Override
+    public int getNumUnitsB() {
+        return numUnitsB;
+    }
+
+    @Override
+    void heal(int x, int y, int amount) {
+        super.heal(x, y, amount);
+        hp[x * width + y] += amount;
+    }
+
+    @Override
+    void revive(Unit unit, int x, int y, int damage) {
+        // Dead Units keep their identifiers
+        int id = numUnits - 1;
+        while (id >= 0 && units[id] != unit)
+            id--;
+        if (id < 0) {
+            super.revive(unit, x, y, damage);
+            return;
+        }
+        unit.loseHp(-damage);
+        occupy(id, x, y);
+    }
+
+    /**
+     * Places a Unit already known by this Map on a free Tile.
+     * 
+     * @param id
+     *            identifier of the Unit
+     * @param x
+     *            x coordinate of the Tile
+     * @param y
+     *            y coordinate of the Tile
+     */
+    private void occupy(int id, int x, int y) {
+        Unit placed = units[id];
+        int i = x * width + y;
+        unit[i] = id;
+        team[i] = (byte) placed.getTeam();
+        hp[i] = placed.getCurrentHp();
+        toggleHash(placed, x, y);
+        if (placed.getTeam() == 1)
+            numUnitsA++;
+        else
+            numUnitsB++;
+    }
+
+    /**
+     * Removes the Unit, if any, from a Tile.
+     * 
+     * @param i
+     *            index of the Tile
+     */
+    private void clear(int i) {
+        unit[i] = NO_UNIT;
+        team[i] = 0;
+        hp[i] = 0;
+    }
+}
@@ -1,50 +1,47 @@
-package kindred.client.model;
+package kindred.common.model;
 
 /**
  * Class that defines a Unit's overall attributes that influence their
  * performance during the game.
+ * <p>
+ * Attributes are immutable, so a single instance is shared by every Unit of
+ * the same type; whatever changes during a game (e.g. current hit points) is
+ * kept by each Unit.
  * 
  * @author Kindred Team
  */
 
-public class Attribute {
+public final class Attribute {
     /**
      * Indicates a Unit's total hit points.
      */
-    private int totalHp;
-
-    /**
-     * Indicates a Unit's current hit points. When it reaches zero, it is
-     * considered dead.
-     */
-
-    private int currentHp;
+    private final int totalHp;
 
     /**
      * Raises damage caused by a Unit.
      */
-    private int attack;
+    private final int attack;
 
     /**
      * Reduces damage received by a Unit.
      */
-    private int defense;
+    private final int defense;
 
     /**
      * Raises chance of evading an enemy Unit's attack.
      */
-    private int agility;
+    private final int agility;
 
     /**
      * Indicates the maximum number of Tiles a Unit can move during each turn.
      */
-    private int movement;
+    private final int movement;
 
     /**
      * Indicates the maximum distance, in Tiles, that the Unit has to attack the
      * opponent's Units.
      */
-    private int range;
+    private final int range;
 
     /**
      * Constructs an Attribute.
@@ -63,7 +60,7 @@ public class Attribute {
      *            the Unit's maximum range
      */
     public Attribute(int hp, int atk, int def, int agi, int mov, int rng) {
-        this.totalHp = this.currentHp = hp;
+        this.totalHp = hp;
         this.attack = atk;
         this.defense = def;
         this.agility = agi;
@@ -80,26 +77,6 @@ public class Attribute {
         return totalHp;
     }
 
-    /**
-     * Returns the number of hit points remaining for the Unit.
-     * 
-     * @return the Unit's current hit points
-     */
-    public int getCurrentHp() {
-        return currentHp;
-    }
-
-    /**
-     * Reduces the Unit's current hit points according to the specified amount
-     * of damage.
-     * 
-     * @param damage
-     *            value to be subtracted from the Unit's current hit points
-     */
-    public void loseHp(int damage) {
-        this.currentHp -= damage;
-    }
-
     /**
      * Returns the Unit's attack value.
      * 
@@ -0,0 +1,190 @@
+package kindred.common.model;
+
+/**
+ * Calculates damage caused by a Unit to another Unit.
+ * <p>
+ * The odds of an attack only depend on the types of both Units and on the
+ * Terrains they stand on, so they can be computed once (see
+ * {@link BattleTable}) and then used to decide many attacks.
+ * <p>
+ * Given the same RandomSource, battles have the same results on every JVM:
+ * trigonometry is done by StrictMath, whose results are specified bit by bit.
+ * 
+ * @author Kindred Team
+ */
+public class Battle {
+
+    /**
+     * Random number generator.
+     */
+    private final RandomSource random;
+
+    /**
+     * Value added or subtracted to damage. Makes battles less predictable.
+     */
+    private static final double LUCK = 0.07;
+
+    /**
+     * Initializes the random number generator with the current time.
+     */
+    public Battle() {
+        this(new SplitMixRandom(System.currentTimeMillis()));
+    }
+
+    /**
+     * Constructs a Battle whose results are decided by the given source.
+     * 
+     * @param random
+     *            source of random numbers
+     */
+    public Battle(RandomSource random) {
+        this.random = random;
+    }
+
+    /**
+     * Checks if the Unit in the attacker Tile will hit the Unit in the defender
+     * Tile. Supposes that both given Tiles have a Unit placed on them.
+     * <p>
+     * Returns an integer representing damage:
+     * <ul>
+     * <li>If damage = 0, then the attack missed.
+     * <li>If damage &gt; 0, then it represents the damage received by the
+     * defending Unit.</li>
+     * </ul>
+     * 
+     * @param attacker
+     *            Tile containing the attacking Unit
+     * @param defender
+     *            Tile containing the defending Unit
+     * 
+     * @return damage received by the defending unit if the attack hit, or 0
+     *         otherwise
+     */
+    public int execute(Tile attacker, Tile defender) {
+        return execute(getOdds(attacker, defender));
+    }
+
+    /**
+     * Decides the result of an attack with the given odds.
+     * 
+     * @param odds
+     *            odds of the attack
+     * 
+     * @return damage received by the defending unit if the attack hit, or 0
+     *         otherwise
+     */
+    public int execute(BattleOdds odds) {
+        if (!odds.alwaysHits() && randomInteger(1, 100) > odds.getHitPercent())
+            return 0;
+
+        int results = odds.getHitResults();
+        return odds.getHitDamage(results == 1 ? 0 : randomInteger(0,
+                results - 1));
+    }
+
+    /**
+     * Computes the odds of an attack of the Unit in the attacker Tile on the
+     * Unit in the defender Tile. Supposes that both given Tiles have a Unit
+     * placed on them.
+     * 
+     * @param attacker
+     *            Tile containing the attacking Unit
+     * @param defender
+     *            Tile containing the defending Unit
+     * @return the odds of the attack
+     */
+    public static BattleOdds getOdds(Tile attacker, Tile defender) {
+        return computeOdds(attacker.getUnit().getAttribute(),
+                attacker.getTerrain(), defender.getUnit().getAttribute(),
+                defender.getTerrain());
+    }
+
+    /**
+     * Computes the odds of an attack between Units of the given types,
+     * standing on the given Terrains.
+     * 
+     * @param attackUnit
+     *            type of the attacking Unit
+     * @param attackTerrain
+     *            Terrain the attacking Unit stands on
+     * @param defendUnit
+     *            type of the defending Unit
+     * @param defendTerrain
+     *            Terrain the defending Unit stands on
+     * @return the odds of the attack
+     */
+    static BattleOdds computeOdds(Attribute attackUnit, Terrain attackTerrain,
+            Attribute defendUnit, Terrain defendTerrain) {
+        // Calculates agility (with modifiers) and the chance to hit
+        double attackerAgi = attackUnit.getAgility();
+        attackerAgi *= attackTerrain.getAgilityModifier() / 100.0;
+        double defenderAgi = defendUnit.getAgility();
+        defenderAgi *= defendTerrain.getAgilityModifier() / 100.0;
+        boolean alwaysHits = attackerAgi >= 2 * defenderAgi;
+        int hitPercent = alwaysHits ? 100 : hitPercent(attackerAgi,
+                defenderAgi);
+
+        double atk = attackUnit.getAttack();
+        double def = defendUnit.getDefense();
+        def *= defendTerrain.getDefenseModifier() / 100.0;
+
+        // Damage formula
+        double damage = (0.8 * atk + 0.2 * attackerAgi) - def;
+
+        if (damage < 1)
+            return new BattleOdds(alwaysHits, hitPercent, new int[] { 1 });
+
+        // Every luck bonus in [min, max] is equally likely
+        int min = (int) Math.ceil(-LUCK * damage);
+        int max = (int) Math.ceil(LUCK * damage);
+        int[] hitDamage = new int[max - min + 1];
+        for (int i = 0; i < hitDamage.length; i++)
+            hitDamage[i] = (int) (damage + (min + i));
+
+        return new BattleOdds(alwaysHits, hitPercent, hitDamage);
+    }
+
+    /**
+     * Calculates the chance of an attack hitting, when the attacker's agility
+     * is less than twice the defender's.
+     * 
+     * @param attackerAgi
+     *            agility of the attacking Unit, already considering the Terrain
+     *            modifier
+     * @param defenderAgi
+     *            agility of the defending Unit, already considering the Terrain
+     *            modifier
+     * 
+     * @return the chance of hitting, in percent
+     */
+    private static int hitPercent(double attackerAgi, double defenderAgi) {
+        double hitChance;
+
+        // Probability to hit is calculated with sin/cos functions for
+        // nonlinearity.
+        if (attackerAgi <= defenderAgi) {
+            hitChance = StrictMath.sin(attackerAgi / defenderAgi * Math.PI / 2);
+            hitChance *= 80;
+        } else {
+            hitChance = StrictMath.cos(attackerAgi / defenderAgi * Math.PI / 2);
+            hitChance = (-20 * hitChance) + 80;
+        }
+
+        return (int) hitChance;
+    }
+
+    /**
+     * Randomly generates and returns an integer in the interval [min, max].
+     * Supposes that min &le; max.
+     * 
+     * @param min
+     *            minimum possible integer that can be generated
+     * @param max
+     *            maximum possible integer that can be generated
+     * 
+     * @return an integer in range [min, max]
+     */
+    private int randomInteger(int min, int max) {
+        return random.nextInt((max - min) + 1) + min;
+    }
+}
@@ -0,0 +1,164 @@
+package kindred.common.model;
+
+/**
+ * Every possible result of an attack between two Units, each standing on its
+ * Terrain, and how likely it is. An attack either misses, causing no damage,
+ * or hits, causing one of a few equally likely amounts of damage.
+ * <p>
+ * BattleOdds are immutable. They are computed by {@link Battle} and usually
+ * looked up in a {@link BattleTable}, so that attacks can be evaluated, or
+ * decided, without any trigonometry.
+ * 
+ * @author Kindred Team
+ */
+public final class BattleOdds {
+
+    /**
+     * If {@code true}, then the attack always hits, without drawing a random
+     * number.
+     */
+    private final boolean alwaysHits;
+
+    /**
+     * Chance of hitting, in percent, if the attack may miss. The attack hits
+     * if a random integer in [1, 100] isn't greater than it.
+     */
+    private final int hitPercent;
+
+    /**
+     * Damage caused by each of the equally likely results of a hit. If there
+     * is more than one, one of them is chosen by a random integer.
+     */
+    private final int[] hitDamage;
+
+    /**
+     * Constructs a BattleOdds.
+     * 
+     * @param alwaysHits
+     *            if the attack always hits
+     * @param hitPercent
+     *            chance of hitting, in percent, if it may miss
+     * @param hitDamage
+     *            damage caused by each of the equally likely results of a hit
+     */
+    BattleOdds(boolean alwaysHits, int hitPercent, int[] hitDamage) {
+        this.alwaysHits = alwaysHits;
+        this.hitPercent = hitPercent;
+        this.hitDamage = hitDamage;
+    }
+
+    /**
+     * Returns the probability of the attack hitting.
+     * 
+     * @return the probability of a hit, in [0, 1]
+     */
+    public double getHitProbability() {
+        if (alwaysHits)
+            return 1;
+        return Math.max(0, Math.min(100, hitPercent)) / 100.0;
+    }
+
+    /**
+     * Returns the least damage a hit can cause.
+     * 
+     * @return the least damage of a hit
+     */
+    public int getMinDamage() {
+        return hitDamage[0];
+    }
+
+    /**
+     * Returns the most damage a hit can cause.
+     * 
+     * @return the most damage of a hit
+     */
+    public int getMaxDamage() {
+        return hitDamage[hitDamage.length - 1];
+    }
+
+    /**
+     * Returns the probability of the attack causing exactly the given damage.
+     * A damage of 0 means that the attack missed.
+     * 
+     * @param damage
+     *            the damage
+     * @return the probability of causing that damage, in [0, 1]
+     */
+    public double getDamageProbability(int damage) {
+        double hit = getHitProbability();
+        double p = damage == 0 ? 1 - hit : 0;
+        for (int d : hitDamage)
+            if (d == damage)
+                p += hit / hitDamage.length;
+        return p;
+    }
+
+    /**
+     * Returns the average damage caused by the attack, counting misses.
+     * 
+     * @return the expected damage
+     */
+    public double getExpectedDamage() {
+        long sum = 0;
+        for (int d : hitDamage)
+            sum += d;
+        return getHitProbability() * sum / hitDamage.length;
+    }
+
+    /**
+     * Returns the probability of the attack killing a Unit with the given hit
+     * points, i.e. of causing at least that damage.
+     * 
+     * @param hp
+     *            current hit points of the defender
+     * @return the probability of killing the defender, in [0, 1]
+     */
+    public double getKillProbability(int hp) {
+        if (hp <= 0)
+            return 1;
+        int kills = 0;
+        for (int d : hitDamage)
+            if (d >= hp)
+                kills++;
+        return getHitProbability() * kills / hitDamage.length;
+    }
+
+    /**
+     * Returns {@code true} if the attack always hits, without drawing a random
+     * number.
+     * 
+     * @return if the attack always hits
+     */
+    boolean alwaysHits() {
+        return alwaysHits;
+    }
+
+    /**
+     * Returns the chance of hitting, in percent, if the attack may miss.
+     * 
+     * @return the chance of hitting
+     */
+    int getHitPercent() {
+        return hitPercent;
+    }
+
+    /**
+     * Returns the number of equally likely results of a hit.
+     * 
+     * @return the number of results of a hit
+     */
+    int getHitResults() {
+        return hitDamage.length;
+    }
+
+    /**
+     * Returns the damage caused by one of the results of a hit.
+     * 
+     * @param i
+     *            index of the result, from 0 to {@code getHitResults() - 1}
+     * @return the damage caused by that result
+     */
+    int getHitDamage(int i) {
+        return hitDamage[i];
+    }
+}
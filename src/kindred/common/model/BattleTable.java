@@ -0,0 +1,102 @@
+package kindred.common.model;
+
+/**
+ * Precomputed odds of every attack between the Unit types and Terrains of a
+ * Map, indexed by (attacker type, defender type, attacker Terrain, defender
+ * Terrain). Looking odds up costs a few comparisons instead of the
+ * trigonometry of computing them.
+ * <p>
+ * A BattleTable is immutable, so it's shared by every Map instantiated from
+ * the same template. A Map only has a handful of Unit types and Terrains, so
+ * they are looked up by scanning short arrays.
+ * 
+ * @author Kindred Team
+ */
+public final class BattleTable {
+
+    /**
+     * Unit types covered by this table.
+     */
+    private final Attribute[] types;
+
+    /**
+     * Terrains covered by this table.
+     */
+    private final Terrain[] terrains;
+
+    /**
+     * Odds of every attack, indexed by attacker type, defender type, attacker
+     * Terrain and defender Terrain, the last one varying fastest.
+     */
+    private final BattleOdds[] odds;
+
+    /**
+     * Constructs a BattleTable, computing the odds of every attack between
+     * the given Unit types standing on the given Terrains.
+     * 
+     * @param types
+     *            Unit types to be covered, without repetitions
+     * @param terrains
+     *            Terrains to be covered, without repetitions
+     */
+    public BattleTable(Attribute[] types, Terrain[] terrains) {
+        this.types = types.clone();
+        this.terrains = terrains.clone();
+        int t = types.length;
+        int r = terrains.length;
+        odds = new BattleOdds[t * t * r * r];
+        int i = 0;
+        for (Attribute attacker : types)
+            for (Attribute defender : types)
+                for (Terrain attackTerrain : terrains)
+                    for (Terrain defendTerrain : terrains)
+                        odds[i++] = Battle.computeOdds(attacker,
+                                attackTerrain, defender, defendTerrain);
+    }
+
+    /**
+     * Returns the odds of an attack between the given Units, standing on the
+     * given Terrains. Units or Terrains not covered by this table have their
+     * odds computed.
+     * 
+     * @param attacker
+     *            the attacking Unit
+     * @param attackTerrain
+     *            Terrain the attacking Unit stands on
+     * @param defender
+     *            the defending Unit
+     * @param defendTerrain
+     *            Terrain the defending Unit stands on
+     * @return the odds of the attack
+     */
+    public BattleOdds getOdds(Unit attacker, Terrain attackTerrain,
+            Unit defender, Terrain defendTerrain) {
+        int a = indexOf(types, attacker.getAttribute());
+        int d = indexOf(types, defender.getAttribute());
+        int at = indexOf(terrains, attackTerrain);
+        int dt = indexOf(terrains, defendTerrain);
+        if (a < 0 || d < 0 || at < 0 || dt < 0)
+            return Battle.computeOdds(attacker.getAttribute(), attackTerrain,
+                    defender.getAttribute(), defendTerrain);
+
+        int t = types.length;
+        int r = terrains.length;
+        return odds[((a * t + d) * r + at) * r + dt];
+    }
+
+    /**
+     * Returns the index of an object in an array, comparing references.
+     * 
+     * @param array
+     *            array to be searched
+     * @param o
+     *            object to be found
+     * @return the index of the object, or -1 if it isn't found
+     */
+    private static int indexOf(Object[] array, Object o) {
+        for (int i = 0; i < array.length; i++)
+            if (array[i] == o)
+                return i;
+        return -1;
+    }
+}
@@ -0,0 +1,884 @@
+package kindred.common.model;
+
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+import kindred.common.GameActionEnum;
+
+/**
+ * Represents a game match where two Players battle against each other.
+ * 
+ * @author Kindred Team
+ */
+public class Game {
+
+    /**
+     * Every action, indexed by ordinal.
+     */
+    private static final GameActionEnum[] ACTIONS = GameActionEnum.values();
+
+    /**
+     * Flag of a logged attack whose defender had moved this turn.
+     */
+    private static final int DEFENDER_MOVED = 1;
+
+    /**
+     * Flag of a logged attack whose defender had attacked this turn.
+     */
+    private static final int DEFENDER_ATTACKED = 2;
+
+    /**
+     * Flag of a logged attack whose defender died.
+     */
+    private static final int DEFENDER_DIED = 4;
+
+    /**
+     * Moves and attacks available to a Unit standing on some Tile, regardless
+     * of whose turn it is.
+     */
+    private static final class Options {
+
+        /**
+         * Index ({@code x * width + y}) of the Tile on which the Unit stands.
+         */
+        final int position;
+
+        /**
+         * Changes on Tiles farther than this from the Unit don't change its
+         * options.
+         */
+        final int radius;
+
+        /**
+         * Tiles to which the Unit can move, as {x, y} pairs.
+         */
+        final int[] destinations;
+
+        /**
+         * Tiles of the enemy Units within the Unit's range, as {x, y} pairs.
+         */
+        final int[] targets;
+
+        /**
+         * Constructs an Options.
+         * 
+         * @param position
+         *            index of the Tile on which the Unit stands
+         * @param radius
+         *            distance beyond which changes don't change the options
+         * @param destinations
+         *            Tiles to which the Unit can move
+         * @param targets
+         *            Tiles of the enemy Units within the Unit's range
+         */
+        Options(int position, int radius, int[] destinations, int[] targets) {
+            this.position = position;
+            this.radius = radius;
+            this.destinations = destinations;
+            this.targets = targets;
+        }
+    }
+
+    /**
+     * Map played by both Players.
+     */
+    private Map map;
+
+    /**
+     * Set for all Units that have moved this turn. Units are compared by
+     * identity, so adding and removing them allocates nothing.
+     */
+    private Set<Unit> unitsThatMoved;
+
+    /**
+     * Set for all Units that have attacked this turn. Units are compared by
+     * identity, so adding and removing them allocates nothing.
+     */
+    private Set<Unit> unitsThatAttacked;
+
+    /**
+     * Log of the actions made with {@link #apply}, so that they can be
+     * reverted. Each action is logged as its fields followed by its ordinal.
+     */
+    private long[] undoLog = new long[64];
+
+    /**
+     * Number of entries in {@code undoLog}.
+     */
+    private int undoSize;
+
+    /**
+     * Units referenced by {@code undoLog}, i.e., Units that died or whose
+     * flags were cleared by the logged actions.
+     */
+    private Unit[] undoUnits = new Unit[16];
+
+    /**
+     * Number of entries in {@code undoUnits}.
+     */
+    private int undoUnitCount;
+
+    /**
+     * Options of the Units whose options were asked for, kept until a change
+     * on the Map may change them.
+     */
+    private final IdentityHashMap<Unit, Options> options;
+
+    /**
+     * XOR of the Zobrist keys of the moved and attacked flags of the current
+     * turn.
+     */
+    private long flagsHash;
+
+    /**
+     * Controls which Player is playing at the moment.
+     */
+    private int turn;
+
+    /**
+     * Stores the status of the match: {@code true} if finished, {@code false}
+     * otherwise.
+     */
+    private boolean isOver;
+
+    /**
+     * Team of the user playing this Game, or 0 if the Game is refereed by the
+     * Server on behalf of both players.
+     */
+    private final int team;
+
+    /**
+     * Constructs a Game with an empty Map. Battles are decided by a source
+     * seeded with the current time.
+     * 
+     * @param nameA
+     *            playerA's name
+     * @param nameB
+     *            playerB's name
+     * @param mapFile
+     *            name of the file containing Map to be played on
+     * @param team
+     *            user's ID representing which team he will play on, or 0 if
+     *            the Game is played by none of the users
+     * @throws IllegalArgumentException
+     *             if the map file doesn't exist or is invalid
+     */
+    public Game(String nameA, String nameB, String mapFile, int team) {
+        this(nameA, nameB, mapFile, team, new SplitMixRandom(System
+                .currentTimeMillis()));
+    }
+
+    /**
+     * Constructs a Game with an empty Map, whose battles are decided by the
+     * given source. Games made of the same actions with sources built alike
+     * (e.g. from the same seed) have the same results.
+     * 
+     * @param nameA
+     *            playerA's name
+     * @param nameB
+     *            playerB's name
+     * @param mapFile
+     *            name of the file containing Map to be played on
+     * @param team
+     *            user's ID representing which team he will play on, or 0 if
+     *            the Game is played by none of the users
+     * @param random
+     *            source of random numbers used in battles
+     * @throws IllegalArgumentException
+     *             if the map file doesn't exist or is invalid
+     */
+    public Game(String nameA, String nameB, String mapFile, int team,
+            RandomSource random) {
+        try {
+            // The file is parsed only by the first Game played on this Map
+            map = MapTemplate.get(mapFile).instantiate();
+        } catch (FileNotFoundException e) {
+            throw new IllegalArgumentException("Map file not found: "
+                    + mapFile, e);
+        }
+        map.setRandomSource(random);
+
+        unitsThatMoved = Collections
+                .newSetFromMap(new IdentityHashMap<Unit, Boolean>());
+        unitsThatAttacked = Collections
+                .newSetFromMap(new IdentityHashMap<Unit, Boolean>());
+        options = new IdentityHashMap<Unit, Options>();
+
+        turn = 1;
+        isOver = false;
+        this.team = team;
+    }
+
+    /**
+     * Constructs a Game in the same state as another one, with a copy of its
+     * Map, so that either Game can be played without changing the other (e.g.
+     * by a search on another thread). Battles on the copy are decided by a
+     * source seeded with the current time, and there is nothing to undo.
+     * 
+     * @param other
+     *            the Game to be copied
+     */
+    public Game(Game other) {
+        map = other.map.copy();
+        unitsThatMoved = Collections
+                .newSetFromMap(new IdentityHashMap<Unit, Boolean>());
+        unitsThatAttacked = Collections
+                .newSetFromMap(new IdentityHashMap<Unit, Boolean>());
+        for (int i = 0; i < map.getMapHeight(); i++)
+            for (int j = 0; j < map.getMapWidth(); j++) {
+                Unit unit = other.map.getUnit(i, j);
+                if (other.unitsThatMoved.contains(unit))
+                    unitsThatMoved.add(map.getUnit(i, j));
+                if (other.unitsThatAttacked.contains(unit))
+                    unitsThatAttacked.add(map.getUnit(i, j));
+            }
+        options = new IdentityHashMap<Unit, Options>();
+        flagsHash = other.flagsHash;
+
+        turn = other.turn;
+        isOver = other.isOver;
+        team = other.team;
+    }
+
+    /**
+     * Moves Unit from the specified team on Tile (xi, yi) to Tile (xf, yf) on
+     * this Map during the current player's turn. Supposes that all given
+     * coordinates are valid, i.e., not outside borders of this Map.
+     * <p>
+     * Returns {@code true} if movement was successful or {@code false}
+     * otherwise.
+     * 
+     * @param xi
+     *            x coordinate of the Unit to be moved
+     * @param yi
+     *            y coordinate of the Unit to be moved
+     * @param xf
+     *            x coordinate of the destination Tile
+     * @param yf
+     *            y coordinate of the destination Tile
+     * @return {@code true}, if movement was successful, or {@code false}
+     *         otherwise
+     */
+    public boolean move(int xi, int yi, int xf, int yf) {
+        if (!mayMove(xi, yi)
+                || !contains(optionsAt(xi, yi).destinations, xf, yf))
+            return false;
+
+        Unit unit = map.getUnit(xi, yi);
+        map.moveUnit(xi, yi, xf, yf);
+        unitMoved(unit, xi, yi, xf, yf);
+        return true;
+    }
+
+    /**
+     * Moves a Unit from Tile (xi, yi) to Tile (xf, yf) without making any
+     * assumption, i.e., checking if the Unit exists, its team, etc. The Unit
+     * is still marked as having moved this turn.
+     * 
+     * @param xi
+     *            x coordinate of the Unit to be moved
+     * @param yi
+     *            y coordinate of the Unit to be moved
+     * @param xf
+     *            x coordinate of the destination Tile
+     * @param yf
+     *            y coordinate of the destination Tile
+     */
+    public void forceMovement(int xi, int yi, int xf, int yf) {
+        Unit unit = map.validPosition(xi, yi) ? map.getUnit(xi, yi) : null;
+        if (map.move(xi, yi, xf, yf))
+            unitMoved(unit, xi, yi, xf, yf);
+    }
+
+    /**
+     * Makes the Unit on Tile (xi, yi) attack the Unit on Tile (xf, yf), if
+     * possible, on the current player's turn. Returns an integer representing
+     * damage:
+     * <ul>
+     * <li>If damage = -1, then the attack wasn't possible to be done.</li>
+     * <li>If damage &ge; 0, then it represents the damage received by the
+     * defending Unit.</li>
+     * </ul>
+     * 
+     * @param xi
+     *            x coordinate of the attacker
+     * @param yi
+     *            y coordinate of the attacker
+     * @param xf
+     *            x coordinate of the defender
+     * @param yf
+     *            y coordinate of the defender
+     * @return damage received by the defending unit if the attack succeeded, or
+     *         -1 otherwise
+     */
+    public int attack(int xi, int yi, int xf, int yf) {
+        if (!canAttack(xi, yi, xf, yf))
+            return -1;
+
+        int damage = map.attack(xi, yi, xf, yf);
+        if (damage >= 0)
+            applyAttack(xi, yi, xf, yf, damage);
+        return damage;
+    }
+
+    /**
+     * Checks if the Unit on Tile (x, y) belongs to the current player and can
+     * still move this turn, without moving it.
+     * 
+     * @param x
+     *            x coordinate of the Unit
+     * @param y
+     *            y coordinate of the Unit
+     * @return {@code true}, if the Unit can move, or {@code false} otherwise
+     */
+    public boolean canMove(int x, int y) {
+        return mayMove(x, y);
+    }
+
+    /**
+     * Checks if the Unit on Tile (xi, yi) can attack the Unit on Tile (xf, yf)
+     * on the current player's turn, without attacking it.
+     * 
+     * @param xi
+     *            x coordinate of the attacker
+     * @param yi
+     *            y coordinate of the attacker
+     * @param xf
+     *            x coordinate of the defender
+     * @param yf
+     *            y coordinate of the defender
+     * @return {@code true}, if the attack is possible, or {@code false}
+     *         otherwise
+     */
+    public boolean canAttack(int xi, int yi, int xf, int yf) {
+        return mayAttack(xi, yi, xf, yf)
+                && contains(optionsAt(xi, yi).targets, xf, yf);
+    }
+
+    /**
+     * Applies the result of an attack made by the Unit on Tile (xi, yi) to the
+     * Unit on Tile (xf, yf), whose damage was determined elsewhere (e.g. by
+     * the Server). The attacker can't attack again this turn.
+     * 
+     * @param xi
+     *            x coordinate of the attacker
+     * @param yi
+     *            y coordinate of the attacker
+     * @param xf
+     *            x coordinate of the defender
+     * @param yf
+     *            y coordinate of the defender
+     * @param damage
+     *            damage received by the defending Unit
+     * @return {@code true}, if the defending Unit is dead, or {@code false}
+     *         otherwise
+     */
+    public boolean applyAttack(int xi, int yi, int xf, int yf, int damage) {
+        if (map.validPosition(xi, yi) && map.getUnit(xi, yi) != null
+                && unitsThatAttacked.add(map.getUnit(xi, yi)))
+            flagsHash ^= Zobrist.attacked(xi * map.getMapWidth() + yi);
+        return causeDamage(xf, yf, damage);
+    }
+
+    /**
+     * Directly causes the specified amount of damage to the Unit on Tile (x, y)
+     * of the Map. Supposes that a Unit exists on the specified Tile. Returns
+     * {@code true} if the Unit is dead, i.e., has no more hit points left, or
+     * {@code false} otherwise.
+     * 
+     * @param x
+     *            x coordinate of the Unit that will take damage
+     * @param y
+     *            y coordinate of the Unit that will take damage
+     * @param damage
+     *            damage to be caused to the Unit
+     * @return {@code true}, if the Unit is dead, or {@code false} otherwise
+     */
+    public boolean causeDamage(int x, int y, int damage) {
+        Unit unit = map.validPosition(x, y) ? map.getUnit(x, y) : null;
+        boolean isDead = map.causeDamage(x, y, damage);
+        if (isDead) {
+            options.remove(unit);
+            invalidate(x, y);
+            int position = x * map.getMapWidth() + y;
+            if (unitsThatMoved.remove(unit))
+                flagsHash ^= Zobrist.moved(position);
+            if (unitsThatAttacked.remove(unit))
+                flagsHash ^= Zobrist.attacked(position);
+        }
+        if (Math.min(map.getNumUnitsA(), map.getNumUnitsB()) <= 0)
+            isOver = true;
+        return isDead;
+    }
+
+    /**
+     * Returns the Map being played in the Game.
+     * 
+     * @return the Map being played in the Game
+     */
+    public Map getMap() {
+        return map;
+    }
+
+    /**
+     * Returns the Tiles to which the Unit on Tile (x, y) can move, whether or
+     * not it's its turn. The result is kept until a change on the Map may
+     * change it, so asking again is just a lookup.
+     * 
+     * @param x
+     *            x coordinate of the Unit
+     * @param y
+     *            y coordinate of the Unit
+     * @return the destinations, as {x, y} pairs; empty if there is no Unit on
+     *         the Tile. Must not be modified
+     */
+    public int[] getDestinations(int x, int y) {
+        Options o = optionsAt(x, y);
+        return o == null ? new int[0] : o.destinations;
+    }
+
+    /**
+     * Returns the Tiles of the enemy Units that the Unit on Tile (x, y) can
+     * attack, whether or not it's its turn. The result is kept until a change
+     * on the Map may change it, so asking again is just a lookup.
+     * 
+     * @param x
+     *            x coordinate of the Unit
+     * @param y
+     *            y coordinate of the Unit
+     * @return the targets, as {x, y} pairs; empty if there is no Unit on the
+     *         Tile. Must not be modified
+     */
+    public int[] getTargets(int x, int y) {
+        Options o = optionsAt(x, y);
+        return o == null ? new int[0] : o.targets;
+    }
+
+    /**
+     * Makes the current player forfeit the match.
+     */
+    public void surrender() {
+        isOver = true;
+    }
+
+    /**
+     * Ends the current player's turn, letting the next user take action.
+     * 
+     */
+    public void endTurn() {
+        turn ^= 0x03; // 1 <-> 2
+        unitsThatMoved.clear();
+        unitsThatAttacked.clear();
+        flagsHash = 0;
+    }
+
+    /**
+     * Makes an action on the current player's turn, logging it so that it can
+     * be reverted by {@link #undo()}. An attack causes the given damage,
+     * instead of a random one, so that searches can try the outcomes they
+     * want.
+     * <p>
+     * The log keeps just numbers and references to Units, in buffers that
+     * only grow to fit the longest sequence of actions not undone, so making
+     * and undoing actions allocates nothing after that.
+     * 
+     * @param action
+     *            action to be made
+     * @param xi
+     *            x coordinate of the Unit to be moved or attacker, if any
+     * @param yi
+     *            y coordinate of the Unit to be moved or attacker, if any
+     * @param xf
+     *            x coordinate of the destination Tile or defender, if any
+     * @param yf
+     *            y coordinate of the destination Tile or defender, if any
+     * @param damage
+     *            damage received by the defender of an attack
+     * @return {@code true}, if the action was made, or {@code false} if it's
+     *         not allowed (and then nothing is logged)
+     */
+    public boolean apply(GameActionEnum action, int xi, int yi, int xf,
+            int yf, int damage) {
+        boolean wasOver = isOver;
+        switch (action) {
+        case MOVE:
+            if (!mayMove(xi, yi) || !map.canMove(xi, yi, xf, yf))
+                return false;
+            Unit unit = map.getUnit(xi, yi);
+            map.moveUnit(xi, yi, xf, yf);
+            unitMoved(unit, xi, yi, xf, yf);
+            log(xi, yi, xf, yf);
+            break;
+
+        case ATTACK:
+            if (!mayAttack(xi, yi, xf, yf) || !map.inRange(xi, yi, xf, yf))
+                return false;
+            Unit defender = map.getUnit(xf, yf);
+            int flags = (unitsThatMoved.contains(defender) ? DEFENDER_MOVED : 0)
+                    | (unitsThatAttacked.contains(defender) ? DEFENDER_ATTACKED
+                            : 0);
+            if (applyAttack(xi, yi, xf, yf, damage)) {
+                logUnit(defender);
+                flags |= DEFENDER_DIED;
+            }
+            log(xi, yi, xf, yf);
+            log(damage);
+            log(flags);
+            break;
+
+        case END_TURN:
+            for (Unit u : unitsThatMoved)
+                logUnit(u);
+            for (Unit u : unitsThatAttacked)
+                logUnit(u);
+            log(unitsThatMoved.size());
+            log(unitsThatAttacked.size());
+            log(flagsHash);
+            endTurn();
+            break;
+
+        default:
+            surrender();
+        }
+        log(wasOver ? 1 : 0);
+        log(action.ordinal());
+        return true;
+    }
+
+    /**
+     * Reverts the last action made with {@link #apply} and not yet undone.
+     * Supposes that the Game wasn't changed by other means since the action
+     * was made.
+     * 
+     * @return {@code true}, if an action was undone, or {@code false} if
+     *         there was none
+     */
+    public boolean undo() {
+        if (undoSize == 0)
+            return false;
+
+        GameActionEnum action = ACTIONS[(int) undoLog[--undoSize]];
+        isOver = undoLog[--undoSize] != 0;
+        int width = map.getMapWidth();
+        switch (action) {
+        case MOVE: {
+            int yf = (int) undoLog[--undoSize];
+            int xf = (int) undoLog[--undoSize];
+            int yi = (int) undoLog[--undoSize];
+            int xi = (int) undoLog[--undoSize];
+            Unit unit = map.getUnit(xf, yf);
+            map.moveUnit(xf, yf, xi, yi);
+            invalidate(xi, yi);
+            invalidate(xf, yf);
+            unitsThatMoved.remove(unit);
+            flagsHash ^= Zobrist.moved(xf * width + yf);
+            break;
+        }
+
+        case ATTACK: {
+            int flags = (int) undoLog[--undoSize];
+            int damage = (int) undoLog[--undoSize];
+            int yf = (int) undoLog[--undoSize];
+            int xf = (int) undoLog[--undoSize];
+            int yi = (int) undoLog[--undoSize];
+            int xi = (int) undoLog[--undoSize];
+            if ((flags & DEFENDER_DIED) != 0) {
+                Unit defender = undoUnits[--undoUnitCount];
+                undoUnits[undoUnitCount] = null;
+                map.revive(defender, xf, yf, damage);
+                invalidate(xf, yf);
+                if ((flags & DEFENDER_MOVED) != 0) {
+                    unitsThatMoved.add(defender);
+                    flagsHash ^= Zobrist.moved(xf * width + yf);
+                }
+                if ((flags & DEFENDER_ATTACKED) != 0) {
+                    unitsThatAttacked.add(defender);
+                    flagsHash ^= Zobrist.attacked(xf * width + yf);
+                }
+            } else {
+                map.heal(xf, yf, damage);
+            }
+            unitsThatAttacked.remove(map.getUnit(xi, yi));
+            flagsHash ^= Zobrist.attacked(xi * width + yi);
+            break;
+        }
+
+        case END_TURN: {
+            flagsHash = undoLog[--undoSize];
+            int attacked = (int) undoLog[--undoSize];
+            int moved = (int) undoLog[--undoSize];
+            turn ^= 0x03;
+            for (int i = 0; i < attacked; i++) {
+                unitsThatAttacked.add(undoUnits[--undoUnitCount]);
+                undoUnits[undoUnitCount] = null;
+            }
+            for (int i = 0; i < moved; i++) {
+                unitsThatMoved.add(undoUnits[--undoUnitCount]);
+                undoUnits[undoUnitCount] = null;
+            }
+            break;
+        }
+
+        default:
+            // Surrendering only changed isOver
+        }
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the Game has ended, i.e., one of the players lost
+     * all of their Units, or {@code false} otherwise.
+     * 
+     * @return {@code true} if the Game ended, or {@code false} otherwise
+     */
+    public boolean isOver() {
+        return isOver;
+    }
+
+    /**
+     * Returns the team of the user playing this Game.
+     * 
+     * @return the user's team (1 or 2), or 0 if the Game is played by none of
+     *         the users
+     */
+    public int getTeam() {
+        return team;
+    }
+
+    /**
+     * Returns the identifier of the current player's turn.
+     * 
+     * @return identifier of the current player's turn
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * Returns a Zobrist fingerprint of the state of this Game: the Units on
+     * the Map (see {@link Map#getHash()}), which of them moved or attacked
+     * this turn, and whose turn it is. It's updated incrementally, so it's
+     * cheap enough to index transposition tables or to be compared between
+     * the two players to detect that their Games diverged.
+     * 
+     * @return the fingerprint of this Game
+     */
+    public long getHash() {
+        return map.getHash() ^ flagsHash
+                ^ (turn == 2 ? Zobrist.secondPlayer() : 0);
+    }
+
+    /**
+     * Updates the moved and attacked flags and the known options after a Unit
+     * moved from Tile (xi, yi) to Tile (xf, yf).
+     * 
+     * @param unit
+     *            the Unit that moved
+     * @param xi
+     *            x coordinate of the Unit's former Tile
+     * @param yi
+     *            y coordinate of the Unit's former Tile
+     * @param xf
+     *            x coordinate of the Unit's new Tile
+     * @param yf
+     *            y coordinate of the Unit's new Tile
+     */
+    private void unitMoved(Unit unit, int xi, int yi, int xf, int yf) {
+        invalidate(xi, yi);
+        invalidate(xf, yf);
+
+        int from = xi * map.getMapWidth() + yi;
+        int to = xf * map.getMapWidth() + yf;
+        if (!unitsThatMoved.add(unit))
+            flagsHash ^= Zobrist.moved(from);
+        flagsHash ^= Zobrist.moved(to);
+        if (unitsThatAttacked.contains(unit))
+            flagsHash ^= Zobrist.attacked(from) ^ Zobrist.attacked(to);
+    }
+
+    /**
+     * Checks if the Unit on Tile (x, y) belongs to the current player and can
+     * still move this turn.
+     * 
+     * @param x
+     *            x coordinate of the Unit
+     * @param y
+     *            y coordinate of the Unit
+     * @return {@code true}, if the Unit can move, or {@code false} otherwise
+     */
+    private boolean mayMove(int x, int y) {
+        if (!map.validPosition(x, y))
+            return false;
+
+        if (map.getTeam(x, y) != turn)
+            return false;
+        Unit unit = map.getUnit(x, y);
+        return !unitsThatMoved.contains(unit)
+                && !unitsThatAttacked.contains(unit);
+    }
+
+    /**
+     * Checks if the Unit on Tile (xi, yi) belongs to the current player and
+     * can still attack this turn, and if there is an enemy Unit on Tile (xf,
+     * yf), regardless of range.
+     * 
+     * @param xi
+     *            x coordinate of the attacker
+     * @param yi
+     *            y coordinate of the attacker
+     * @param xf
+     *            x coordinate of the defender
+     * @param yf
+     *            y coordinate of the defender
+     * @return {@code true}, if the attack is allowed, or {@code false}
+     *         otherwise
+     */
+    private boolean mayAttack(int xi, int yi, int xf, int yf) {
+        if (!map.validPosition(xi, yi) || !map.validPosition(xf, yf))
+            return false;
+
+        int defender = map.getTeam(xf, yf);
+        if (map.getTeam(xi, yi) != turn || defender == 0 || defender == turn)
+            return false;
+        return !unitsThatAttacked.contains(map.getUnit(xi, yi));
+    }
+
+    /**
+     * Adds the coordinates of an action to the undo log.
+     * 
+     * @param xi
+     *            x coordinate of the Unit to be moved or attacker
+     * @param yi
+     *            y coordinate of the Unit to be moved or attacker
+     * @param xf
+     *            x coordinate of the destination Tile or defender
+     * @param yf
+     *            y coordinate of the destination Tile or defender
+     */
+    private void log(int xi, int yi, int xf, int yf) {
+        log(xi);
+        log(yi);
+        log(xf);
+        log(yf);
+    }
+
+    /**
+     * Adds a number to the undo log.
+     * 
+     * @param value
+     *            number to be logged
+     */
+    private void log(long value) {
+        if (undoSize == undoLog.length)
+            undoLog = Arrays.copyOf(undoLog, 2 * undoSize);
+        undoLog[undoSize++] = value;
+    }
+
+    /**
+     * Adds a Unit to the Units referenced by the undo log.
+     * 
+     * @param unit
+     *            Unit to be logged
+     */
+    private void logUnit(Unit unit) {
+        if (undoUnitCount == undoUnits.length)
+            undoUnits = Arrays.copyOf(undoUnits, 2 * undoUnitCount);
+        undoUnits[undoUnitCount++] = unit;
+    }
+
+    /**
+     * Returns the options of the Unit on Tile (x, y), finding them if they
+     * aren't known.
+     * 
+     * @param x
+     *            x coordinate of the Unit
+     * @param y
+     *            y coordinate of the Unit
+     * @return the Unit's options, or {@code null} if there is no Unit on the
+     *         Tile
+     */
+    private Options optionsAt(int x, int y) {
+        if (!map.validPosition(x, y))
+            return null;
+        Unit unit = map.getUnit(x, y);
+        if (unit == null)
+            return null;
+
+        Options o = options.get(unit);
+        if (o != null)
+            return o;
+
+        Reachability reachability = map.reachableFrom(x, y);
+        int[] destinations = new int[2 * reachability.size()];
+        for (int i = 0; i < reachability.size(); i++) {
+            destinations[2 * i] = reachability.getX(i);
+            destinations[2 * i + 1] = reachability.getY(i);
+        }
+
+        int range = unit.getRange();
+        int[] targets = new int[4 * range * (range + 1)];
+        int n = 0;
+        for (int dx = -range; dx <= range; dx++) {
+            int reach = range - Math.abs(dx);
+            for (int dy = -reach; dy <= reach; dy++) {
+                if (!map.validPosition(x + dx, y + dy))
+                    continue;
+                int other = map.getTeam(x + dx, y + dy);
+                if (other != 0 && other != unit.getTeam()) {
+                    targets[n++] = x + dx;
+                    targets[n++] = y + dy;
+                }
+            }
+        }
+
+        int radius = Math.max(Math.max(unit.getMove(), range), 1);
+        o = new Options(x * map.getMapWidth() + y, radius, destinations,
+                Arrays.copyOf(targets, n));
+        options.put(unit, o);
+        return o;
+    }
+
+    /**
+     * Forgets the options of every Unit that may be changed by a Unit
+     * entering or leaving Tile (x, y).
+     * 
+     * @param x
+     *            x coordinate of the changed Tile
+     * @param y
+     *            y coordinate of the changed Tile
+     */
+    private void invalidate(int x, int y) {
+        int width = map.getMapWidth();
+        Iterator<Options> it = options.values().iterator();
+        while (it.hasNext()) {
+            Options o = it.next();
+            int ox = o.position / width;
+            int oy = o.position % width;
+            if (Math.abs(ox - x) + Math.abs(oy - y) <= o.radius)
+                it.remove();
+        }
+    }
+
+    /**
+     * Checks if a list of Tiles contains Tile (x, y).
+     * 
+     * @param tiles
+     *            Tiles, as {x, y} pairs
+     * @param x
+     *            x coordinate of the Tile
+     * @param y
+     *            y coordinate of the Tile
+     * @return {@code true}, if the Tile is in the list, or {@code false}
+     *         otherwise
+     */
+    private static boolean contains(int[] tiles, int x, int y) {
+        for (int i = 0; i < tiles.length; i += 2)
+            if (tiles[i] == x && tiles[i + 1] == y)
+                return true;
+        return false;
+    }
+}
@@ -0,0 +1,673 @@
+package kindred.common.model;
+
+/**
+ * Handles events related to a Map in the Game. A Map is divided into many
+ * Tiles.
+ * <p>
+ * This class keeps the Tiles as objects; ArrayMap offers the same API over
+ * flat arrays of primitives.
+ * 
+ * @author Kindred Team
+ */
+public class Map {
+
+    /**
+     * Representation of this Map as a 2x2 Tile matrix.
+     */
+    private final Tile[][] tiles;
+
+    /**
+     * Graphical measurement of the height of each Tile.
+     */
+    private final int tileHeight;
+
+    /**
+     * Graphical measurement of the width of each Tile.
+     */
+    private final int tileWidth;
+
+    /**
+     * Number of units that the first player has on the Map.
+     */
+    private int numUnitsA;
+
+    /**
+     * Number of units that the second player has on the Map.
+     */
+    private int numUnitsB;
+
+    /**
+     * Calculates results of battles between Units.
+     */
+    private Battle battle;
+
+    /**
+     * Odds of the attacks between the Units of this Map, or {@code null} if
+     * odds are computed for each attack.
+     */
+    private BattleTable battleTable = null;
+
+    /**
+     * Zobrist fingerprint of the Units on this Map.
+     */
+    private long hash;
+
+    /**
+     * Buffers used to find the Tiles to which Units can move.
+     */
+    private final Reachability reachability = new Reachability();
+
+    /**
+     * Constructs a Map and initializes Battle module.
+     * 
+     * @param tiles
+     *            2x2 Tile matrix. All Tiles are supposed to initially hold no
+     *            Unit
+     * @param tileHeight
+     *            graphical height of each Tile
+     * @param tileWidth
+     *            graphical width of each Tile
+     */
+    public Map(Tile[][] tiles, int tileHeight, int tileWidth) {
+        this.tiles = tiles;
+        this.tileHeight = tileHeight;
+        this.tileWidth = tileWidth;
+        this.battle = new Battle();
+        numUnitsA = numUnitsB = 0;
+    }
+
+    /**
+     * Constructs a Map whose board is kept by a subclass, which must then
+     * override every method that accesses Tiles.
+     * 
+     * @param tileHeight
+     *            graphical height of each Tile
+     * @param tileWidth
+     *            graphical width of each Tile
+     */
+    Map(int tileHeight, int tileWidth) {
+        this(null, tileHeight, tileWidth);
+    }
+
+    /**
+     * Returns a new Map in the same state as this one, with copies of its
+     * Units, so that changing either Map doesn't change the other. Battles on
+     * the copy are decided by a source seeded with the current time.
+     * 
+     * @return the copy
+     */
+    public Map copy() {
+        Map map = emptyCopy();
+        map.battleTable = battleTable;
+        for (int i = 0; i < getMapHeight(); i++)
+            for (int j = 0; j < getMapWidth(); j++) {
+                Unit unit = getUnit(i, j);
+                if (unit != null)
+                    map.placeUnit(unit.copy(), i, j);
+            }
+        return map;
+    }
+
+    /**
+     * Returns a new Map with the same Terrains as this one, in the same
+     * layout, and no Unit.
+     * 
+     * @return the empty copy
+     */
+    Map emptyCopy() {
+        Tile[][] copy = new Tile[getMapHeight()][getMapWidth()];
+        for (int i = 0; i < copy.length; i++)
+            for (int j = 0; j < copy[i].length; j++)
+                copy[i][j] = new Tile(tiles[i][j].getTerrain());
+        return new Map(copy, tileHeight, tileWidth);
+    }
+
+    /**
+     * Returns {@code true} if the given Tile (x, y) exists in this Map, or
+     * {@code false} otherwise.
+     * 
+     * @param x
+     *            x coordinate of the Tile to be verified
+     * @param y
+     *            y coordinate of the Tile to be verified
+     * 
+     * @return {@code true}, if the Tile is valid, or {@code false} otherwise
+     */
+    public boolean validPosition(int x, int y) {
+        return x >= 0 && x < getMapHeight() && y >= 0 && y < getMapWidth();
+    }
+
+    /**
+     * Adds a Unit to Tile (x, y) on this Map. Returns {@code true} if placement
+     * was successful or {@code false} otherwise.
+     * 
+     * @param unit
+     *            Unit to be inserted
+     * @param x
+     *            x coordinate of the Tile
+     * @param y
+     *            y coordinate of the Tile
+     * 
+     * @return {@code true}, if placement was successful, or {@code false}
+     *         otherwise
+     */
+    public boolean placeUnit(Unit unit, int x, int y) {
+        // Invalid unit/position or Tile already occupied
+        if (unit == null || !validPosition(x, y) || tiles[x][y].getUnit() != null)
+            return false;
+
+        tiles[x][y].setUnit(unit);
+        toggleHash(unit, x, y);
+        if (unit.getTeam() == 1)
+            numUnitsA++;
+        else
+            numUnitsB++;
+
+        return true;
+    }
+
+    /**
+     * Moves Unit from the specified team on Tile (xi, yi) to Tile (xf, yf) on
+     * this Map.
+     * <p>
+     * Returns {@code true} if movement was successful or {@code false}
+     * otherwise.
+     * 
+     * @param xi
+     *            x coordinate of the Unit to be moved
+     * @param yi
+     *            y coordinate of the Unit to be moved
+     * @param xf
+     *            x coordinate of the destination Tile
+     * @param yf
+     *            y coordinate of the destination Tile
+     * @return {@code true}, if movement was successful, or {@code false}
+     *         otherwise
+     */
+    public boolean move(int xi, int yi, int xf, int yf) {
+        if (!canMove(xi, yi, xf, yf))
+            return false;
+
+        // Successfully moves unit
+        moveUnit(xi, yi, xf, yf);
+
+        return true;
+    }
+
+    /**
+     * Moves the Unit on Tile (xi, yi) to Tile (xf, yf), without checking if
+     * the movement is possible.
+     * 
+     * @param xi
+     *            x coordinate of the Unit to be moved
+     * @param yi
+     *            y coordinate of the Unit to be moved
+     * @param xf
+     *            x coordinate of the destination Tile
+     * @param yf
+     *            y coordinate of the destination Tile
+     */
+    void moveUnit(int xi, int yi, int xf, int yf) {
+        Unit unit = tiles[xi][yi].removeUnit();
+        tiles[xf][yf].setUnit(unit);
+        toggleHash(unit, xi, yi);
+        toggleHash(unit, xf, yf);
+    }
+
+    /**
+     * Checks if the Unit on Tile (xi, yi) can move to Tile (xf, yf) on this
+     * Map, without moving it. The rules of movement are described in
+     * Reachability.
+     * 
+     * @param xi
+     *            x coordinate of the Unit to be moved
+     * @param yi
+     *            y coordinate of the Unit to be moved
+     * @param xf
+     *            x coordinate of the destination Tile
+     * @param yf
+     *            y coordinate of the destination Tile
+     * @return {@code true}, if the movement is possible, or {@code false}
+     *         otherwise
+     */
+    public boolean canMove(int xi, int yi, int xf, int yf) {
+        // Verify if coordinates are out of bounds
+        if (!validPosition(xi, yi) || !validPosition(xf, yf))
+            return false;
+
+        // Tile already occupied, or no Unit to be moved
+        Unit unit = getUnit(xi, yi);
+        if (unit == null || getUnit(xf, yf) != null)
+            return false;
+
+        // Each step costs at least 1, so farther Tiles can't be reached
+        int distance = Math.abs(xf - xi) + Math.abs(yf - yi);
+        if (distance == 0 || distance > Math.max(unit.getMove(), 1))
+            return false;
+
+        return reachableFrom(xi, yi).isReachable(xf, yf);
+    }
+
+    /**
+     * Finds every Tile that the Unit on Tile (xi, yi) can move to. The result
+     * is kept in a buffer owned by this Map, so it's only valid until this
+     * method is called again.
+     * 
+     * @param xi
+     *            x coordinate of the Unit
+     * @param yi
+     *            y coordinate of the Unit
+     * @return the destinations of the Unit
+     */
+    public Reachability reachableFrom(int xi, int yi) {
+        reachability.compute(this, xi, yi);
+        return reachability;
+    }
+
+    /**
+     * Makes the Unit on Tile (xi, yi) attack the Unit on Tile (xf, yf). Returns
+     * an integer representing damage:
+     * <ul>
+     * <li>If damage = -1, then the attack missed.</li>
+     * <li>If damage &ge; 0, then it represents the damage received by the
+     * defending Unit.</li>
+     * </ul>
+     * 
+     * @param xi
+     *            x coordinate of the attacker
+     * @param yi
+     *            y coordinate of the attacker
+     * @param xf
+     *            x coordinate of the defender
+     * @param yf
+     *            y coordinate of the defender
+     * @return damage received by the defending unit if the attack succeeded, or
+     *         -1 otherwise
+     */
+    public int attack(int xi, int yi, int xf, int yf) {
+        if (!inRange(xi, yi, xf, yf))
+            return -1;
+
+        int damage = battle.execute(getOdds(xi, yi, xf, yf));
+
+        return damage;
+    }
+
+    /**
+     * Returns the odds of an attack of the Unit on Tile (xi, yi) on the Unit on
+     * Tile (xf, yf), whether or not it's within range, without attacking it.
+     * Supposes that both Tiles have a Unit placed on them.
+     * 
+     * @param xi
+     *            x coordinate of the attacker
+     * @param yi
+     *            y coordinate of the attacker
+     * @param xf
+     *            x coordinate of the defender
+     * @param yf
+     *            y coordinate of the defender
+     * @return the odds of the attack
+     */
+    public BattleOdds getOdds(int xi, int yi, int xf, int yf) {
+        if (battleTable == null)
+            return Battle.getOdds(getTile(xi, yi), getTile(xf, yf));
+        return battleTable.getOdds(getUnit(xi, yi), getTerrain(xi, yi),
+                getUnit(xf, yf), getTerrain(xf, yf));
+    }
+
+    /**
+     * Checks if there are Units on Tiles (xi, yi) and (xf, yf), and if the
+     * latter is within the range of the former.
+     * 
+     * @param xi
+     *            x coordinate of the attacker
+     * @param yi
+     *            y coordinate of the attacker
+     * @param xf
+     *            x coordinate of the defender
+     * @param yf
+     *            y coordinate of the defender
+     * @return {@code true}, if the defender is within the attacker's range, or
+     *         {@code false} otherwise
+     */
+    public boolean inRange(int xi, int yi, int xf, int yf) {
+        // Verify if coordinates are out of bounds
+        if (!validPosition(xi, yi) || !validPosition(xf, yf))
+            return false;
+
+        Unit attacker = tiles[xi][yi].getUnit();
+        Unit defender = tiles[xf][yf].getUnit();
+
+        if (attacker == null || defender == null)
+            return false;
+
+        int range = attacker.getRange();
+
+        // Calculate x, y distance between Units
+        int dx = Math.abs(xf - xi);
+        int dy = Math.abs(yf - yi);
+
+        // Disallow attack if distance in greater than range
+        return dx + dy <= range;
+    }
+
+    /**
+     * Directly causes the specified amount of damage to the Unit on Tile (x, y)
+     * of the Map. Returns {@code true} if the Unit is dead, i.e., has no more
+     * hit points left, or {@code false} otherwise.
+     * 
+     * @param x
+     *            x coordinate of the Unit that will take damage
+     * @param y
+     *            y coordinate of the Unit that will take damage
+     * @param damage
+     *            damage to be caused to the Unit
+     * @return {@code true}, if the Unit is dead, or {@code false} otherwise
+     */
+    public boolean causeDamage(int x, int y, int damage) {
+        if (!validPosition(x, y))
+            return false;
+
+        Unit unit = getTile(x, y).getUnit();
+        if (unit == null)
+            return false;
+
+        toggleHash(unit, x, y);
+        unit.loseHp(damage);
+        boolean isDead = unit.getCurrentHp() <= 0;
+        if (!isDead)
+            toggleHash(unit, x, y);
+        else {
+            getTile(x, y).removeUnit();
+            if (unit.getTeam() == 1)
+                numUnitsA--;
+            else
+                numUnitsB--;
+        }
+
+        return isDead;
+    }
+
+    /**
+     * Gives back hit points to the Unit on Tile (x, y), undoing damage caused
+     * to it. Supposes that there is a Unit on that Tile.
+     * 
+     * @param x
+     *            x coordinate of the Unit
+     * @param y
+     *            y coordinate of the Unit
+     * @param amount
+     *            hit points given back to the Unit
+     */
+    void heal(int x, int y, int amount) {
+        Unit unit = getUnit(x, y);
+        toggleHash(unit, x, y);
+        unit.loseHp(-amount);
+        toggleHash(unit, x, y);
+    }
+
+    /**
+     * Places back on Tile (x, y) a Unit killed there, undoing the damage that
+     * killed it.
+     * 
+     * @param unit
+     *            the killed Unit
+     * @param x
+     *            x coordinate of the Tile on which it died
+     * @param y
+     *            y coordinate of the Tile on which it died
+     * @param damage
+     *            damage that killed the Unit
+     */
+    void revive(Unit unit, int x, int y, int damage) {
+        unit.loseHp(-damage);
+        placeUnit(unit, x, y);
+    }
+
+    /**
+     * Returns the Tile on position (x, y).
+     * 
+     * @param x
+     *            x coordinate of the desired Tile
+     * @param y
+     *            y coordinate of the desired Tile
+     * 
+     * @return Tile on position (x, y)
+     */
+    public Tile getTile(int x, int y) {
+        return tiles[x][y];
+    }
+
+    /**
+     * Makes the results of battles on this Map be decided by the given
+     * source, e.g. so that they can be reproduced.
+     * 
+     * @param random
+     *            source of random numbers
+     */
+    public void setRandomSource(RandomSource random) {
+        battle = new Battle(random);
+    }
+
+    /**
+     * Makes attacks on this Map look their odds up in the given table, instead
+     * of computing them.
+     * 
+     * @param battleTable
+     *            odds of the attacks between the Units of this Map
+     */
+    void setBattleTable(BattleTable battleTable) {
+        this.battleTable = battleTable;
+    }
+
+    /**
+     * Returns the Unit on position (x, y), if any.
+     * 
+     * @param x
+     *            x coordinate of the desired Tile
+     * @param y
+     *            y coordinate of the desired Tile
+     * 
+     * @return the Unit on position (x, y), or {@code null} if there is none
+     */
+    public Unit getUnit(int x, int y) {
+        return tiles[x][y].getUnit();
+    }
+
+    /**
+     * Returns the team of the Unit on position (x, y), if any.
+     * 
+     * @param x
+     *            x coordinate of the desired Tile
+     * @param y
+     *            y coordinate of the desired Tile
+     * 
+     * @return the team (1 or 2) of the Unit on position (x, y), or 0 if there
+     *         is none
+     */
+    public int getTeam(int x, int y) {
+        Unit unit = tiles[x][y].getUnit();
+        return unit == null ? 0 : unit.getTeam();
+    }
+
+    /**
+     * Returns the current hit points of the Unit on position (x, y), if any.
+     * 
+     * @param x
+     *            x coordinate of the desired Tile
+     * @param y
+     *            y coordinate of the desired Tile
+     * 
+     * @return the current hit points of the Unit on position (x, y), or 0 if
+     *         there is none
+     */
+    public int getCurrentHp(int x, int y) {
+        Unit unit = tiles[x][y].getUnit();
+        return unit == null ? 0 : unit.getCurrentHp();
+    }
+
+    /**
+     * Returns the Terrain on position (x, y).
+     * 
+     * @param x
+     *            x coordinate of the desired Tile
+     * @param y
+     *            y coordinate of the desired Tile
+     * 
+     * @return the Terrain on position (x, y)
+     */
+    Terrain getTerrain(int x, int y) {
+        return tiles[x][y].getTerrain();
+    }
+
+    /**
+     * Returns the move penalty of the Terrain on position (x, y).
+     * 
+     * @param x
+     *            x coordinate of the desired Tile
+     * @param y
+     *            y coordinate of the desired Tile
+     * 
+     * @return the move penalty of the Tile on position (x, y)
+     */
+    public int getMovePenalty(int x, int y) {
+        return tiles[x][y].getTerrain().getMovePenalty();
+    }
+
+    /**
+     * Returns a Zobrist fingerprint of the Units on this Map: their types,
+     * teams, positions and (roughly) hit points. Maps holding the same Units
+     * in the same places have the same fingerprint.
+     * 
+     * @return the fingerprint of this Map
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Adds a Unit standing on Tile (x, y) to the fingerprint of this Map, or
+     * removes it if it's already included.
+     * 
+     * @param unit
+     *            the Unit
+     * @param x
+     *            x coordinate of the Unit
+     * @param y
+     *            y coordinate of the Unit
+     */
+    void toggleHash(Unit unit, int x, int y) {
+        hash ^= Zobrist.unit(unit, x * getMapWidth() + y);
+    }
+
+    /**
+     * Returns the height of this Map, i.e., the number of lines in the Tile
+     * matrix.
+     * 
+     * @return height of this Map
+     */
+    public int getMapHeight() {
+        return tiles.length;
+    }
+
+    /**
+     * Returns the width of this Map, i.e., the number of columns in the Tile
+     * matrix.
+     * 
+     * @return width of this Map
+     */
+    public int getMapWidth() {
+        return tiles[0].length;
+    }
+
+    /**
+     * Returns the height of a Tile in pixels (used by GUI).
+     * 
+     * @return the height of a Tile in pixels
+     */
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * Returns the width of a Tile in pixels (used by GUI).
+     * 
+     * @return the width of a Tile in pixels
+     */
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    /**
+     * Returns the remaining number of Units that player A has on the Map.
+     * 
+     * @return the number of Units of player A
+     */
+    public int getNumUnitsA() {
+        return numUnitsA;
+    }
+
+    /**
+     * Returns the remaining number of Units that player B has on the Map.
+     * 
+     * @return the number of Units of player B
+     */
+    public int getNumUnitsB() {
+        return numUnitsB;
+    }
+
+    /**
+     * Returns the positions of every Unit of a team, row by row.
+     * 
+     * @param team
+     *            the team (1 or 2)
+     * @return positions of the Units, as {x, y} pairs
+     */
+    public int[] getUnitPositions(int team) {
+        int[] units = new int[2 * (team == 1 ? getNumUnitsA()
+                : getNumUnitsB())];
+        int n = 0;
+        for (int i = 0; i < getMapHeight() && n < units.length; i++)
+            for (int j = 0; j < getMapWidth(); j++) {
+                if (getTeam(i, j) == team) {
+                    units[n++] = i;
+                    units[n++] = j;
+                }
+            }
+        return units;
+    }
+
+    /**
+     * Returns a String containing information about the Unit and Terrain on
+     * Tile (x, y).
+     * 
+     * @param x
+     *            x coordinate of the desired Tile
+     * @param y
+     *            y coordinate of the desired Tile
+     * @return a String containing information about the specified Tile
+     */
+    public String getTileInfo(int x, int y) {
+        String message = "";
+        Tile tile = getTile(x, y);
+        Terrain terrain = tile.getTerrain();
+        message += terrain.getName() + ",";
+        message += terrain.getDefenseModifier() + ",";
+        message += terrain.getAgilityModifier() + ",";
+        message += terrain.getMovePenalty();
+        Unit unit = tile.getUnit();
+        if (unit != null) {
+            message += ";";
+            message += unit.getName() + ",";
+            message += unit.getCurrentHp() + ",";
+            message += unit.getTotalHp() + ",";
+            message += unit.getMove() + ",";
+            message += unit.getRange() + ",";
+            message += unit.getAtk() + ",";
+            message += unit.getDef() + ",";
+            message += unit.getAgi();
+            message += "";
+        }
+        return message;
+    }
+}
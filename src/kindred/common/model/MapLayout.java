@@ -0,0 +1,19 @@
+package kindred.common.model;
+
+/**
+ * Ways of keeping the board of a Map in memory.
+ * 
+ * @author Kindred Team
+ */
+public enum MapLayout {
+
+    /**
+     * A matrix of Tile objects, each referencing its Terrain and Unit.
+     */
+    TILES,
+
+    /**
+     * Flat arrays of primitives, as kept by ArrayMap.
+     */
+    ARRAYS
+}
@@ -0,0 +1,220 @@
+package kindred.common.model;
+
+import java.io.FileNotFoundException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import kindred.common.parsing.MapFileParser;
+import kindred.common.parsing.TerrainFileParser;
+import kindred.common.parsing.UnitFileParser;
+
+/**
+ * Immutable description of a Map as read from its file: the Terrain of every
+ * Tile and the initial placement of every Unit. A template is parsed once and
+ * shared; each Game instantiates its own Map from it without reading any file.
+ * 
+ * @author Kindred Team
+ */
+public final class MapTemplate {
+
+    /**
+     * Name of the file containing valid Terrain types.
+     */
+    private static final String TERRAIN_FILE = "/kindred/common/data/terrain/terrain.txt";
+
+    /**
+     * Name of the file containing valid Unit types.
+     */
+    private static final String UNIT_FILE = "/kindred/common/data/unit/unit.txt";
+
+    /**
+     * Number of ints describing each Unit in {@code units}.
+     */
+    private static final int UNIT_FIELDS = 4;
+
+    /**
+     * Templates already parsed, indexed by the name of their Map file.
+     */
+    private static final ConcurrentHashMap<String, MapTemplate> cache = new ConcurrentHashMap<String, MapTemplate>();
+
+    /**
+     * Number of rows of Tiles.
+     */
+    private final int rows;
+
+    /**
+     * Number of columns of Tiles.
+     */
+    private final int cols;
+
+    /**
+     * Height of each Tile.
+     */
+    private final int tileHeight;
+
+    /**
+     * Width of each Tile.
+     */
+    private final int tileWidth;
+
+    /**
+     * Terrain of each Tile, row by row. Terrains are immutable, so they are
+     * shared by every instantiated Map.
+     */
+    private final Terrain[] terrains;
+
+    /**
+     * Names of the Unit types placed on the Map.
+     */
+    private final String[] typeNames;
+
+    /**
+     * Attribute of each Unit type in {@code typeNames}, shared by every
+     * instantiated Unit of that type.
+     */
+    private final Attribute[] typeAttributes;
+
+    /**
+     * Initial placement of the Units, as {team, type, x, y} for each Unit,
+     * where type is an index of {@code typeNames}.
+     */
+    private final int[] units;
+
+    /**
+     * Odds of every attack between the Units of the Map, shared by every
+     * instantiated Map.
+     */
+    private final BattleTable battleTable;
+
+    /**
+     * Constructs a MapTemplate.
+     * 
+     * @param tiles
+     *            Terrain of each Tile, by row and column
+     * @param tileHeight
+     *            height of each Tile
+     * @param tileWidth
+     *            width of each Tile
+     * @param names
+     *            name of the type of each Unit, in order of placement
+     * @param teams
+     *            team of each Unit
+     * @param positions
+     *            position of each Unit, as {x, y}
+     * @param unitTypes
+     *            attributes of every Unit type, indexed by name
+     */
+    public MapTemplate(Terrain[][] tiles, int tileHeight, int tileWidth,
+            String[] names, int[] teams, int[][] positions,
+            java.util.Map<String, Attribute> unitTypes) {
+        rows = tiles.length;
+        cols = tiles[0].length;
+        this.tileHeight = tileHeight;
+        this.tileWidth = tileWidth;
+        terrains = new Terrain[rows * cols];
+        for (int i = 0; i < rows; i++)
+            System.arraycopy(tiles[i], 0, terrains, i * cols, cols);
+
+        HashMap<String, Integer> types = new HashMap<String, Integer>();
+        units = new int[names.length * UNIT_FIELDS];
+        for (int u = 0; u < names.length; u++) {
+            Integer type = types.get(names[u]);
+            if (type == null) {
+                type = types.size();
+                types.put(names[u], type);
+            }
+            units[u * UNIT_FIELDS] = teams[u];
+            units[u * UNIT_FIELDS + 1] = type;
+            units[u * UNIT_FIELDS + 2] = positions[u][0];
+            units[u * UNIT_FIELDS + 3] = positions[u][1];
+        }
+
+        typeNames = new String[types.size()];
+        typeAttributes = new Attribute[types.size()];
+        for (java.util.Map.Entry<String, Integer> e : types.entrySet()) {
+            typeNames[e.getValue()] = e.getKey();
+            typeAttributes[e.getValue()] = unitTypes.get(e.getKey());
+        }
+
+        IdentityHashMap<Terrain, Boolean> distinct = new IdentityHashMap<Terrain, Boolean>();
+        for (Terrain terrain : terrains)
+            distinct.put(terrain, Boolean.TRUE);
+        battleTable = new BattleTable(typeAttributes, distinct.keySet()
+                .toArray(new Terrain[distinct.size()]));
+    }
+
+    /**
+     * Returns the template of a Map file, parsing it (and the Terrain and Unit
+     * files) only the first time it's asked for.
+     * 
+     * @param mapFile
+     *            name of the Map file
+     * @return the Map's template
+     * @throws FileNotFoundException
+     *             if one of the files is not found
+     * @throws IllegalArgumentException
+     *             if the Map file contains an invalid line
+     */
+    public static MapTemplate get(String mapFile) throws FileNotFoundException {
+        MapTemplate template = cache.get(mapFile);
+        if (template == null) {
+            template = MapFileParser.parseTemplate(mapFile,
+                    TerrainFileParser.parseFile(TERRAIN_FILE),
+                    UnitFileParser.parseFile(UNIT_FILE));
+            MapTemplate previous = cache.putIfAbsent(mapFile, template);
+            if (previous != null)
+                template = previous;
+        }
+        return template;
+    }
+
+    /**
+     * Forgets every template already parsed, so that files are parsed again
+     * (e.g. after they changed).
+     */
+    public static void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Creates a new Map, in its initial state, keeping its board as Tile
+     * objects. Each Map has its own Tiles and Units, so Maps instantiated from
+     * the same template are independent.
+     * 
+     * @return the new Map
+     */
+    public Map instantiate() {
+        return instantiate(MapLayout.TILES);
+    }
+
+    /**
+     * Creates a new Map, in its initial state, keeping its board in the given
+     * layout. Each Map has its own board and Units, so Maps instantiated from
+     * the same template are independent.
+     * 
+     * @param layout
+     *            how the Map keeps its board
+     * @return the new Map
+     */
+    public Map instantiate(MapLayout layout) {
+        Map map;
+        if (layout == MapLayout.ARRAYS) {
+            map = new ArrayMap(terrains, rows, cols, tileHeight, tileWidth);
+        } else {
+            Tile[][] tiles = new Tile[rows][cols];
+            for (int i = 0; i < rows; i++)
+                for (int j = 0; j < cols; j++)
+                    tiles[i][j] = new Tile(terrains[i * cols + j]);
+            map = new Map(tiles, tileHeight, tileWidth);
+        }
+        map.setBattleTable(battleTable);
+
+        for (int u = 0; u < units.length; u += UNIT_FIELDS) {
+            int type = units[u + 1];
+            map.placeUnit(new Unit(typeNames[type], typeAttributes[type],
+                    units[u]), units[u + 2], units[u + 3]);
+        }
+        return map;
+    }
+}
@@ -0,0 +1,29 @@
+package kindred.common.model;
+
+/**
+ * Source of random numbers used to decide the outcome of battles. Sources
+ * can be split, so that each thread running simulations gets its own
+ * independent source instead of contending for a shared one.
+ * 
+ * @author Kindred Team
+ */
+public interface RandomSource {
+
+    /**
+     * Returns a random integer in the interval [0, bound).
+     * 
+     * @param bound
+     *            upper bound (exclusive) of the integer; must be positive
+     * @return a random integer in [0, bound)
+     */
+    int nextInt(int bound);
+
+    /**
+     * Returns a new source, whose numbers are independent from the ones of
+     * this source. This source advances, so splitting it again gives a
+     * different source.
+     * 
+     * @return the new source
+     */
+    RandomSource split();
+}
@@ -0,0 +1,287 @@
+package kindred.common.model;
+
+import java.util.Arrays;
+
+/**
+ * Computes every Tile a Unit can move to in one turn. Entering a Tile costs 1
+ * plus its Terrain's move penalty, and the cheapest path to a destination may
+ * cost at most the Unit's movement. Units of the other team block the way;
+ * Units of the same team may be passed through, but not stopped on. A Unit
+ * can always move to an adjacent free Tile, whatever it costs.
+ * <p>
+ * All destinations are found in a single pass of Dijkstra's algorithm. The
+ * buffers it uses are kept between computations and only grow when a larger
+ * Map is searched, so that computing reachable Tiles allocates nothing. A
+ * Reachability holds the result of its last computation, so it must not be
+ * shared between threads.
+ * 
+ * @author Kindred Team
+ */
+public final class Reachability {
+
+    /**
+     * Number of bits of a heap entry holding the index of a Tile.
+     */
+    private static final int INDEX_BITS = 32;
+
+    /**
+     * Mask of the bits of a heap entry holding the index of a Tile.
+     */
+    private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+
+    /**
+     * Width of the last Map searched.
+     */
+    private int width;
+
+    /**
+     * Number of Tiles found by the last computation.
+     */
+    private int size;
+
+    /**
+     * Identifies the last computation: entries of {@code seen} and {@code
+     * destination} equal to it were set by that computation.
+     */
+    private int generation;
+
+    /**
+     * Computation in which each Tile was reached.
+     */
+    private int[] seen = new int[0];
+
+    /**
+     * Computation in which each Tile was found to be a destination.
+     */
+    private int[] destination = new int[0];
+
+    /**
+     * Cost of the cheapest path found to each Tile.
+     */
+    private int[] cost = new int[0];
+
+    /**
+     * Indexes ({@code x * width + y}) of the destinations found by the last
+     * computation, in the order they were found.
+     */
+    private int[] found = new int[0];
+
+    /**
+     * Binary heap of Tiles to be visited, each entry holding a cost in its
+     * upper bits and the index of a Tile in its lower bits.
+     */
+    private long[] heap = new long[0];
+
+    /**
+     * Number of entries in {@code heap}.
+     */
+    private int heapSize;
+
+    /**
+     * Finds every Tile the Unit on Tile (x, y) can move to. If there is no
+     * Unit on that Tile, then no destination is found.
+     * 
+     * @param map
+     *            Map on which the Unit stands
+     * @param x
+     *            x coordinate of the Unit
+     * @param y
+     *            y coordinate of the Unit
+     * @return the number of destinations found
+     */
+    public int compute(Map map, int x, int y) {
+        int height = map.getMapHeight();
+        width = map.getMapWidth();
+        ensureCapacity(height * width);
+        if (++generation == 0) {
+            // Stamps would be mistaken for the new computation's
+            Arrays.fill(seen, 0);
+            Arrays.fill(destination, 0);
+            generation = 1;
+        }
+        size = 0;
+        heapSize = 0;
+
+        Unit unit = map.validPosition(x, y) ? map.getUnit(x, y) : null;
+        if (unit == null)
+            return 0;
+        int team = unit.getTeam();
+        int move = unit.getMove();
+
+        int start = x * width + y;
+        seen[start] = generation;
+        cost[start] = 0;
+        push(0, start);
+        while (heapSize > 0) {
+            long entry = pop();
+            int c = (int) (entry >>> INDEX_BITS);
+            int i = (int) (entry & INDEX_MASK);
+            if (c > cost[i])
+                continue;
+
+            int ix = i / width;
+            int iy = i - ix * width;
+            for (int d = 0; d < 4; d++) {
+                int nx = ix + (d == 0 ? -1 : d == 1 ? 1 : 0);
+                int ny = iy + (d == 2 ? -1 : d == 3 ? 1 : 0);
+                if (nx < 0 || nx >= height || ny < 0 || ny >= width)
+                    continue;
+
+                int other = map.getTeam(nx, ny);
+                if (other != 0 && other != team)
+                    continue;
+                int n = nx * width + ny;
+                int nc = c + 1 + map.getMovePenalty(nx, ny);
+                if (nc > move) {
+                    // Adjacent free Tiles can always be reached
+                    if (c == 0 && other == 0)
+                        nc = move;
+                    else
+                        continue;
+                }
+                if (seen[n] == generation && cost[n] <= nc)
+                    continue;
+
+                seen[n] = generation;
+                cost[n] = nc;
+                push(nc, n);
+                if (other == 0 && destination[n] != generation) {
+                    destination[n] = generation;
+                    found[size++] = n;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of destinations found by the last computation.
+     * 
+     * @return the number of destinations
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the x coordinate of a destination found by the last
+     * computation.
+     * 
+     * @param i
+     *            index of the destination, from 0 to {@code size() - 1}
+     * @return x coordinate of the destination
+     */
+    public int getX(int i) {
+        return found[i] / width;
+    }
+
+    /**
+     * Returns the y coordinate of a destination found by the last
+     * computation.
+     * 
+     * @param i
+     *            index of the destination, from 0 to {@code size() - 1}
+     * @return y coordinate of the destination
+     */
+    public int getY(int i) {
+        return found[i] % width;
+    }
+
+    /**
+     * Checks if Tile (x, y) was found to be a destination by the last
+     * computation. Supposes that (x, y) is a valid position of the Map
+     * searched.
+     * 
+     * @param x
+     *            x coordinate of the Tile
+     * @param y
+     *            y coordinate of the Tile
+     * @return {@code true}, if the Unit can move to the Tile, or {@code false}
+     *         otherwise
+     */
+    public boolean isReachable(int x, int y) {
+        return destination[x * width + y] == generation;
+    }
+
+    /**
+     * Returns the cost of moving to Tile (x, y), as found by the last
+     * computation. Supposes that (x, y) is a valid position of the Map
+     * searched.
+     * 
+     * @param x
+     *            x coordinate of the Tile
+     * @param y
+     *            y coordinate of the Tile
+     * @return the cost of the cheapest path to the Tile, or -1 if it can't be
+     *         reached
+     */
+    public int getCost(int x, int y) {
+        int i = x * width + y;
+        return seen[i] == generation ? cost[i] : -1;
+    }
+
+    /**
+     * Grows the buffers, if needed, so that a Map with the given number of
+     * Tiles can be searched.
+     * 
+     * @param tiles
+     *            number of Tiles of the Map
+     */
+    private void ensureCapacity(int tiles) {
+        if (seen.length >= tiles)
+            return;
+        seen = new int[tiles];
+        destination = new int[tiles];
+        cost = new int[tiles];
+        found = new int[tiles];
+        // Each Tile is pushed at most once per neighbour, plus the start
+        heap = new long[4 * tiles + 1];
+        generation = 0;
+    }
+
+    /**
+     * Adds a Tile to the heap.
+     * 
+     * @param c
+     *            cost of the path found to the Tile
+     * @param i
+     *            index of the Tile
+     */
+    private void push(int c, int i) {
+        long entry = ((long) c << INDEX_BITS) | i;
+        int k = heapSize++;
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            if (heap[parent] <= entry)
+                break;
+            heap[k] = heap[parent];
+            k = parent;
+        }
+        heap[k] = entry;
+    }
+
+    /**
+     * Removes the cheapest Tile from the heap. Supposes that the heap isn't
+     * empty.
+     * 
+     * @return the removed entry
+     */
+    private long pop() {
+        long top = heap[0];
+        long last = heap[--heapSize];
+        int k = 0;
+        while (true) {
+            int child = 2 * k + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && heap[child + 1] < heap[child])
+                child++;
+            if (last <= heap[child])
+                break;
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = last;
+        return top;
+    }
+}
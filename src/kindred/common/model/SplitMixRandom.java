@@ -0,0 +1,126 @@
+package kindred.common.model;
+
+/**
+ * RandomSource implementing the SplitMix64 algorithm (the one of Java 8's
+ * {@code SplittableRandom}). Two sources built with the same seed generate
+ * the same numbers on every JVM, so battles can be replayed exactly from the
+ * seed of a match.
+ * <p>
+ * A source must not be shared between threads; {@link #split()} gives each
+ * thread its own.
+ * 
+ * @author Kindred Team
+ */
+public final class SplitMixRandom implements RandomSource {
+
+    /**
+     * Gamma of a source built from a seed: the odd integer closest to 2^64
+     * divided by the golden ratio.
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Current state, advanced by {@code gamma} for each number generated.
+     */
+    private long seed;
+
+    /**
+     * Odd increment of the state, distinct for sources split from each
+     * other.
+     */
+    private final long gamma;
+
+    /**
+     * Constructs a SplitMixRandom.
+     * 
+     * @param seed
+     *            seed of the numbers generated
+     */
+    public SplitMixRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Constructs a SplitMixRandom with a given increment.
+     * 
+     * @param seed
+     *            initial state
+     * @param gamma
+     *            odd increment of the state
+     */
+    private SplitMixRandom(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0)
+            throw new IllegalArgumentException("bound must be positive");
+
+        int r = mix32(nextSeed());
+        int m = bound - 1;
+        if ((bound & m) == 0)
+            return r & m;
+
+        // Rejects the values that would make smaller results more likely
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1)
+            ;
+        return r;
+    }
+
+    @Override
+    public RandomSource split() {
+        return new SplitMixRandom(mix64(nextSeed()), mixGamma(nextSeed()));
+    }
+
+    /**
+     * Advances the state.
+     * 
+     * @return the new state
+     */
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    /**
+     * Mixes the bits of a state into a 64-bit number.
+     * 
+     * @param z
+     *            the state
+     * @return the mixed number
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Mixes the bits of a state into a 32-bit number.
+     * 
+     * @param z
+     *            the state
+     * @return the mixed number
+     */
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62A9D9ED799705F5L;
+        return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+    }
+
+    /**
+     * Mixes the bits of a state into a gamma, which must be odd and have
+     * enough bit transitions to scatter the states.
+     * 
+     * @param z
+     *            the state
+     * @return the gamma
+     */
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+    }
+}
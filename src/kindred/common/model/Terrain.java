@@ -1,4 +1,4 @@
-package kindred.client.model;
+package kindred.common.model;
 
 /**
  * Gives details about the vegetation of a Tile and how it affects a Unit's
@@ -1,4 +1,4 @@
-package kindred.client.model;
+package kindred.common.model;
 
 /**
  * Representing a piece of the Map, contains a Terrain and may hold up to one
@@ -1,4 +1,4 @@
-package kindred.client.model;
+package kindred.common.model;
 
 /**
  * Defines a Unit that a User can command, as well as its Attributes.
@@ -14,10 +14,17 @@ public class Unit {
     private final String name;
 
     /**
-     * Attributes defining Unit's performance.
+     * Attributes defining Unit's performance. Shared by every Unit of the same
+     * type.
      */
     private final Attribute attribute;
 
+    /**
+     * Indicates this Unit's current hit points. When it reaches zero, it is
+     * considered dead.
+     */
+    private int currentHp;
+
     /**
      * Identifier number for the Unit's team. Shows which player controls the
      * Unit.
@@ -30,16 +37,29 @@ public class Unit {
      * @param name
      *            the Unit's name
      * @param attribute
-     *            the Unit's attributes
+     *            the attributes of the Unit's type
      * @param team
      *            number identifying which Player the Unit belongs to
      */
     public Unit(String name, Attribute attribute, int team) {
         this.name = name;
         this.attribute = attribute;
+        this.currentHp = attribute.getTotalHp();
         this.team = team;
     }
 
+    /**
+     * Returns a new Unit of the same type and team as this one, with the same
+     * hit points.
+     * 
+     * @return the copy
+     */
+    Unit copy() {
+        Unit unit = new Unit(name, attribute, team);
+        unit.currentHp = currentHp;
+        return unit;
+    }
+
     /**
      * Returns this name given to the Unit's type.
      * 
@@ -49,6 +69,15 @@ public class Unit {
         return name;
     }
 
+    /**
+     * Returns the attributes of this Unit's type.
+     * 
+     * @return the attributes of this Unit's type
+     */
+    Attribute getAttribute() {
+        return attribute;
+    }
+
     /**
      * Returns this Unit's attribute that represents its total hit points.
      * 
@@ -64,7 +93,7 @@ public class Unit {
      * @return this Unit's current hit points
      */
     public int getCurrentHp() {
-        return attribute.getCurrentHp();
+        return currentHp;
     }
 
     /**
@@ -75,7 +104,7 @@ public class Unit {
      *            value to be subtracted from this Unit's current hit points
      */
     public void loseHp(int damage) {
-        attribute.loseHp(damage);
+        currentHp -= damage;
     }
 
     /**
@@ -1,9 +1,9 @@
-package kindred.client.model;
+package kindred.common.model;
 
 import java.io.FileNotFoundException;
 import java.util.HashMap;
 
-import kindred.client.parsing.UnitFileParser;
+import kindred.common.parsing.UnitFileParser;
 
 /**
  * Follows the Factory pattern to produce Units according to specifications.
@@ -37,6 +37,8 @@ public class UnitFactory {
     /**
      * Creates and returns a Unit according to the name given. Also sets the
      * Unit's team with an identifier of the player the Unit will belong to.
+     * Every Unit of a type shares that type's Attribute, but keeps its own hit
+     * points.
      * 
      * @param name
      *            name of the type of Unit to be created
@@ -0,0 +1,129 @@
+package kindred.common.model;
+
+/**
+ * Zobrist keys used to fingerprint the state of a Game. The fingerprint is
+ * the XOR of the keys of every Unit (by type, team, Tile and bucket of hit
+ * points), of the moved and attacked flags of the current turn, and of the
+ * player to move, so it can be updated incrementally as the state changes.
+ * <p>
+ * Keys are derived from their fields by a fixed mixing function instead of
+ * random tables, so every JVM computes the same fingerprint for the same
+ * state, whatever the size of the Map.
+ * 
+ * @author Kindred Team
+ */
+final class Zobrist {
+
+    /**
+     * Number of buckets into which the hit points of a Unit are divided.
+     */
+    static final int HP_BUCKETS = 16;
+
+    /**
+     * Number of bits of the hash code of a Unit's name kept in its key.
+     */
+    static final int TYPE_BITS = 23;
+
+    /**
+     * Seed mixed into every key.
+     */
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Kind of the keys of Units.
+     */
+    private static final long UNIT = 0;
+
+    /**
+     * Kind of the keys of moved flags.
+     */
+    private static final long MOVED = 1;
+
+    /**
+     * Kind of the keys of attacked flags.
+     */
+    private static final long ATTACKED = 2;
+
+    /**
+     * Kind of the key of the second player's turn.
+     */
+    private static final long SIDE = 3;
+
+    /**
+     * Not to be instantiated, since this class is purely static.
+     */
+    private Zobrist() {
+        // Do not instantiate!
+    }
+
+    /**
+     * Returns the key of a Unit standing on a Tile. Every Tile of a Map, team
+     * and bucket of hit points has a key of its own, while types are told
+     * apart by the low {@code TYPE_BITS} bits of their names' hash codes,
+     * which differ for every type in the unit file.
+     * 
+     * @param unit
+     *            the Unit
+     * @param position
+     *            index ({@code x * width + y}) of the Tile
+     * @return the Unit's key
+     */
+    static long unit(Unit unit, int position) {
+        int bucket = (unit.getCurrentHp() - 1) * HP_BUCKETS
+                / Math.max(unit.getTotalHp(), 1);
+        bucket = Math.max(0, Math.min(HP_BUCKETS - 1, bucket));
+        // A position is a non-negative int, taking bits 10 to 40
+        long type = (long) unit.getName().hashCode() << (64 - TYPE_BITS);
+        return key(UNIT, type | ((long) position << 10)
+                | ((unit.getTeam() & 0xF) << 4) | bucket);
+    }
+
+    /**
+     * Returns the key of the flag of a Unit that moved this turn.
+     * 
+     * @param position
+     *            index ({@code x * width + y}) of the Unit's Tile
+     * @return the flag's key
+     */
+    static long moved(int position) {
+        return key(MOVED, (long) position << 10);
+    }
+
+    /**
+     * Returns the key of the flag of a Unit that attacked this turn.
+     * 
+     * @param position
+     *            index ({@code x * width + y}) of the Unit's Tile
+     * @return the flag's key
+     */
+    static long attacked(int position) {
+        return key(ATTACKED, (long) position << 10);
+    }
+
+    /**
+     * Returns the key included while it's the second player's turn.
+     * 
+     * @return the key of the second player's turn
+     */
+    static long secondPlayer() {
+        return key(SIDE, 0);
+    }
+
+    /**
+     * Derives a key from its kind and fields. Distinct kinds and fields give
+     * distinct keys, since the mixing function is a bijection.
+     * 
+     * @param kind
+     *            kind of the key
+     * @param fields
+     *            fields of the key, with bits 8 and 9 clear
+     * @return the key
+     */
+    private static long key(long kind, long fields) {
+        long z = (fields | (kind << 8)) ^ SEED;
+        // Finalizer of SplitMix64
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,174 @@
+package kindred.common.parsing;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Scanner;
+import java.util.regex.Pattern;
+
+import kindred.common.model.Attribute;
+import kindred.common.model.Map;
+import kindred.common.model.MapTemplate;
+import kindred.common.model.Terrain;
+
+/**
+ * Parses a file to read and create a Map in the game.
+ * 
+ * @author Kindred Team
+ */
+public final class MapFileParser {
+
+    /**
+     * Not to be instantiated, since this class is purely static.
+     */
+    private MapFileParser() {
+        // Do not instantiate!
+    }
+
+    /**
+     * Name of the file containing valid Unit types.
+     */
+    private static final String UNIT_FILE = "/kindred/common/data/unit/unit.txt";
+
+    /**
+     * Parses a given file containing information about a Map. Also uses a
+     * Character to Terrain HashMap to understand valid Terrains for the Map.
+     * <p>
+     * Creates and returns a Map, according to the information contained in the
+     * file.
+     * 
+     * @param filename
+     *            name of the Map file
+     * @param hashMap
+     *            HashMap containing identifying Characters as keys and Terrains
+     *            as values
+     * 
+     * @return Map object created based on information from the file
+     * 
+     * @throws FileNotFoundException
+     *             if the specified file is not found
+     * @throws IllegalArgumentException
+     *             if the file contains an invalid line
+     */
+    public static Map parseFile(String filename, HashMap<Character, Terrain> hashMap)
+            throws FileNotFoundException {
+        return parseTemplate(filename, hashMap,
+                UnitFileParser.parseFile(UNIT_FILE)).instantiate();
+    }
+
+    /**
+     * Parses a given file containing information about a Map. Also uses a
+     * Character to Terrain HashMap to understand valid Terrains for the Map,
+     * and a String to Attribute HashMap to understand valid Units.
+     * <p>
+     * Creates and returns a MapTemplate, from which any number of Maps can be
+     * instantiated without parsing the file again.
+     * 
+     * @param filename
+     *            name of the Map file
+     * @param terrains
+     *            HashMap containing identifying Characters as keys and Terrains
+     *            as values
+     * @param unitTypes
+     *            HashMap containing Unit names as keys and their attributes as
+     *            values
+     * 
+     * @return MapTemplate created based on information from the file
+     * 
+     * @throws FileNotFoundException
+     *             if the specified file is not found
+     * @throws IllegalArgumentException
+     *             if the file contains an invalid line
+     */
+    public static MapTemplate parseTemplate(String filename,
+            HashMap<Character, Terrain> terrains,
+            HashMap<String, Attribute> unitTypes) throws FileNotFoundException {
+        URL resource = TerrainFileParser.class.getResource(filename);
+        if (resource == null)
+            throw new FileNotFoundException("File '" + filename
+                    + "' not found");
+        File f = new File(resource.getPath());
+
+        Scanner scanner = new Scanner(f);
+
+        int rows = scanner.nextInt();
+        int cols = scanner.nextInt();
+        int tileHeight = scanner.nextInt();
+        int tileWidth = scanner.nextInt();
+        Terrain[][] tiles = new Terrain[rows][cols];
+
+        Pattern p = Pattern.compile("\\s*\\w");
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (!scanner.hasNext(p)) {
+                    // Sudden end of file
+                    scanner.close();
+                    throw invalidLine(filename);
+                }
+                // Read Tile's Terrain based on its Character
+                char c = scanner.next(p).trim().charAt(0);
+                if (terrains.containsKey(c))
+                    tiles[i][j] = terrains.get(c);
+                else {
+                    // Invalid type of Terrain
+                    scanner.close();
+                    throw invalidLine(filename);
+                }
+            }
+        }
+
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<Integer> teams = new ArrayList<Integer>();
+        ArrayList<int[]> positions = new ArrayList<int[]>();
+        while (scanner.hasNextLine()) {
+            String line = scanner.nextLine().trim();
+            if (line.isEmpty())
+                continue;
+            String[] parts = line.split("\\s+");
+            int team, x, y;
+            String name = null;
+            team = x = y = 0;
+            try {
+                team = Integer.parseInt(parts[0]);
+                name = parts[1];
+                x = Integer.parseInt(parts[2]);
+                y = Integer.parseInt(parts[3]);
+            } catch (RuntimeException e) {
+                // Missing or non-numeric field
+                scanner.close();
+                throw invalidLine(filename);
+            }
+            if (!unitTypes.containsKey(name)) {
+                // Invalid type of Unit
+                scanner.close();
+                throw invalidLine(filename);
+            }
+            names.add(name);
+            teams.add(team);
+            positions.add(new int[] { x, y });
+        }
+        scanner.close();
+
+        int[] teamArray = new int[teams.size()];
+        for (int i = 0; i < teamArray.length; i++)
+            teamArray[i] = teams.get(i);
+        return new MapTemplate(tiles, tileHeight, tileWidth,
+                names.toArray(new String[names.size()]), teamArray,
+                positions.toArray(new int[positions.size()][]), unitTypes);
+    }
+
+    /**
+     * Builds the exception thrown when a Map file can't be parsed.
+     * 
+     * @param filename
+     *            name of the Map file
+     * 
+     * @return exception describing the invalid file
+     */
+    private static IllegalArgumentException invalidLine(String filename) {
+        return new IllegalArgumentException("Invalid line in '" + filename
+                + "'");
+    }
+}
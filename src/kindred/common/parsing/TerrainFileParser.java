@@ -1,11 +1,11 @@
-package kindred.client.parsing;
+package kindred.common.parsing;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.HashMap;
 import java.util.Scanner;
 
-import kindred.client.model.Terrain;
+import kindred.common.model.Terrain;
 
 /**
  * Parses a file to get information regarding valid Terrain types.
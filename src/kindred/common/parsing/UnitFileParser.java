@@ -1,11 +1,11 @@
-package kindred.client.parsing;
+package kindred.common.parsing;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.HashMap;
 import java.util.Scanner;
 
-import kindred.client.model.Attribute;
+import kindred.common.model.Attribute;
 
 /**
  * Parses a file and gets information regarding valid Unit types.
@@ -0,0 +1,332 @@
+package kindred.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import kindred.common.ClientToServerMessage;
+import kindred.common.ServerToClientMessage;
+import kindred.common.WireFormat;
+
+/**
+ * Non-blocking connection to a Client, serviced by a SelectorLoop. Splits the
+ * bytes received from the socket into frames of the connection's WireFormat
+ * and hands the decoded messages to the Client's Session.
+ * <p>
+ * As an Outbox, it asks its loop to flush the connection whenever a message is
+ * sent to the Client, so relayed messages don't wait for the Client to send
+ * anything. Messages sent before the flush are written together.
+ * 
+ * @author Kindred Team
+ */
+class ChannelConnection implements Outbox {
+
+    /**
+     * Channel connected to the Client.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Loop servicing this connection.
+     */
+    private final SelectorLoop loop;
+
+    /**
+     * SelectionKey of the channel on the loop's Selector.
+     */
+    private SelectionKey key;
+
+    /**
+     * Protocol state of the Client, which parses its messages.
+     */
+    private final Session session;
+
+    /**
+     * Buffer where bytes are read from the channel into.
+     */
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+
+    /**
+     * Bytes received that don't make up a complete frame yet.
+     */
+    private byte[] inbox = new byte[256];
+
+    /**
+     * Number of valid bytes in {@code inbox}.
+     */
+    private int inboxLength = 0;
+
+    /**
+     * Format of the frames exchanged with the Client.
+     */
+    private WireFormat format = WireFormat.TEXT;
+
+    /**
+     * If {@code true}, then the Client's first byte has already been checked
+     * for the BINARY preface.
+     */
+    private boolean negotiated = false;
+
+    /**
+     * Buffer where queued frames are gathered into a single write. Reused
+     * once its previous contents have been written.
+     */
+    private byte[] writeBytes = new byte[256];
+
+    /**
+     * Encoded messages that couldn't be completely written to the channel yet,
+     * or {@code null} if there are none.
+     */
+    private ByteBuffer pendingWrite = null;
+
+    /**
+     * Thread-safe queue of messages waiting to be written.
+     */
+    private final ConcurrentLinkedQueue<ServerToClientMessage> queue = new ConcurrentLinkedQueue<ServerToClientMessage>();
+
+    /**
+     * Number of messages in the queue, which is bounded by
+     * {@code Outbox.CAPACITY}.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * If {@code true}, then the queue filled up and the connection must be
+     * closed by the loop.
+     */
+    private volatile boolean stalled = false;
+
+    /**
+     * If {@code true}, then the loop has already been asked to flush this
+     * connection.
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    /**
+     * If {@code true}, then the connection has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Constructs a ChannelConnection.
+     * 
+     * @param channel
+     *            non-blocking channel connected to the Client
+     * @param loop
+     *            loop that will service the connection
+     */
+    ChannelConnection(SocketChannel channel, SelectorLoop loop) {
+        this.channel = channel;
+        this.loop = loop;
+        this.session = new Session(addressOf(channel), this);
+    }
+
+    /**
+     * Returns the Session of the connected Client.
+     * 
+     * @return the Client's Session
+     */
+    Session getSession() {
+        return session;
+    }
+
+    /**
+     * Defines the SelectionKey of the channel, once it's registered.
+     * 
+     * @param key
+     *            SelectionKey of the channel on the loop's Selector
+     */
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    @Override
+    public void send(ServerToClientMessage msg) {
+        if (stalled)
+            return;
+        if (queued.incrementAndGet() > CAPACITY)
+            stalled = true;
+        else
+            queue.add(msg);
+        if (flushScheduled.compareAndSet(false, true))
+            loop.scheduleFlush(this);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    /**
+     * Reads every byte available on the channel, parsing each complete
+     * message. Responses are written later, when the loop flushes the
+     * connection. Returns {@code false} if the connection must be closed.
+     * 
+     * @return {@code true} if the connection is still usable, or {@code false}
+     *         otherwise
+     * @throws IOException
+     *             if an I/O error occurs on the channel
+     */
+    boolean read() throws IOException {
+        int n;
+        while ((n = channel.read(readBuffer)) > 0) {
+            readBuffer.flip();
+            if (inboxLength + n > inbox.length)
+                inbox = Arrays.copyOf(inbox,
+                        Math.max(2 * inbox.length, inboxLength + n));
+            readBuffer.get(inbox, inboxLength, n);
+            inboxLength += n;
+            readBuffer.clear();
+
+            if (!parseFrames())
+                return false;
+        }
+
+        return n >= 0;
+    }
+
+    /**
+     * Writes the messages sent since the last flush. Called by the loop after
+     * the flush was scheduled.
+     * 
+     * @throws IOException
+     *             if an I/O error occurs on the channel, or if the Client
+     *             stopped reading and its queue filled up
+     */
+    void flush() throws IOException {
+        // Messages sent from now on need another flush
+        flushScheduled.set(false);
+        if (stalled && !closed) {
+            EventLog.get().log("error", session.getAddress(),
+                    "Client stopped reading; " + CAPACITY + " messages waiting");
+            throw new IOException("Client stopped reading");
+        }
+        if (!closed)
+            write();
+    }
+
+    /**
+     * Writes all pending and queued messages to the channel. If the channel
+     * can't take all of them, remaining bytes are kept and the key becomes
+     * interested in writing.
+     * 
+     * @throws IOException
+     *             if an I/O error occurs on the channel
+     */
+    void write() throws IOException {
+        while (true) {
+            if (pendingWrite == null) {
+                pendingWrite = drainQueue();
+                if (pendingWrite == null)
+                    break;
+            }
+
+            channel.write(pendingWrite);
+            if (pendingWrite.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            pendingWrite = null;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Closes the channel and removes all data related to the Client. Does
+     * nothing if the connection was already closed.
+     */
+    void close() {
+        if (closed)
+            return;
+        closed = true;
+        queue.clear();
+
+        EventLog.get().log("disconnect", session.getAddress(), null);
+        session.close();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Ignore if channel couldn't be closed
+        }
+    }
+
+    /**
+     * Parses every complete frame received so far, keeping the bytes of an
+     * incomplete one. If the Client starts with the BINARY preface, it's
+     * acknowledged and the connection switches to that format.
+     * 
+     * @return {@code true} if the connection is still usable, or {@code false}
+     *         if the Client sent a frame that is too long
+     * @throws IOException
+     *             if the preface can't be acknowledged
+     */
+    private boolean parseFrames() throws IOException {
+        int start = 0;
+        if (!negotiated) {
+            negotiated = true;
+            if ((inbox[0] & 0xFF) == WireFormat.BINARY_PREFACE) {
+                format = WireFormat.BINARY;
+                start = 1;
+                pendingWrite = ByteBuffer
+                        .wrap(new byte[] { (byte) WireFormat.BINARY_PREFACE });
+                write();
+            }
+        }
+
+        int length;
+        while ((length = format.frameLength(inbox, start, inboxLength)) > 0) {
+            ClientToServerMessage msg = ClientToServerMessage.fromFrame(format,
+                    inbox, start, length);
+            start += length;
+            if (msg != null)
+                session.parse(msg);
+        }
+
+        inboxLength -= start;
+        System.arraycopy(inbox, start, inbox, 0, inboxLength);
+        return inboxLength < WireFormat.MAX_FRAME_LENGTH;
+    }
+
+    /**
+     * Gathers the frames of every queued message into a single buffer.
+     * 
+     * @return buffer ready to be written, or {@code null} if the queue is
+     *         empty
+     */
+    private ByteBuffer drainQueue() {
+        ServerToClientMessage msg = queue.poll();
+        if (msg == null)
+            return null;
+
+        int n = 0;
+        do {
+            queued.decrementAndGet();
+            if (msg instanceof RelayedMessage)
+                ServerMetrics.get().relayed((RelayedMessage) msg);
+            byte[] frame = msg.toFrame(format);
+            if (n + frame.length > writeBytes.length)
+                writeBytes = Arrays.copyOf(writeBytes,
+                        Math.max(2 * writeBytes.length, n + frame.length));
+            System.arraycopy(frame, 0, writeBytes, n, frame.length);
+            n += frame.length;
+        } while ((msg = queue.poll()) != null);
+        return ByteBuffer.wrap(writeBytes, 0, n);
+    }
+
+    /**
+     * Returns the address of the Client connected to a channel.
+     * 
+     * @param channel
+     *            channel connected to the Client
+     * @return the Client's address, as "IP:Port"
+     */
+    private static String addressOf(SocketChannel channel) {
+        return channel.socket().getInetAddress().getHostAddress() + ":"
+                + channel.socket().getPort();
+    }
+}
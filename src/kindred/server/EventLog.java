@@ -0,0 +1,521 @@
+package kindred.server;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Structured log of the Server's events (connections, disconnections, errors,
+ * matches and, when tracing, every message received or sent), written as one
+ * JSON object per line.
+ * <p>
+ * Threads servicing Clients never write anything themselves: each event is
+ * put in a ring buffer, claimed with a single compare-and-set, and a daemon
+ * thread formats and writes the events in the order they were claimed. If the
+ * buffer is full, the event is dropped and counted instead, so that a slow
+ * disk or console never holds up a connection.
+ * <p>
+ * The log is configured by system properties read when it's started:
+ * {@code kindred.log.file} names the file events are appended to (standard
+ * output if unset), which is rotated once it reaches
+ * {@code kindred.log.maxBytes} bytes, keeping {@code kindred.log.files} older
+ * files; {@code kindred.log.buffer} is the number of events the buffer holds;
+ * and {@code kindred.trace} switches on tracing, which can also be switched at
+ * any time through JMX, as an EventLogMXBean.
+ * 
+ * @author Kindred Team
+ */
+final class EventLog implements EventLogMXBean, Runnable {
+
+    /**
+     * Name under which the log is registered in the platform MBeanServer.
+     */
+    static final String OBJECT_NAME = "kindred.server:type=EventLog";
+
+    /**
+     * Default number of events the buffer holds.
+     */
+    private static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * Default size, in bytes, at which the log file is rotated.
+     */
+    private static final long DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+
+    /**
+     * Default number of rotated log files kept.
+     */
+    private static final int DEFAULT_FILES = 5;
+
+    /**
+     * Time, in nanoseconds, that the writing thread sleeps when there is
+     * nothing to write.
+     */
+    private static final long IDLE_PARK = 10000000L;
+
+    /**
+     * Longest time, in nanoseconds, that {@link #flush()} waits for.
+     */
+    private static final long FLUSH_TIMEOUT = 1000000000L;
+
+    /**
+     * Event log of the Server running in this process.
+     */
+    private static final EventLog instance = new EventLog();
+
+    /**
+     * Ring buffer of the events not yet written; slot {@code i & mask} holds
+     * the i-th event claimed, or {@code null} until it's put there.
+     */
+    private final AtomicReferenceArray<Event> slots;
+
+    /**
+     * Mask giving the slot of an event from its sequence number.
+     */
+    private final int mask;
+
+    /**
+     * Number of events claimed so far, i.e. sequence number of the next one.
+     */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /**
+     * Number of events taken out of the buffer by the writing thread.
+     */
+    private volatile long taken = 0;
+
+    /**
+     * Number of events written and flushed by the writing thread.
+     */
+    private volatile long flushed = 0;
+
+    /**
+     * Number of events dropped because the buffer was full.
+     */
+    private final StripedCounter dropped = new StripedCounter();
+
+    /**
+     * If {@code true}, then every message received or sent is logged.
+     */
+    private volatile boolean tracing = Boolean.getBoolean("kindred.trace");
+
+    /**
+     * Path of the log file, or {@code null} if events are written to the
+     * standard output.
+     */
+    private volatile String file = System.getProperty("kindred.log.file");
+
+    /**
+     * Size, in bytes, at which the log file is rotated.
+     */
+    private final long maxBytes = Long.getLong("kindred.log.maxBytes",
+            DEFAULT_MAX_BYTES);
+
+    /**
+     * Number of rotated log files kept.
+     */
+    private final int maxFiles = Integer.getInteger("kindred.log.files",
+            DEFAULT_FILES);
+
+    /**
+     * Thread writing the events, or {@code null} if the log wasn't started.
+     */
+    private volatile Thread writer = null;
+
+    /**
+     * Destination of the events. Only used by the writing thread.
+     */
+    private Writer out;
+
+    /**
+     * Size, in bytes, of the current log file. Only used by the writing
+     * thread.
+     */
+    private long bytes;
+
+    /**
+     * Line being formatted. Only used by the writing thread.
+     */
+    private final StringBuilder line = new StringBuilder(256);
+
+    /**
+     * Formats the time of events, in UTC. Only used by the writing thread.
+     */
+    private final SimpleDateFormat timestamps = new SimpleDateFormat(
+            "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.ROOT);
+
+    /**
+     * Time of the event being formatted. Only used by the writing thread.
+     */
+    private final Date date = new Date();
+
+    /**
+     * Not to be instantiated but once, since the log is shared by the whole
+     * process.
+     */
+    private EventLog() {
+        int capacity = Integer.getInteger("kindred.log.buffer",
+                DEFAULT_CAPACITY);
+        capacity = Integer.highestOneBit(Math.max(2, 2 * capacity - 1));
+        slots = new AtomicReferenceArray<Event>(capacity);
+        mask = capacity - 1;
+        timestamps.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Returns the event log of the Server running in this process.
+     * 
+     * @return the Server's event log
+     */
+    static EventLog get() {
+        return instance;
+    }
+
+    /**
+     * Starts the thread writing the events and registers the log in the
+     * platform MBeanServer, unless this was already done. Events logged
+     * before are kept in the buffer until then.
+     */
+    static void start() {
+        synchronized (instance) {
+            if (instance.writer != null)
+                return;
+            instance.open();
+            Thread t = new Thread(instance, "EventLog");
+            t.setDaemon(true);
+            instance.writer = t;
+            t.start();
+        }
+
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name))
+                server.registerMBean(instance, name);
+        } catch (JMException e) {
+            instance.log("error", null, "Couldn't register the event log: "
+                    + e);
+        }
+    }
+
+    /**
+     * Logs an event.
+     * 
+     * @param event
+     *            kind of the event (e.g. "connect" or "error")
+     * @param client
+     *            address of the Client concerned, as "IP:Port", or
+     *            {@code null} if the event concerns the whole Server
+     * @param detail
+     *            description of the event, or {@code null}
+     */
+    void log(String event, String client, String detail) {
+        append(new Event(event, client, null, null, detail));
+    }
+
+    /**
+     * Logs a message received or sent, if messages are being traced.
+     * 
+     * @param direction
+     *            "recv" for a message received, or "send" for a message sent
+     * @param client
+     *            address of the Client, as "IP:Port"
+     * @param type
+     *            type of the message
+     * @param argument
+     *            argument of the message
+     */
+    void trace(String direction, String client, Enum<?> type, String argument) {
+        if (tracing)
+            append(new Event(direction, client, type, argument, null));
+    }
+
+    /**
+     * Waits for the events logged so far to be written, for at most a
+     * second. Called before the process exits.
+     */
+    void flush() {
+        Thread t = writer;
+        if (t == null)
+            return;
+        long target = claimed.get();
+        long deadline = System.nanoTime() + FLUSH_TIMEOUT;
+        while (flushed < target && System.nanoTime() - deadline < 0) {
+            LockSupport.unpark(t);
+            LockSupport.parkNanos(IDLE_PARK / 10);
+        }
+    }
+
+    @Override
+    public boolean isTracing() {
+        return tracing;
+    }
+
+    @Override
+    public void setTracing(boolean tracing) {
+        this.tracing = tracing;
+        log("info", null, "Tracing " + (tracing ? "on" : "off"));
+    }
+
+    @Override
+    public long getLoggedEvents() {
+        return flushed;
+    }
+
+    @Override
+    public long getDroppedEvents() {
+        return dropped.sum();
+    }
+
+    @Override
+    public int getCapacity() {
+        return slots.length();
+    }
+
+    @Override
+    public String getDestination() {
+        String f = file;
+        return f == null ? "stdout" : f;
+    }
+
+    /**
+     * Run by a thread. Writes the events in the order they were claimed,
+     * flushing the destination whenever the buffer is empty.
+     */
+    @Override
+    public void run() {
+        long seq = taken;
+        while (true) {
+            int slot = (int) seq & mask;
+            Event e = slots.get(slot);
+            if (e == null) {
+                // Nothing more to write, or the event isn't there yet
+                if (flushed != seq) {
+                    flushOut();
+                    flushed = seq;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK);
+                continue;
+            }
+            slots.lazySet(slot, null);
+            taken = ++seq;
+            write(e);
+        }
+    }
+
+    /**
+     * Puts an event in the buffer, or drops it if the buffer is full.
+     * 
+     * @param e
+     *            the event
+     */
+    private void append(Event e) {
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - taken >= slots.length()) {
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        slots.lazySet((int) seq & mask, e);
+    }
+
+    /**
+     * Formats an event as a line of JSON and writes it, rotating the log file
+     * if it grew too large.
+     * 
+     * @param e
+     *            the event
+     */
+    private void write(Event e) {
+        date.setTime(e.time);
+        line.setLength(0);
+        line.append("{\"ts\":\"").append(timestamps.format(date))
+                .append("\",\"event\":");
+        quote(e.name);
+        if (e.client != null) {
+            line.append(",\"client\":");
+            quote(e.client);
+        }
+        if (e.type != null) {
+            line.append(",\"type\":");
+            quote(e.type.name());
+            line.append(",\"arg\":");
+            quote(e.argument);
+        }
+        if (e.detail != null) {
+            line.append(",\"detail\":");
+            quote(e.detail);
+        }
+        line.append("}\n");
+
+        try {
+            out.append(line);
+            // Every character is ASCII, so each one is a byte
+            bytes += line.length();
+            if (file != null && bytes >= maxBytes)
+                rotate();
+        } catch (IOException ex) {
+            System.err.println("Couldn't write the event log: " + ex);
+            file = null;
+            open();
+        }
+    }
+
+    /**
+     * Appends a string to the line as a JSON string, escaping every
+     * character that isn't printable ASCII.
+     * 
+     * @param s
+     *            the string
+     */
+    private void quote(String s) {
+        line.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                line.append("\\u");
+                for (int shift = 12; shift >= 0; shift -= 4)
+                    line.append(Character.forDigit((c >> shift) & 0xf, 16));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * Opens the destination of the events, appending to the log file if it
+     * exists. If the file can't be opened, events are written to the standard
+     * output instead.
+     */
+    private void open() {
+        if (file != null) {
+            try {
+                File f = new File(file);
+                bytes = f.length();
+                out = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(f, true), StandardCharsets.UTF_8));
+                return;
+            } catch (IOException e) {
+                System.err.println("Couldn't open the event log '" + file
+                        + "'!");
+                file = null;
+            }
+        }
+        bytes = 0;
+        out = new BufferedWriter(new OutputStreamWriter(System.out,
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Flushes the destination of the events.
+     */
+    private void flushOut() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Couldn't write the event log: " + e);
+        }
+    }
+
+    /**
+     * Closes the log file, renames it and the older ones ("server.log"
+     * becomes "server.log.1", which becomes "server.log.2", and so on, the
+     * oldest one being deleted), and opens a new one.
+     * 
+     * @throws IOException
+     *             if the log file couldn't be closed
+     */
+    private void rotate() throws IOException {
+        out.close();
+        new File(file + "." + maxFiles).delete();
+        for (int i = maxFiles - 1; i >= 1; i--)
+            new File(file + "." + i).renameTo(new File(file + "." + (i + 1)));
+        File current = new File(file);
+        if (maxFiles > 0)
+            current.renameTo(new File(file + ".1"));
+        else
+            current.delete();
+        open();
+    }
+
+    /**
+     * Event waiting in the buffer to be written.
+     */
+    private static final class Event {
+
+        /**
+         * Time at which the event happened, in milliseconds since the epoch.
+         */
+        final long time = System.currentTimeMillis();
+
+        /**
+         * Kind of the event.
+         */
+        final String name;
+
+        /**
+         * Address of the Client concerned, or {@code null}.
+         */
+        final String client;
+
+        /**
+         * Type of the traced message, or {@code null} if the event isn't a
+         * message.
+         */
+        final Enum<?> type;
+
+        /**
+         * Argument of the traced message, or {@code null}.
+         */
+        final String argument;
+
+        /**
+         * Description of the event, or {@code null}.
+         */
+        final String detail;
+
+        /**
+         * Constructs an Event, happening now.
+         * 
+         * @param name
+         *            kind of the event
+         * @param client
+         *            address of the Client concerned, or {@code null}
+         * @param type
+         *            type of the traced message, or {@code null}
+         * @param argument
+         *            argument of the traced message, or {@code null}
+         * @param detail
+         *            description of the event, or {@code null}
+         */
+        Event(String name, String client, Enum<?> type, String argument,
+                String detail) {
+            this.name = name;
+            this.client = client;
+            this.type = type;
+            this.argument = argument;
+            this.detail = detail;
+        }
+    }
+}
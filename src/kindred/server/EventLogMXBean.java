@@ -0,0 +1,56 @@
+package kindred.server;
+
+/**
+ * Management interface of the Server's event log, registered in the platform
+ * MBeanServer as "kindred.server:type=EventLog", so that message tracing can
+ * be switched on and off from JConsole or any JMX client while the Server
+ * runs.
+ * 
+ * @author Kindred Team
+ */
+public interface EventLogMXBean {
+
+    /**
+     * Returns whether every message received or sent is logged.
+     * 
+     * @return {@code true} if messages are traced
+     */
+    boolean isTracing();
+
+    /**
+     * Defines whether every message received or sent is logged from now on.
+     * 
+     * @param tracing
+     *            {@code true} if messages must be traced
+     */
+    void setTracing(boolean tracing);
+
+    /**
+     * Returns the number of events written since the Server started.
+     * 
+     * @return the number of written events
+     */
+    long getLoggedEvents();
+
+    /**
+     * Returns the number of events dropped because the log's buffer was full
+     * when they happened.
+     * 
+     * @return the number of dropped events
+     */
+    long getDroppedEvents();
+
+    /**
+     * Returns the number of events that the log's buffer can hold.
+     * 
+     * @return the capacity of the buffer
+     */
+    int getCapacity();
+
+    /**
+     * Returns where events are written.
+     * 
+     * @return the path of the log file, or "stdout"
+     */
+    String getDestination();
+}
@@ -0,0 +1,366 @@
+package kindred.server;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import kindred.common.ServerToClientEnum;
+import kindred.common.ServerToClientMessage;
+import kindred.common.WireFormat;
+
+/**
+ * Immutable catalog of the maps that can be played on the Server. It's built
+ * once, when the Server starts (and again whenever a MapWatcher notices that
+ * the map directory changed), so that lobby commands don't read any file.
+ * <p>
+ * Every map file in the map directory is validated; invalid maps are left out
+ * of the catalog. Only the valid maps named in {@code list.info} are shown to
+ * Clients, in that order, but every valid map can be hosted.
+ * 
+ * @author Kindred Team
+ */
+final class MapCatalog {
+
+    /**
+     * Resource directory containing the map files.
+     */
+    static final String MAP_DIR = "/kindred/common/data/map/";
+
+    /**
+     * Name of the file, in the map directory, that lists the available maps.
+     */
+    static final String LIST_FILE = "list.info";
+
+    /**
+     * Resource file describing every Terrain type.
+     */
+    private static final String TERRAIN_FILE = "/kindred/common/data/terrain/terrain.txt";
+
+    /**
+     * Resource file describing every Unit type.
+     */
+    private static final String UNIT_FILE = "/kindred/common/data/unit/unit.txt";
+
+    /**
+     * Information about a valid map in the catalog.
+     */
+    static final class MapInfo {
+
+        /**
+         * Name of the map, as used by the HOST command.
+         */
+        final String name;
+
+        /**
+         * Number of rows of Tiles.
+         */
+        final int rows;
+
+        /**
+         * Number of columns of Tiles.
+         */
+        final int cols;
+
+        /**
+         * Number of Units of the first player.
+         */
+        final int unitsA;
+
+        /**
+         * Number of Units of the second player.
+         */
+        final int unitsB;
+
+        /**
+         * Constructs a MapInfo.
+         * 
+         * @param name
+         *            name of the map
+         * @param rows
+         *            number of rows of Tiles
+         * @param cols
+         *            number of columns of Tiles
+         * @param unitsA
+         *            number of Units of the first player
+         * @param unitsB
+         *            number of Units of the second player
+         */
+        MapInfo(String name, int rows, int cols, int unitsA, int unitsB) {
+            this.name = name;
+            this.rows = rows;
+            this.cols = cols;
+            this.unitsA = unitsA;
+            this.unitsB = unitsB;
+        }
+    }
+
+    /**
+     * Valid maps, indexed by name.
+     */
+    private final Map<String, MapInfo> maps;
+
+    /**
+     * Response to the MAPS command, already encoded in every WireFormat.
+     */
+    private final ServerToClientMessage availableMaps;
+
+    /**
+     * Constructs a MapCatalog.
+     * 
+     * @param maps
+     *            valid maps, indexed by name
+     * @param listed
+     *            names of the maps shown to Clients, in order
+     */
+    private MapCatalog(Map<String, MapInfo> maps, Iterable<String> listed) {
+        this.maps = Collections.unmodifiableMap(maps);
+
+        StringBuilder sb = new StringBuilder();
+        for (String name : listed)
+            if (maps.containsKey(name))
+                sb.append(sb.length() == 0 ? "" : "|").append(name);
+        availableMaps = new ServerToClientMessage(
+                ServerToClientEnum.INFO_AVAILABLE_MAPS, sb.toString());
+        for (WireFormat format : WireFormat.values())
+            availableMaps.toFrame(format);
+    }
+
+    /**
+     * Returns information about a map.
+     * 
+     * @param name
+     *            name of the map
+     * @return the map's information, or {@code null} if there is no valid map
+     *         with that name
+     */
+    MapInfo get(String name) {
+        return maps.get(name);
+    }
+
+    /**
+     * Returns the number of valid maps.
+     * 
+     * @return the number of maps in the catalog
+     */
+    int size() {
+        return maps.size();
+    }
+
+    /**
+     * Returns the response to the MAPS command.
+     * 
+     * @return an INFO_AVAILABLE_MAPS message listing the available maps
+     */
+    ServerToClientMessage getAvailableMaps() {
+        return availableMaps;
+    }
+
+    /**
+     * Reads and validates every map in the map directory, building a new
+     * catalog.
+     * 
+     * @return the new MapCatalog
+     */
+    static MapCatalog load() {
+        Set<Character> terrains = readFirstColumn(TERRAIN_FILE);
+        Set<String> units = new HashSet<String>();
+        for (String s : readLines(UNIT_FILE))
+            units.add(s.split("\\s+")[0]);
+
+        Set<String> listed = new LinkedHashSet<String>();
+        for (String line : readLines(MAP_DIR + LIST_FILE))
+            for (String name : line.split("\\|"))
+                if (!name.trim().isEmpty())
+                    listed.add(name.trim());
+
+        // Maps not in the list may be hosted as well
+        Set<String> names = new LinkedHashSet<String>(listed);
+        names.addAll(findMapFiles());
+
+        Map<String, MapInfo> maps = new LinkedHashMap<String, MapInfo>();
+        for (String name : names) {
+            MapInfo info = validate(name, terrains, units);
+            if (info != null)
+                maps.put(name, info);
+        }
+        return new MapCatalog(maps, listed);
+    }
+
+    /**
+     * Returns the map directory, if it's a directory of the file system.
+     * 
+     * @return the map directory, or {@code null} if maps are loaded from
+     *         elsewhere (e.g. a jar)
+     */
+    static File directory() {
+        URL url = MapCatalog.class.getResource(MAP_DIR);
+        if (url == null || !url.getProtocol().equals("file"))
+            return null;
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Validates a map file, reading its dimensions and Units.
+     * 
+     * @param name
+     *            name of the map
+     * @param terrains
+     *            chars of every valid Terrain
+     * @param units
+     *            names of every valid Unit type
+     * @return information about the map, or {@code null} if it's invalid or
+     *         doesn't exist
+     */
+    private static MapInfo validate(String name, Set<Character> terrains,
+            Set<String> units) {
+        ArrayList<String> tokens = new ArrayList<String>();
+        ArrayList<String> lines = readLines(MAP_DIR + name + ".txt");
+        if (lines.isEmpty()) {
+            EventLog.get().log("error", null, "Map '" + name + "' not found");
+            return null;
+        }
+
+        try {
+            String[] header = (lines.get(0) + " " + lines.get(1)).trim().split(
+                    "\\s+");
+            int rows = Integer.parseInt(header[0]);
+            int cols = Integer.parseInt(header[1]);
+            if (rows <= 0 || cols <= 0 || header.length != 4)
+                throw new IllegalArgumentException("bad header");
+
+            // Tiles may span any number of lines
+            int line = 2;
+            while (tokens.size() < rows * cols) {
+                for (String t : lines.get(line++).trim().split("\\s+"))
+                    if (!t.isEmpty())
+                        tokens.add(t);
+            }
+            if (tokens.size() != rows * cols)
+                throw new IllegalArgumentException("bad tiles");
+            for (String t : tokens)
+                if (t.length() != 1 || !terrains.contains(t.charAt(0)))
+                    throw new IllegalArgumentException("bad terrain " + t);
+
+            int[] unitCount = new int[3];
+            for (; line < lines.size(); line++) {
+                String[] parts = lines.get(line).trim().split("\\s+");
+                int team = Integer.parseInt(parts[0]);
+                int x = Integer.parseInt(parts[2]);
+                int y = Integer.parseInt(parts[3]);
+                if (team < 1 || team > 2 || !units.contains(parts[1])
+                        || x < 0 || x >= rows || y < 0 || y >= cols)
+                    throw new IllegalArgumentException("bad unit");
+                unitCount[team]++;
+            }
+            if (unitCount[1] == 0 || unitCount[2] == 0)
+                throw new IllegalArgumentException("missing units");
+
+            return new MapInfo(name, rows, cols, unitCount[1], unitCount[2]);
+        } catch (RuntimeException e) {
+            EventLog.get().log("error", null, "Map '" + name
+                    + "' is invalid: " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the names of the map files found in the map directory, be it a
+     * directory of the file system or of a jar.
+     * 
+     * @return names of the maps, without the ".txt" extension
+     */
+    private static Set<String> findMapFiles() {
+        Set<String> names = new LinkedHashSet<String>();
+        File dir = directory();
+        if (dir != null) {
+            String[] files = dir.list();
+            if (files != null)
+                for (String f : files)
+                    if (f.endsWith(".txt"))
+                        names.add(f.substring(0, f.length() - 4));
+            return names;
+        }
+
+        URL url = MapCatalog.class.getResource(MAP_DIR);
+        if (url == null || !url.getProtocol().equals("jar"))
+            return names;
+        String prefix = MAP_DIR.substring(1);
+        try {
+            JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                String entry = entries.nextElement().getName();
+                if (entry.startsWith(prefix) && entry.endsWith(".txt")
+                        && entry.indexOf('/', prefix.length()) < 0)
+                    names.add(entry.substring(prefix.length(),
+                            entry.length() - 4));
+            }
+        } catch (IOException e) {
+            // Only the listed maps are known
+        }
+        return names;
+    }
+
+    /**
+     * Returns the set of first chars of each line of a resource file.
+     * 
+     * @param resource
+     *            path of the resource file
+     * @return the first char of every non-blank line
+     */
+    private static Set<Character> readFirstColumn(String resource) {
+        Set<Character> chars = new HashSet<Character>();
+        for (String line : readLines(resource))
+            chars.add(line.trim().charAt(0));
+        return chars;
+    }
+
+    /**
+     * Reads the non-blank lines of a resource file.
+     * 
+     * @param resource
+     *            path of the resource file
+     * @return the file's non-blank lines, or an empty list if it doesn't exist
+     *         or can't be read
+     */
+    private static ArrayList<String> readLines(String resource) {
+        ArrayList<String> lines = new ArrayList<String>();
+        InputStream is = MapCatalog.class.getResourceAsStream(resource);
+        if (is == null)
+            return lines;
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(is));
+            try {
+                String line;
+                while ((line = in.readLine()) != null)
+                    if (!line.trim().isEmpty())
+                        lines.add(line);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            EventLog.get().log("error", null, "Couldn't read '" + resource
+                    + "': " + e);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,90 @@
+package kindred.server;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import kindred.common.model.MapTemplate;
+
+/**
+ * Watches the map directory, rebuilding the MapCatalog used by every Session
+ * (and forgetting the parsed MapTemplates) whenever a file in it is created,
+ * modified or deleted. Only works when maps
+ * are loaded from a directory of the file system, not from a jar.
+ * 
+ * @author Kindred Team
+ */
+class MapWatcher implements Runnable {
+
+    /**
+     * Time, in milliseconds, during which further changes are awaited before
+     * reloading, so that a file being written causes a single reload.
+     */
+    private static final long SETTLE_TIME = 200;
+
+    /**
+     * Service notifying changes in the map directory.
+     */
+    private final WatchService service;
+
+    /**
+     * Constructs a MapWatcher.
+     * 
+     * @param dir
+     *            map directory to be watched
+     * @throws IOException
+     *             if the directory can't be watched
+     */
+    MapWatcher(File dir) throws IOException {
+        service = FileSystems.getDefault().newWatchService();
+        dir.toPath().register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+    }
+
+    /**
+     * Stops watching the map directory.
+     */
+    void close() {
+        try {
+            service.close();
+        } catch (IOException e) {
+            // Ignore if service couldn't be closed
+        }
+    }
+
+    /**
+     * Run by a thread. Reloads the MapCatalog after each change, until the
+     * watcher is closed.
+     */
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                // Changes made in quick succession are reloaded at once
+                do {
+                    key.pollEvents();
+                    key.reset();
+                } while ((key = service.poll(SETTLE_TIME,
+                        TimeUnit.MILLISECONDS)) != null);
+
+                MapCatalog catalog = MapCatalog.load();
+                Session.setMapCatalog(catalog);
+                MapTemplate.clearCache();
+                EventLog.get().log("info", null, "Map catalog reloaded: "
+                        + catalog.size() + " maps");
+            }
+        } catch (InterruptedException e) {
+            // Stop watching
+        } catch (ClosedWatchServiceException e) {
+            // Stop watching
+        }
+    }
+}
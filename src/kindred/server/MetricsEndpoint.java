@@ -0,0 +1,114 @@
+package kindred.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the Server's metrics as plain text on a port of the loopback
+ * interface, answering every HTTP request (e.g. {@code curl
+ * localhost:port/metrics}) with the text written by
+ * {@link ServerMetrics#toText()}, so that they can be scraped by Prometheus.
+ * Requests are served one at a time by a single thread, far from the Clients'
+ * connections.
+ * 
+ * @author Kindred Team
+ */
+class MetricsEndpoint implements Runnable {
+
+    /**
+     * Time, in milliseconds, given to a scraper to send its request.
+     */
+    private static final int REQUEST_TIMEOUT = 2000;
+
+    /**
+     * Socket on which scrapers connect.
+     */
+    private final ServerSocket socket;
+
+    /**
+     * Constructs a MetricsEndpoint, listening on the loopback interface.
+     * 
+     * @param port
+     *            port to listen on, or 0 for any free port
+     * @throws IOException
+     *             if the port can't be bound
+     */
+    MetricsEndpoint(int port) throws IOException {
+        socket = new ServerSocket(port, 50, InetAddress.getByName(null));
+    }
+
+    /**
+     * Returns the port on which the endpoint listens.
+     * 
+     * @return the bound port
+     */
+    int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /**
+     * Stops serving the metrics.
+     */
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Ignore if socket couldn't be closed
+        }
+    }
+
+    /**
+     * Run by a thread. Answers each request with the current metrics, until
+     * the endpoint is closed.
+     */
+    @Override
+    public void run() {
+        while (!socket.isClosed()) {
+            try {
+                Socket s = socket.accept();
+                try {
+                    serve(s);
+                } finally {
+                    s.close();
+                }
+            } catch (IOException e) {
+                // The scraper went away, or the endpoint was closed
+            }
+        }
+    }
+
+    /**
+     * Reads a request, up to the blank line ending its headers, and answers
+     * it with the current metrics.
+     * 
+     * @param s
+     *            socket connected to the scraper
+     * @throws IOException
+     *             if the scraper can't be read from or written to
+     */
+    private void serve(Socket s) throws IOException {
+        s.setSoTimeout(REQUEST_TIMEOUT);
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                s.getInputStream(), StandardCharsets.ISO_8859_1));
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty()) {
+            // Whatever was asked for, the metrics are sent
+        }
+
+        byte[] body = ServerMetrics.get().toText()
+                .getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.0 200 OK\r\n"
+                + "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n"
+                + "Content-Length: " + body.length + "\r\n\r\n";
+        OutputStream out = s.getOutputStream();
+        out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+        out.write(body);
+        out.flush();
+    }
+}
@@ -0,0 +1,39 @@
+package kindred.server;
+
+import kindred.common.ServerToClientMessage;
+
+/**
+ * Destination of the messages that a Session sends to its Client. Each Server
+ * front-end implements it according to how the Client's socket is written.
+ * 
+ * @author Kindred Team
+ */
+interface Outbox {
+
+    /**
+     * Number of messages that may wait to be written to a Client. A Client
+     * whose queue fills up has stopped reading, and is disconnected rather
+     * than left to hold back its senders.
+     */
+    int CAPACITY = 1024;
+
+    /**
+     * Delivers a message to the Client as soon as possible. May be called from
+     * any thread; messages sent by the same thread arrive in order. Never
+     * blocks: if {@code CAPACITY} messages are already waiting, the Client is
+     * disconnected instead.
+     * 
+     * @param msg
+     *            message to be sent to the Client
+     */
+    void send(ServerToClientMessage msg);
+
+    /**
+     * Returns the number of messages sent to the Client and not written yet.
+     * Meant for statistics: it may take time proportional to that number.
+     * 
+     * @return the number of messages waiting to be written
+     */
+    int getQueueDepth();
+
+}
@@ -0,0 +1,34 @@
+package kindred.server;
+
+import kindred.common.ServerToClientEnum;
+import kindred.common.ServerToClientMessage;
+
+/**
+ * Game action sent to a Client on behalf of its opponent, remembering when
+ * the opponent's message was received, so that Outboxes can measure how long
+ * it took to relay.
+ * 
+ * @author Kindred Team
+ */
+final class RelayedMessage extends ServerToClientMessage {
+
+    /**
+     * Time at which the message that caused this one was received, as given
+     * by {@link System#nanoTime()}.
+     */
+    final long receivedAt;
+
+    /**
+     * Constructs a RelayedMessage of type GAME_ACTION.
+     * 
+     * @param argument
+     *            encoded game action
+     * @param receivedAt
+     *            time at which the opponent's message was received, as given
+     *            by {@link System#nanoTime()}
+     */
+    RelayedMessage(String argument, long receivedAt) {
+        super(ServerToClientEnum.GAME_ACTION, argument);
+        this.receivedAt = receivedAt;
+    }
+}
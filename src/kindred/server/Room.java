@@ -1,7 +1,10 @@
 package kindred.server;
 
+import kindred.common.model.Game;
+
 /**
- * Holds the nicknames of two players participating in a game.
+ * Holds the nicknames of two players participating in a game and, if the
+ * Server referees it, the state of the game.
  * 
  * @author Kindred Team
  */
@@ -10,15 +13,21 @@ public class Room {
     /**
      * Player A's nickname.
      */
-    public String nickA;
+    public volatile String nickA;
 
     /**
      * Player B's nickname.
      */
-    public String nickB;
+    public volatile String nickB;
 
     /**
-     * Constructs a Room.
+     * Game refereed by the Server, or {@code null} if the players' actions
+     * are only relayed. Must be accessed with the Room locked.
+     */
+    private final Game game;
+
+    /**
+     * Constructs a Room whose players' actions are only relayed.
      * 
      * @param nickA
      *            nickname of the first player
@@ -26,8 +35,51 @@ public class Room {
      *            nickname of the second player
      */
     public Room(String nickA, String nickB) {
+        this(nickA, nickB, null);
+    }
+
+    /**
+     * Constructs a Room.
+     * 
+     * @param nickA
+     *            nickname of the first player
+     * @param nickB
+     *            nickname of the second player
+     * @param game
+     *            Game refereed by the Server, or {@code null} if the players'
+     *            actions are only relayed
+     */
+    public Room(String nickA, String nickB, Game game) {
         this.nickA = nickA;
         this.nickB = nickB;
+        this.game = game;
+    }
+
+    /**
+     * Returns the Game refereed by the Server. Must be called, and the Game
+     * used, with the Room locked.
+     * 
+     * @return the Room's Game, or {@code null} if the players' actions are
+     *         only relayed
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Returns the team of a player in the Room.
+     * 
+     * @param nick
+     *            nickname of the player
+     * @return 1 for the first player, 2 for the second one, or 0 if the
+     *         player isn't in the Room
+     */
+    public int getTeam(String nick) {
+        if (nick.equals(nickA))
+            return 1;
+        if (nick.equals(nickB))
+            return 2;
+        return 0;
     }
 
     /**
@@ -59,4 +111,20 @@ public class Room {
             return nickA;
         return null;
     }
+
+    /**
+     * Replaces the nickname of a player in the room, after they have changed
+     * it. Does nothing if {@code oldNick} isn't in the room.
+     * 
+     * @param oldNick
+     *            previous nickname of the player
+     * @param newNick
+     *            new nickname of the player
+     */
+    public void replaceNick(String oldNick, String newNick) {
+        if (oldNick.equals(nickA))
+            nickA = newNick;
+        else if (oldNick.equals(nickB))
+            nickB = newNick;
+    }
 }
@@ -0,0 +1,457 @@
+package kindred.server;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import kindred.common.ServerToClientEnum;
+import kindred.common.ServerToClientMessage;
+import kindred.common.WireFormat;
+
+/**
+ * Directory of the rooms waiting for a second player, i.e., the nicknames of
+ * the Clients hosting a room and the name of the map they wish to play on.
+ * <p>
+ * Every change made to the directory increments its version and is kept in a
+ * bounded log, so that a Client may ask only for the changes made since a
+ * version it already knows. Rooms are kept sorted by host, also indexed by
+ * map, so that a page of the listing is built without going through the rooms
+ * before it. The complete listing sent in reply to the ROOMS command is built
+ * once per version and shared by every Session.
+ * <p>
+ * Clients may also subscribe to the directory, being sent each change as it
+ * happens. An event is encoded once and the same frame is handed to every
+ * subscriber's Outbox. Events are delivered in the order of the changes,
+ * after the directory is unlocked, by the thread of a Client hosting or
+ * joining a room. Handing a message to an Outbox never blocks, so a slow
+ * subscriber only holds back that thread for as long as it takes to queue the
+ * message; a subscriber that stops reading is disconnected once
+ * {@code Outbox.CAPACITY} messages are waiting for it, rather than left to
+ * grow its backlog without bound.
+ * 
+ * @author Kindred Team
+ */
+final class RoomDirectory {
+
+    /**
+     * Default number of rooms in a page of the listing.
+     */
+    static final int DEFAULT_PAGE_SIZE = 20;
+
+    /**
+     * Maximum number of rooms in a page of the listing.
+     */
+    static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * Number of changes kept in the log. Clients that fall further behind
+     * receive the whole directory instead.
+     */
+    static final int LOG_SIZE = 1024;
+
+    /**
+     * Map name of each room, indexed by its host's nickname, sorted by
+     * nickname.
+     */
+    private final TreeMap<String, String> rooms = new TreeMap<String, String>();
+
+    /**
+     * Hosts' nicknames of the rooms of each map, sorted by nickname.
+     */
+    private final Map<String, TreeSet<String>> roomsByMap = new HashMap<String, TreeSet<String>>();
+
+    /**
+     * Last changes made to the directory. The change that created version
+     * {@code v} is stored at index {@code v % LOG_SIZE}, encoded as
+     * "+host&gt;map" if the room was added or "-host" if it was removed.
+     */
+    private final String[] log = new String[LOG_SIZE];
+
+    /**
+     * Current version of the directory, incremented by each change.
+     */
+    private long version = 0;
+
+    /**
+     * Response to the ROOMS command for the current version, or {@code null}
+     * if it wasn't built yet.
+     */
+    private volatile ServerToClientMessage listing = null;
+
+    /**
+     * Outboxes of the subscribed Clients. Replaced as a whole whenever a
+     * Client subscribes or unsubscribes, so that pending events keep the
+     * subscribers they were published to.
+     */
+    private Outbox[] subscribers = new Outbox[0];
+
+    /**
+     * Messages waiting to be delivered, in the order they were published.
+     */
+    private final ConcurrentLinkedQueue<Publication> publications = new ConcurrentLinkedQueue<Publication>();
+
+    /**
+     * Lock held by the thread delivering the pending messages.
+     */
+    private final ReentrantLock deliveryLock = new ReentrantLock();
+
+    /**
+     * Message published to some subscribers.
+     */
+    private static final class Publication {
+
+        /**
+         * Message to be delivered.
+         */
+        final ServerToClientMessage msg;
+
+        /**
+         * Outboxes to which the message is delivered.
+         */
+        final Outbox[] targets;
+
+        /**
+         * Constructs a Publication.
+         * 
+         * @param msg
+         *            message to be delivered
+         * @param targets
+         *            Outboxes to which the message is delivered
+         */
+        Publication(ServerToClientMessage msg, Outbox[] targets) {
+            this.msg = msg;
+            this.targets = targets;
+        }
+    }
+
+    /**
+     * Returns the number of rooms waiting for a second player.
+     * 
+     * @return the number of rooms
+     */
+    synchronized int size() {
+        return rooms.size();
+    }
+
+    /**
+     * Returns the map of the room hosted by a Client.
+     * 
+     * @param host
+     *            nickname of the hosting Client
+     * @return the name of the map, or {@code null} if the Client isn't hosting
+     *         a room
+     */
+    synchronized String get(String host) {
+        return rooms.get(host);
+    }
+
+    /**
+     * Returns whether a Client is hosting a room.
+     * 
+     * @param host
+     *            nickname of the Client
+     * @return {@code true} if the Client is hosting a room
+     */
+    synchronized boolean contains(String host) {
+        return rooms.containsKey(host);
+    }
+
+    /**
+     * Adds a room to the directory, replacing the one its host was hosting, if
+     * any.
+     * 
+     * @param host
+     *            nickname of the hosting Client
+     * @param map
+     *            name of the map to play on
+     */
+    void put(String host, String map) {
+        synchronized (this) {
+            addRoom(host, map);
+        }
+        deliver();
+    }
+
+    /**
+     * Removes the room hosted by a Client, if any.
+     * 
+     * @param host
+     *            nickname of the hosting Client
+     * @return the name of the room's map, or {@code null} if the Client wasn't
+     *         hosting a room
+     */
+    String remove(String host) {
+        String map;
+        synchronized (this) {
+            map = removeRoom(host);
+        }
+        deliver();
+        return map;
+    }
+
+    /**
+     * Moves the room hosted by a Client, if any, to their new nickname.
+     * 
+     * @param oldHost
+     *            old nickname of the hosting Client
+     * @param newHost
+     *            new nickname of the hosting Client
+     */
+    void rename(String oldHost, String newHost) {
+        synchronized (this) {
+            String map = removeRoom(oldHost);
+            if (map != null)
+                addRoom(newHost, map);
+        }
+        deliver();
+    }
+
+    /**
+     * Subscribes a Client to the directory. The Client is sent every room, as
+     * an INFO_ROOMS_DELTA message, and then a ROOM_ADDED or ROOM_REMOVED
+     * message for each change.
+     * 
+     * @param outbox
+     *            Outbox of the subscribing Client
+     */
+    void subscribe(Outbox outbox) {
+        synchronized (this) {
+            if (indexOf(outbox) < 0) {
+                subscribers = Arrays.copyOf(subscribers, subscribers.length + 1);
+                subscribers[subscribers.length - 1] = outbox;
+            }
+            publications.add(new Publication(getChangesSince(-1),
+                    new Outbox[] { outbox }));
+        }
+        deliver();
+    }
+
+    /**
+     * Unsubscribes a Client from the directory. Changes made from now on are
+     * no longer sent to the Client.
+     * 
+     * @param outbox
+     *            Outbox of the unsubscribing Client
+     */
+    synchronized void unsubscribe(Outbox outbox) {
+        int i = indexOf(outbox);
+        if (i < 0)
+            return;
+        Outbox[] remaining = new Outbox[subscribers.length - 1];
+        System.arraycopy(subscribers, 0, remaining, 0, i);
+        System.arraycopy(subscribers, i + 1, remaining, i, remaining.length - i);
+        subscribers = remaining;
+    }
+
+    /**
+     * Returns the response to the ROOMS command, listing every room.
+     * 
+     * @return an INFO_AVAILABLE_ROOMS message with every room, as
+     *         "host&gt;map" items separated by pipes
+     */
+    ServerToClientMessage getListing() {
+        ServerToClientMessage msg = listing;
+        if (msg != null)
+            return msg;
+        synchronized (this) {
+            if (listing == null) {
+                StringBuilder sb = new StringBuilder();
+                for (Map.Entry<String, String> e : rooms.entrySet())
+                    appendRoom(sb, "", e.getKey(), e.getValue());
+                listing = new ServerToClientMessage(
+                        ServerToClientEnum.INFO_AVAILABLE_ROOMS,
+                        sb.length() == 0 ? "" : sb.substring(1));
+            }
+            return listing;
+        }
+    }
+
+    /**
+     * Returns a page of the listing, in the format of the INFO_ROOMS_PAGE
+     * message.
+     * 
+     * @param map
+     *            name of the map whose rooms are listed, or an empty String
+     *            for rooms of every map
+     * @param after
+     *            nickname of the last host of the previous page, or an empty
+     *            String for the first page
+     * @param limit
+     *            maximum number of rooms in the page
+     * @return an INFO_ROOMS_PAGE message with the page
+     */
+    synchronized ServerToClientMessage getPage(String map, String after,
+            int limit) {
+        Iterable<String> hosts;
+        if (map.isEmpty())
+            hosts = rooms.tailMap(after, false).keySet();
+        else if (roomsByMap.containsKey(map))
+            hosts = roomsByMap.get(map).tailSet(after, false);
+        else
+            hosts = new TreeSet<String>();
+
+        StringBuilder sb = new StringBuilder();
+        String last = "";
+        String next = "";
+        int count = 0;
+        for (String host : hosts) {
+            if (count++ == limit) {
+                next = last;
+                break;
+            }
+            appendRoom(sb, "", host, rooms.get(host));
+            last = host;
+        }
+        return new ServerToClientMessage(ServerToClientEnum.INFO_ROOMS_PAGE,
+                version + "|" + map + "|" + next + sb);
+    }
+
+    /**
+     * Returns the changes made since a version, in the format of the
+     * INFO_ROOMS_DELTA message. If those changes are no longer in the log,
+     * every room is sent instead.
+     * 
+     * @param since
+     *            version already known by the Client, or a negative value if
+     *            none is known
+     * @return an INFO_ROOMS_DELTA message with the changes
+     */
+    synchronized ServerToClientMessage getChangesSince(long since) {
+        StringBuilder sb = new StringBuilder();
+        boolean full = since < 0 || since > version
+                || version - since > LOG_SIZE;
+        if (full) {
+            for (Map.Entry<String, String> e : rooms.entrySet())
+                appendRoom(sb, "+", e.getKey(), e.getValue());
+        } else {
+            for (long v = since + 1; v <= version; v++)
+                sb.append('|').append(log[(int) (v % LOG_SIZE)]);
+        }
+        return new ServerToClientMessage(ServerToClientEnum.INFO_ROOMS_DELTA,
+                version + "|" + (full ? 1 : 0) + sb);
+    }
+
+    /**
+     * Adds a room to the directory, replacing the one its host was hosting, if
+     * any. Must be called with the directory locked.
+     * 
+     * @param host
+     *            nickname of the hosting Client
+     * @param map
+     *            name of the map to play on
+     */
+    private void addRoom(String host, String map) {
+        String previous = rooms.put(host, map);
+        if (previous != null)
+            roomsByMap.get(previous).remove(host);
+        TreeSet<String> hosts = roomsByMap.get(map);
+        if (hosts == null) {
+            hosts = new TreeSet<String>();
+            roomsByMap.put(map, hosts);
+        }
+        hosts.add(host);
+        changed("+" + host + ">" + map, ServerToClientEnum.ROOM_ADDED, host
+                + "|" + map);
+    }
+
+    /**
+     * Removes the room hosted by a Client, if any. Must be called with the
+     * directory locked.
+     * 
+     * @param host
+     *            nickname of the hosting Client
+     * @return the name of the room's map, or {@code null} if the Client wasn't
+     *         hosting a room
+     */
+    private String removeRoom(String host) {
+        String map = rooms.remove(host);
+        if (map == null)
+            return null;
+        TreeSet<String> hosts = roomsByMap.get(map);
+        hosts.remove(host);
+        if (hosts.isEmpty())
+            roomsByMap.remove(map);
+        changed("-" + host, ServerToClientEnum.ROOM_REMOVED, host);
+        return map;
+    }
+
+    /**
+     * Records a change, creating a new version of the directory, and publishes
+     * it to the subscribers. Must be called with the directory locked.
+     * 
+     * @param change
+     *            change, encoded for the log
+     * @param event
+     *            type of the message sent to the subscribers
+     * @param eventArg
+     *            argument of that message, after the new version
+     */
+    private void changed(String change, ServerToClientEnum event,
+            String eventArg) {
+        version++;
+        log[(int) (version % LOG_SIZE)] = change;
+        listing = null;
+        if (subscribers.length > 0)
+            publications.add(new Publication(new ServerToClientMessage(event,
+                    version + "|" + eventArg), subscribers));
+    }
+
+    /**
+     * Delivers the published messages to their subscribers, unless another
+     * thread is already doing so. Must be called with the directory unlocked.
+     */
+    private void deliver() {
+        // Whoever holds the lock when a message is published is responsible
+        // for delivering it, so it's only left behind if the lock is taken
+        while (!publications.isEmpty() && deliveryLock.tryLock()) {
+            try {
+                Publication p;
+                while ((p = publications.poll()) != null) {
+                    // Every subscriber is handed the same frames
+                    for (WireFormat format : WireFormat.values())
+                        p.msg.toFrame(format);
+                    for (Outbox outbox : p.targets)
+                        outbox.send(p.msg);
+                }
+            } finally {
+                deliveryLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the index of an Outbox among the subscribers. Must be called
+     * with the directory locked.
+     * 
+     * @param outbox
+     *            Outbox to be found
+     * @return the Outbox's index, or -1 if it isn't subscribed
+     */
+    private int indexOf(Outbox outbox) {
+        for (int i = 0; i < subscribers.length; i++)
+            if (subscribers[i] == outbox)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Appends a room to a listing, preceded by a pipe.
+     * 
+     * @param sb
+     *            listing being built
+     * @param prefix
+     *            prefix of the room
+     * @param host
+     *            nickname of the hosting Client
+     * @param map
+     *            name of the map to play on
+     */
+    private static void appendRoom(StringBuilder sb, String prefix,
+            String host, String map) {
+        sb.append('|').append(prefix).append(host).append('>').append(map);
+    }
+}
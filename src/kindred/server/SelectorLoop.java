@@ -0,0 +1,191 @@
+package kindred.server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Event loop that services many non-blocking Client connections with a single
+ * thread. The Server creates one SelectorLoop per available core and spreads
+ * accepted connections among them. Besides reading ready channels, each loop
+ * flushes the connections that were sent messages, possibly by other loops.
+ * 
+ * @author Kindred Team
+ */
+class SelectorLoop implements Runnable {
+
+    /**
+     * Selector multiplexing the channels of this loop.
+     */
+    private final Selector selector;
+
+    /**
+     * Channels accepted by the Server that weren't registered on the Selector
+     * yet. Registration must happen on the loop's own thread.
+     */
+    private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<SocketChannel>();
+
+    /**
+     * Connections with messages waiting to be written.
+     */
+    private final ConcurrentLinkedQueue<ChannelConnection> flushes = new ConcurrentLinkedQueue<ChannelConnection>();
+
+    /**
+     * Thread running this loop, or {@code null} if it hasn't started yet.
+     */
+    private volatile Thread thread = null;
+
+    /**
+     * If {@code true}, then the loop will close its connections and stop.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a SelectorLoop.
+     * 
+     * @throws IOException
+     *             if the Selector can't be opened
+     */
+    SelectorLoop() throws IOException {
+        selector = Selector.open();
+    }
+
+    /**
+     * Hands a newly accepted channel to this loop. May be called from any
+     * thread.
+     * 
+     * @param channel
+     *            channel connected to the Client
+     */
+    void register(SocketChannel channel) {
+        pending.add(channel);
+        selector.wakeup();
+    }
+
+    /**
+     * Asks this loop to flush a connection. May be called from any thread; the
+     * loop is only woken up if it's called from another one.
+     * 
+     * @param connection
+     *            connection serviced by this loop
+     */
+    void scheduleFlush(ChannelConnection connection) {
+        flushes.add(connection);
+        if (Thread.currentThread() != thread)
+            selector.wakeup();
+    }
+
+    /**
+     * Closes this loop and every connection serviced by it.
+     */
+    void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Run by a thread. Waits for readable or writable channels and services
+     * them until the loop is closed.
+     */
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        while (!closed) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                EventLog.get().log("error", null,
+                        "Error when selecting client I/O: " + e);
+                break;
+            }
+            registerPending();
+
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                service(key);
+            }
+            flushAll();
+        }
+
+        // Connections still registered are closed along with the loop
+        for (SelectionKey key : selector.keys())
+            ((ChannelConnection) key.attachment()).close();
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Ignore if selector couldn't be closed
+        }
+    }
+
+    /**
+     * Registers every pending channel on the Selector.
+     */
+    private void registerPending() {
+        SocketChannel channel;
+        while ((channel = pending.poll()) != null) {
+            ChannelConnection connection = new ChannelConnection(channel, this);
+            EventLog.get().log("connect",
+                    connection.getSession().getAddress(), null);
+            try {
+                connection.setKey(channel.register(selector,
+                        SelectionKey.OP_READ, connection));
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Services a channel that is ready for I/O, closing its connection if it
+     * was lost or the Client misbehaved.
+     * 
+     * @param key
+     *            SelectionKey of the ready channel
+     */
+    private void service(SelectionKey key) {
+        ChannelConnection connection = (ChannelConnection) key.attachment();
+        boolean open;
+        try {
+            open = key.isReadable() ? connection.read() : true;
+            if (open && key.isValid() && key.isWritable())
+                connection.write();
+        } catch (IOException e) {
+            open = false;
+        } catch (CancelledKeyException e) {
+            open = false;
+        } catch (RuntimeException e) {
+            // Malformed message; only this Client is dropped
+            EventLog.get().log("error",
+                    connection.getSession().getAddress(), e.toString());
+            open = false;
+        }
+
+        if (!open) {
+            key.cancel();
+            connection.close();
+        }
+    }
+
+    /**
+     * Flushes every connection that was sent messages, closing the ones whose
+     * channel can't be written anymore.
+     */
+    private void flushAll() {
+        ChannelConnection connection;
+        while ((connection = flushes.poll()) != null) {
+            try {
+                connection.flush();
+            } catch (IOException e) {
+                connection.close();
+            } catch (CancelledKeyException e) {
+                connection.close();
+            }
+        }
+    }
+}
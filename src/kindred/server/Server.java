@@ -1,8 +1,18 @@
 package kindred.server;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Implements the main loop of a TCP listening socket Server.
@@ -16,49 +26,287 @@ public class Server implements Runnable {
      */
     public static final int DEFAULT_PORT = 60001;
 
+    /**
+     * Stack size, in bytes, of the platform threads used by the VIRTUAL mode
+     * when the JVM doesn't support virtual threads.
+     */
+    private static final long FALLBACK_STACK_SIZE = 256 * 1024;
+
     /**
      * Server's listening TCP socket.
      */
     private ServerSocket serverSocket;
 
+    /**
+     * Way in which this Server services its connected Clients.
+     */
+    private final ServerMode mode;
+
+    /**
+     * Port on which this Server listens for connections.
+     */
+    private final int port;
+
+    /**
+     * Watcher reloading the map catalog, or {@code null} if maps aren't
+     * reloaded.
+     */
+    private MapWatcher mapWatcher = null;
+
+    /**
+     * Endpoint serving the metrics as plain text, or {@code null} if they are
+     * only exposed through JMX.
+     */
+    private MetricsEndpoint metricsEndpoint = null;
+
+    /**
+     * Released once this Server's socket is listening for connections.
+     */
+    private final CountDownLatch listening = new CountDownLatch(1);
+
+    /**
+     * Log of the Server's events.
+     */
+    private static final EventLog log = EventLog.get();
+
+    /**
+     * Constructs a Server that listens on the default port and treats each
+     * connection in its own thread.
+     */
+    public Server() {
+        this(ServerMode.THREAD, DEFAULT_PORT);
+    }
+
+    /**
+     * Constructs a Server.
+     * 
+     * @param mode
+     *            way in which the Server will service its connected Clients
+     * @param port
+     *            port on which the Server will listen for connections
+     */
+    public Server(ServerMode mode, int port) {
+        this.mode = mode;
+        this.port = port;
+    }
+
     /**
      * Initializes this Server's socket and accepts connections from Clients,
-     * creating a new socket and thread to treat each connected user.
+     * treating each connected user according to this Server's mode. If the
+     * system property {@code kindred.authoritative} is {@code true}, games are
+     * refereed by the Server instead of having their actions only relayed.
+     * Events are written to the EventLog, configured as described there.
      */
     public void loop() {
-        int port = DEFAULT_PORT;
+        EventLog.start();
+        loadMaps();
+        startMetrics();
+        Session.setAuthoritative(Boolean.getBoolean("kindred.authoritative"));
+        if (mode == ServerMode.SELECTOR)
+            selectorLoop();
+        else
+            threadLoop();
+    }
+
+    /**
+     * Builds the catalog of maps used by the Sessions. If the system property
+     * {@code kindred.mapreload} is {@code true}, the catalog is also reloaded
+     * whenever the map directory changes.
+     */
+    private void loadMaps() {
+        MapCatalog catalog = MapCatalog.load();
+        Session.setMapCatalog(catalog);
+        log.log("info", null, "Map catalog loaded: " + catalog.size()
+                + " maps");
+
+        if (!Boolean.getBoolean("kindred.mapreload"))
+            return;
+        File dir = MapCatalog.directory();
+        if (dir == null) {
+            log.log("info", null, "Maps can't be reloaded from a jar");
+            return;
+        }
+        try {
+            mapWatcher = new MapWatcher(dir);
+            Thread t = new Thread(mapWatcher, "MapWatcher");
+            t.setDaemon(true);
+            t.start();
+        } catch (IOException e) {
+            log.log("error", null, "Couldn't watch the map directory: " + e);
+        }
+    }
+
+    /**
+     * Registers the Server's metrics in the platform MBeanServer. If the
+     * system property {@code kindred.metrics.port} is set, the metrics are
+     * also served as plain text on that port of the loopback interface.
+     */
+    private void startMetrics() {
+        ServerMetrics.register();
+
+        Integer metricsPort = Integer.getInteger("kindred.metrics.port");
+        if (metricsPort == null)
+            return;
+        try {
+            metricsEndpoint = new MetricsEndpoint(metricsPort);
+            Thread t = new Thread(metricsEndpoint, "MetricsEndpoint");
+            t.setDaemon(true);
+            t.start();
+            log.log("info", null, "Metrics served on port "
+                    + metricsEndpoint.getPort());
+        } catch (IOException e) {
+            log.log("error", null, "Couldn't serve the metrics on port "
+                    + metricsPort + ": " + e);
+        }
+    }
+
+    /**
+     * Accepts connections from Clients, creating a new socket to treat each
+     * connected user. In the THREAD mode, each socket gets its own reading and
+     * writing threads; in the VIRTUAL mode, both tasks are handed to a
+     * connection executor.
+     */
+    private void threadLoop() {
+        ExecutorService executor = null;
+        Executor threads;
+        if (mode == ServerMode.VIRTUAL) {
+            executor = newConnectionExecutor();
+            threads = executor;
+        } else {
+            threads = new Executor() {
+                @Override
+                public void execute(Runnable r) {
+                    new Thread(r, "ServerThread").start();
+                }
+            };
+        }
 
         // Tries to initialize the Server's socket
         try {
             serverSocket = new ServerSocket(port);
         } catch (IOException e) {
-            System.err.println("Couldn't bind kindred.server to port " + port + "!");
-            System.exit(1);
+            fail("Couldn't bind server to port " + port + ": " + e);
         }
 
-        System.out.println("Server successfully opened on port " + port);
+        log.log("info", null, "Server successfully opened on port " + port);
+        listening.countDown();
         while (!serverSocket.isClosed()) {
             try {
                 // Creates a thread for each accepted connection
-                new ServerThread(serverSocket.accept()).start();
+                threads.execute(new ServerThread(serverSocket.accept(),
+                        threads));
             } catch (IOException e) {
                 if (!serverSocket.isClosed()) {
-                    System.err.println("Error when treating kindred.client I/O!");
-                    System.exit(1);
+                    fail("Error when treating client I/O: " + e);
                 }
             }
         }
+
+        // Connections already accepted are left to finish by themselves
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    /**
+     * Creates the executor used by the VIRTUAL mode, which starts a virtual
+     * thread for each task. Virtual threads are looked up reflectively, since
+     * they only exist from Java 21 on; if they are unavailable, an unbounded
+     * pool of platform threads with small stacks is returned instead.
+     * 
+     * @return an executor that runs each connection on its own thread
+     */
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            log.log("info", null, "Virtual threads unavailable; using"
+                    + " small-stack platform threads");
+        }
+
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(null, r, "ServerThread", FALLBACK_STACK_SIZE);
+            }
+        });
+    }
+
+    /**
+     * Accepts connections from Clients and spreads them among one
+     * SelectorLoop per available core, so that no thread is created for each
+     * connected user.
+     */
+    private void selectorLoop() {
+        ServerSocketChannel serverChannel = null;
+
+        // Tries to initialize the Server's socket
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverSocket = serverChannel.socket();
+            serverSocket.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            fail("Couldn't bind server to port " + port + ": " + e);
+        }
+
+        // Starts the event loops
+        SelectorLoop[] loops = new SelectorLoop[Runtime.getRuntime()
+                .availableProcessors()];
+        try {
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new SelectorLoop();
+                new Thread(loops[i], "SelectorLoop-" + i).start();
+            }
+        } catch (IOException e) {
+            fail("Couldn't open server selectors: " + e);
+        }
+
+        log.log("info", null, "Server successfully opened on port " + port);
+        listening.countDown();
+        int next = 0;
+        while (!serverSocket.isClosed()) {
+            try {
+                // Hands each accepted connection to the next loop
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    fail("Error when treating client I/O: " + e);
+                }
+            }
+        }
+
+        for (SelectorLoop l : loops)
+            l.close();
+    }
+
+    /**
+     * Logs an error that prevents the Server from running, and exits.
+     * 
+     * @param detail
+     *            description of the error
+     */
+    private static void fail(String detail) {
+        log.log("error", null, detail);
+        log.flush();
+        System.exit(1);
     }
 
     /**
      * Thread used for verifying if Server must be closed (this happens when
-     * "CLOSE" is typed).
+     * "CLOSE" is typed). Typing "TRACE" switches the tracing of every message
+     * on or off.
      */
     public void run() {
         Scanner input = new Scanner(System.in);
 
-        while (!input.nextLine().trim().toUpperCase().equals("CLOSE")) {
-            ; // Do nothing!
+        String command;
+        while (!(command = input.nextLine().trim().toUpperCase())
+                .equals("CLOSE")) {
+            if (command.equals("TRACE"))
+                log.setTracing(!log.isTracing());
         }
 
         close();
@@ -67,7 +315,8 @@ public class Server implements Runnable {
     }
 
     /**
-     * Runs the method run() in a new thread.
+     * Runs the method loop() in a new thread, returning once this Server is
+     * listening for connections.
      */
     public void runLoopInNewThread() {
 
@@ -78,27 +327,52 @@ public class Server implements Runnable {
             }
         };
         new Thread(r).start();
+
+        try {
+            listening.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
      * Closes the server.
      */
     public void close() {
+        if (mapWatcher != null)
+            mapWatcher.close();
+        if (metricsEndpoint != null)
+            metricsEndpoint.close();
         try {
             serverSocket.close();
         } catch (IOException e) {
         }
+        log.flush();
     }
 
     /**
-     * Starts a Server.
+     * Starts a Server. The first argument, if given, is the name of the
+     * ServerMode to be used ("thread", "virtual" or "selector"); the second
+     * one, if given, is the port to listen on.
      * 
      * @param args
-     *            not used
+     *            optional mode and port of the Server
      */
     public static void main(String[] args) {
+        ServerMode mode = ServerMode.THREAD;
+        if (args.length >= 1) {
+            try {
+                mode = ServerMode.valueOf(args[0].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Specified mode is invalid!");
+                return;
+            }
+        }
+
         try {
-            Server server = new Server();
+            int port = args.length >= 2 ? Integer.parseInt(args[1])
+                    : DEFAULT_PORT;
+            Server server = new Server(mode, port);
             (new Thread(server)).start();
             server.loop();
         } catch (NumberFormatException e) {
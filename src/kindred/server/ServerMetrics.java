@@ -0,0 +1,369 @@
+package kindred.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import kindred.common.ClientToServerEnum;
+
+/**
+ * Instrumentation of the Server: connections, messages received by type,
+ * queue depth of each connection, rooms, games and the latency of relayed game
+ * actions. Shared by every Session and Outbox of the process, and exposed
+ * through JMX as a ServerMetricsMXBean and as plain text by a MetricsEndpoint.
+ * <p>
+ * Counting a message or a relayed action only adds to a StripedCounter or a
+ * StripedHistogram, so threads servicing different Clients never wait for
+ * each other. Everything else (queue depths, rooms, games) is read from the
+ * Server's own state when the metrics are read.
+ * 
+ * @author Kindred Team
+ */
+final class ServerMetrics implements ServerMetricsMXBean {
+
+    /**
+     * Name under which the metrics are registered in the platform
+     * MBeanServer.
+     */
+    static final String OBJECT_NAME = "kindred.server:type=ServerMetrics";
+
+    /**
+     * Shortest time, in nanoseconds, over which message rates are measured.
+     */
+    private static final long RATE_INTERVAL = 1000000000L;
+
+    /**
+     * Contains the corresponding enum value of each possible
+     * ClientToServerEnum type.
+     */
+    private static final ClientToServerEnum[] types = ClientToServerEnum
+            .values();
+
+    /**
+     * Metrics of the Server running in this process.
+     */
+    private static final ServerMetrics instance = new ServerMetrics();
+
+    /**
+     * Sessions of the connected Clients.
+     */
+    private final Set<Session> sessions = Collections
+            .newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+
+    /**
+     * Number of connections accepted.
+     */
+    private final StripedCounter connections = new StripedCounter();
+
+    /**
+     * Number of messages received, indexed by the ordinal of their type.
+     */
+    private final StripedCounter[] received = new StripedCounter[types.length];
+
+    /**
+     * Number of relayed game actions.
+     */
+    private final StripedCounter relays = new StripedCounter();
+
+    /**
+     * Sum of the latencies of relayed game actions, in nanoseconds.
+     */
+    private final StripedCounter relayTime = new StripedCounter();
+
+    /**
+     * Latencies of relayed game actions, in nanoseconds.
+     */
+    private final StripedHistogram relayLatency = new StripedHistogram();
+
+    /**
+     * Time at which message rates were last measured, or 0 if they never
+     * were.
+     */
+    private long sampledAt = 0;
+
+    /**
+     * Number of messages of each type received when rates were last
+     * measured.
+     */
+    private final long[] sampledCounts = new long[types.length];
+
+    /**
+     * Messages per second of each type, as last measured.
+     */
+    private final double[] rates = new double[types.length];
+
+    /**
+     * Not to be instantiated but once, since metrics are shared by the whole
+     * process.
+     */
+    private ServerMetrics() {
+        for (int i = 0; i < received.length; i++)
+            received[i] = new StripedCounter();
+    }
+
+    /**
+     * Returns the metrics of the Server running in this process.
+     * 
+     * @return the Server's metrics
+     */
+    static ServerMetrics get() {
+        return instance;
+    }
+
+    /**
+     * Registers the metrics in the platform MBeanServer, unless they already
+     * are.
+     */
+    static void register() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name))
+                server.registerMBean(instance, name);
+        } catch (JMException e) {
+            EventLog.get().log("error", null,
+                    "Couldn't register the metrics: " + e);
+        }
+    }
+
+    /**
+     * Counts a new connection. Called once the Client's Session exists.
+     * 
+     * @param session
+     *            Session of the connected Client
+     */
+    void opened(Session session) {
+        sessions.add(session);
+        connections.increment();
+    }
+
+    /**
+     * Forgets a closed connection.
+     * 
+     * @param session
+     *            Session of the disconnected Client
+     */
+    void closed(Session session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Counts a message received from a Client.
+     * 
+     * @param type
+     *            type of the message
+     */
+    void received(ClientToServerEnum type) {
+        received[type.ordinal()].increment();
+    }
+
+    /**
+     * Records the latency of a relayed game action whose frame is being
+     * written for its receiver.
+     * 
+     * @param msg
+     *            the relayed game action
+     */
+    void relayed(RelayedMessage msg) {
+        long latency = System.nanoTime() - msg.receivedAt;
+        relays.increment();
+        relayTime.add(latency);
+        relayLatency.record(latency);
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return sessions.size();
+    }
+
+    @Override
+    public long getTotalConnections() {
+        return connections.sum();
+    }
+
+    @Override
+    public Map<String, Long> getMessagesReceived() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (ClientToServerEnum type : types)
+            counts.put(type.name(), received[type.ordinal()].sum());
+        return counts;
+    }
+
+    @Override
+    public Map<String, Double> getMessagesPerSecond() {
+        double[] current = sampleRates();
+        Map<String, Double> perSecond = new LinkedHashMap<String, Double>();
+        for (ClientToServerEnum type : types)
+            perSecond.put(type.name(), current[type.ordinal()]);
+        return perSecond;
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        Map<String, Integer> depths = new LinkedHashMap<String, Integer>();
+        for (Session session : sessions) {
+            int depth = session.getQueueDepth();
+            if (depth > 0)
+                depths.put(session.getAddress(), depth);
+        }
+        return depths;
+    }
+
+    @Override
+    public int getMaxQueueDepth() {
+        int max = 0;
+        for (Session session : sessions)
+            max = Math.max(max, session.getQueueDepth());
+        return max;
+    }
+
+    @Override
+    public int getOpenRooms() {
+        return Session.countOpenRooms();
+    }
+
+    @Override
+    public int getActiveGames() {
+        return Session.countActiveGames();
+    }
+
+    @Override
+    public long getRelayCount() {
+        return relays.sum();
+    }
+
+    @Override
+    public Map<String, Long> getRelayLatency() {
+        StripedHistogram.Snapshot snapshot = relayLatency.snapshot();
+        Map<String, Long> latency = new LinkedHashMap<String, Long>();
+        latency.put("p50", snapshot.getPercentile(0.5));
+        latency.put("p99", snapshot.getPercentile(0.99));
+        latency.put("p999", snapshot.getPercentile(0.999));
+        latency.put("max", snapshot.getMax());
+        return latency;
+    }
+
+    /**
+     * Writes every metric in the text format read by Prometheus: one line per
+     * value, preceded by the metric's type. Latencies are given in seconds.
+     * 
+     * @return the metrics, as text
+     */
+    String toText() {
+        StringBuilder sb = new StringBuilder(4096);
+        gauge(sb, "kindred_connections_active", getActiveConnections());
+        counter(sb, "kindred_connections_total", getTotalConnections());
+
+        sb.append("# TYPE kindred_messages_received_total counter\n");
+        for (ClientToServerEnum type : types)
+            sb.append("kindred_messages_received_total{type=\"")
+                    .append(type.name()).append("\"} ")
+                    .append(received[type.ordinal()].sum()).append('\n');
+        double[] current = sampleRates();
+        sb.append("# TYPE kindred_messages_per_second gauge\n");
+        for (ClientToServerEnum type : types)
+            sb.append("kindred_messages_per_second{type=\"")
+                    .append(type.name()).append("\"} ")
+                    .append(format(current[type.ordinal()])).append('\n');
+
+        sb.append("# TYPE kindred_queue_depth gauge\n");
+        int max = 0;
+        for (Session session : sessions) {
+            int depth = session.getQueueDepth();
+            max = Math.max(max, depth);
+            // Idle connections are left out, so that the text stays short
+            if (depth > 0)
+                sb.append("kindred_queue_depth{client=\"")
+                        .append(session.getAddress()).append("\"} ")
+                        .append(depth).append('\n');
+        }
+        gauge(sb, "kindred_queue_depth_max", max);
+        gauge(sb, "kindred_rooms_open", getOpenRooms());
+        gauge(sb, "kindred_games_active", getActiveGames());
+
+        StripedHistogram.Snapshot snapshot = relayLatency.snapshot();
+        sb.append("# TYPE kindred_relay_latency_seconds summary\n");
+        double[] quantiles = { 0.5, 0.99, 0.999 };
+        for (double q : quantiles)
+            sb.append("kindred_relay_latency_seconds{quantile=\"").append(q)
+                    .append("\"} ")
+                    .append(format(snapshot.getPercentile(q) / 1e9))
+                    .append('\n');
+        sb.append("kindred_relay_latency_seconds_sum ")
+                .append(format(relayTime.sum() / 1e9)).append('\n');
+        sb.append("kindred_relay_latency_seconds_count ")
+                .append(relays.sum()).append('\n');
+        gauge(sb, "kindred_relay_latency_seconds_max",
+                format(snapshot.getMax() / 1e9));
+        return sb.toString();
+    }
+
+    /**
+     * Measures the message rates, if they were last measured long enough
+     * ago.
+     * 
+     * @return the messages per second of each type, indexed by ordinal
+     */
+    private synchronized double[] sampleRates() {
+        long now = System.nanoTime();
+        long elapsed = now - sampledAt;
+        if (sampledAt == 0 || elapsed >= RATE_INTERVAL) {
+            for (int i = 0; i < types.length; i++) {
+                long count = received[i].sum();
+                rates[i] = sampledAt == 0 ? 0 : (count - sampledCounts[i])
+                        * 1e9 / elapsed;
+                sampledCounts[i] = count;
+            }
+            sampledAt = now;
+        }
+        return rates.clone();
+    }
+
+    /**
+     * Appends a metric that may go up and down.
+     * 
+     * @param sb
+     *            text being written
+     * @param name
+     *            name of the metric
+     * @param value
+     *            value of the metric
+     */
+    private static void gauge(StringBuilder sb, String name, Object value) {
+        sb.append("# TYPE ").append(name).append(" gauge\n").append(name)
+                .append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Appends a metric that only goes up.
+     * 
+     * @param sb
+     *            text being written
+     * @param name
+     *            name of the metric
+     * @param value
+     *            value of the metric
+     */
+    private static void counter(StringBuilder sb, String name, long value) {
+        sb.append("# TYPE ").append(name).append(" counter\n").append(name)
+                .append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Formats a real value, whatever the default locale.
+     * 
+     * @param value
+     *            the value
+     * @return the value, with a dot as decimal separator
+     */
+    private static String format(double value) {
+        return Double.toString(value);
+    }
+}
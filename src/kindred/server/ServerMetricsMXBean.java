@@ -0,0 +1,88 @@
+package kindred.server;
+
+import java.util.Map;
+
+/**
+ * Management interface of the Server's metrics, registered in the platform
+ * MBeanServer as "kindred.server:type=ServerMetrics", so that they can be
+ * read with JConsole or any JMX client. Latencies are given in nanoseconds.
+ * 
+ * @author Kindred Team
+ */
+public interface ServerMetricsMXBean {
+
+    /**
+     * Returns the number of Clients currently connected.
+     * 
+     * @return the number of open connections
+     */
+    int getActiveConnections();
+
+    /**
+     * Returns the number of connections accepted since the Server started.
+     * 
+     * @return the number of accepted connections
+     */
+    long getTotalConnections();
+
+    /**
+     * Returns the number of messages received from Clients, by type.
+     * 
+     * @return the number of messages of each ClientToServerEnum name
+     */
+    Map<String, Long> getMessagesReceived();
+
+    /**
+     * Returns the rate at which messages were received from Clients, by type,
+     * measured between the last two readings at least a second apart.
+     * 
+     * @return the messages per second of each ClientToServerEnum name
+     */
+    Map<String, Double> getMessagesPerSecond();
+
+    /**
+     * Returns the number of messages waiting to be written, by Client.
+     * 
+     * @return the queue depth of every connection with messages waiting,
+     *         indexed by the Client's address
+     */
+    Map<String, Integer> getQueueDepths();
+
+    /**
+     * Returns the largest number of messages waiting to be written to a
+     * single Client.
+     * 
+     * @return the deepest queue of any connection
+     */
+    int getMaxQueueDepth();
+
+    /**
+     * Returns the number of rooms waiting for a second player.
+     * 
+     * @return the number of open rooms
+     */
+    int getOpenRooms();
+
+    /**
+     * Returns the number of games being played.
+     * 
+     * @return the number of active games
+     */
+    int getActiveGames();
+
+    /**
+     * Returns the number of game actions relayed to a Client.
+     * 
+     * @return the number of relayed game actions
+     */
+    long getRelayCount();
+
+    /**
+     * Returns percentiles of the time taken to relay game actions, from the
+     * reception of the sender's message to the writing of its frame for the
+     * receiver.
+     * 
+     * @return the latencies named "p50", "p99", "p999" and "max"
+     */
+    Map<String, Long> getRelayLatency();
+}
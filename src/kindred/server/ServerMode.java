@@ -0,0 +1,30 @@
+package kindred.server;
+
+/**
+ * Contains every way in which the Server can service its connected Clients.
+ * Chosen when the Server starts.
+ * 
+ * @author Kindred Team
+ */
+public enum ServerMode {
+    /**
+     * Each accepted connection is treated by its own ServerThread, which
+     * blocks while reading the Client's messages.
+     */
+    THREAD,
+
+    /**
+     * Each accepted connection is treated by a ServerThread run on a virtual
+     * thread, so that idle connections don't hold a platform thread. On JVMs
+     * without virtual threads, pooled platform threads with small stacks are
+     * used instead.
+     */
+    VIRTUAL,
+
+    /**
+     * Accepted connections are spread among a few event loops (one per
+     * available core), each one multiplexing its sockets with a Selector.
+     */
+    SELECTOR;
+
+}
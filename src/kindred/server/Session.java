@@ -0,0 +1,670 @@
+package kindred.server;
+
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+import kindred.common.ClientToServerMessage;
+import kindred.common.GameActionEnum;
+import kindred.common.GameActionMessage;
+import kindred.common.ServerToClientEnum;
+import kindred.common.ServerToClientMessage;
+import kindred.common.model.Game;
+import kindred.common.model.SplitMixRandom;
+
+/**
+ * Holds the protocol state of a Client connected to the Server and parses the
+ * messages it sends. A Session doesn't know how its Client's socket is
+ * serviced, so the same command handling is shared by every Server front-end.
+ * 
+ * @author Kindred Team
+ */
+class Session {
+
+    /**
+     * Client's IP and port address, stored as "IP:Port".
+     */
+    private final String addr;
+
+    /**
+     * Client's nickname, equals {@code null} if not yet defined.
+     */
+    private String nick = null;
+
+    /**
+     * Destination of the messages sent to the Client.
+     */
+    private final Outbox outbox;
+
+    /**
+     * Thread-safe HashMap that stores Client nicknames and their Session.
+     * Shared among all Sessions.
+     */
+    private static ConcurrentHashMap<String, Session> nicksToSessions = new ConcurrentHashMap<String, Session>();
+
+    /**
+     * Directory that stores the nicknames of Clients that are hosting a room,
+     * and the name of the map they wish to play on. Shared among all Sessions.
+     */
+    private static RoomDirectory hostRooms = new RoomDirectory();
+
+    /**
+     * Thread-safe HashMap that stores the nicknames of Clients that are playing
+     * a game, and the Room of that game. Each Room is indexed by both of its
+     * players' nicknames, and removed once the game ends. Shared among all
+     * Sessions.
+     */
+    private static ConcurrentHashMap<String, Room> nicksToRooms = new ConcurrentHashMap<String, Room>();
+
+    /**
+     * Catalog of the maps that can be played, replaced as a whole whenever
+     * it's reloaded. Shared among all Sessions.
+     */
+    private static volatile MapCatalog mapCatalog = null;
+
+    /**
+     * If {@code true}, then games started from now on are refereed by the
+     * Server; otherwise, game actions are only relayed. Shared among all
+     * Sessions.
+     */
+    private static volatile boolean authoritative = false;
+
+    /**
+     * Generates the seeds of refereed games. Shared among all Sessions.
+     */
+    private static final SecureRandom seeds = new SecureRandom();
+
+    /**
+     * Metrics of the Server, counting the messages of every Session.
+     */
+    private static final ServerMetrics metrics = ServerMetrics.get();
+
+    /**
+     * Log of the Server's events, tracing the messages of every Session.
+     */
+    private static final EventLog log = EventLog.get();
+
+    /**
+     * Prefix of an encoded GAME_ACTION argument that makes the sender forfeit
+     * the match.
+     */
+    private static final String SURRENDER_PREFIX = GameActionEnum.SURRENDER
+            .ordinal() + "|";
+
+    /**
+     * Prefix of an encoded GAME_ACTION argument that makes a Unit attack.
+     */
+    private static final String ATTACK_PREFIX = GameActionEnum.ATTACK
+            .ordinal() + "|";
+
+    /**
+     * Constructs a Session.
+     * 
+     * @param addr
+     *            Client's address, stored as "IP:Port"
+     * @param outbox
+     *            destination of the messages sent to the Client
+     */
+    Session(String addr, Outbox outbox) {
+        this.addr = addr;
+        this.outbox = outbox;
+        metrics.opened(this);
+    }
+
+    /**
+     * Defines the catalog of maps used by every Session from now on. Must be
+     * called before the Server accepts connections.
+     * 
+     * @param catalog
+     *            catalog of the maps that can be played
+     */
+    static void setMapCatalog(MapCatalog catalog) {
+        mapCatalog = catalog;
+    }
+
+    /**
+     * Defines whether games started from now on are refereed by the Server,
+     * which then validates every game action and rolls the damage of attacks.
+     * 
+     * @param referee
+     *            {@code true} if the Server referees games, or {@code false}
+     *            if game actions are only relayed
+     */
+    static void setAuthoritative(boolean referee) {
+        authoritative = referee;
+    }
+
+    /**
+     * Returns the number of rooms waiting for a second player.
+     * 
+     * @return the number of open rooms
+     */
+    static int countOpenRooms() {
+        return hostRooms.size();
+    }
+
+    /**
+     * Returns the number of games being played.
+     * 
+     * @return the number of active games
+     */
+    static int countActiveGames() {
+        // Each Room is indexed by both of its players' nicknames
+        return nicksToRooms.size() / 2;
+    }
+
+    /**
+     * Returns the Client's address.
+     * 
+     * @return the Client's address, as "IP:Port"
+     */
+    String getAddress() {
+        return addr;
+    }
+
+    /**
+     * Returns the number of messages sent to the Client and not written yet.
+     * 
+     * @return the depth of the Client's Outbox
+     */
+    int getQueueDepth() {
+        return outbox.getQueueDepth();
+    }
+
+    /**
+     * Removes all data related to the Client. Must be called once the
+     * connection is closed.
+     */
+    void close() {
+        hostRooms.unsubscribe(outbox);
+        if (nick != null) {
+            hostRooms.remove(nick);
+
+            // Leaving in the middle of a game counts as surrendering
+            Room room = nicksToRooms.get(nick);
+            if (room != null)
+                abandon(room, nick);
+
+            nicksToSessions.remove(nick, this);
+        }
+        metrics.closed(this);
+    }
+
+    /**
+     * Parses a given message sent by the Client, sending them a response.
+     * 
+     * @param receivedMsg
+     *            message, received from the Client, to be parsed
+     */
+    void parse(ClientToServerMessage receivedMsg) {
+        String arg = receivedMsg.argument;
+        ServerToClientMessage sentMsg;
+        metrics.received(receivedMsg.msg);
+        log.trace("recv", addr, receivedMsg.msg, arg);
+        switch (receivedMsg.msg) {
+
+        // NICK [nickname] : Set Client's nickname as the specified value.
+        // If no argument is given, return Client's nickname.
+        case NICK:
+            // No argument given; return Client's nickname
+            if (arg.isEmpty()) {
+                if (nick == null) {
+                    sentMsg = new ServerToClientMessage(
+                            ServerToClientEnum.ERR_NICKNAME_IS_UNDEFINED);
+                } else {
+                    sentMsg = new ServerToClientMessage(
+                            ServerToClientEnum.INFO_NICKNAME, nick);
+                }
+                queueMessage(this, sentMsg);
+                return;
+            }
+
+            String newNickname = arg;
+            // Nickname must contain 3 to 10 alphanumeric characters;
+            // the first one must be a letter
+            if (!newNickname.matches("^[a-zA-Z]\\w{2,9}$")) {
+                sentMsg = new ServerToClientMessage(
+                        ServerToClientEnum.ERR_NICKNAME_IS_INVALID, newNickname);
+                queueMessage(this, sentMsg);
+                return;
+            }
+
+            // Nickname already exists
+            if (nicksToSessions.containsKey(newNickname)) {
+                sentMsg = new ServerToClientMessage(
+                        ServerToClientEnum.ERR_NICKNAME_IS_IN_USE, newNickname);
+                queueMessage(this, sentMsg);
+                return;
+            }
+
+            // After changing the nickname, the old one is deleted
+            if (nick != null && nicksToSessions.containsKey(nick))
+                nicksToSessions.remove(nick);
+
+            // Change user's nickname in the room they are hosting, if any
+            if (nick != null)
+                hostRooms.rename(nick, newNickname);
+
+            // Change user's nickname in the game they are playing, if any
+            if (nick != null && nicksToRooms.containsKey(nick)) {
+                Room room = nicksToRooms.remove(nick);
+                room.replaceNick(nick, newNickname);
+                nicksToRooms.put(newNickname, room);
+            }
+
+            // Set Client's nickname
+            nick = newNickname;
+            nicksToSessions.put(nick, this);
+            sentMsg = new ServerToClientMessage(
+                    ServerToClientEnum.SUCC_NICKNAME_CHANGED, newNickname);
+            queueMessage(this, sentMsg);
+            break;
+
+        // MAPS : Return all available maps
+        case MAPS:
+            queueMessage(this, mapCatalog.getAvailableMaps());
+            break;
+
+        // ROOMS : Show all valid rooms in the kindred.server
+        case ROOMS:
+            queueMessage(this, hostRooms.getListing());
+            break;
+
+        // ROOMS_PAGE [map]|[after]|[limit] : Show a page of the rooms, sorted
+        // by host, optionally only those to play on the specified map
+        case ROOMS_PAGE:
+            // Missing fields are empty
+            String[] fields = (arg + "||").split("\\|", -1);
+            int limit = RoomDirectory.DEFAULT_PAGE_SIZE;
+            try {
+                if (!fields[2].isEmpty())
+                    limit = Integer.parseInt(fields[2]);
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit <= 0 || fields.length > 5) {
+                queueMessage(this, new ServerToClientMessage(
+                        ServerToClientEnum.ERR_INVALID_COMMAND_OR_ARGUMENTS));
+                return;
+            }
+            queueMessage(this, hostRooms.getPage(fields[0], fields[1],
+                    Math.min(limit, RoomDirectory.MAX_PAGE_SIZE)));
+            break;
+
+        // ROOMS_SINCE [version] : Show the changes made to the rooms since the
+        // specified version of the listing, or every room
+        case ROOMS_SINCE:
+            long since = -1;
+            try {
+                if (!arg.isEmpty())
+                    since = Long.parseLong(arg);
+            } catch (NumberFormatException e) {
+                queueMessage(this, new ServerToClientMessage(
+                        ServerToClientEnum.ERR_INVALID_COMMAND_OR_ARGUMENTS));
+                return;
+            }
+            queueMessage(this, hostRooms.getChangesSince(since));
+            break;
+
+        // SUBSCRIBE_ROOMS : Show all rooms, then each room added or removed
+        case SUBSCRIBE_ROOMS:
+            hostRooms.subscribe(outbox);
+            break;
+
+        // UNSUBSCRIBE_ROOMS : Stop showing the rooms added or removed
+        case UNSUBSCRIBE_ROOMS:
+            hostRooms.unsubscribe(outbox);
+            break;
+
+        // HOST <map> : Create a room to play on the specified map
+        case HOST:
+            // User must be registered
+            if (nick == null) {
+                queueMessage(this, new ServerToClientMessage(
+                        ServerToClientEnum.ERR_UNREGISTERED_USER));
+                return;
+            }
+
+            String mapName = arg;
+            // Check if map exists
+            if (mapCatalog.get(mapName) == null) {
+                sentMsg = new ServerToClientMessage(
+                        ServerToClientEnum.ERR_MAP_NOT_FOUND, mapName);
+                queueMessage(this, sentMsg);
+                return;
+            }
+
+            // Create a new room!
+            hostRooms.put(nick, mapName);
+            sentMsg = new ServerToClientMessage(ServerToClientEnum.SUCC_HOST,
+                    mapName);
+            queueMessage(this, sentMsg);
+            break;
+
+        // UNHOST : Remove room if Client is hosting one
+        case UNHOST:
+            // User must be registered
+            if (nick == null) {
+                queueMessage(this, new ServerToClientMessage(
+                        ServerToClientEnum.ERR_UNREGISTERED_USER));
+                return;
+            }
+
+            // Remove room if it exists
+            if (hostRooms.remove(nick) != null) {
+                queueMessage(this, new ServerToClientMessage(
+                        ServerToClientEnum.SUCC_UNHOST));
+            } else {
+                queueMessage(this, new ServerToClientMessage(
+                        ServerToClientEnum.ERR_CANNOT_UNHOST_WITHOUT_HOST));
+            }
+            break;
+
+        // JOIN <nickname> : Connect to a room hosted by the specified user
+        case JOIN:
+            // Unregistered user cannot join a room
+            if (nick == null) {
+                queueMessage(this, new ServerToClientMessage(
+                        ServerToClientEnum.ERR_UNREGISTERED_USER));
+                return;
+            }
+
+            String host = arg;
+
+            // Disallow entering in own room
+            if (nick.equals(host) && hostRooms.contains(host)) {
+                queueMessage(this, new ServerToClientMessage(
+                        ServerToClientEnum.ERR_CANNOT_ENTER_OWN_ROOM));
+                return;
+            }
+
+            // The room is claimed by removing it, so that only one guest can
+            // join it
+            Session hostSession = nicksToSessions.get(host);
+            mapName = nick.equals(host) || hostSession == null ? null
+                    : hostRooms.remove(host);
+
+            // Nonexistent room
+            if (mapName == null) {
+                sentMsg = new ServerToClientMessage(
+                        ServerToClientEnum.ERR_ROOM_NOT_FOUND, host);
+                queueMessage(this, sentMsg);
+                return;
+            }
+
+            Game refereed = null;
+            if (authoritative) {
+                // The seed is logged, so that every battle can be replayed
+                long seed = seeds.nextLong();
+                try {
+                    refereed = new Game(host, nick, MapCatalog.MAP_DIR
+                            + mapName + ".txt", 0, new SplitMixRandom(seed));
+                } catch (IllegalArgumentException e) {
+                    // The map was removed since the room was hosted, so the
+                    // room can't be played and is closed
+                    log.log("error", addr, e.getMessage());
+                    queueMessage(this, new ServerToClientMessage(
+                            ServerToClientEnum.ERR_MAP_NOT_FOUND, mapName));
+                    queueMessage(hostSession, new ServerToClientMessage(
+                            ServerToClientEnum.INFO_LEAVE_HOSTED_ROOM));
+                    return;
+                }
+                log.log("match", addr, host + " vs " + nick + " on '"
+                        + mapName + "', seed " + Long.toHexString(seed));
+            }
+
+            // Any game either player was still in is abandoned, which counts
+            // as surrendering it. The opponents are told before either player
+            // is told about the new game, in case they are each other
+            Room previous = nicksToRooms.get(host);
+            if (previous != null)
+                abandon(previous, host);
+            previous = nicksToRooms.get(nick);
+            if (previous != null)
+                abandon(previous, nick);
+
+            // Entering another user's room => leaving their own room (if it
+            // exists)
+            if (hostRooms.remove(nick) != null)
+                queueMessage(this, new ServerToClientMessage(
+                        ServerToClientEnum.INFO_LEAVE_HOSTED_ROOM));
+
+            // Let the guest user know that they have successfully entered a
+            // room, that they will be the second player, and inform the map
+            // name
+            String referee = refereed == null ? "|0" : "|1";
+            sentMsg = new ServerToClientMessage(ServerToClientEnum.SUCC_JOIN, host
+                    + "|2|" + mapName + referee);
+            queueMessage(this, sentMsg);
+
+            // Let the host user know that someone has entered their room, that
+            // they will be the first player, and inform the map name
+            sentMsg = new ServerToClientMessage(
+                    ServerToClientEnum.INFO_SOMEONE_ENTERED_ROOM, nick + "|1|"
+                            + mapName + referee);
+            queueMessage(hostSession, sentMsg);
+
+            // Create the room
+            Room room = new Room(host, nick, refereed);
+
+            // Players of a game are no longer interested in the rooms
+            hostRooms.unsubscribe(outbox);
+            hostRooms.unsubscribe(hostSession.outbox);
+
+            // Add this room to the list of games
+            nicksToRooms.put(host, room);
+            nicksToRooms.put(nick, room);
+
+            // If the host left meanwhile, they surrendered
+            if (nicksToSessions.get(host) != hostSession) {
+                endGame(room);
+                queueMessage(this, new ServerToClientMessage(
+                        ServerToClientEnum.GAME_ACTION, SURRENDER_PREFIX));
+            }
+            break;
+
+        // QUIT : Make kindred.client leave the kindred.server
+        case QUIT:
+            queueMessage(this, new ServerToClientMessage(
+                    ServerToClientEnum.SUCC_LEAVE));
+            break;
+
+        // GAME_ACTION: Just pass forward the message
+        case GAME_ACTION:
+            long receivedAt = System.nanoTime();
+            if (nick == null)
+                return;
+            Room game = nicksToRooms.get(nick);
+            if (game == null)
+                return;
+
+            // A surrender ends the game
+            if (arg.startsWith(SURRENDER_PREFIX)) {
+                endGame(game);
+            } else if (game.getGame() != null) {
+                referee(game, arg, receivedAt);
+                return;
+            } else if (isWinningAttack(arg)) {
+                // The attack is still relayed, but nothing after it is
+                endGame(game);
+            }
+
+            Session opponent = opponentIn(game);
+            if (opponent != null) {
+                sentMsg = new RelayedMessage(arg, receivedAt);
+                queueMessage(opponent, sentMsg);
+            }
+            break;
+
+        // EMPTY: Do nothing
+        case EMPTY:
+            break;
+
+        // Something not understood
+        default:
+            queueMessage(this, new ServerToClientMessage(
+                    ServerToClientEnum.ERR_INVALID_COMMAND_OR_ARGUMENTS));
+            break;
+        }
+    }
+
+    /**
+     * Validates a game action of the Client against the Game refereed in a
+     * Room, applying it if valid. Valid actions are sent to the opponent; the
+     * damage of an attack is rolled here and sent to both players. Invalid
+     * actions are sent back to the Client as an ERR_INVALID_GAME_ACTION.
+     * 
+     * @param room
+     *            Room of the game the Client is playing
+     * @param arg
+     *            encoded game action
+     * @param receivedAt
+     *            time at which the action was received, as given by
+     *            {@link System#nanoTime()}
+     */
+    private void referee(Room room, String arg, long receivedAt) {
+        ServerToClientMessage result = null;
+        boolean toBoth = false;
+        boolean over = false;
+        try {
+            GameActionMessage action = GameActionMessage.fromEncodedString(arg);
+            String[] fields = action.argument.split("\\|");
+            synchronized (room) {
+                Game game = room.getGame();
+                if (game.getTurn() == room.getTeam(nick)) {
+                    switch (action.msg) {
+                    case MOVE:
+                        int[] p = parsePositions(fields);
+                        if (fields.length == 4
+                                && game.move(p[0], p[1], p[2], p[3]))
+                            result = new RelayedMessage(arg, receivedAt);
+                        break;
+                    case ATTACK:
+                        // The damage sent by the Client, if any, is ignored
+                        p = parsePositions(fields);
+                        int damage = fields.length <= 5 ? game.attack(p[0], p[1],
+                                p[2], p[3]) : -1;
+                        if (damage >= 0)
+                            result = new RelayedMessage(
+                                    GameActionEnum.ATTACK.ordinal() + "|" + p[0]
+                                            + "|" + p[1] + "|" + p[2] + "|"
+                                            + p[3] + "|" + damage, receivedAt);
+                        toBoth = true;
+                        over = game.isOver();
+                        break;
+                    case END_TURN:
+                        game.endTurn();
+                        result = new RelayedMessage(arg, receivedAt);
+                        break;
+                    default:
+                        break;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            // Malformed action
+            result = null;
+        }
+
+        if (result == null) {
+            queueMessage(this, new ServerToClientMessage(
+                    ServerToClientEnum.ERR_INVALID_GAME_ACTION, arg));
+            return;
+        }
+        if (over)
+            endGame(room);
+        Session opponent = opponentIn(room);
+        if (opponent != null)
+            queueMessage(opponent, result);
+        if (toBoth)
+            queueMessage(this, result);
+    }
+
+    /**
+     * Checks whether a relayed game action is an attack that, according to
+     * its sender, wins the game.
+     * 
+     * @param arg
+     *            encoded game action
+     * @return {@code true} if the action is an ATTACK flagged as winning
+     */
+    private static boolean isWinningAttack(String arg) {
+        // Type, four coordinates, damage and the flag
+        return arg.startsWith(ATTACK_PREFIX) && arg.endsWith("|1")
+                && arg.split("\\|").length == 7;
+    }
+
+    /**
+     * Parses the Tile coordinates of a game action.
+     * 
+     * @param fields
+     *            fields of the game action's argument, of which the first four
+     *            are the coordinates
+     * @return the coordinates (xi, yi, xf, yf)
+     * @throws RuntimeException
+     *             if there are less than four fields, or if they aren't
+     *             integers
+     */
+    private static int[] parsePositions(String[] fields) {
+        return new int[] { Integer.parseInt(fields[0]),
+                Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                Integer.parseInt(fields[3]) };
+    }
+
+    /**
+     * Returns the Session of the Client's opponent in a Room.
+     * 
+     * @param room
+     *            Room of the game the Client is playing
+     * @return the opponent's Session, or {@code null} if they are no longer
+     *         connected
+     */
+    private Session opponentIn(Room room) {
+        String opponent = room.getOtherNick(nick);
+        return opponent == null ? null : nicksToSessions.get(opponent);
+    }
+
+    /**
+     * Removes a Room from the games being played, so that neither of its
+     * players' actions are relayed through it anymore.
+     * 
+     * @param room
+     *            Room of the game that has ended
+     */
+    private static void endGame(Room room) {
+        nicksToRooms.remove(room.nickA, room);
+        nicksToRooms.remove(room.nickB, room);
+    }
+
+    /**
+     * Ends a game that one of its players left, letting the other player know
+     * that the leaver surrendered.
+     * 
+     * @param room
+     *            Room of the game that was left
+     * @param leaver
+     *            nickname of the player who left
+     */
+    private static void abandon(Room room, String leaver) {
+        endGame(room);
+        String other = room.getOtherNick(leaver);
+        Session opponent = other == null ? null : nicksToSessions.get(other);
+        if (opponent != null)
+            queueMessage(opponent, new ServerToClientMessage(
+                    ServerToClientEnum.GAME_ACTION, SURRENDER_PREFIX));
+    }
+
+    /**
+     * Hands a message to the Outbox of the Session which will receive it, so
+     * that it's delivered without waiting for that Client to send anything.
+     * 
+     * @param session
+     *            Session whose Client will receive the message to be sent
+     * @param msg
+     *            message to be sent
+     */
+    private static void queueMessage(Session session, ServerToClientMessage msg) {
+        log.trace("send", session.addr, msg.msg, msg.argument);
+        session.outbox.send(msg);
+    }
+
+}
@@ -0,0 +1,156 @@
+package kindred.server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import kindred.common.ServerToClientEnum;
+import kindred.common.ServerToClientMessage;
+import kindred.common.WireFormat;
+
+/**
+ * Outbox that writes to a blocking socket stream from a writer task of its
+ * own, run by the Server once the connection's format is negotiated. Senders
+ * only put messages in a bounded queue, so a Client that stops reading never
+ * blocks the thread of whoever sends it a message; if its queue fills up, the
+ * Client is disconnected instead. The writer drains every message queued
+ * meanwhile into a single socket write.
+ * 
+ * @author Kindred Team
+ */
+class StreamOutbox implements Outbox, Runnable {
+
+    /**
+     * Put in the queue to stop the writer. Compared by identity, so it's
+     * never mistaken for a real message.
+     */
+    private static final ServerToClientMessage CLOSE = new ServerToClientMessage(
+            ServerToClientEnum.SUCC_LEAVE);
+
+    /**
+     * Socket connected to the Client.
+     */
+    private final Socket socket;
+
+    /**
+     * Client's IP and port address, stored as "IP:Port".
+     */
+    private final String addr;
+
+    /**
+     * Buffered socket output. Only written by the writer, once started.
+     */
+    private final OutputStream out;
+
+    /**
+     * Messages waiting to be written.
+     */
+    private final LinkedBlockingQueue<ServerToClientMessage> queue = new LinkedBlockingQueue<ServerToClientMessage>(
+            CAPACITY);
+
+    /**
+     * Format of the frames written to the socket.
+     */
+    private volatile WireFormat format = WireFormat.TEXT;
+
+    /**
+     * If {@code true}, then the connection was closed and further messages
+     * are discarded.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs a StreamOutbox.
+     * 
+     * @param socket
+     *            socket connected to the Client
+     * @param addr
+     *            Client's address, stored as "IP:Port"
+     * @throws IOException
+     *             if the socket's output stream can't be obtained
+     */
+    StreamOutbox(Socket socket, String addr) throws IOException {
+        this.socket = socket;
+        this.addr = addr;
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /**
+     * Acknowledges the BINARY preface sent by the Client, switching the
+     * connection to that format. Must be called before the writer is
+     * started.
+     * 
+     * @throws IOException
+     *             if the acknowledgement can't be written
+     */
+    void acceptBinary() throws IOException {
+        format = WireFormat.BINARY;
+        out.write(WireFormat.BINARY_PREFACE);
+        out.flush();
+    }
+
+    @Override
+    public void send(ServerToClientMessage msg) {
+        if (closed)
+            return;
+        if (!queue.offer(msg)) {
+            EventLog.get().log("error", addr, "Client stopped reading; "
+                    + CAPACITY + " messages waiting");
+            close();
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Stops the writer and closes the socket, discarding the messages not yet
+     * written. Does nothing if the connection was already closed.
+     */
+    void close() {
+        if (closed)
+            return;
+        closed = true;
+        // Emptied first, so that CLOSE fits
+        queue.clear();
+        queue.offer(CLOSE);
+        try {
+            // Also unblocks the writer if the Client stopped reading
+            socket.close();
+        } catch (IOException e) {
+            // Ignore if socket couldn't be closed
+        }
+    }
+
+    /**
+     * Run by the writer. Writes the queued messages until the connection is
+     * closed, flushing the socket whenever the queue is empty.
+     */
+    @Override
+    public void run() {
+        try {
+            ServerToClientMessage m = queue.take();
+            while (m != CLOSE) {
+                if (m instanceof RelayedMessage)
+                    ServerMetrics.get().relayed((RelayedMessage) m);
+                out.write(m.toFrame(format));
+                m = queue.poll();
+                if (m == null) {
+                    out.flush();
+                    m = queue.take();
+                }
+            }
+        } catch (IOException e) {
+            // The connection was lost or closed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // The reading thread will notice the closed socket
+            close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package kindred.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter that many threads can increment at once without contending: each
+ * thread adds to one of several cells, picked by its identifier, and the
+ * cells are only summed when the counter is read. Cells are spread a cache
+ * line apart, so that threads adding to different cells don't invalidate each
+ * other's caches. Reading is only as consistent as the cells are at that
+ * moment, which suits statistics.
+ * 
+ * @author Kindred Team
+ */
+final class StripedCounter {
+
+    /**
+     * Number of longs between two cells, so that each one has its own cache
+     * line.
+     */
+    static final int PADDING = 8;
+
+    /**
+     * Number of cells: the number of available processors, rounded up to a
+     * power of two and at most 64. Shared with StripedHistogram.
+     */
+    static final int STRIPES = stripes();
+
+    /**
+     * Cells of the counter, {@code PADDING} longs apart.
+     */
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Adds one to the counter.
+     */
+    void increment() {
+        cells.getAndIncrement(stripe() * PADDING);
+    }
+
+    /**
+     * Adds a value to the counter.
+     * 
+     * @param x
+     *            value to be added
+     */
+    void add(long x) {
+        cells.getAndAdd(stripe() * PADDING, x);
+    }
+
+    /**
+     * Returns the sum of every value added to the counter.
+     * 
+     * @return the counter's value
+     */
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++)
+            sum += cells.get(i * PADDING);
+        return sum;
+    }
+
+    /**
+     * Returns the stripe used by the current thread.
+     * 
+     * @return index of a cell, from 0 to {@code STRIPES - 1}
+     */
+    static int stripe() {
+        long id = Thread.currentThread().getId();
+        // Spreads consecutive identifiers over the stripes
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 58) & (STRIPES - 1);
+    }
+
+    /**
+     * Computes the number of stripes.
+     * 
+     * @return the number of available processors, rounded up to a power of
+     *         two and at most 64
+     */
+    private static int stripes() {
+        int n = Math.min(Runtime.getRuntime().availableProcessors(), 64);
+        return Integer.highestOneBit(Math.max(1, 2 * n - 1));
+    }
+}
@@ -0,0 +1,194 @@
+package kindred.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies that many threads can record at once without
+ * locking. Latencies are counted in log-linear buckets, as in HdrHistogram:
+ * every power of two is split into 64 buckets, so that any percentile is known
+ * within 1/64 of its value, in a fixed amount of memory. As in a
+ * StripedCounter, each thread records into its own stripe of buckets, and the
+ * stripes are only summed when a Snapshot is taken.
+ * 
+ * @author Kindred Team
+ */
+final class StripedHistogram {
+
+    /**
+     * Number of bits of a value kept when choosing its bucket.
+     */
+    private static final int SUB_BITS = 7;
+
+    /**
+     * Number of buckets holding the smallest values, one per value.
+     */
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    /**
+     * Number of buckets per power of two above {@code SUB_COUNT}.
+     */
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+
+    /**
+     * Number of bits of the largest value told apart; larger values are
+     * counted as the largest one (about 69 seconds, in nanoseconds).
+     */
+    private static final int MAX_BITS = 36;
+
+    /**
+     * Largest value told apart.
+     */
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+    /**
+     * Number of buckets of each stripe.
+     */
+    private static final int BUCKETS = SUB_COUNT + (MAX_BITS - SUB_BITS)
+            * HALF_COUNT;
+
+    /**
+     * Number of stripes, fewer than a StripedCounter's since each one is much
+     * larger.
+     */
+    private static final int STRIPES = Math.min(StripedCounter.STRIPES, 8);
+
+    /**
+     * Buckets of every stripe, one stripe after the other.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(STRIPES
+            * BUCKETS);
+
+    /**
+     * Records a value.
+     * 
+     * @param value
+     *            value to be recorded; negative values are recorded as 0
+     */
+    void record(long value) {
+        int stripe = StripedCounter.stripe() & (STRIPES - 1);
+        counts.getAndIncrement(stripe * BUCKETS + bucket(value));
+    }
+
+    /**
+     * Sums the stripes, so that percentiles can be read.
+     * 
+     * @return the values recorded so far
+     */
+    Snapshot snapshot() {
+        long[] sum = new long[BUCKETS];
+        for (int s = 0; s < STRIPES; s++)
+            for (int i = 0; i < BUCKETS; i++)
+                sum[i] += counts.get(s * BUCKETS + i);
+        return new Snapshot(sum);
+    }
+
+    /**
+     * Values recorded by a StripedHistogram at some moment.
+     */
+    static final class Snapshot {
+
+        /**
+         * Number of values recorded in each bucket.
+         */
+        private final long[] buckets;
+
+        /**
+         * Number of values recorded.
+         */
+        private final long count;
+
+        /**
+         * Constructs a Snapshot.
+         * 
+         * @param buckets
+         *            number of values recorded in each bucket
+         */
+        Snapshot(long[] buckets) {
+            this.buckets = buckets;
+            long n = 0;
+            for (long b : buckets)
+                n += b;
+            count = n;
+        }
+
+        /**
+         * Returns the number of values recorded.
+         * 
+         * @return the number of values
+         */
+        long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns a percentile of the values recorded: the smallest value such
+         * that the given fraction of the values is at most that value, rounded
+         * up to the end of its bucket.
+         * 
+         * @param fraction
+         *            fraction of the values, from 0 to 1 (e.g. 0.99 for the
+         *            99th percentile)
+         * @return the percentile, or 0 if no value was recorded
+         */
+        long getPercentile(double fraction) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank)
+                    return highestInBucket(i);
+            }
+            return MAX_VALUE;
+        }
+
+        /**
+         * Returns the largest value recorded, rounded up to the end of its
+         * bucket.
+         * 
+         * @return the largest value, or 0 if no value was recorded
+         */
+        long getMax() {
+            for (int i = buckets.length - 1; i >= 0; i--)
+                if (buckets[i] > 0)
+                    return highestInBucket(i);
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the bucket in which a value is counted.
+     * 
+     * @param value
+     *            a value
+     * @return index of its bucket in a stripe
+     */
+    private static int bucket(long value) {
+        if (value < 0)
+            value = 0;
+        else if (value > MAX_VALUE)
+            value = MAX_VALUE;
+        int bits = 64 - Long.numberOfLeadingZeros(value);
+        if (bits <= SUB_BITS)
+            return (int) value;
+        int shift = bits - SUB_BITS;
+        int top = (int) (value >>> shift);
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + top - HALF_COUNT;
+    }
+
+    /**
+     * Returns the largest value counted in a bucket.
+     * 
+     * @param bucket
+     *            index of the bucket in a stripe
+     * @return the largest value of the bucket
+     */
+    private static long highestInBucket(int bucket) {
+        if (bucket < SUB_COUNT)
+            return bucket;
+        int shift = (bucket - SUB_COUNT) / HALF_COUNT + 1;
+        long top = (bucket - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+}
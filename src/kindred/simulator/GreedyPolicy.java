@@ -0,0 +1,106 @@
+package kindred.simulator;
+
+import kindred.common.model.BattleOdds;
+import kindred.common.model.Game;
+import kindred.common.model.Map;
+
+/**
+ * Scripted Policy: each Unit attacks the target it's most likely to kill
+ * (or else expects to damage the most); a Unit with no target first moves as
+ * close as it can to the nearest enemy.
+ * 
+ * @author Kindred Team
+ */
+public final class GreedyPolicy implements Policy {
+
+    @Override
+    public void playTurn(Match match) {
+        Game game = match.getGame();
+        int[] units = match.getUnits(game.getTurn());
+
+        for (int u = 0; u < units.length && !game.isOver(); u += 2) {
+            int x = units[u];
+            int y = units[u + 1];
+
+            if (game.getTargets(x, y).length == 0) {
+                int[] enemies = match.getUnits(3 - game.getTurn());
+                int[] destinations = game.getDestinations(x, y);
+                int best = -1;
+                int bestDistance = distance(x, y, enemies);
+                for (int d = 0; d < destinations.length; d += 2) {
+                    int distance = distance(destinations[d],
+                            destinations[d + 1], enemies);
+                    if (distance < bestDistance) {
+                        best = d;
+                        bestDistance = distance;
+                    }
+                }
+                if (best >= 0
+                        && match.move(x, y, destinations[best],
+                                destinations[best + 1])) {
+                    x = destinations[best];
+                    y = destinations[best + 1];
+                }
+            }
+
+            int[] targets = game.getTargets(x, y);
+            int t = bestTarget(game.getMap(), x, y, targets);
+            if (t >= 0)
+                match.attack(x, y, targets[t], targets[t + 1]);
+        }
+    }
+
+    /**
+     * Chooses the target the Unit on Tile (x, y) is most likely to kill or,
+     * if it's unlikely to kill any, expects to damage the most.
+     * 
+     * @param map
+     *            Map being played
+     * @param x
+     *            x coordinate of the attacker
+     * @param y
+     *            y coordinate of the attacker
+     * @param targets
+     *            positions of the targets, as {x, y} pairs
+     * @return index of the chosen target's x coordinate in {@code targets},
+     *         or -1 if there is no target
+     */
+    private static int bestTarget(Map map, int x, int y, int[] targets) {
+        int best = -1;
+        double bestKill = 0;
+        double bestDamage = 0;
+        for (int t = 0; t < targets.length; t += 2) {
+            BattleOdds odds = map.getOdds(x, y, targets[t], targets[t + 1]);
+            double kill = odds.getKillProbability(map.getUnit(targets[t],
+                    targets[t + 1]).getCurrentHp());
+            double damage = odds.getExpectedDamage();
+            if (best < 0 || kill > bestKill
+                    || (kill == bestKill && damage > bestDamage)) {
+                best = t;
+                bestKill = kill;
+                bestDamage = damage;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the distance from Tile (x, y) to the nearest of the given Tiles.
+     * 
+     * @param x
+     *            x coordinate of the Tile
+     * @param y
+     *            y coordinate of the Tile
+     * @param tiles
+     *            positions of the Tiles, as {x, y} pairs
+     * @return the least Manhattan distance, or {@code Integer.MAX_VALUE} if
+     *         there are no Tiles
+     */
+    private static int distance(int x, int y, int[] tiles) {
+        int least = Integer.MAX_VALUE;
+        for (int i = 0; i < tiles.length; i += 2)
+            least = Math.min(least,
+                    Math.abs(tiles[i] - x) + Math.abs(tiles[i + 1] - y));
+        return least;
+    }
+}
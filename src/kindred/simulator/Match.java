@@ -0,0 +1,122 @@
+package kindred.simulator;
+
+import kindred.common.model.Game;
+import kindred.common.model.Map;
+import kindred.common.model.RandomSource;
+import kindred.common.model.Unit;
+
+/**
+ * A simulated match being played: the Game, the source of every random choice
+ * made by Policies and Battles, and the statistics it adds to. Policies make
+ * their moves and attacks through it, so that they are counted.
+ * 
+ * @author Kindred Team
+ */
+public final class Match {
+
+    /**
+     * Game being played.
+     */
+    private final Game game;
+
+    /**
+     * Source of random numbers of this Match.
+     */
+    private final RandomSource random;
+
+    /**
+     * Statistics to which this Match adds.
+     */
+    private final SimulationResult result;
+
+    /**
+     * Constructs a Match.
+     * 
+     * @param game
+     *            Game to be played
+     * @param random
+     *            source of random numbers, also used by the Game's battles
+     * @param result
+     *            statistics to which the Match adds
+     */
+    Match(Game game, RandomSource random, SimulationResult result) {
+        this.game = game;
+        this.random = random;
+        this.result = result;
+    }
+
+    /**
+     * Returns the Game being played.
+     * 
+     * @return the Game being played
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Returns the source of random numbers of this Match.
+     * 
+     * @return the source of random numbers
+     */
+    public RandomSource getRandom() {
+        return random;
+    }
+
+    /**
+     * Returns the positions of every Unit of a team.
+     * 
+     * @param team
+     *            the team (1 or 2)
+     * @return positions of the Units, as {x, y} pairs
+     */
+    public int[] getUnits(int team) {
+        return game.getMap().getUnitPositions(team);
+    }
+
+    /**
+     * Moves the Unit on Tile (xi, yi) to Tile (xf, yf), if it's allowed.
+     * 
+     * @param xi
+     *            x coordinate of the Unit
+     * @param yi
+     *            y coordinate of the Unit
+     * @param xf
+     *            x coordinate of the destination
+     * @param yf
+     *            y coordinate of the destination
+     * @return {@code true}, if the Unit moved, or {@code false} otherwise
+     */
+    public boolean move(int xi, int yi, int xf, int yf) {
+        return game.move(xi, yi, xf, yf);
+    }
+
+    /**
+     * Makes the Unit on Tile (xi, yi) attack the Unit on Tile (xf, yf), if
+     * it's allowed, counting the damage dealt by the attacker's type.
+     * 
+     * @param xi
+     *            x coordinate of the attacker
+     * @param yi
+     *            y coordinate of the attacker
+     * @param xf
+     *            x coordinate of the defender
+     * @param yf
+     *            y coordinate of the defender
+     * @return damage received by the defender if the attack was made, or -1
+     *         otherwise
+     */
+    public int attack(int xi, int yi, int xf, int yf) {
+        Map map = game.getMap();
+        if (!map.validPosition(xi, yi) || !map.validPosition(xf, yf))
+            return -1;
+        Unit attacker = map.getUnit(xi, yi);
+        int hp = map.getCurrentHp(xf, yf);
+
+        int damage = game.attack(xi, yi, xf, yf);
+        if (damage >= 0)
+            result.addAttack(attacker.getName(), Math.min(damage, hp),
+                    damage >= hp);
+        return damage;
+    }
+}
@@ -0,0 +1,18 @@
+package kindred.simulator;
+
+/**
+ * Strategy of a player in simulated matches.
+ * 
+ * @author Kindred Team
+ */
+public interface Policy {
+
+    /**
+     * Plays the current player's turn, moving and attacking with its Units
+     * through the given Match. The turn is ended by the caller.
+     * 
+     * @param match
+     *            the Match being played
+     */
+    void playTurn(Match match);
+}
@@ -0,0 +1,47 @@
+package kindred.simulator;
+
+import kindred.common.model.Game;
+import kindred.common.model.RandomSource;
+
+/**
+ * Policy that plays at random: each Unit, in random order, attacks a random
+ * target if it has any; otherwise it moves to a random destination (or
+ * stays) and then attacks a random target, if it can.
+ * 
+ * @author Kindred Team
+ */
+public final class RandomPolicy implements Policy {
+
+    @Override
+    public void playTurn(Match match) {
+        Game game = match.getGame();
+        RandomSource random = match.getRandom();
+        int[] units = match.getUnits(game.getTurn());
+
+        for (int n = units.length / 2; n > 0 && !game.isOver(); n--) {
+            // Picks one of the remaining Units, moving it out of the way
+            int u = 2 * random.nextInt(n);
+            int x = units[u];
+            int y = units[u + 1];
+            units[u] = units[2 * n - 2];
+            units[u + 1] = units[2 * n - 1];
+
+            if (game.getTargets(x, y).length == 0) {
+                int[] destinations = game.getDestinations(x, y);
+                int d = 2 * random.nextInt(destinations.length / 2 + 1);
+                if (d < destinations.length
+                        && match.move(x, y, destinations[d],
+                                destinations[d + 1])) {
+                    x = destinations[d];
+                    y = destinations[d + 1];
+                }
+            }
+
+            int[] targets = game.getTargets(x, y);
+            if (targets.length > 0) {
+                int t = 2 * random.nextInt(targets.length / 2);
+                match.attack(x, y, targets[t], targets[t + 1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package kindred.simulator;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * Statistics of a set of simulated matches: who won, how long matches lasted
+ * and how much damage each Unit type dealt. Results of matches played apart
+ * (e.g. by different threads) are combined by {@link #merge}.
+ * 
+ * @author Kindred Team
+ */
+public final class SimulationResult {
+
+    /**
+     * Index of the number of attacks in the statistics of a Unit type.
+     */
+    private static final int ATTACKS = 0;
+
+    /**
+     * Index of the damage dealt in the statistics of a Unit type.
+     */
+    private static final int DAMAGE = 1;
+
+    /**
+     * Index of the number of Units killed in the statistics of a Unit type.
+     */
+    private static final int KILLS = 2;
+
+    /**
+     * Number of matches played.
+     */
+    private long matches = 0;
+
+    /**
+     * Number of matches won by each team, indexed by team; index 0 counts the
+     * matches that reached the turn limit.
+     */
+    private final long[] wins = new long[3];
+
+    /**
+     * Sum of the number of turns of every match.
+     */
+    private long turns = 0;
+
+    /**
+     * Number of attacks, damage dealt and Units killed by each Unit type,
+     * indexed by the type's name.
+     */
+    private final HashMap<String, long[]> byType = new HashMap<String, long[]>();
+
+    /**
+     * Counts a finished match.
+     * 
+     * @param winner
+     *            team that won the match, or 0 if it reached the turn limit
+     * @param length
+     *            number of turns played
+     */
+    void addMatch(int winner, int length) {
+        matches++;
+        wins[winner]++;
+        turns += length;
+    }
+
+    /**
+     * Counts an attack.
+     * 
+     * @param type
+     *            name of the attacker's type
+     * @param damage
+     *            hit points lost by the defender
+     * @param kill
+     *            if the defender died
+     */
+    void addAttack(String type, int damage, boolean kill) {
+        long[] stats = byType.get(type);
+        if (stats == null) {
+            stats = new long[3];
+            byType.put(type, stats);
+        }
+        stats[ATTACKS]++;
+        stats[DAMAGE] += damage;
+        if (kill)
+            stats[KILLS]++;
+    }
+
+    /**
+     * Adds the statistics of another result to this one.
+     * 
+     * @param other
+     *            the other result
+     * @return this result
+     */
+    SimulationResult merge(SimulationResult other) {
+        matches += other.matches;
+        for (int i = 0; i < wins.length; i++)
+            wins[i] += other.wins[i];
+        turns += other.turns;
+        for (java.util.Map.Entry<String, long[]> e : other.byType.entrySet()) {
+            long[] stats = byType.get(e.getKey());
+            if (stats == null)
+                byType.put(e.getKey(), e.getValue().clone());
+            else
+                for (int i = 0; i < stats.length; i++)
+                    stats[i] += e.getValue()[i];
+        }
+        return this;
+    }
+
+    /**
+     * Returns the number of matches played.
+     * 
+     * @return the number of matches
+     */
+    public long getMatches() {
+        return matches;
+    }
+
+    /**
+     * Returns the fraction of the matches won by a team.
+     * 
+     * @param team
+     *            the team (1 or 2), or 0 for matches that reached the turn
+     *            limit
+     * @return the fraction of the matches, in [0, 1]
+     */
+    public double getWinRate(int team) {
+        return matches == 0 ? 0 : (double) wins[team] / matches;
+    }
+
+    /**
+     * Returns the average number of turns of a match.
+     * 
+     * @return the average length of a match
+     */
+    public double getAverageTurns() {
+        return matches == 0 ? 0 : (double) turns / matches;
+    }
+
+    /**
+     * Returns the damage dealt by the Units of a type, over every match.
+     * 
+     * @param type
+     *            name of the type
+     * @return the damage dealt
+     */
+    public long getDamage(String type) {
+        long[] stats = byType.get(type);
+        return stats == null ? 0 : stats[DAMAGE];
+    }
+
+    /**
+     * Prints these statistics, one Unit type per line.
+     * 
+     * @param out
+     *            stream to print to
+     */
+    public void print(PrintStream out) {
+        out.format("matches %d, player 1 %.2f%%, player 2 %.2f%%, "
+                + "unfinished %.2f%%, %.1f turns on average%n", matches,
+                100 * getWinRate(1), 100 * getWinRate(2), 100 * getWinRate(0),
+                getAverageTurns());
+        out.format("%-12s %12s %14s %12s %12s %10s%n", "type", "attacks",
+                "damage", "damage/game", "damage/atk", "kills");
+        for (java.util.Map.Entry<String, long[]> e : new TreeMap<String, long[]>(
+                byType).entrySet()) {
+            long[] s = e.getValue();
+            out.format("%-12s %12d %14d %12.2f %12.2f %10d%n", e.getKey(),
+                    s[ATTACKS], s[DAMAGE], (double) s[DAMAGE] / matches,
+                    (double) s[DAMAGE] / s[ATTACKS], s[KILLS]);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SimulationResult [matches=" + matches + ", wins="
+                + Arrays.toString(wins) + ", turns=" + turns + "]";
+    }
+}
@@ -0,0 +1,236 @@
+package kindred.simulator;
+
+import java.io.FileNotFoundException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import kindred.common.model.Game;
+import kindred.common.model.MapTemplate;
+import kindred.common.model.RandomSource;
+import kindred.common.model.SplitMixRandom;
+
+/**
+ * Headless simulator that plays many matches between two Policies on a Map
+ * and reports win rates, average match length and the damage dealt by each
+ * Unit type, so that Unit types can be balanced.
+ * <p>
+ * Matches are split among the threads of a ForkJoinPool. Each task gets its
+ * own RandomSource, split from its parent's before it's forked, so that
+ * threads don't contend for random numbers and the results only depend on
+ * the seed, not on how tasks are scheduled.
+ * <p>
+ * Usage: {@code Simulator map [matches] [policy1] [policy2] [seed] [threads]},
+ * where map is the name of a file of the map directory (without extension)
+ * and each policy is either {@code random} or {@code greedy}.
+ * 
+ * @author Kindred Team
+ */
+public final class Simulator {
+
+    /**
+     * Resource directory containing the map files.
+     */
+    private static final String MAP_DIR = "/kindred/common/data/map/";
+
+    /**
+     * Turns after which a match is stopped as unfinished.
+     */
+    private static final int MAX_TURNS = 200;
+
+    /**
+     * Largest number of matches played by a task without splitting it.
+     */
+    private static final int THRESHOLD = 256;
+
+    /**
+     * Not to be instantiated, since this class is purely static.
+     */
+    private Simulator() {
+        // Do not instantiate!
+    }
+
+    /**
+     * Plays a number of matches (a range of them) on a single thread, or
+     * splits them between two subtasks.
+     */
+    private static final class SimulationTask extends
+            RecursiveTask<SimulationResult> {
+
+        /**
+         * Version of this class, as it's serializable.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Name of the file containing the Map to be played on.
+         */
+        private final String mapFile;
+
+        /**
+         * Policies of the first and second players.
+         */
+        private final Policy[] policies;
+
+        /**
+         * Number of matches to be played.
+         */
+        private final int matches;
+
+        /**
+         * Source of random numbers of this task.
+         */
+        private final RandomSource random;
+
+        /**
+         * Constructs a SimulationTask.
+         * 
+         * @param mapFile
+         *            name of the file containing the Map to be played on
+         * @param policies
+         *            policies of the first and second players
+         * @param matches
+         *            number of matches to be played
+         * @param random
+         *            source of random numbers of the task
+         */
+        SimulationTask(String mapFile, Policy[] policies, int matches,
+                RandomSource random) {
+            this.mapFile = mapFile;
+            this.policies = policies;
+            this.matches = matches;
+            this.random = random;
+        }
+
+        @Override
+        protected SimulationResult compute() {
+            if (matches > THRESHOLD) {
+                int half = matches / 2;
+                SimulationTask left = new SimulationTask(mapFile, policies,
+                        half, random.split());
+                SimulationTask right = new SimulationTask(mapFile, policies,
+                        matches - half, random.split());
+                left.fork();
+                return right.compute().merge(left.join());
+            }
+
+            SimulationResult result = new SimulationResult();
+            for (int i = 0; i < matches; i++)
+                play(mapFile, policies, random, result);
+            return result;
+        }
+    }
+
+    /**
+     * Runs the simulator.
+     * 
+     * @param args
+     *            name of the Map, and optional number of matches, policies of
+     *            both players, seed and number of threads
+     * @throws FileNotFoundException
+     *             if the Map file is not found
+     */
+    public static void main(String[] args) throws FileNotFoundException {
+        if (args.length < 1) {
+            System.err.println("Usage: Simulator map [matches] [policy1] "
+                    + "[policy2] [seed] [threads]");
+            System.exit(1);
+        }
+        String mapFile = MAP_DIR + args[0] + ".txt";
+        int matches = args.length >= 2 ? Integer.parseInt(args[1]) : 100000;
+        Policy[] policies = {
+                policy(args.length >= 3 ? args[2] : "greedy"),
+                policy(args.length >= 4 ? args[3] : "greedy") };
+        long seed = args.length >= 5 ? Long.parseLong(args[4]) : System
+                .currentTimeMillis();
+        int threads = args.length >= 6 ? Integer.parseInt(args[5]) : Runtime
+                .getRuntime().availableProcessors();
+
+        // Fails now, rather than on every thread, if the Map is missing
+        MapTemplate.get(mapFile);
+
+        long time = System.nanoTime();
+        SimulationResult result = simulate(mapFile, policies, matches, seed,
+                threads);
+        time = System.nanoTime() - time;
+
+        System.out.format("map %s, seed %d, %d threads, %.1f s%n", args[0],
+                seed, threads, time / 1e9);
+        result.print(System.out);
+    }
+
+    /**
+     * Plays matches between two Policies on a Map.
+     * 
+     * @param mapFile
+     *            name of the file containing the Map to be played on
+     * @param policies
+     *            policies of the first and second players
+     * @param matches
+     *            number of matches to be played
+     * @param seed
+     *            seed of every random choice; the same seed gives the same
+     *            results, whatever the number of threads
+     * @param threads
+     *            number of threads to play on
+     * @return statistics of the matches
+     */
+    public static SimulationResult simulate(String mapFile, Policy[] policies,
+            int matches, long seed, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.invoke(new SimulationTask(mapFile, policies, matches,
+                    new SplitMixRandom(seed)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays a match until a player has no Units left or the turn limit is
+     * reached.
+     * 
+     * @param mapFile
+     *            name of the file containing the Map to be played on
+     * @param policies
+     *            policies of the first and second players
+     * @param random
+     *            source of random numbers of the match
+     * @param result
+     *            statistics to which the match is added
+     */
+    private static void play(String mapFile, Policy[] policies,
+            RandomSource random, SimulationResult result) {
+        Game game = new Game("Player 1", "Player 2", mapFile, 0, random);
+        Match match = new Match(game, random, result);
+        int turns = 0;
+        while (!game.isOver() && turns < MAX_TURNS) {
+            policies[game.getTurn() - 1].playTurn(match);
+            game.endTurn();
+            turns++;
+        }
+
+        int winner = 0;
+        if (game.getMap().getNumUnitsB() == 0)
+            winner = 1;
+        else if (game.getMap().getNumUnitsA() == 0)
+            winner = 2;
+        result.addMatch(winner, turns);
+    }
+
+    /**
+     * Returns the Policy with the given name.
+     * 
+     * @param name
+     *            {@code random} or {@code greedy}
+     * @return the Policy
+     * @throws IllegalArgumentException
+     *             if there is no Policy with that name
+     */
+    private static Policy policy(String name) {
+        if (name.equalsIgnoreCase("random"))
+            return new RandomPolicy();
+        if (name.equalsIgnoreCase("greedy"))
+            return new GreedyPolicy();
+        throw new IllegalArgumentException("unknown policy: " + name);
+    }
+}
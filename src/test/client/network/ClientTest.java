@@ -2,6 +2,7 @@ package test.client.network;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -15,6 +16,7 @@ import org.junit.Test;
 import kindred.client.network.Client;
 import kindred.client.view.AbstractView;
 import kindred.common.ServerToClientMessage;
+import kindred.common.model.Game;
 import kindred.server.Server;
 
 public class ClientTest {
@@ -133,6 +135,20 @@ public class ClientTest {
         client.disconnect();
     }
 
+    @Test
+    public void testBurstIsSentImmediately() {
+        Client client = new Client("localhost", view);
+        client.start();
+        client.nick("burstNick");
+        client.host("testmap");
+        client.unhost();
+        client.host("simpleMap");
+        wait(150);
+        assertEquals("burstNick", client.getNickname());
+        assertTrue(client.isHostingRoom());
+        client.disconnect();
+    }
+
     @Test
     public void testHost_Invalid() {
         Client client = new Client("localhost", view);
@@ -284,6 +300,35 @@ public class ClientTest {
         guest.disconnect();
     }
 
+    @Test
+    public void testCopyGame() {
+        Client host = new Client("localhost", view);
+        Client guest = new Client("localhost", view);
+        host.start();
+        guest.start();
+        host.nick("hostCopy");
+        guest.nick("guestCopy");
+        wait(400);
+        assertNull(guest.copyGame());
+        host.host("testmap");
+        wait(400);
+        guest.join("hostCopy");
+        wait(800);
+
+        Game before = guest.copyGame();
+        assertNotNull(before.getMap().getUnit(0, 0));
+        assertTrue(host.move(new int[] { 0, 0, 1, 0 }));
+        wait(600);
+        // Copies don't follow the actions received afterwards
+        assertNotNull(before.getMap().getUnit(0, 0));
+        assertNull(guest.copyGame().getMap().getUnit(0, 0));
+        assertNotNull(guest.copyGame().getMap().getUnit(1, 0));
+
+        // Disconnect
+        host.disconnect();
+        guest.disconnect();
+    }
+
     @Test
     public void testMove_Valid() {
         Client host = new Client("localhost", view);
@@ -0,0 +1,81 @@
+package test.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import kindred.common.model.Battle;
+import kindred.common.model.BattleOdds;
+import kindred.common.model.RandomSource;
+import kindred.common.model.SplitMixRandom;
+import kindred.common.model.Terrain;
+import kindred.common.model.Tile;
+import kindred.common.model.UnitFactory;
+
+public class BattleTest {
+
+    private static int[] fight(RandomSource random, int rounds) {
+        UnitFactory factory = new UnitFactory();
+        Terrain plain = new Terrain("Plain", 100, 100, 0);
+        Tile attacker = new Tile(plain);
+        attacker.setUnit(factory.getNewUnit("Archer", 1));
+        Tile defender = new Tile(plain);
+        defender.setUnit(factory.getNewUnit("Knight", 2));
+        return fight(random, rounds, attacker, defender);
+    }
+
+    private static int[] fight(RandomSource random, int rounds,
+            Tile attacker, Tile defender) {
+        Battle battle = new Battle(random);
+        int[] damage = new int[rounds];
+        for (int i = 0; i < rounds; i++)
+            damage[i] = battle.execute(attacker, defender);
+        return damage;
+    }
+
+    @Test
+    public void testBattlesWithTheSameSeedHaveTheSameResults() {
+        assertArrayEquals(fight(new SplitMixRandom(42), 100),
+                fight(new SplitMixRandom(42), 100));
+    }
+
+    @Test
+    public void testSplitSourcesAreIndependent() {
+        RandomSource random = new SplitMixRandom(42);
+        RandomSource split = random.split();
+        assertFalse(Arrays.equals(fight(random, 100), fight(split, 100)));
+    }
+
+    @Test
+    public void testOddsDescribeTheResultsOfAttacks() {
+        UnitFactory factory = new UnitFactory();
+        Tile attacker = new Tile(new Terrain("Plain", 100, 100, 0));
+        attacker.setUnit(factory.getNewUnit("Archer", 1));
+        Tile defender = new Tile(new Terrain("Forest", 120, 110, 1));
+        defender.setUnit(factory.getNewUnit("Swordsman", 2));
+        BattleOdds odds = Battle.getOdds(attacker, defender);
+
+        double total = 0;
+        for (int d = 0; d <= odds.getMaxDamage(); d++)
+            total += odds.getDamageProbability(d);
+        assertEquals(1, total, 1e-9);
+
+        int rounds = 100000;
+        int[] damage = fight(new SplitMixRandom(7), rounds, attacker,
+                defender);
+        long sum = 0;
+        int misses = 0;
+        for (int d : damage) {
+            sum += d;
+            if (d == 0)
+                misses++;
+        }
+        assertEquals(1 - odds.getHitProbability(), (double) misses / rounds,
+                0.01);
+        assertEquals(odds.getExpectedDamage(), (double) sum / rounds, 0.05);
+    }
+}
@@ -0,0 +1,194 @@
+package test.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import kindred.common.GameActionEnum;
+import kindred.common.model.ArrayMap;
+import kindred.common.model.Attribute;
+import kindred.common.model.Game;
+import kindred.common.model.Map;
+import kindred.common.model.Reachability;
+import kindred.common.model.Terrain;
+import kindred.common.model.Unit;
+import kindred.common.parsing.UnitFileParser;
+
+public class GameTest {
+
+    private static final String MAP_FILE = "/kindred/common/data/map/simpleMap.txt";
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingMapFile() {
+        new Game("a", "b", "/kindred/common/data/map/noSuchMap.txt", 0);
+    }
+
+    @Test
+    public void testCachedOptionsFollowTheMap() {
+        Game game = new Game("a", "b", MAP_FILE, 0);
+        Map map = game.getMap();
+        int h = map.getMapHeight(), w = map.getMapWidth();
+        Random random = new Random(7);
+
+        for (int step = 0; step < 500 && !game.isOver(); step++) {
+            int xi = random.nextInt(h), yi = random.nextInt(w);
+            int xf = random.nextInt(h), yf = random.nextInt(w);
+            switch (random.nextInt(4)) {
+            case 0:
+                game.move(xi, yi, xf, yf);
+                break;
+            case 1:
+                game.forceMovement(xi, yi, xf, yf);
+                break;
+            case 2:
+                game.causeDamage(xf, yf, random.nextInt(20));
+                break;
+            default:
+                game.endTurn();
+            }
+
+            for (int x = 0; x < h; x++)
+                for (int y = 0; y < w; y++) {
+                    assertEquals(sorted(destinations(map, x, y)),
+                            sorted(game.getDestinations(x, y)));
+                    assertEquals(sorted(targets(map, x, y)),
+                            sorted(game.getTargets(x, y)));
+                }
+        }
+    }
+
+    @Test
+    public void testHashDependsOnlyOnState() {
+        Game a = new Game("a", "b", MAP_FILE, 0);
+        Game b = new Game("a", "b", MAP_FILE, 0);
+        long initial = a.getHash();
+        assertEquals(initial, b.getHash());
+
+        assertTrue(a.move(0, 2, 0, 3));
+        assertTrue(a.move(1, 1, 2, 2));
+        assertTrue(b.move(1, 1, 2, 2));
+        assertTrue(b.move(0, 2, 0, 3));
+        assertEquals(a.getHash(), b.getHash());
+        assertNotEquals(initial, a.getHash());
+
+        long beforeEnd = a.getHash();
+        a.endTurn();
+        assertNotEquals(beforeEnd, a.getHash());
+        a.causeDamage(5, 5, 1);
+        assertNotEquals(a.getHash(), b.getHash());
+    }
+
+    @Test
+    public void testUnitTypesHaveDistinctHashes() throws FileNotFoundException {
+        HashMap<String, Attribute> types = UnitFileParser
+                .parseFile("/kindred/common/data/unit/unit.txt");
+        Terrain plain = new Terrain("Plain", 0, 0, 0);
+        HashSet<Long> hashes = new HashSet<Long>();
+        for (java.util.Map.Entry<String, Attribute> type : types.entrySet()) {
+            Map map = new ArrayMap(new Terrain[] { plain }, 1, 1, 1, 1);
+            assertTrue(map.placeUnit(
+                    new Unit(type.getKey(), type.getValue(), 1), 0, 0));
+            assertTrue(hashes.add(map.getHash()));
+        }
+    }
+
+    @Test
+    public void testUndoRestoresEveryState() {
+        Game game = new Game("a", "b", MAP_FILE, 0);
+        Map map = game.getMap();
+        int h = map.getMapHeight(), w = map.getMapWidth();
+        Random random = new Random(11);
+        ArrayList<String> states = new ArrayList<String>();
+
+        while (states.size() < 300) {
+            String state = state(game);
+            GameActionEnum action = GameActionEnum.values()[random
+                    .nextInt(states.size() % 50 == 49 ? 4 : 3)];
+            if (game.apply(action, random.nextInt(h), random.nextInt(w),
+                    random.nextInt(h), random.nextInt(w), random.nextInt(30)))
+                states.add(state);
+        }
+        for (int i = states.size() - 1; i >= 0; i--) {
+            assertTrue(game.undo());
+            assertEquals(states.get(i), state(game));
+        }
+        assertFalse(game.undo());
+
+        for (int x = 0; x < h; x++)
+            for (int y = 0; y < w; y++)
+                assertEquals(sorted(destinations(map, x, y)),
+                        sorted(game.getDestinations(x, y)));
+    }
+
+    @Test
+    public void testCopiesAreIndependent() {
+        Game game = new Game("a", "b", MAP_FILE, 0);
+        assertTrue(game.move(0, 2, 0, 3));
+        game.causeDamage(5, 5, 4);
+        Game copy = new Game(game);
+        assertEquals(state(game), state(copy));
+
+        String before = state(game);
+        assertTrue(copy.apply(GameActionEnum.MOVE, 1, 1, 2, 2, 0));
+        copy.causeDamage(5, 5, 1);
+        assertFalse(copy.move(0, 3, 0, 2));
+        assertEquals(before, state(game));
+    }
+
+    private static String state(Game game) {
+        Map map = game.getMap();
+        StringBuilder sb = new StringBuilder();
+        sb.append(game.getTurn()).append(game.isOver()).append(game.getHash());
+        for (int x = 0; x < map.getMapHeight(); x++)
+            for (int y = 0; y < map.getMapWidth(); y++) {
+                sb.append('|').append(map.getTileInfo(x, y));
+                sb.append(game.canAttack(x, y, 0, 0));
+            }
+        return sb.append(map.getNumUnitsA()).append(map.getNumUnitsB())
+                .toString();
+    }
+
+    private static int[] destinations(Map map, int x, int y) {
+        Reachability r = map.reachableFrom(x, y);
+        int[] tiles = new int[2 * r.size()];
+        for (int i = 0; i < r.size(); i++) {
+            tiles[2 * i] = r.getX(i);
+            tiles[2 * i + 1] = r.getY(i);
+        }
+        return tiles;
+    }
+
+    private static int[] targets(Map map, int x, int y) {
+        Unit unit = map.getUnit(x, y);
+        int[] tiles = new int[2 * map.getMapHeight() * map.getMapWidth()];
+        int n = 0;
+        for (int i = 0; unit != null && i < map.getMapHeight(); i++)
+            for (int j = 0; j < map.getMapWidth(); j++) {
+                Unit other = map.getUnit(i, j);
+                if (other != null && other.getTeam() != unit.getTeam()
+                        && map.inRange(x, y, i, j)) {
+                    tiles[n++] = i;
+                    tiles[n++] = j;
+                }
+            }
+        return Arrays.copyOf(tiles, n);
+    }
+
+    private static String sorted(int[] tiles) {
+        String[] pairs = new String[tiles.length / 2];
+        for (int i = 0; i < pairs.length; i++)
+            pairs[i] = tiles[2 * i] + "," + tiles[2 * i + 1];
+        Arrays.sort(pairs);
+        return Arrays.toString(pairs);
+    }
+}
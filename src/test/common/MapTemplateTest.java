@@ -0,0 +1,84 @@
+package test.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.FileNotFoundException;
+
+import org.junit.Test;
+
+import kindred.common.model.Map;
+import kindred.common.model.MapLayout;
+import kindred.common.model.MapTemplate;
+import kindred.common.parsing.MapFileParser;
+import kindred.common.parsing.TerrainFileParser;
+
+public class MapTemplateTest {
+
+    private static final String MAP_FILE = "/kindred/common/data/map/testmap.txt";
+
+    private static final String TERRAIN_FILE = "/kindred/common/data/terrain/terrain.txt";
+
+    @Test
+    public void testInstancesMatchParsedMap() throws FileNotFoundException {
+        MapTemplate template = MapTemplate.get(MAP_FILE);
+        assertSame(template, MapTemplate.get(MAP_FILE));
+
+        Map parsed = MapFileParser.parseFile(MAP_FILE,
+                TerrainFileParser.parseFile(TERRAIN_FILE));
+        Map map = template.instantiate();
+        assertEquals(parsed.getMapHeight(), map.getMapHeight());
+        assertEquals(parsed.getMapWidth(), map.getMapWidth());
+        assertEquals(parsed.getNumUnitsA(), map.getNumUnitsA());
+        assertEquals(parsed.getNumUnitsB(), map.getNumUnitsB());
+        for (int i = 0; i < map.getMapHeight(); i++)
+            for (int j = 0; j < map.getMapWidth(); j++)
+                assertEquals(parsed.getTileInfo(i, j), map.getTileInfo(i, j));
+    }
+
+    @Test
+    public void testInstancesAreIndependent() throws FileNotFoundException {
+        MapTemplate template = MapTemplate.get(MAP_FILE);
+        Map a = template.instantiate();
+        Map b = template.instantiate();
+
+        for (int i = 0; i < a.getMapHeight(); i++)
+            for (int j = 0; j < a.getMapWidth(); j++) {
+                assertNotSame(a.getTile(i, j), b.getTile(i, j));
+                if (a.getTile(i, j).getUnit() != null) {
+                    int hp = b.getTile(i, j).getUnit().getCurrentHp();
+                    a.causeDamage(i, j, 1);
+                    assertEquals(hp, b.getTile(i, j).getUnit().getCurrentHp());
+                }
+            }
+    }
+
+    @Test
+    public void testLayoutsBehaveAlike() throws FileNotFoundException {
+        MapTemplate template = MapTemplate.get(MAP_FILE);
+        Map tiles = template.instantiate(MapLayout.TILES);
+        Map arrays = template.instantiate(MapLayout.ARRAYS);
+
+        assertEquals(tiles.move(0, 0, 1, 0), arrays.move(0, 0, 1, 0));
+        assertEquals(tiles.causeDamage(1, 1, 100),
+                arrays.causeDamage(1, 1, 100));
+        assertEquals(tiles.getNumUnitsB(), arrays.getNumUnitsB());
+        assertEquals(tiles.getHash(), arrays.getHash());
+        int h = tiles.getMapHeight(), w = tiles.getMapWidth();
+        for (int i = 0; i < h * w; i++) {
+            assertEquals(tiles.getTileInfo(i / w, i % w),
+                    arrays.getTileInfo(i / w, i % w));
+            assertEquals(tiles.getTeam(i / w, i % w),
+                    arrays.getTeam(i / w, i % w));
+            assertEquals(tiles.getCurrentHp(i / w, i % w),
+                    arrays.getCurrentHp(i / w, i % w));
+            for (int j = 0; j < h * w; j++) {
+                assertEquals(tiles.canMove(i / w, i % w, j / w, j % w),
+                        arrays.canMove(i / w, i % w, j / w, j % w));
+                assertEquals(tiles.inRange(i / w, i % w, j / w, j % w),
+                        arrays.inRange(i / w, i % w, j / w, j % w));
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package test.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import kindred.common.GameActionEnum;
+import kindred.common.ai.MonteCarloSearch;
+import kindred.common.model.Game;
+
+public class MonteCarloSearchTest {
+
+    private static final String MAP_FILE = "/kindred/common/data/map/simpleMap.txt";
+
+    @Test
+    public void testChosenActionsAreLegal() {
+        Game game = new Game("a", "b", MAP_FILE, 0);
+        MonteCarloSearch search = new MonteCarloSearch(2, 1);
+        try {
+            for (int i = 0; i < 5; i++) {
+                long hash = game.getHash();
+                int[] action = search.chooseAction(game,
+                        System.nanoTime() + 50000000);
+                assertEquals(hash, game.getHash());
+                assertTrue(search.getLastSimulations() > 0
+                        || action[0] == GameActionEnum.END_TURN.ordinal());
+                assertTrue(game.apply(GameActionEnum.values()[action[0]],
+                        action[1], action[2], action[3], action[4], 1));
+            }
+        } finally {
+            search.close();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package test.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import kindred.common.model.Attribute;
+import kindred.common.model.Map;
+import kindred.common.model.Reachability;
+import kindred.common.model.Terrain;
+import kindred.common.model.Tile;
+import kindred.common.model.Unit;
+
+public class ReachabilityTest {
+
+    private static final Terrain PLAINS = new Terrain("Plains", 0, 0, 0);
+
+    private static final Terrain MOUNTAIN = new Terrain("Mountain", 0, 0, 3);
+
+    private static Map row(Terrain... terrains) {
+        Tile[][] tiles = new Tile[1][terrains.length];
+        for (int j = 0; j < terrains.length; j++)
+            tiles[0][j] = new Tile(terrains[j]);
+        return new Map(tiles, 0, 0);
+    }
+
+    private static Unit unit(int team, int move) {
+        return new Unit("Knight", new Attribute(10, 1, 1, 1, move, 1), team);
+    }
+
+    @Test
+    public void testTerrainCosts() {
+        Map map = row(PLAINS, PLAINS, MOUNTAIN, PLAINS, PLAINS);
+        map.placeUnit(unit(1, 5), 0, 0);
+
+        Reachability r = map.reachableFrom(0, 0);
+        assertEquals(2, r.size());
+        assertEquals(5, r.getCost(0, 2));
+        assertFalse(r.isReachable(0, 3));
+        assertTrue(map.canMove(0, 0, 0, 2));
+        assertFalse(map.canMove(0, 0, 0, 3));
+    }
+
+    @Test
+    public void testUnitsBlockEnemies() {
+        Map map = row(PLAINS, PLAINS, PLAINS, PLAINS, PLAINS);
+        map.placeUnit(unit(1, 4), 0, 0);
+        map.placeUnit(unit(1, 1), 0, 1);
+        map.placeUnit(unit(2, 1), 0, 3);
+
+        // Allies can be passed through, but not stopped on
+        Reachability r = map.reachableFrom(0, 0);
+        assertEquals(1, r.size());
+        assertTrue(r.isReachable(0, 2));
+        assertFalse(r.isReachable(0, 1));
+        assertFalse(map.canMove(0, 0, 0, 4));
+    }
+
+    @Test
+    public void testAdjacentTileAlwaysReachable() {
+        Map map = row(PLAINS, MOUNTAIN, PLAINS);
+        map.placeUnit(unit(1, 2), 0, 0);
+
+        assertTrue(map.move(0, 0, 0, 1));
+        assertEquals(2, map.reachableFrom(0, 1).size());
+    }
+}
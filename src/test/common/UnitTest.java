@@ -0,0 +1,22 @@
+package test.common;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import kindred.common.model.Unit;
+import kindred.common.model.UnitFactory;
+
+public class UnitTest {
+
+    @Test
+    public void testUnitsOfATypeKeepTheirOwnHp() {
+        UnitFactory factory = new UnitFactory();
+        Unit a = factory.getNewUnit("Archer", 1);
+        Unit b = factory.getNewUnit("Archer", 2);
+
+        a.loseHp(3);
+        assertEquals(a.getTotalHp() - 3, a.getCurrentHp());
+        assertEquals(b.getTotalHp(), b.getCurrentHp());
+    }
+}
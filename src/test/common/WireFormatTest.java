@@ -0,0 +1,114 @@
+package test.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import kindred.common.ClientToServerEnum;
+import kindred.common.ClientToServerMessage;
+import kindred.common.FrameReader;
+import kindred.common.ServerToClientEnum;
+import kindred.common.ServerToClientMessage;
+import kindred.common.WireFormat;
+
+public class WireFormatTest {
+
+    private static final String[] ARGUMENTS = { "", "0|1|2|3",
+            "0|0|1|0|-12", "2|", "|", "hostNick|1|testmap", "007|-0|+5",
+            "2147483647|-2147483648|2147483648", "áé|ção", "a||b",
+            "\uD83D\uDE00|x\u20AC" };
+
+    @Test
+    public void testRoundTrip() {
+        for (WireFormat format : WireFormat.values())
+            for (String arg : ARGUMENTS) {
+                ServerToClientMessage msg = new ServerToClientMessage(
+                        ServerToClientEnum.GAME_ACTION, arg);
+                byte[] frame = msg.toFrame(format);
+                assertEquals(frame.length,
+                        format.frameLength(frame, 0, frame.length));
+                ServerToClientMessage decoded = ServerToClientMessage
+                        .fromFrame(format, frame, 0, frame.length);
+                assertEquals(ServerToClientEnum.GAME_ACTION, decoded.msg);
+                assertEquals(arg, decoded.argument);
+            }
+    }
+
+    @Test
+    public void testBinaryIsCompact() {
+        ClientToServerMessage move = new ClientToServerMessage(
+                ClientToServerEnum.GAME_ACTION, "0|12|3|13|3");
+        // Length, opcode and one byte per small integer
+        assertEquals(7, move.toFrame(WireFormat.BINARY).length);
+        assertTrue(move.toFrame(WireFormat.TEXT).length > 7);
+    }
+
+    @Test
+    public void testIncompleteFrame() {
+        for (WireFormat format : WireFormat.values()) {
+            byte[] frame = format.encode(0, "someNick");
+            for (int end = 0; end < frame.length; end++)
+                assertEquals(-1, format.frameLength(frame, 0, end));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBinaryFrameTooLong() {
+        byte[] prefix = { (byte) 0xFF, (byte) 0xFF, 0x7F };
+        WireFormat.BINARY.frameLength(prefix, 0, prefix.length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTextMalformed() {
+        byte[] frame = "x|nick\n".getBytes();
+        ClientToServerMessage.fromFrame(WireFormat.TEXT, frame, 0, frame.length);
+    }
+
+    @Test
+    public void testFrameReader() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(WireFormat.BINARY_PREFACE);
+        out.write(new ClientToServerMessage(ClientToServerEnum.NICK, "abc")
+                .toFrame(WireFormat.BINARY));
+        out.write(new ClientToServerMessage(ClientToServerEnum.GAME_ACTION,
+                "1|0|0|0|1|5").toFrame(WireFormat.BINARY));
+
+        FrameReader in = new FrameReader(new ByteArrayInputStream(
+                out.toByteArray()), WireFormat.TEXT);
+        assertEquals(WireFormat.BINARY_PREFACE, in.peek());
+        in.skip();
+        in.setFormat(WireFormat.BINARY);
+        ClientToServerMessage msg = in.readClientMessage();
+        assertEquals(ClientToServerEnum.NICK, msg.msg);
+        assertEquals("abc", msg.argument);
+        msg = in.readClientMessage();
+        assertEquals(ClientToServerEnum.GAME_ACTION, msg.msg);
+        assertEquals("1|0|0|0|1|5", msg.argument);
+        assertNull(in.readClientMessage());
+    }
+
+    @Test
+    public void testFrameReaderSkipsBlankLines() throws Exception {
+        byte[] lines = "\n  \r\n8|\r\n".getBytes();
+        FrameReader in = new FrameReader(new ByteArrayInputStream(lines),
+                WireFormat.TEXT);
+        assertEquals(ClientToServerEnum.EMPTY, in.readClientMessage().msg);
+        assertNull(in.readClientMessage());
+    }
+
+    @Test
+    public void testFrameIsCached() {
+        ServerToClientMessage msg = new ServerToClientMessage(
+                ServerToClientEnum.SUCC_HOST, "testmap");
+        byte[] frame = msg.toFrame(WireFormat.BINARY);
+        assertTrue(frame == msg.toFrame(WireFormat.BINARY));
+        assertArrayEquals(WireFormat.BINARY.encode(
+                ServerToClientEnum.SUCC_HOST.ordinal(), "testmap"), frame);
+    }
+}
@@ -0,0 +1,634 @@
+package test.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.Arrays;
+
+import javax.management.JMX;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Test;
+
+import kindred.client.network.Client;
+import kindred.client.view.AbstractView;
+import kindred.common.ClientToServerEnum;
+import kindred.common.ClientToServerMessage;
+import kindred.common.ServerToClientEnum;
+import kindred.common.ServerToClientMessage;
+import kindred.common.WireFormat;
+import kindred.server.Server;
+import kindred.server.ServerMetricsMXBean;
+import kindred.server.ServerMode;
+
+public class ServerModeTest {
+
+    private Server server;
+
+    private static AbstractView view = new AbstractView() {
+
+        @Override
+        public void remoteEvent(ServerToClientMessage msg) {
+        }
+
+        @Override
+        protected void readLanguageData() {
+        }
+
+        @Override
+        public boolean promptForMenuAction(Client client) {
+            return false;
+        }
+
+        @Override
+        public String promptForIP() {
+            return null;
+        }
+
+        @Override
+        public boolean promptForGameAction(Client client) {
+            return false;
+        }
+
+        @Override
+        public void displayMap() {
+        }
+
+        @Override
+        public void connectionResult(boolean success, String serverIP) {
+        }
+
+        @Override
+        public void connectionLost() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String askForString(String message) {
+            return null;
+        }
+    };
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        wait(300);
+    }
+
+    @Test
+    public void testSelector_Match() {
+        startServer(ServerMode.SELECTOR);
+        playMatch("hostSel", "guestSel");
+    }
+
+    @Test
+    public void testVirtual_Match() {
+        startServer(ServerMode.VIRTUAL);
+        playMatch("hostVirt", "guestVirt");
+    }
+
+    @Test
+    public void testThread_BinaryMatch() {
+        startServer(ServerMode.THREAD);
+        playMatch("hostBinT", "guestBinT", WireFormat.BINARY);
+    }
+
+    @Test
+    public void testSelector_BinaryMatch() {
+        startServer(ServerMode.SELECTOR);
+        playMatch("hostBinS", "guestBinS", WireFormat.BINARY);
+    }
+
+    @Test
+    public void testThread_RelayWithoutPeerTraffic() throws Exception {
+        startServer(ServerMode.THREAD);
+        relayWithoutPeerTraffic("hostRlyT", "guestRlyT");
+    }
+
+    @Test
+    public void testSelector_RelayWithoutPeerTraffic() throws Exception {
+        startServer(ServerMode.SELECTOR);
+        relayWithoutPeerTraffic("hostRlyS", "guestRlyS");
+    }
+
+    @Test
+    public void testThread_MapCatalog() throws Exception {
+        startServer(ServerMode.THREAD);
+        Socket socket = new Socket("localhost", Server.DEFAULT_PORT);
+        socket.setSoTimeout(2000);
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream()));
+
+        out.println(encode(ClientToServerEnum.MAPS, ""));
+        ServerToClientMessage maps = nextMessage(in, 1);
+        assertEquals(ServerToClientEnum.INFO_AVAILABLE_MAPS, maps.msg);
+        assertEquals("simpleMap|testmap", maps.argument);
+
+        out.println(encode(ClientToServerEnum.NICK, "catalog"));
+        out.println(encode(ClientToServerEnum.HOST, "../map/testmap"));
+        assertEquals(ServerToClientEnum.ERR_MAP_NOT_FOUND,
+                nextMessage(in, 2).msg);
+        // Maps missing from the list can still be hosted
+        out.println(encode(ClientToServerEnum.HOST, "testmatch"));
+        assertEquals(ServerToClientEnum.SUCC_HOST, nextMessage(in, 1).msg);
+
+        socket.close();
+    }
+
+    @Test
+    public void testSelector_DisconnectEndsGame() throws Exception {
+        startServer(ServerMode.SELECTOR);
+        Socket host = new Socket("localhost", Server.DEFAULT_PORT);
+        Socket guest = new Socket("localhost", Server.DEFAULT_PORT);
+        host.setSoTimeout(2000);
+        guest.setSoTimeout(2000);
+        PrintWriter hostOut = new PrintWriter(host.getOutputStream(), true);
+        PrintWriter guestOut = new PrintWriter(guest.getOutputStream(), true);
+        BufferedReader hostIn = new BufferedReader(new InputStreamReader(
+                host.getInputStream()));
+        BufferedReader guestIn = new BufferedReader(new InputStreamReader(
+                guest.getInputStream()));
+
+        hostOut.println(encode(ClientToServerEnum.NICK, "hostDisc"));
+        hostOut.println(encode(ClientToServerEnum.HOST, "testmap"));
+        assertEquals(ServerToClientEnum.SUCC_HOST, nextMessage(hostIn, 2).msg);
+        guestOut.println(encode(ClientToServerEnum.NICK, "guestDisc"));
+        guestOut.println(encode(ClientToServerEnum.JOIN, "hostDisc"));
+        assertEquals(ServerToClientEnum.SUCC_JOIN, nextMessage(guestIn, 2).msg);
+        assertEquals(ServerToClientEnum.INFO_SOMEONE_ENTERED_ROOM,
+                nextMessage(hostIn, 1).msg);
+
+        // The remaining player is told that the leaver surrendered
+        guest.close();
+        ServerToClientMessage relayed = nextMessage(hostIn, 1);
+        assertEquals(ServerToClientEnum.GAME_ACTION, relayed.msg);
+        assertEquals("3|", relayed.argument);
+
+        // The game is over, so actions are no longer relayed anywhere
+        hostOut.println(encode(ClientToServerEnum.GAME_ACTION, "2|"));
+        hostOut.println(encode(ClientToServerEnum.NICK, ""));
+        assertEquals(ServerToClientEnum.INFO_NICKNAME, nextMessage(hostIn, 1).msg);
+
+        host.close();
+    }
+
+    @Test
+    public void testSelector_NewGameEndsPreviousGame() throws Exception {
+        startServer(ServerMode.SELECTOR);
+        Socket first = new Socket("localhost", Server.DEFAULT_PORT);
+        Socket guest = new Socket("localhost", Server.DEFAULT_PORT);
+        Socket second = new Socket("localhost", Server.DEFAULT_PORT);
+        first.setSoTimeout(2000);
+        guest.setSoTimeout(2000);
+        second.setSoTimeout(2000);
+        PrintWriter firstOut = new PrintWriter(first.getOutputStream(), true);
+        PrintWriter guestOut = new PrintWriter(guest.getOutputStream(), true);
+        PrintWriter secondOut = new PrintWriter(second.getOutputStream(), true);
+        BufferedReader firstIn = new BufferedReader(new InputStreamReader(
+                first.getInputStream()));
+        BufferedReader guestIn = new BufferedReader(new InputStreamReader(
+                guest.getInputStream()));
+        BufferedReader secondIn = new BufferedReader(new InputStreamReader(
+                second.getInputStream()));
+
+        firstOut.println(encode(ClientToServerEnum.NICK, "firstHost"));
+        firstOut.println(encode(ClientToServerEnum.HOST, "testmap"));
+        assertEquals(ServerToClientEnum.SUCC_HOST, nextMessage(firstIn, 2).msg);
+        guestOut.println(encode(ClientToServerEnum.NICK, "guestTwice"));
+        guestOut.println(encode(ClientToServerEnum.JOIN, "firstHost"));
+        assertEquals(ServerToClientEnum.SUCC_JOIN, nextMessage(guestIn, 2).msg);
+        assertEquals(ServerToClientEnum.INFO_SOMEONE_ENTERED_ROOM,
+                nextMessage(firstIn, 1).msg);
+
+        // Joining another game in the middle of one surrenders it
+        secondOut.println(encode(ClientToServerEnum.NICK, "secondHost"));
+        secondOut.println(encode(ClientToServerEnum.HOST, "testmap"));
+        assertEquals(ServerToClientEnum.SUCC_HOST, nextMessage(secondIn, 2).msg);
+        guestOut.println(encode(ClientToServerEnum.JOIN, "secondHost"));
+        assertEquals(ServerToClientEnum.SUCC_JOIN, nextMessage(guestIn, 1).msg);
+        ServerToClientMessage relayed = nextMessage(firstIn, 1);
+        assertEquals(ServerToClientEnum.GAME_ACTION, relayed.msg);
+        assertEquals("3|", relayed.argument);
+
+        // Only the new game relays the guest's actions
+        guestOut.println(encode(ClientToServerEnum.GAME_ACTION, "2|"));
+        assertEquals("2|", nextMessage(secondIn, 2).argument);
+        firstOut.println(encode(ClientToServerEnum.NICK, ""));
+        assertEquals(ServerToClientEnum.INFO_NICKNAME,
+                nextMessage(firstIn, 1).msg);
+
+        first.close();
+        guest.close();
+        second.close();
+    }
+
+    @Test
+    public void testSelector_RoomPagesAndChanges() throws Exception {
+        startServer(ServerMode.SELECTOR);
+        Socket socket = new Socket("localhost", Server.DEFAULT_PORT);
+        socket.setSoTimeout(2000);
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream()));
+
+        out.println(encode(ClientToServerEnum.ROOMS_SINCE, ""));
+        ServerToClientMessage delta = nextMessage(in, 1);
+        assertEquals(ServerToClientEnum.INFO_ROOMS_DELTA, delta.msg);
+        long version = Long.parseLong(delta.argument.split("\\|")[0]);
+
+        Socket[] hosts = new Socket[3];
+        for (int i = 0; i < hosts.length; i++) {
+            hosts[i] = new Socket("localhost", Server.DEFAULT_PORT);
+            hosts[i].setSoTimeout(2000);
+            PrintWriter hostOut = new PrintWriter(hosts[i].getOutputStream(),
+                    true);
+            BufferedReader hostIn = new BufferedReader(new InputStreamReader(
+                    hosts[i].getInputStream()));
+            hostOut.println(encode(ClientToServerEnum.NICK, "page" + i));
+            hostOut.println(encode(ClientToServerEnum.HOST, "testmatch"));
+            assertEquals(ServerToClientEnum.SUCC_HOST,
+                    nextMessage(hostIn, 2).msg);
+        }
+
+        out.println(encode(ClientToServerEnum.ROOMS_PAGE, "testmatch||2"));
+        ServerToClientMessage page = nextMessage(in, 1);
+        assertEquals(ServerToClientEnum.INFO_ROOMS_PAGE, page.msg);
+        assertEquals((version + 3) + "|testmatch|page1|page0>testmatch"
+                + "|page1>testmatch", page.argument);
+        out.println(encode(ClientToServerEnum.ROOMS_PAGE, "testmatch|page1|2"));
+        assertEquals((version + 3) + "|testmatch||page2>testmatch",
+                nextMessage(in, 1).argument);
+
+        out.println(encode(ClientToServerEnum.ROOMS_SINCE, "" + version));
+        assertEquals((version + 3) + "|0|+page0>testmatch|+page1>testmatch"
+                + "|+page2>testmatch", nextMessage(in, 1).argument);
+
+        out.println(encode(ClientToServerEnum.ROOMS_PAGE, "||none"));
+        assertEquals(ServerToClientEnum.ERR_INVALID_COMMAND_OR_ARGUMENTS,
+                nextMessage(in, 1).msg);
+
+        for (Socket host : hosts)
+            host.close();
+        socket.close();
+    }
+
+    @Test
+    public void testSelector_WinningAttackEndsGame() throws Exception {
+        startServer(ServerMode.SELECTOR);
+        Socket host = new Socket("localhost", Server.DEFAULT_PORT);
+        Socket guest = new Socket("localhost", Server.DEFAULT_PORT);
+        host.setSoTimeout(2000);
+        guest.setSoTimeout(2000);
+        PrintWriter hostOut = new PrintWriter(host.getOutputStream(), true);
+        PrintWriter guestOut = new PrintWriter(guest.getOutputStream(), true);
+        BufferedReader hostIn = new BufferedReader(new InputStreamReader(
+                host.getInputStream()));
+        BufferedReader guestIn = new BufferedReader(new InputStreamReader(
+                guest.getInputStream()));
+
+        hostOut.println(encode(ClientToServerEnum.NICK, "hostWin"));
+        hostOut.println(encode(ClientToServerEnum.HOST, "testmap"));
+        assertEquals(ServerToClientEnum.SUCC_HOST, nextMessage(hostIn, 2).msg);
+        guestOut.println(encode(ClientToServerEnum.NICK, "guestWin"));
+        guestOut.println(encode(ClientToServerEnum.JOIN, "hostWin"));
+        assertEquals(ServerToClientEnum.SUCC_JOIN, nextMessage(guestIn, 2).msg);
+        assertEquals(ServerToClientEnum.INFO_SOMEONE_ENTERED_ROOM,
+                nextMessage(hostIn, 1).msg);
+
+        // The winning attack is relayed, and the game is over
+        guestOut.println(encode(ClientToServerEnum.GAME_ACTION, "1|0|0|0|1|9|1"));
+        assertEquals("1|0|0|0|1|9|1", nextMessage(hostIn, 1).argument);
+
+        // So the winner leaving isn't sent as a surrender
+        guest.close();
+        wait(200);
+        hostOut.println(encode(ClientToServerEnum.NICK, ""));
+        assertEquals(ServerToClientEnum.INFO_NICKNAME, nextMessage(hostIn, 1).msg);
+
+        host.close();
+    }
+
+    @Test(timeout = 30000)
+    public void testThread_StalledClientIsDisconnected() throws Exception {
+        startServer(ServerMode.THREAD);
+        floodStalledHost("hostStall", "guestStall");
+    }
+
+    @Test(timeout = 30000)
+    public void testSelector_StalledClientIsDisconnected() throws Exception {
+        startServer(ServerMode.SELECTOR);
+        floodStalledHost("hostJam", "guestJam");
+    }
+
+    @Test
+    public void testThread_OneGuestPerRoom() throws Exception {
+        startServer(ServerMode.THREAD);
+        Socket host = new Socket("localhost", Server.DEFAULT_PORT);
+        host.setSoTimeout(2000);
+        PrintWriter hostOut = new PrintWriter(host.getOutputStream(), true);
+        BufferedReader hostIn = new BufferedReader(new InputStreamReader(
+                host.getInputStream()));
+        hostOut.println(encode(ClientToServerEnum.NICK, "hostOne"));
+        hostOut.println(encode(ClientToServerEnum.HOST, "testmap"));
+        assertEquals(ServerToClientEnum.SUCC_HOST, nextMessage(hostIn, 2).msg);
+
+        Socket[] guests = new Socket[8];
+        BufferedReader[] guestIns = new BufferedReader[guests.length];
+        PrintWriter[] guestOuts = new PrintWriter[guests.length];
+        for (int i = 0; i < guests.length; i++) {
+            guests[i] = new Socket("localhost", Server.DEFAULT_PORT);
+            guests[i].setSoTimeout(2000);
+            guestOuts[i] = new PrintWriter(guests[i].getOutputStream(), true);
+            guestIns[i] = new BufferedReader(new InputStreamReader(
+                    guests[i].getInputStream()));
+            guestOuts[i].println(encode(ClientToServerEnum.NICK, "guest" + i));
+            nextMessage(guestIns[i], 1);
+        }
+
+        // Every guest tries to join at once, but only one of them can
+        for (PrintWriter out : guestOuts)
+            out.println(encode(ClientToServerEnum.JOIN, "hostOne"));
+        int joined = 0;
+        for (BufferedReader in : guestIns) {
+            ServerToClientEnum result = nextMessage(in, 1).msg;
+            if (result == ServerToClientEnum.SUCC_JOIN)
+                joined++;
+            else
+                assertEquals(ServerToClientEnum.ERR_ROOM_NOT_FOUND, result);
+        }
+        assertEquals(1, joined);
+        assertEquals(ServerToClientEnum.INFO_SOMEONE_ENTERED_ROOM,
+                nextMessage(hostIn, 1).msg);
+
+        for (Socket guest : guests)
+            guest.close();
+        host.close();
+    }
+
+    @Test
+    public void testThread_RoomSubscription() throws Exception {
+        startServer(ServerMode.THREAD);
+        Socket watcher = new Socket("localhost", Server.DEFAULT_PORT);
+        Socket host = new Socket("localhost", Server.DEFAULT_PORT);
+        watcher.setSoTimeout(2000);
+        host.setSoTimeout(2000);
+        PrintWriter watcherOut = new PrintWriter(watcher.getOutputStream(),
+                true);
+        PrintWriter hostOut = new PrintWriter(host.getOutputStream(), true);
+        BufferedReader watcherIn = new BufferedReader(new InputStreamReader(
+                watcher.getInputStream()));
+        BufferedReader hostIn = new BufferedReader(new InputStreamReader(
+                host.getInputStream()));
+
+        watcherOut.println(encode(ClientToServerEnum.SUBSCRIBE_ROOMS, ""));
+        ServerToClientMessage snapshot = nextMessage(watcherIn, 1);
+        assertEquals(ServerToClientEnum.INFO_ROOMS_DELTA, snapshot.msg);
+        long version = Long.parseLong(snapshot.argument.split("\\|")[0]);
+
+        hostOut.println(encode(ClientToServerEnum.NICK, "pushHost"));
+        hostOut.println(encode(ClientToServerEnum.HOST, "testmap"));
+        assertEquals(ServerToClientEnum.SUCC_HOST, nextMessage(hostIn, 2).msg);
+        ServerToClientMessage added = nextMessage(watcherIn, 1);
+        assertEquals(ServerToClientEnum.ROOM_ADDED, added.msg);
+        assertEquals((version + 1) + "|pushHost|testmap", added.argument);
+
+        hostOut.println(encode(ClientToServerEnum.UNHOST, ""));
+        assertEquals(ServerToClientEnum.SUCC_UNHOST, nextMessage(hostIn, 1).msg);
+        ServerToClientMessage removed = nextMessage(watcherIn, 1);
+        assertEquals(ServerToClientEnum.ROOM_REMOVED, removed.msg);
+        assertEquals((version + 2) + "|pushHost", removed.argument);
+
+        // Once unsubscribed, the next message is the response to NICK
+        watcherOut.println(encode(ClientToServerEnum.UNSUBSCRIBE_ROOMS, ""));
+        watcherOut.println(encode(ClientToServerEnum.NICK, ""));
+        assertEquals(ServerToClientEnum.ERR_NICKNAME_IS_UNDEFINED,
+                nextMessage(watcherIn, 1).msg);
+        hostOut.println(encode(ClientToServerEnum.HOST, "testmap"));
+        assertEquals(ServerToClientEnum.SUCC_HOST, nextMessage(hostIn, 1).msg);
+        watcherOut.println(encode(ClientToServerEnum.NICK, ""));
+        assertEquals(ServerToClientEnum.ERR_NICKNAME_IS_UNDEFINED,
+                nextMessage(watcherIn, 1).msg);
+
+        host.close();
+        watcher.close();
+    }
+
+    @Test
+    public void testThread_RefereedGame() throws Exception {
+        System.setProperty("kindred.authoritative", "true");
+        try {
+            startServer(ServerMode.THREAD);
+        } finally {
+            System.clearProperty("kindred.authoritative");
+        }
+        Socket host = new Socket("localhost", Server.DEFAULT_PORT);
+        Socket guest = new Socket("localhost", Server.DEFAULT_PORT);
+        host.setSoTimeout(2000);
+        guest.setSoTimeout(2000);
+        PrintWriter hostOut = new PrintWriter(host.getOutputStream(), true);
+        PrintWriter guestOut = new PrintWriter(guest.getOutputStream(), true);
+        BufferedReader hostIn = new BufferedReader(new InputStreamReader(
+                host.getInputStream()));
+        BufferedReader guestIn = new BufferedReader(new InputStreamReader(
+                guest.getInputStream()));
+
+        hostOut.println(encode(ClientToServerEnum.NICK, "hostRef"));
+        hostOut.println(encode(ClientToServerEnum.HOST, "testmatch"));
+        assertEquals(ServerToClientEnum.SUCC_HOST, nextMessage(hostIn, 2).msg);
+        guestOut.println(encode(ClientToServerEnum.NICK, "guestRef"));
+        guestOut.println(encode(ClientToServerEnum.JOIN, "hostRef"));
+        assertEquals("hostRef|2|testmatch|1", nextMessage(guestIn, 2).argument);
+        assertEquals("guestRef|1|testmatch|1", nextMessage(hostIn, 1).argument);
+
+        // Out of turn, or onto an occupied Tile
+        guestOut.println(encode(ClientToServerEnum.GAME_ACTION, "2|"));
+        assertEquals(ServerToClientEnum.ERR_INVALID_GAME_ACTION,
+                nextMessage(guestIn, 1).msg);
+        hostOut.println(encode(ClientToServerEnum.GAME_ACTION, "0|0|0|0|1"));
+        assertEquals(ServerToClientEnum.ERR_INVALID_GAME_ACTION,
+                nextMessage(hostIn, 1).msg);
+
+        // The damage claimed by the attacker is replaced by the Server's
+        hostOut.println(encode(ClientToServerEnum.GAME_ACTION, "1|0|0|0|1|0"));
+        ServerToClientMessage attack = nextMessage(guestIn, 1);
+        assertEquals(ServerToClientEnum.GAME_ACTION, attack.msg);
+        assertEquals(attack.argument, nextMessage(hostIn, 1).argument);
+        assertTrue(attack.argument.startsWith("1|0|0|0|1|"));
+        assertTrue(Integer.parseInt(attack.argument.substring(10)) >= 10);
+
+        // The Wizard is dead, so the game is over
+        hostOut.println(encode(ClientToServerEnum.GAME_ACTION, "2|"));
+        hostOut.println(encode(ClientToServerEnum.NICK, ""));
+        assertEquals(ServerToClientEnum.INFO_NICKNAME, nextMessage(hostIn, 1).msg);
+
+        host.close();
+        guest.close();
+    }
+
+    @Test
+    public void testSelector_Metrics() throws Exception {
+        startServer(ServerMode.SELECTOR);
+        wait(200);
+        ServerMetricsMXBean metrics = JMX.newMXBeanProxy(
+                ManagementFactory.getPlatformMBeanServer(), new ObjectName(
+                        "kindred.server:type=ServerMetrics"),
+                ServerMetricsMXBean.class);
+        long connections = metrics.getTotalConnections();
+        long actions = metrics.getMessagesReceived().get("GAME_ACTION");
+        long relays = metrics.getRelayCount();
+
+        relayWithoutPeerTraffic("hostMetr", "guestMetr");
+        wait(200);
+        assertEquals(connections + 2, metrics.getTotalConnections());
+        assertEquals(actions + 1,
+                (long) metrics.getMessagesReceived().get("GAME_ACTION"));
+        assertEquals(relays + 1, metrics.getRelayCount());
+        assertTrue(metrics.getRelayLatency().get("max") > 0);
+        assertEquals(0, metrics.getActiveGames());
+    }
+
+    private void floodStalledHost(String hostNick, String guestNick)
+            throws Exception {
+        Socket host = new Socket("localhost", Server.DEFAULT_PORT);
+        Socket guest = new Socket("localhost", Server.DEFAULT_PORT);
+        host.setSoTimeout(2000);
+        guest.setSoTimeout(2000);
+        PrintWriter hostOut = new PrintWriter(host.getOutputStream(), true);
+        PrintWriter guestOut = new PrintWriter(guest.getOutputStream(), true);
+        BufferedReader hostIn = new BufferedReader(new InputStreamReader(
+                host.getInputStream()));
+        BufferedReader guestIn = new BufferedReader(new InputStreamReader(
+                guest.getInputStream()));
+
+        hostOut.println(encode(ClientToServerEnum.NICK, hostNick));
+        hostOut.println(encode(ClientToServerEnum.HOST, "testmap"));
+        assertEquals(ServerToClientEnum.SUCC_HOST, nextMessage(hostIn, 2).msg);
+        guestOut.println(encode(ClientToServerEnum.NICK, guestNick));
+        guestOut.println(encode(ClientToServerEnum.JOIN, hostNick));
+        assertEquals(ServerToClientEnum.SUCC_JOIN, nextMessage(guestIn, 2).msg);
+        assertEquals(ServerToClientEnum.INFO_SOMEONE_ENTERED_ROOM,
+                nextMessage(hostIn, 1).msg);
+
+        // The host stops reading, while the guest floods it with actions
+        char[] filler = new char[8000];
+        Arrays.fill(filler, 'x');
+        String action = encode(ClientToServerEnum.GAME_ACTION, "2|"
+                + new String(filler));
+        for (int i = 0; i < 3000; i++)
+            guestOut.println(action);
+
+        // The guest is still served, and the host was disconnected
+        wait(500);
+        guestOut.println(encode(ClientToServerEnum.NICK, ""));
+        assertEquals("3|", nextMessage(guestIn, 1).argument);
+        assertEquals(ServerToClientEnum.INFO_NICKNAME,
+                nextMessage(guestIn, 1).msg);
+
+        host.close();
+        guest.close();
+    }
+
+    private void relayWithoutPeerTraffic(String hostNick, String guestNick)
+            throws Exception {
+        Socket host = new Socket("localhost", Server.DEFAULT_PORT);
+        Socket guest = new Socket("localhost", Server.DEFAULT_PORT);
+        host.setSoTimeout(2000);
+        guest.setSoTimeout(2000);
+        PrintWriter hostOut = new PrintWriter(host.getOutputStream(), true);
+        PrintWriter guestOut = new PrintWriter(guest.getOutputStream(), true);
+        BufferedReader hostIn = new BufferedReader(new InputStreamReader(
+                host.getInputStream()));
+        BufferedReader guestIn = new BufferedReader(new InputStreamReader(
+                guest.getInputStream()));
+
+        hostOut.println(encode(ClientToServerEnum.NICK, hostNick));
+        hostOut.println(encode(ClientToServerEnum.HOST, "testmap"));
+        assertEquals(ServerToClientEnum.SUCC_HOST, nextMessage(hostIn, 2).msg);
+        guestOut.println(encode(ClientToServerEnum.NICK, guestNick));
+        guestOut.println(encode(ClientToServerEnum.JOIN, hostNick));
+        assertEquals(ServerToClientEnum.INFO_SOMEONE_ENTERED_ROOM,
+                nextMessage(hostIn, 1).msg);
+        assertEquals(ServerToClientEnum.SUCC_JOIN, nextMessage(guestIn, 2).msg);
+
+        // The host never writes again, yet must receive the guest's action
+        host.setSoTimeout(100);
+        guestOut.println(encode(ClientToServerEnum.GAME_ACTION, "2|"));
+        ServerToClientMessage relayed = nextMessage(hostIn, 1);
+        assertEquals(ServerToClientEnum.GAME_ACTION, relayed.msg);
+        assertEquals("2|", relayed.argument);
+
+        host.close();
+        guest.close();
+    }
+
+    private static String encode(ClientToServerEnum msg, String arg) {
+        return new ClientToServerMessage(msg, arg).toEncodedString();
+    }
+
+    private static ServerToClientMessage nextMessage(BufferedReader in, int n)
+            throws Exception {
+        ServerToClientMessage msg = null;
+        for (int i = 0; i < n; i++)
+            msg = ServerToClientMessage.fromEncodedString(in.readLine());
+        return msg;
+    }
+
+    private void startServer(ServerMode mode) {
+        server = new Server(mode, Server.DEFAULT_PORT);
+        server.runLoopInNewThread();
+    }
+
+    private void playMatch(String hostNick, String guestNick) {
+        playMatch(hostNick, guestNick, WireFormat.TEXT);
+    }
+
+    private void playMatch(String hostNick, String guestNick, WireFormat format) {
+        Client host = new Client("localhost", view, format);
+        Client guest = new Client("localhost", view, format);
+        host.start();
+        guest.start();
+        host.nick(hostNick);
+        guest.nick(guestNick);
+        wait(400);
+        host.host("testmap");
+        wait(400);
+        assertTrue(host.isHostingRoom());
+        guest.join(hostNick);
+        wait(800);
+        assertTrue(host.isPlaying());
+        assertTrue(guest.isPlaying());
+
+        assertTrue(host.move(new int[] { 0, 0, 1, 0 }));
+        host.endTurn();
+        wait(600);
+        assertEquals(2, guest.getGameTurn());
+        guest.surrender();
+        wait(600);
+        assertFalse(host.isPlaying());
+
+        host.quit();
+        guest.quit();
+        wait(600);
+        assertFalse(host.isConnected());
+        assertFalse(guest.isConnected());
+    }
+
+    private void wait(int ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
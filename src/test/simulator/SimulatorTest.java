@@ -0,0 +1,28 @@
+package test.simulator;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import kindred.simulator.GreedyPolicy;
+import kindred.simulator.Policy;
+import kindred.simulator.RandomPolicy;
+import kindred.simulator.SimulationResult;
+import kindred.simulator.Simulator;
+
+public class SimulatorTest {
+
+    private static final String MAP = "/kindred/common/data/map/simpleMap.txt";
+
+    @Test
+    public void testResultsDependOnlyOnTheSeed() {
+        Policy[] policies = { new RandomPolicy(), new GreedyPolicy() };
+        SimulationResult one = Simulator.simulate(MAP, policies, 1000, 7, 1);
+        SimulationResult two = Simulator.simulate(MAP, policies, 1000, 7, 2);
+
+        assertEquals(1000, one.getMatches());
+        assertEquals(one.getWinRate(1), two.getWinRate(1), 0);
+        assertEquals(one.getAverageTurns(), two.getAverageTurns(), 0);
+        assertEquals(one.getDamage("Archer"), two.getDamage("Archer"));
+    }
+}